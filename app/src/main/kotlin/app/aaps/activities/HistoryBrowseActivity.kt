@@ -27,6 +27,7 @@ import app.aaps.core.interfaces.rx.events.EventUpdateOverviewGraph
 import app.aaps.core.interfaces.utils.DateUtil
 import app.aaps.core.interfaces.utils.T
 import app.aaps.core.interfaces.utils.fabric.FabricPrivacy
+import app.aaps.core.main.events.EventCalculationFinished
 import app.aaps.core.main.events.EventIobCalculationProgress
 import app.aaps.core.main.workflow.CalculationWorkflow
 import app.aaps.core.ui.activities.TranslatedDaggerAppCompatActivity
@@ -54,7 +55,6 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
     @Inject lateinit var overviewMenus: OverviewMenus
     @Inject lateinit var dateUtil: DateUtil
     @Inject lateinit var context: Context
-    @Inject lateinit var calculationWorkflow: CalculationWorkflow
     @Inject lateinit var rxBus: RxBus
     @Inject lateinit var rh: ResourceHelper
     @Inject lateinit var aapsLogger: AAPSLogger
@@ -141,15 +141,14 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
         prepareGraphsIfNeeded(overviewMenus.setting.size)
         savedInstanceState?.let { bundle ->
             rangeToDisplay = bundle.getInt("rangeToDisplay", 0)
-            historyBrowserData.overviewData.fromTime = bundle.getLong("start", 0)
-            historyBrowserData.overviewData.toTime = bundle.getLong("end", 0)
+            historyBrowserData.select(bundle.getLong("start", 0), bundle.getLong("end", 0))
         }
     }
 
     override fun onPause() {
         super.onPause()
         disposable.clear()
-        calculationWorkflow.stopCalculation(CalculationWorkflow.HISTORY_CALCULATION, "onPause")
+        historyBrowserData.stopCalculation("onPause")
     }
 
     @Synchronized
@@ -169,9 +168,15 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
                                refreshLoop("EventAutosensCalculationFinished")
                        }, fabricPrivacy::logException)
         disposable += rxBus
-            .toObservable(EventIobCalculationProgress::class.java)
-            .observeOn(aapsSchedulers.main)
+            .toObservable(EventIobCalculationProgress::class.java, aapsSchedulers.main, coalesce = true)
+            .filter { !historyBrowserData.isPrefetching }
             .subscribe({ updateCalcProgress(it.finalPercent) }, fabricPrivacy::logException)
+        // progress of displayed range may be filtered out after prefetch has started
+        disposable += rxBus
+            .toObservable(EventCalculationFinished::class.java)
+            .filter { it.job == CalculationWorkflow.HISTORY_CALCULATION }
+            .observeOn(aapsSchedulers.main)
+            .subscribe({ updateCalcProgress(100) }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventUpdateOverviewGraph::class.java)
             .observeOn(aapsSchedulers.main)
@@ -190,7 +195,8 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
             setTime(dateUtil.now())
             loadAll("onResume")
         } else {
-            updateGUI("onResume")
+            // range may have been invalidated while paused
+            loadAll("onResume")
         }
     }
 
@@ -239,7 +245,9 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
     @Suppress("SameParameterValue")
     private fun loadAll(from: String) {
         updateDate()
-        runCalculation(from)
+        // already calculated range is displayed immediately, calculation continues with neighbours
+        if (historyBrowserData.current.isCalculated) updateGUI(from)
+        historyBrowserData.calculate(from)
     }
 
     private fun setTime(start: Long) {
@@ -254,21 +262,7 @@ class HistoryBrowseActivity : TranslatedDaggerAppCompatActivity() {
     }
 
     private fun adjustTimeRange(start: Long) {
-        historyBrowserData.overviewData.fromTime = start
-        historyBrowserData.overviewData.toTime = historyBrowserData.overviewData.fromTime + T.hours(rangeToDisplay.toLong()).msecs()
-        historyBrowserData.overviewData.endTime = historyBrowserData.overviewData.toTime
-    }
-
-    private fun runCalculation(from: String) {
-        calculationWorkflow.runCalculation(
-            job = CalculationWorkflow.HISTORY_CALCULATION,
-            iobCobCalculator = historyBrowserData.iobCobCalculator,
-            overviewData = historyBrowserData.overviewData,
-            reason = from,
-            end = historyBrowserData.overviewData.toTime,
-            bgDataReload = true,
-            cause = EventCustomCalculationFinished()
-        )
+        historyBrowserData.select(start, start + T.hours(rangeToDisplay.toLong()).msecs())
     }
 
     @Volatile
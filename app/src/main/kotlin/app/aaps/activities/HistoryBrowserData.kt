@@ -1,49 +1,63 @@
 package app.aaps.activities
 
 import app.aaps.core.interfaces.logging.AAPSLogger
+import app.aaps.core.interfaces.logging.LTag
 import app.aaps.core.interfaces.plugin.ActivePlugin
 import app.aaps.core.interfaces.profile.DefaultValueHelper
 import app.aaps.core.interfaces.profile.ProfileFunction
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.rx.AapsSchedulers
 import app.aaps.core.interfaces.rx.bus.RxBus
+import app.aaps.core.interfaces.rx.events.EventCustomCalculationFinished
+import app.aaps.core.interfaces.rx.events.EventEffectiveProfileSwitchChanged
+import app.aaps.core.interfaces.rx.events.EventNewHistoryData
+import app.aaps.core.interfaces.rx.events.EventPreferenceChange
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.utils.DateUtil
 import app.aaps.core.interfaces.utils.DecimalFormatter
 import app.aaps.core.interfaces.utils.fabric.FabricPrivacy
+import app.aaps.core.main.events.EventCalculationFinished
 import app.aaps.core.main.graph.OverviewData
 import app.aaps.core.main.workflow.CalculationWorkflow
 import app.aaps.database.impl.AppRepository
 import app.aaps.implementation.overview.OverviewDataImpl
 import app.aaps.plugins.main.iob.iobCobCalculator.IobCobCalculatorPlugin
 import dagger.android.HasAndroidInjector
+import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.kotlin.plusAssign
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Calculated data of history browser
+ *
+ * Every browsed range has its own calculator and graph data. Calculated ranges are kept
+ * until history older than their end changes, so returning to already seen range
+ * doesn't need new calculation. When displayed range is calculated, neighbour ranges
+ * are calculated in the background without reporting progress to UI.
+ */
 @Singleton
 class HistoryBrowserData @Inject constructor(
-    injector: HasAndroidInjector,
-    aapsSchedulers: AapsSchedulers,
-    rxBus: RxBus,
-    aapsLogger: AAPSLogger,
-    rh: ResourceHelper,
-    dateUtil: DateUtil,
-    sp: SP,
-    activePlugin: ActivePlugin,
-    defaultValueHelper: DefaultValueHelper,
-    profileFunction: ProfileFunction,
-    repository: AppRepository,
-    fabricPrivacy: FabricPrivacy,
-    calculationWorkflow: CalculationWorkflow,
-    decimalFormatter: DecimalFormatter
+    private val injector: HasAndroidInjector,
+    private val aapsSchedulers: AapsSchedulers,
+    private val rxBus: RxBus,
+    private val aapsLogger: AAPSLogger,
+    private val rh: ResourceHelper,
+    private val dateUtil: DateUtil,
+    private val sp: SP,
+    private val activePlugin: ActivePlugin,
+    private val defaultValueHelper: DefaultValueHelper,
+    private val profileFunction: ProfileFunction,
+    private val repository: AppRepository,
+    private val fabricPrivacy: FabricPrivacy,
+    private val calculationWorkflow: CalculationWorkflow,
+    private val decimalFormatter: DecimalFormatter
 ) {
 
-    var iobCobCalculator: IobCobCalculatorPlugin
-    var overviewData: OverviewData
+    inner class Snapshot(val fromTime: Long, val toTime: Long) {
 
-    init {
         // We don't want to use injected singletons but own instance working on top of different data
-        overviewData =
+        val overviewData: OverviewData =
             OverviewDataImpl(
                 aapsLogger,
                 rh,
@@ -54,8 +68,12 @@ class HistoryBrowserData @Inject constructor(
                 profileFunction,
                 repository,
                 decimalFormatter
-            )
-        iobCobCalculator =
+            ).also {
+                it.fromTime = fromTime
+                it.toTime = toTime
+                it.endTime = toTime
+            }
+        val iobCobCalculator: IobCobCalculatorPlugin =
             IobCobCalculatorPlugin(
                 injector,
                 aapsLogger,
@@ -72,5 +90,159 @@ class HistoryBrowserData @Inject constructor(
                 calculationWorkflow,
                 decimalFormatter
             )
+
+        @Volatile var isCalculated = false
+
+        // timestamp is the oldest change, newer data may be changed too
+        fun isAffectedBy(timestamp: Long) = timestamp <= toTime
+    }
+
+    private val disposable = CompositeDisposable()
+
+    // calculated ranges, least recently used first
+    private val snapshots = LinkedHashMap<Pair<Long, Long>, Snapshot>(MAX_SNAPSHOTS, 0.75f, true)
+
+    // snapshot being calculated by HISTORY_CALCULATION job
+    @Volatile private var calculating: Snapshot? = null
+
+    @Volatile var current = Snapshot(0, 0)
+        private set
+
+    // calculation is requested by displayed activity
+    @Volatile private var active = false
+
+    /**
+     * Neighbour range is being calculated, progress of calculation is not related to displayed data
+     */
+    val isPrefetching: Boolean get() = calculating.let { it != null && it !== current }
+
+    val overviewData: OverviewData get() = current.overviewData
+    val iobCobCalculator: IobCobCalculatorPlugin get() = current.iobCobCalculator
+
+    init {
+        disposable += rxBus
+            .toObservable(EventNewHistoryData::class.java)
+            .observeOn(aapsSchedulers.io)
+            .subscribe({ invalidate(it.oldDataTimestamp) }, fabricPrivacy::logException)
+        disposable += rxBus
+            .toObservable(EventEffectiveProfileSwitchChanged::class.java)
+            .observeOn(aapsSchedulers.io)
+            .subscribe({ invalidate(it.startDate) }, fabricPrivacy::logException)
+        disposable += rxBus
+            .toObservable(EventPreferenceChange::class.java)
+            .observeOn(aapsSchedulers.io)
+            .subscribe({ invalidateAll() }, fabricPrivacy::logException)
+        // not moved to other thread, it must be processed before calculation can be stopped
+        disposable += rxBus
+            .toObservable(EventCalculationFinished::class.java)
+            .filter { it.job == CalculationWorkflow.HISTORY_CALCULATION }
+            .subscribe({ onCalculationFinished() }, fabricPrivacy::logException)
+    }
+
+    /**
+     * Make range current
+     *
+     * @return true if data for the range is calculated already
+     */
+    @Synchronized
+    fun select(fromTime: Long, toTime: Long): Boolean {
+        current = snapshots.getOrPut(Pair(fromTime, toTime)) { Snapshot(fromTime, toTime) }
+        trim()
+        return current.isCalculated
+    }
+
+    /**
+     * Calculate current range if needed and prefetch neighbour ranges
+     */
+    fun calculate(reason: String) {
+        active = true
+        scheduleNext(reason)
+    }
+
+    private fun scheduleNext(reason: String) {
+        aapsSchedulers.io.scheduleDirect { if (active) calculateNext(reason) }
+    }
+
+    fun stopCalculation(reason: String) {
+        active = false
+        calculationWorkflow.stopCalculation(CalculationWorkflow.HISTORY_CALCULATION, reason)
+        calculating = null
+    }
+
+    @Synchronized
+    private fun calculateNext(reason: String) {
+        val next = nextToCalculate() ?: return
+        if (next === calculating) return
+        calculationWorkflow.stopCalculation(CalculationWorkflow.HISTORY_CALCULATION, reason)
+        calculating = next
+        aapsLogger.debug(LTag.UI, "Calculating history ${dateUtil.dateAndTimeString(next.fromTime)} current=${next === current}")
+        calculationWorkflow.runCalculation(
+            job = CalculationWorkflow.HISTORY_CALCULATION,
+            iobCobCalculator = next.iobCobCalculator,
+            overviewData = next.overviewData,
+            reason = reason,
+            end = next.toTime,
+            bgDataReload = true,
+            cause = EventCustomCalculationFinished()
+        )
+    }
+
+    private fun nextToCalculate(): Snapshot? {
+        val current = current
+        if (!current.isCalculated) return current
+        val length = current.toTime - current.fromTime
+        if (length <= 0) return null
+        val neighbours = mutableListOf(Pair(current.fromTime - length, current.fromTime))
+        if (current.toTime < dateUtil.now()) neighbours.add(Pair(current.toTime, current.toTime + length))
+        for (range in neighbours) {
+            val snapshot = snapshots.getOrPut(range) { Snapshot(range.first, range.second) }
+            if (!snapshot.isCalculated) return snapshot.also { trim() }
+        }
+        return null
+    }
+
+    private fun onCalculationFinished() {
+        calculating?.let {
+            it.isCalculated = true
+            calculating = null
+            scheduleNext("prefetch")
+        }
+    }
+
+    // drop least recently used ranges except current
+    private fun trim() {
+        val iterator = snapshots.values.iterator()
+        while (snapshots.size > MAX_SNAPSHOTS && iterator.hasNext())
+            if (iterator.next() !== current) iterator.remove()
+    }
+
+    @Synchronized
+    private fun invalidate(timestamp: Long) {
+        if (snapshots.values.removeIf { it.isAffectedBy(timestamp) }) recalculate()
+    }
+
+    @Synchronized
+    private fun invalidateAll() {
+        snapshots.clear()
+        recalculate()
+    }
+
+    // replace removed current range by empty one and calculate it again
+    private fun recalculate() {
+        if (current.toTime == 0L) return
+        calculating?.let {
+            if (it !in snapshots.values) {
+                calculationWorkflow.stopCalculation(CalculationWorkflow.HISTORY_CALCULATION, "History changed")
+                calculating = null
+            }
+        }
+        val range = Pair(current.fromTime, current.toTime)
+        if (snapshots[range] !== current) current = Snapshot(range.first, range.second).also { snapshots[range] = it }
+        scheduleNext("History changed")
+    }
+
+    companion object {
+
+        private const val MAX_SNAPSHOTS = 5
     }
-}
\ No newline at end of file
+}
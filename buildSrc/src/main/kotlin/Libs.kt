@@ -149,6 +149,7 @@ object Libs {
         const val jupiter = "org.junit.jupiter:junit-jupiter:$junitVersion"
         const val jupiterApi = "org.junit.jupiter:junit-jupiter-api:$junitVersion"
         const val jupiterEngine = "org.junit.jupiter:junit-jupiter-engine:$junitVersion"
+        const val vintageEngine = "org.junit.vintage:junit-vintage-engine:$junitVersion"
     }
 
     object Mockito {
@@ -195,6 +196,7 @@ object Libs {
     const val qrGen = "com.github.kenglxn.QRGen:android:3.0.1"
     const val socketIo = "io.socket:socket.io-client:2.1.0"
     const val kotlinTestRunner = "io.kotlintest:kotlintest-runner-junit5:3.4.2"
+    const val robolectric = "org.robolectric:robolectric:4.10.3"
     const val rxandroidBle = "com.polidea.rxandroidble3:rxandroidble:1.17.2"
     const val rx3ReplayingShare = "com.jakewharton.rx3:replaying-share:3.0.0"
     const val commonCodecs = "commons-codec:commons-codec:1.16.0"
@@ -2,6 +2,8 @@ plugins {
     id("com.android.library")
     id("kotlin-android")
     id("android-module-dependencies")
+    id("test-module-dependencies")
+    id("jacoco-module-dependencies")
 }
 
 
@@ -30,7 +30,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -165,69 +164,93 @@ public abstract class BaseSeries<E extends DataPointInterface> implements Series
     public Iterator<E> getValues(final double from, final double until) {
         if (from <= getLowestValueX() && until >= getHighestValueX()) {
             return mData.iterator();
-        } else {
-            return new Iterator<E>() {
-                final Iterator<E> org = mData.iterator();
-                E nextValue = null;
-                E nextNextValue = null;
-                boolean plusOne = true;
-
-                {
-                    // go to first
-                    boolean found = false;
-                    E prevValue = null;
-                    if (org.hasNext()) {
-                        prevValue = org.next();
-                    }
-                    if (prevValue.getX() >= from) {
-                        nextValue = prevValue;
-                        found = true;
-                    } else {
-                        while (org.hasNext()) {
-                            nextValue = org.next();
-                            if (nextValue.getX() >= from) {
-                                found = true;
-                                nextNextValue = nextValue;
-                                nextValue = prevValue;
-                                break;
-                            }
-                            prevValue = nextValue;
-                        }
-                    }
-                    if (!found) {
-                        nextValue = null;
-                    }
-                }
+        }
+        int first = firstIndex(from);
+        int last = lastIndex(until);
+        if (first > last) return Collections.<E>emptyList().iterator();
+        return mData.subList(first, last + 1).iterator();
+    }
 
-                @Override
-                public void remove() {
-                    throw new UnsupportedOperationException();
-                }
+    /**
+     * get the values for a given x range reduced to what can be seen
+     * on the given number of pixels.
+     * The x range is divided to buckets of one pixel and only the points
+     * with the lowest and highest y-value of every bucket are returned,
+     * so peaks are never lost. Points around the range are kept as in
+     * {@link #getValues(double, double)}.
+     *
+     * @param from minimal x-value
+     * @param until maximal x-value
+     * @param width number of pixels for the range
+     * @return data for the range +/- 1 datapoint, at most 2 points per pixel
+     */
+    public Iterator<E> getValues(final double from, final double until, int width) {
+        int first = firstIndex(from);
+        int last = lastIndex(until);
+        if (first > last) return Collections.<E>emptyList().iterator();
+        if (width <= 0 || until <= from || last - first + 1 <= 2 * width + 2) {
+            return mData.subList(first, last + 1).iterator();
+        }
+        List<E> result = new ArrayList<E>(2 * width + 2);
+        result.add(mData.get(first));
+        int bucket = -1;
+        int min = -1;
+        int max = -1;
+        for (int i = first + 1; i < last; i++) {
+            double y = mData.get(i).getY();
+            int b = (int) Math.min(width - 1, Math.max(0, (mData.get(i).getX() - from) * width / (until - from)));
+            if (b != bucket) {
+                addBucket(result, min, max);
+                bucket = b;
+                min = i;
+                max = i;
+            } else if (y < mData.get(min).getY()) {
+                min = i;
+            } else if (y > mData.get(max).getY()) {
+                max = i;
+            }
+        }
+        addBucket(result, min, max);
+        if (last > first) result.add(mData.get(last));
+        return result.iterator();
+    }
 
-                @Override
-                public E next() {
-                    if (hasNext()) {
-                        E r = nextValue;
-                        if (r.getX() > until) {
-                            plusOne = false;
-                        }
-                        if (nextNextValue != null) {
-                            nextValue = nextNextValue;
-                            nextNextValue = null;
-                        } else if (org.hasNext()) nextValue = org.next();
-                        else nextValue = null;
-                        return r;
-                    } else {
-                        throw new NoSuchElementException();
-                    }
-                }
+    private void addBucket(List<E> result, int min, int max) {
+        if (min < 0) return;
+        result.add(mData.get(Math.min(min, max)));
+        if (min != max) result.add(mData.get(Math.max(min, max)));
+    }
 
-                @Override
-                public boolean hasNext() {
-                    return nextValue != null && (nextValue.getX() <= until || plusOne);
-                }
-            };
+    /**
+     * @return index of the last point before x or of the first point if there is none,
+     *         size of data if all points are before x
+     */
+    private int firstIndex(double x) {
+        int low = 0;
+        int high = mData.size();
+        // first index with value >= x
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mData.get(mid).getX() < x) low = mid + 1;
+            else high = mid;
+        }
+        if (low == mData.size()) return low;
+        return Math.max(0, low - 1);
+    }
+
+    /**
+     * @return index of the first point after x or of the last point if there is none
+     */
+    private int lastIndex(double x) {
+        int low = 0;
+        int high = mData.size();
+        // first index with value > x
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mData.get(mid).getX() <= x) low = mid + 1;
+            else high = mid;
         }
+        return Math.min(mData.size() - 1, low);
     }
 
     /**
@@ -168,7 +168,8 @@ public class LineGraphSeries<E extends DataPointInterface> extends BaseSeries<E>
             minY = graphView.getViewport().getMinY(false);
         }
 
-        Iterator<E> values = getValues(minX, maxX);
+        // more points than pixels cannot be seen
+        Iterator<E> values = getValues(minX, maxX, graphView.getGraphContentWidth());
 
         // draw background
         double lastEndY = 0;
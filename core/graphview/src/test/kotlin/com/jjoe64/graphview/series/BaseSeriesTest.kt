@@ -0,0 +1,81 @@
+package com.jjoe64.graphview.series
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class BaseSeriesTest {
+
+    private val random = Random(1)
+
+    // BG like data: 5 min interval with some noise and a few peaks
+    private val data = Array(2000) { i ->
+        val y = 120 + 60 * kotlin.math.sin(i / 40.0) + random.nextDouble(-5.0, 5.0) + if (i % 333 == 0) 150 else 0
+        DataPoint(i * 300_000.0, y)
+    }
+
+    private val series = LineGraphSeries(data)
+
+    // previous implementation: range plus one point before and after
+    private fun expectedValues(from: Double, until: Double): List<DataPoint> {
+        val first = (data.indexOfFirst { it.x >= from }.takeIf { it >= 0 } ?: return emptyList()).let { maxOf(0, it - 1) }
+        val last = data.indexOfFirst { it.x > until }.takeIf { it >= 0 } ?: data.lastIndex
+        return data.slice(first..last)
+    }
+
+    @Test
+    fun getValuesReturnsRangeWithNeighbours() {
+        val ranges = listOf(
+            -1.0 to 1e12,
+            -1.0 to 0.0,
+            0.0 to 0.0,
+            1_000.0 to 2_000.0,
+            150_000.0 to 1_000_000.0,
+            300_000.0 to 600_000.0,
+            data.last().x to 1e12,
+            data.last().x + 1 to 1e12,
+            200_000_000.0 to 350_000_000.0
+        )
+        for ((from, until) in ranges) {
+            assertThat(series.getValues(from, until).asSequence().toList()).containsExactlyElementsIn(expectedValues(from, until)).inOrder()
+        }
+    }
+
+    @Test
+    fun smallRangeIsNotDecimated() {
+        val from = 100 * 300_000.0
+        val until = 200 * 300_000.0
+        assertThat(series.getValues(from, until, 1080).asSequence().toList()).containsExactlyElementsIn(expectedValues(from, until)).inOrder()
+    }
+
+    @Test
+    fun decimatedValuesKeepExtremes() {
+        val width = 300
+        for ((from, until) in listOf(0.0 to data.last().x, 50 * 300_000.0 to 1900 * 300_000.0)) {
+            val full = expectedValues(from, until)
+            val decimated = series.getValues(from, until, width).asSequence().toList()
+
+            assertThat(decimated.size).isAtMost(2 * width + 2)
+            assertThat(decimated.size).isLessThan(full.size)
+            // subset of original points in the same order
+            assertThat(full).containsAtLeastElementsIn(decimated).inOrder()
+            assertThat(decimated.first()).isSameInstanceAs(full.first())
+            assertThat(decimated.last()).isSameInstanceAs(full.last())
+            assertThat(decimated.maxOf { it.y }).isEqualTo(full.maxOf { it.y })
+            assertThat(decimated.minOf { it.y }).isEqualTo(full.minOf { it.y })
+            // every pixel shows the same vertical span as with all points
+            val inner = full.subList(1, full.size - 1)
+            inner.groupBy { ((it.x - from) * width / (until - from)).toInt().coerceIn(0, width - 1) }.values.forEach { pixel ->
+                assertThat(decimated).contains(pixel.minBy { it.y })
+                assertThat(decimated).contains(pixel.maxBy { it.y })
+            }
+        }
+    }
+
+    @Test
+    fun emptySeries() {
+        val empty = LineGraphSeries<DataPoint>()
+        assertThat(empty.getValues(0.0, 1.0).hasNext()).isFalse()
+        assertThat(empty.getValues(0.0, 1.0, 100).hasNext()).isFalse()
+    }
+}
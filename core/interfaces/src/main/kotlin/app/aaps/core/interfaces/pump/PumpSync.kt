@@ -563,4 +563,57 @@ interface PumpSync {
 
     fun createOrUpdateTotalDailyDose(timestamp: Long, bolusAmount: Double, basalAmount: Double, totalAmount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean
 
+    /*
+     *   BATCH SYNCHRONIZATION
+     */
+
+    /**
+     * Pump history record for [syncHistory]
+     *
+     * Parameters have the same meaning as in corresponding single record functions
+     */
+    sealed class HistoryRecord(val timestamp: Long) {
+
+        /** @see syncBolusWithPumpId */
+        class Bolus(timestamp: Long, val amount: Double, val type: DetailedBolusInfo.BolusType?, val pumpId: Long) : HistoryRecord(timestamp)
+
+        /** @see syncCarbsWithTimestamp */
+        class Carbs(timestamp: Long, val amount: Double, val pumpId: Long?) : HistoryRecord(timestamp)
+
+        /** @see insertTherapyEventIfNewWithTimestamp */
+        class TherapyEvent(timestamp: Long, val type: DetailedBolusInfo.EventType, val note: String? = null, val pumpId: Long? = null) : HistoryRecord(timestamp)
+
+        /** @see syncTemporaryBasalWithPumpId */
+        class TemporaryBasal(timestamp: Long, val rate: Double, val duration: Long, val isAbsolute: Boolean, val type: TemporaryBasalType?, val pumpId: Long) : HistoryRecord(timestamp)
+
+        /** @see syncStopTemporaryBasalWithPumpId */
+        class StopTemporaryBasal(timestamp: Long, val endPumpId: Long) : HistoryRecord(timestamp)
+
+        /** @see syncExtendedBolusWithPumpId */
+        class ExtendedBolus(timestamp: Long, val amount: Double, val duration: Long, val isEmulatingTB: Boolean, val pumpId: Long) : HistoryRecord(timestamp)
+
+        /** @see syncStopExtendedBolusWithPumpId */
+        class StopExtendedBolus(timestamp: Long, val endPumpId: Long) : HistoryRecord(timestamp)
+
+        /** @see createOrUpdateTotalDailyDose */
+        class TotalDailyDose(timestamp: Long, val bolusAmount: Double, val basalAmount: Double, val totalAmount: Double, val pumpId: Long?) : HistoryRecord(timestamp)
+    }
+
+    /**
+     * Synchronization of block of pump history
+     *
+     * Records are processed in provided order the same way as by single record functions
+     * but in one database transaction. Listeners are notified about changes only once
+     * which is much faster than calling single record functions when reading history from pump.
+     *
+     * Batch is all or nothing: if processing of any record fails whole transaction is rolled back,
+     * none of the records is stored and exception is thrown. No per-record results are returned in that case.
+     *
+     * @param records      history records of mixed types
+     * @param pumpType      pump type like PumpType.ACCU_CHEK_COMBO
+     * @param pumpSerial    pump serial number
+     * @return result for every record in the same order, value is the same as the single record function would return
+     **/
+    fun syncHistory(records: List<HistoryRecord>, pumpType: PumpType, pumpSerial: String): List<Boolean>
+
 }
\ No newline at end of file
@@ -35,6 +35,12 @@ abstract class Command(
         CUSTOM_COMMAND
     }
 
+    /**
+     * Routine reading of pump data without any pending need.
+     * It is performed after commands added later, other commands are performed in order of adding.
+     */
+    open val routine: Boolean = false
+
     init {
         @Suppress("LeakingThis")
         injector.androidInjector().inject(this)
@@ -26,6 +26,12 @@ interface CommandQueue {
     fun cancelTempBasal(enforceNew: Boolean, callback: Callback?): Boolean
     fun cancelExtended(callback: Callback?): Boolean
     fun readStatus(reason: String, callback: Callback?): Boolean
+
+    /**
+     * @param routine true for periodic refresh, which can be postponed after commands added later.
+     * Reading after error or unconfirmed command must not be routine.
+     */
+    fun readStatus(reason: String, callback: Callback?, routine: Boolean): Boolean
     fun statusInQueue(): Boolean
     fun loadHistory(type: Byte, callback: Callback?): Boolean
     fun setUserOptions(callback: Callback?): Boolean
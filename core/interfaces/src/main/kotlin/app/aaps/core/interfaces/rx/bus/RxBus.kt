@@ -2,12 +2,22 @@ package app.aaps.core.interfaces.rx.bus
 
 import app.aaps.core.interfaces.rx.events.Event
 import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.core.Scheduler
 
 interface RxBus {
 
     fun send(event: Event)
 
     // Listen should return an Observable and not the publisher
-    // Using ofType we filter only events that match that class type
+    // Events are delivered on sender's thread to subscribers of the event class or its supertypes
     fun <T : Any> toObservable(eventType: Class<T>): Observable<T>
-}
\ No newline at end of file
+
+    /**
+     * Events of [eventType] delivered on [scheduler]
+     *
+     * If [coalesce] is true, event arriving while previous one is still waiting for delivery replaces it,
+     * ie. slow subscriber gets only the latest one. Intended for high-frequency events like progress or refresh.
+     */
+    fun <T : Any> toObservable(eventType: Class<T>, scheduler: Scheduler, coalesce: Boolean = false): Observable<T> =
+        toObservable(eventType).observeOn(scheduler)
+}
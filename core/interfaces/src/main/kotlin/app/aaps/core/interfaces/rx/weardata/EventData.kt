@@ -152,6 +152,12 @@ sealed class EventData : Event() {
     @Serializable
     data class OpenLoopRequestConfirmed(val timeStamp: Long) : EventData()
 
+    /**
+     * Watch holds [GraphData] of [sequence]
+     */
+    @Serializable
+    data class ActionGraphDataAck(val sequence: Long) : EventData()
+
     // Mobile -> Wear
     @Serializable
     data class CancelNotification(val timeStamp: Long) : EventData()
@@ -209,11 +215,62 @@ sealed class EventData : Event() {
         }
     }
 
+    /**
+     * Full snapshot of BG graph
+     *
+     * @param sequence identification of snapshot, acknowledged by [ActionGraphDataAck]. 0 if not used
+     */
     @Serializable
     data class GraphData(
-        val entries: ArrayList<SingleBg>
+        val entries: ArrayList<SingleBg>,
+        val sequence: Long = 0
     ) : EventData()
 
+    /**
+     * Changes of BG graph against snapshot [baseSequence] held by watch
+     *
+     * Entries older than [validFrom] are dropped, entries from [changedFrom] are replaced by [entries].
+     * If watch doesn't hold [baseSequence] full snapshot must be requested.
+     */
+    @Serializable
+    data class GraphDataDelta(
+        val sequence: Long,
+        val baseSequence: Long,
+        val validFrom: Long,
+        val changedFrom: Long,
+        val entries: ArrayList<SingleBg>
+    ) : EventData() {
+
+        fun applyTo(graphData: GraphData): GraphData =
+            GraphData(
+                ArrayList((graphData.entries.filter { it.timeStamp in validFrom until changedFrom } + entries).sorted()),
+                sequence
+            )
+
+        companion object {
+
+            /**
+             * @return changes of [entries] against [base] or null if there is nothing to send
+             */
+            fun between(sequence: Long, base: GraphData, entries: List<SingleBg>): GraphDataDelta? {
+                val validFrom = entries.minOfOrNull { it.timeStamp } ?: return null
+                val previous = base.entries.associateBy { it.timeStamp }
+                val current = entries.associateBy { it.timeStamp }
+                val changedFrom = minOf(
+                    entries.filter { previous[it.timeStamp]?.isDrawnAs(it) != true }.minOfOrNull { it.timeStamp } ?: Long.MAX_VALUE,
+                    base.entries.filter { it.timeStamp >= validFrom && it.timeStamp !in current }.minOfOrNull { it.timeStamp } ?: Long.MAX_VALUE
+                )
+                if (changedFrom == Long.MAX_VALUE && base.entries.none { it.timeStamp < validFrom }) return null
+                return GraphDataDelta(sequence, base.sequence, validFrom, changedFrom, ArrayList(entries.filter { it.timeStamp >= changedFrom }))
+            }
+
+            // delta and arrow of graph entries are not used
+            private fun SingleBg.isDrawnAs(other: SingleBg) =
+                sgv == other.sgv && high == other.high && low == other.low && color == other.color && sgvLevel == other.sgvLevel &&
+                    sgvString == other.sgvString && glucoseUnits == other.glucoseUnits
+        }
+    }
+
     @Serializable
     data class TreatmentData(
         val temps: ArrayList<TempBasal>,
@@ -32,6 +32,24 @@ interface SP {
         fun putString(@StringRes resourceID: Int, value: String)
     }
 
+    /**
+     * Immutable copy of all preferences.
+     * Values don't change when preferences are modified, use it to see consistent settings during one calculation.
+     */
+    interface Snapshot {
+
+        fun getString(@StringRes resourceID: Int, defaultValue: String): String
+        fun getString(key: String, defaultValue: String): String
+        fun getBoolean(@StringRes resourceID: Int, defaultValue: Boolean): Boolean
+        fun getBoolean(key: String, defaultValue: Boolean): Boolean
+        fun getDouble(@StringRes resourceID: Int, defaultValue: Double): Double
+        fun getDouble(key: String, defaultValue: Double): Double
+        fun getInt(@StringRes resourceID: Int, defaultValue: Int): Int
+        fun getInt(key: String, defaultValue: Int): Int
+        fun getLong(@StringRes resourceID: Int, defaultValue: Long): Long
+        fun getLong(key: String, defaultValue: Long): Long
+    }
+
     /**
      * Allows for editing shared preferences in a scoped manner.
      *
@@ -50,6 +68,7 @@ interface SP {
     fun edit(commit: Boolean = false, block: Editor.() -> Unit)
 
     fun getAll(): Map<String, *>
+    fun snapshot(): Snapshot
     fun clear()
     fun contains(key: String): Boolean
     fun contains(resourceId: Int): Boolean
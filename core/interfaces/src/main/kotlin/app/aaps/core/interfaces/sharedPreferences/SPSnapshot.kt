@@ -0,0 +1,49 @@
+package app.aaps.core.interfaces.sharedPreferences
+
+import app.aaps.core.interfaces.utils.SafeParse
+
+/**
+ * [SP.Snapshot] backed by a copy of preferences map
+ *
+ * Values are typed the same way as SharedPreferences stores them,
+ * numbers stored as strings (by preference screens) are parsed once and remembered.
+ *
+ * @param values copy of SharedPreferences.getAll()
+ * @param keyResolver translation of string resource id to preference key
+ */
+class SPSnapshot(private val values: Map<String, *>, private val keyResolver: (Int) -> String) : SP.Snapshot {
+
+    private val parsed = HashMap<String, Any>()
+
+    override fun getString(resourceID: Int, defaultValue: String): String = getString(keyResolver(resourceID), defaultValue)
+    override fun getString(key: String, defaultValue: String): String = values[key] as? String ?: defaultValue
+
+    override fun getBoolean(resourceID: Int, defaultValue: Boolean): Boolean = getBoolean(keyResolver(resourceID), defaultValue)
+    override fun getBoolean(key: String, defaultValue: Boolean): Boolean = values[key] as? Boolean ?: defaultValue
+
+    override fun getDouble(resourceID: Int, defaultValue: Double): Double = getDouble(keyResolver(resourceID), defaultValue)
+    override fun getDouble(key: String, defaultValue: Double): Double =
+        parse(key) { SafeParse.stringToDouble(it, Double.NaN) }?.takeIf { !it.isNaN() } ?: defaultValue
+
+    override fun getInt(resourceID: Int, defaultValue: Int): Int = getInt(keyResolver(resourceID), defaultValue)
+    override fun getInt(key: String, defaultValue: Int): Int =
+        when (val value = values[key]) {
+            is Int    -> value
+            is String -> SafeParse.stringToInt(value, defaultValue)
+            else      -> defaultValue
+        }
+
+    override fun getLong(resourceID: Int, defaultValue: Long): Long = getLong(keyResolver(resourceID), defaultValue)
+    override fun getLong(key: String, defaultValue: Long): Long =
+        when (val value = values[key]) {
+            is Long   -> value
+            is String -> SafeParse.stringToLong(value, defaultValue)
+            else      -> defaultValue
+        }
+
+    private inline fun <T : Any> parse(key: String, parser: (String) -> T): T? {
+        val value = values[key] as? String ?: return null
+        @Suppress("UNCHECKED_CAST")
+        return synchronized(parsed) { parsed.getOrPut(key) { parser(value) } as T }
+    }
+}
@@ -1,5 +1,6 @@
 package app.aaps.core.interfaces.sync
 
+import app.aaps.core.interfaces.profile.Profile
 import app.aaps.database.entities.Bolus
 import app.aaps.database.entities.BolusCalculatorResult
 import app.aaps.database.entities.Carbs
@@ -39,6 +40,14 @@ interface DataSyncSelector {
     data class PairProfileStore(override val value: JSONObject, override val id: Long, override var confirmed: Boolean = false) : DataPair
     data class PairDeviceStatus(override val value: DeviceStatus, override val id: Long, override var confirmed: Boolean = false) : DataPair
 
+    /**
+     * Record prepared for upload
+     *
+     * @param isUpdate record already has nsId and should be updated
+     * @param profile profile needed for conversion of TemporaryBasal and ExtendedBolus
+     */
+    class PendingUpload(val dataPair: DataPair, val isUpdate: Boolean, val profile: Profile? = null)
+
     fun queueSize(): Long
 
     fun resetToNextFullSync()
@@ -105,4 +105,24 @@ interface NsClient : Sync {
      * @return true for successful upload
      */
     suspend fun nsUpdate(collection: String, dataPair: DataSyncSelector.DataPair, progress: String, profile: Profile? = null): Boolean
+
+    /**
+     * Upload batch of new and updated records of one collection to NS
+     *
+     * Default implementation uploads records one by one
+     *
+     * @param collection target ns collection
+     * @param uploads records to upload in order of their ids
+     * @param progress progress of sync in format "number/number". Only for display in fragment
+     * @return number of records from the beginning of [uploads] uploaded successfully
+     */
+    suspend fun nsUpload(collection: String, uploads: List<DataSyncSelector.PendingUpload>, progress: String): Int {
+        for ((index, upload) in uploads.withIndex()) {
+            val success =
+                if (upload.isUpdate) nsUpdate(collection, upload.dataPair, progress, upload.profile)
+                else nsAdd(collection, upload.dataPair, progress, upload.profile)
+            if (!success) return index
+        }
+        return uploads.size
+    }
 }
\ No newline at end of file
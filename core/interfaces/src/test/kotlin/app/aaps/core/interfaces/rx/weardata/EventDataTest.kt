@@ -148,6 +148,18 @@ class EventDataTest {
             assertThat(EventData.deserializeByte(it.serializeByte())).isEqualTo(it)
             assertThat(EventData.deserialize(it.serialize())).isEqualTo(it)
         }
+        EventData.GraphData(arrayListOf(EventData.SingleBg(1, sgv = 2.0, high = 3.0, low = 4.0)), 5).let {
+            assertThat(EventData.deserializeByte(it.serializeByte())).isEqualTo(it)
+            assertThat(EventData.deserialize(it.serialize())).isEqualTo(it)
+        }
+        EventData.GraphDataDelta(2, 1, 3, 4, arrayListOf(EventData.SingleBg(5, sgv = 2.0, high = 3.0, low = 4.0))).let {
+            assertThat(EventData.deserializeByte(it.serializeByte())).isEqualTo(it)
+            assertThat(EventData.deserialize(it.serialize())).isEqualTo(it)
+        }
+        EventData.ActionGraphDataAck(1).let {
+            assertThat(EventData.deserializeByte(it.serializeByte())).isEqualTo(it)
+            assertThat(EventData.deserialize(it.serialize())).isEqualTo(it)
+        }
         EventData.TreatmentData(
             arrayListOf(EventData.TreatmentData.TempBasal(1, 2.0, 3, 4.0, 5.0)),
             arrayListOf(EventData.TreatmentData.Basal(1, 2, 3.0)),
@@ -194,4 +206,53 @@ class EventDataTest {
             assertThat(EventData.deserialize(it.serialize())).isEqualTo(it)
         }
     }
+
+    private fun graph(from: Int, to: Int, sgv: (Int) -> Double = { 100.0 + it }) =
+        ArrayList((to downTo from).map { EventData.SingleBg(it * 300_000L, sgv = sgv(it), high = 180.0, low = 70.0) })
+
+    private fun assertSameGraph(actual: EventData.GraphData, expected: List<EventData.SingleBg>) {
+        assertThat(actual.entries.map { it.timeStamp }).containsExactlyElementsIn(expected.map { it.timeStamp }).inOrder()
+        assertThat(actual.entries.map { it.sgv }).containsExactlyElementsIn(expected.map { it.sgv }).inOrder()
+    }
+
+    @Test
+    fun graphDataDeltaTest() {
+        val base = EventData.GraphData(graph(0, 287), 1)
+
+        // nothing changed
+        assertThat(EventData.GraphDataDelta.between(2, base, graph(0, 287))).isNull()
+
+        // new BG arrived, the oldest one dropped
+        var current = graph(1, 288)
+        var delta = EventData.GraphDataDelta.between(2, base, current)!!
+        assertThat(delta.baseSequence).isEqualTo(1)
+        assertThat(delta.entries.map { it.timeStamp }).containsExactly(288 * 300_000L)
+        assertSameGraph(delta.applyTo(base), current)
+        assertThat(delta.applyTo(base).sequence).isEqualTo(2)
+
+        // older BG recalculated and newer BG removed
+        current = graph(0, 287) { if (it == 250) 200.0 else 100.0 + it }.also { list -> list.removeIf { it.timeStamp == 260 * 300_000L } }
+        delta = EventData.GraphDataDelta.between(2, base, current)!!
+        assertThat(delta.changedFrom).isEqualTo(250 * 300_000L)
+        assertThat(delta.entries).hasSize(37)
+        assertSameGraph(delta.applyTo(base), current)
+
+        // removed BG only
+        current = graph(0, 287).also { list -> list.removeIf { it.timeStamp == 100 * 300_000L } }
+        delta = EventData.GraphDataDelta.between(2, base, current)!!
+        assertSameGraph(delta.applyTo(base), current)
+
+        // trimmed only
+        current = graph(10, 287)
+        delta = EventData.GraphDataDelta.between(2, base, current)!!
+        assertThat(delta.entries).isEmpty()
+        assertSameGraph(delta.applyTo(base), current)
+
+        // delta of arrow and delta strings is not sent
+        current = graph(0, 287).also { it[0] = it[0].copy(delta = "+5") }
+        assertThat(EventData.GraphDataDelta.between(2, base, current)).isNull()
+
+        // nothing to send
+        assertThat(EventData.GraphDataDelta.between(2, base, emptyList())).isNull()
+    }
 }
@@ -0,0 +1,8 @@
+package app.aaps.core.main.events
+
+import app.aaps.core.interfaces.rx.events.Event
+
+/**
+ * All workers of calculation [job] finished (not sent if calculation has been cancelled)
+ */
+class EventCalculationFinished(val job: String) : Event()
@@ -7,7 +7,7 @@ import app.aaps.database.entities.data.TargetBlock
 import org.json.JSONArray
 import org.json.JSONObject
 
-private fun getShiftedTimeSecs(originalSeconds: Int, timeShiftHours: Int): Int {
+internal fun getShiftedTimeSecs(originalSeconds: Int, timeShiftHours: Int): Int {
     var shiftedSeconds = originalSeconds - timeShiftHours * 60 * 60
     shiftedSeconds = (shiftedSeconds + 24 * 60 * 60) % (24 * 60 * 60)
     return shiftedSeconds
@@ -146,7 +146,8 @@ import com.jjoe64.graphview.series.DataPointInterface
             maxY = graphView.viewport.getMaxY(false)
             minY = graphView.viewport.getMinY(false)
         }
-        val values = getValues(minX, maxX)
+        // more points than pixels cannot be seen
+        val values = getValues(minX, maxX, graphView.graphContentWidth)
 
         // draw background
         var lastEndY: Double
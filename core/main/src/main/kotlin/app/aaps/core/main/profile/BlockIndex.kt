@@ -0,0 +1,60 @@
+package app.aaps.core.main.profile
+
+import app.aaps.core.interfaces.utils.T
+import app.aaps.core.main.extensions.getShiftedTimeSecs
+import app.aaps.database.entities.data.Block
+import app.aaps.database.entities.data.TargetBlock
+
+/**
+ * Profile blocks compiled to arrays of block end offsets (seconds from midnight) searched by binary search
+ *
+ * Returns the same values as blockValueBySeconds, lowTargetBlockValueBySeconds and highTargetBlockValueBySeconds
+ * without walking and allocating through the list on every call.
+ * Index is immutable, if [source] list or its blocks change a new index must be created.
+ */
+class BlockIndex private constructor(val source: List<*>, private val ends: LongArray, private val values: DoubleArray, private val highValues: DoubleArray) {
+
+    /**
+     * Value of [Block.amount] multiplied by [multiplier]
+     */
+    fun value(secondsFromMidnight: Int, multiplier: Double, timeShiftHours: Int): Double = values[index(secondsFromMidnight, timeShiftHours)] * multiplier
+
+    fun lowTarget(secondsFromMidnight: Int, timeShiftHours: Int): Double = values[index(secondsFromMidnight, timeShiftHours)]
+
+    fun highTarget(secondsFromMidnight: Int, timeShiftHours: Int): Double = highValues[index(secondsFromMidnight, timeShiftHours)]
+
+    fun target(secondsFromMidnight: Int, timeShiftHours: Int): Double {
+        val i = index(secondsFromMidnight, timeShiftHours)
+        return (values[i] + highValues[i]) / 2.0
+    }
+
+    // first block ending after requested time, last block if none
+    private fun index(secondsFromMidnight: Int, timeShiftHours: Int): Int {
+        if (ends.isEmpty()) throw NoSuchElementException("List is empty.")
+        val shiftedSeconds = getShiftedTimeSecs(secondsFromMidnight, timeShiftHours)
+        var low = 0
+        var high = ends.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (ends[mid] <= shiftedSeconds) low = mid + 1 else high = mid
+        }
+        return if (low < ends.size) low else ends.size - 1
+    }
+
+    companion object {
+
+        fun of(blocks: List<Block>): BlockIndex =
+            BlockIndex(blocks, ends(blocks.map { it.duration }), DoubleArray(blocks.size) { blocks[it].amount }, DoubleArray(0))
+
+        fun ofTargets(blocks: List<TargetBlock>): BlockIndex =
+            BlockIndex(blocks, ends(blocks.map { it.duration }), DoubleArray(blocks.size) { blocks[it].lowTarget }, DoubleArray(blocks.size) { blocks[it].highTarget })
+
+        private fun ends(durations: List<Long>): LongArray {
+            var elapsed = 0L
+            return LongArray(durations.size) {
+                elapsed += T.msecs(durations[it]).secs()
+                elapsed
+            }
+        }
+    }
+}
@@ -13,12 +13,8 @@ import app.aaps.core.interfaces.utils.DateUtil
 import app.aaps.core.interfaces.utils.HardLimits
 import app.aaps.core.interfaces.utils.T
 import app.aaps.core.main.events.EventNewNotification
-import app.aaps.core.main.extensions.blockValueBySeconds
-import app.aaps.core.main.extensions.highTargetBlockValueBySeconds
-import app.aaps.core.main.extensions.lowTargetBlockValueBySeconds
 import app.aaps.core.main.extensions.shiftBlock
 import app.aaps.core.main.extensions.shiftTargetBlock
-import app.aaps.core.main.extensions.targetBlockValueBySeconds
 import app.aaps.core.utils.MidnightUtils
 import app.aaps.database.entities.EffectiveProfileSwitch
 import app.aaps.database.entities.ProfileSwitch
@@ -132,12 +128,14 @@ sealed class ProfileSealed(
             // Check for minimal basal value
             if (basalAmount < description.basalMinimumRate) {
                 basal.amount = description.basalMinimumRate
+                basalIndex = null
                 if (sendNotifications) sendBelowMinimumNotification(from, rxBus, rh)
                 validityCheck.isValid = false
                 validityCheck.reasons.add(rh.gs(app.aaps.core.ui.R.string.minimalbasalvaluereplaced, from))
                 break
             } else if (basalAmount > description.basalMaximumRate) {
                 basal.amount = description.basalMaximumRate
+                basalIndex = null
                 if (sendNotifications) sendAboveMaximumNotification(from, rxBus, rh)
                 validityCheck.isValid = false
                 validityCheck.reasons.add(rh.gs(app.aaps.core.ui.R.string.maximumbasalvaluereplaced, from))
@@ -234,25 +232,36 @@ sealed class ProfileSealed(
     override val percentage: Int
         get() = pct
 
-    override fun getBasal(): Double = basalBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(), percentage / 100.0, timeshift)
-    override fun getBasal(timestamp: Long): Double = basalBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(timestamp), percentage / 100.0, timeshift)
-    override fun getIc(): Double = icBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(), 100.0 / percentage, timeshift)
-    override fun getIc(timestamp: Long): Double = icBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(timestamp), 100.0 / percentage, timeshift)
-    override fun getIsfMgdl(): Double = toMgdl(isfBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(), 100.0 / percentage, timeshift), units)
-    override fun getIsfMgdl(timestamp: Long): Double = toMgdl(isfBlocks.blockValueBySeconds(MidnightUtils.secondsFromMidnight(timestamp), 100.0 / percentage, timeshift), units)
-    override fun getTargetMgdl(): Double = toMgdl(targetBlocks.targetBlockValueBySeconds(MidnightUtils.secondsFromMidnight(), timeshift), units)
-    override fun getTargetLowMgdl(): Double = toMgdl(targetBlocks.lowTargetBlockValueBySeconds(MidnightUtils.secondsFromMidnight(), timeshift), units)
-    override fun getTargetLowMgdl(timestamp: Long): Double = toMgdl(targetBlocks.lowTargetBlockValueBySeconds(MidnightUtils.secondsFromMidnight(timestamp), timeshift), units)
-    override fun getTargetHighMgdl(): Double = toMgdl(targetBlocks.highTargetBlockValueBySeconds(MidnightUtils.secondsFromMidnight(), timeshift), units)
-    override fun getTargetHighMgdl(timestamp: Long): Double = toMgdl(targetBlocks.highTargetBlockValueBySeconds(MidnightUtils.secondsFromMidnight(timestamp), timeshift), units)
-    override fun getBasalTimeFromMidnight(timeAsSeconds: Int): Double = basalBlocks.blockValueBySeconds(timeAsSeconds, percentage / 100.0, timeshift)
-    override fun getIcTimeFromMidnight(timeAsSeconds: Int): Double = icBlocks.blockValueBySeconds(timeAsSeconds, 100.0 / percentage, timeshift)
-    fun getIsfTimeFromMidnight(timeAsSeconds: Int): Double = isfBlocks.blockValueBySeconds(timeAsSeconds, 100.0 / percentage, timeshift)
-    override fun getIsfMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(isfBlocks.blockValueBySeconds(timeAsSeconds, 100.0 / percentage, timeshift), units)
-    override fun getTargetLowMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(targetBlocks.lowTargetBlockValueBySeconds(timeAsSeconds, timeshift), units)
-    private fun getTargetLowTimeFromMidnight(timeAsSeconds: Int): Double = targetBlocks.lowTargetBlockValueBySeconds(timeAsSeconds, timeshift)
-    private fun getTargetHighTimeFromMidnight(timeAsSeconds: Int): Double = targetBlocks.highTargetBlockValueBySeconds(timeAsSeconds, timeshift)
-    override fun getTargetHighMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(targetBlocks.highTargetBlockValueBySeconds(timeAsSeconds, timeshift), units)
+    // compiled blocks, recreated when block list is replaced
+    @Volatile private var basalIndex: BlockIndex? = null
+    @Volatile private var isfIndex: BlockIndex? = null
+    @Volatile private var icIndex: BlockIndex? = null
+    @Volatile private var targetIndex: BlockIndex? = null
+
+    private fun basalIndex(): BlockIndex = basalIndex?.takeIf { it.source === basalBlocks } ?: BlockIndex.of(basalBlocks).also { basalIndex = it }
+    private fun isfIndex(): BlockIndex = isfIndex?.takeIf { it.source === isfBlocks } ?: BlockIndex.of(isfBlocks).also { isfIndex = it }
+    private fun icIndex(): BlockIndex = icIndex?.takeIf { it.source === icBlocks } ?: BlockIndex.of(icBlocks).also { icIndex = it }
+    private fun targetIndex(): BlockIndex = targetIndex?.takeIf { it.source === targetBlocks } ?: BlockIndex.ofTargets(targetBlocks).also { targetIndex = it }
+
+    override fun getBasal(): Double = getBasalTimeFromMidnight(MidnightUtils.secondsFromMidnight())
+    override fun getBasal(timestamp: Long): Double = getBasalTimeFromMidnight(MidnightUtils.secondsFromMidnight(timestamp))
+    override fun getIc(): Double = getIcTimeFromMidnight(MidnightUtils.secondsFromMidnight())
+    override fun getIc(timestamp: Long): Double = getIcTimeFromMidnight(MidnightUtils.secondsFromMidnight(timestamp))
+    override fun getIsfMgdl(): Double = getIsfMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight())
+    override fun getIsfMgdl(timestamp: Long): Double = getIsfMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight(timestamp))
+    override fun getTargetMgdl(): Double = toMgdl(targetIndex().target(MidnightUtils.secondsFromMidnight(), timeshift), units)
+    override fun getTargetLowMgdl(): Double = getTargetLowMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight())
+    override fun getTargetLowMgdl(timestamp: Long): Double = getTargetLowMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight(timestamp))
+    override fun getTargetHighMgdl(): Double = getTargetHighMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight())
+    override fun getTargetHighMgdl(timestamp: Long): Double = getTargetHighMgdlTimeFromMidnight(MidnightUtils.secondsFromMidnight(timestamp))
+    override fun getBasalTimeFromMidnight(timeAsSeconds: Int): Double = basalIndex().value(timeAsSeconds, percentage / 100.0, timeshift)
+    override fun getIcTimeFromMidnight(timeAsSeconds: Int): Double = icIndex().value(timeAsSeconds, 100.0 / percentage, timeshift)
+    fun getIsfTimeFromMidnight(timeAsSeconds: Int): Double = isfIndex().value(timeAsSeconds, 100.0 / percentage, timeshift)
+    override fun getIsfMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(getIsfTimeFromMidnight(timeAsSeconds), units)
+    override fun getTargetLowMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(getTargetLowTimeFromMidnight(timeAsSeconds), units)
+    private fun getTargetLowTimeFromMidnight(timeAsSeconds: Int): Double = targetIndex().lowTarget(timeAsSeconds, timeshift)
+    private fun getTargetHighTimeFromMidnight(timeAsSeconds: Int): Double = targetIndex().highTarget(timeAsSeconds, timeshift)
+    override fun getTargetHighMgdlTimeFromMidnight(timeAsSeconds: Int): Double = toMgdl(getTargetHighTimeFromMidnight(timeAsSeconds), units)
 
     override fun getIcList(rh: ResourceHelper, dateUtil: DateUtil): String =
         getValuesList(icBlocks, 100.0 / percentage, DecimalFormat("0.0"), rh.gs(app.aaps.core.ui.R.string.profile_carbs_per_unit), dateUtil)
@@ -23,8 +23,9 @@ abstract class LoggingWorker(context: Context, workerParams: WorkerParameters, p
 
     override suspend fun doWork(): Result =
         withContext(dispatcher) {
+            val start = System.currentTimeMillis()
             doWorkAndLog().also {
-                aapsLogger.debug(LTag.WORKER, "Worker result ${it::class.java.simpleName.uppercase()} for ${this@LoggingWorker::class.java}")
+                aapsLogger.debug(LTag.WORKER, "Worker result ${it::class.java.simpleName.uppercase()} for ${this@LoggingWorker::class.java} in ${System.currentTimeMillis() - start} ms")
             }
         }
 
@@ -14,12 +14,13 @@ interface CalculationWorkflow {
     }
 
     enum class ProgressData(val pass: Int, val percentOfTotal: Int) {
-        DRAW_BG(0, 1),
-        PREPARE_TREATMENTS_DATA(1, 2),
-        PREPARE_BASAL_DATA(2, 6),
-        PREPARE_TEMPORARY_TARGET_DATA(3, 6),
-        DRAW_TT(4, 1),
-        IOB_COB_OREF(5, 77),
+        // in order of execution, see CalculationWorkflowImpl.runCalculation
+        IOB_COB_OREF(0, 77),
+        DRAW_BG(1, 1),
+        PREPARE_TREATMENTS_DATA(2, 2),
+        PREPARE_BASAL_DATA(3, 6),
+        PREPARE_TEMPORARY_TARGET_DATA(4, 6),
+        DRAW_TT(5, 1),
         PREPARE_IOB_AUTOSENS_DATA(6, 5),
         DRAW_IOB(7, 1),
         DRAW_FINAL(8, 1);
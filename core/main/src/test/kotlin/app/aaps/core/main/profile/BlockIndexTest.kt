@@ -0,0 +1,69 @@
+package app.aaps.core.main.profile
+
+import app.aaps.core.main.extensions.blockValueBySeconds
+import app.aaps.core.main.extensions.highTargetBlockValueBySeconds
+import app.aaps.core.main.extensions.lowTargetBlockValueBySeconds
+import app.aaps.core.main.extensions.targetBlockValueBySeconds
+import app.aaps.database.entities.data.Block
+import app.aaps.database.entities.data.TargetBlock
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class BlockIndexTest {
+
+    private val random = Random(1)
+
+    // random split of the day to 30 min multiples, sometimes not covering whole day
+    private fun durations(): List<Long> {
+        val durations = ArrayList<Long>()
+        var remaining = 48
+        while (remaining > 0 && !(durations.isNotEmpty() && random.nextInt(30) == 0)) {
+            val halfHours = random.nextInt(0, remaining + 1)
+            durations.add(halfHours * 30 * 60 * 1000L)
+            remaining -= halfHours
+        }
+        return durations
+    }
+
+    @Test
+    fun valueMatchesBlockExtension() {
+        repeat(200) {
+            val blocks = durations().map { Block(it, random.nextInt(1, 300) / 100.0) }
+            val sut = BlockIndex.of(blocks)
+            for (timeShift in listOf(0, 3, -5, 23)) {
+                for (seconds in 0 until 24 * 3600 step 317) {
+                    assertThat(sut.value(seconds, 1.2, timeShift)).isEqualTo(blocks.blockValueBySeconds(seconds, 1.2, timeShift))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun targetsMatchBlockExtension() {
+        repeat(200) {
+            val blocks = durations().map { TargetBlock(it, random.nextInt(70, 120).toDouble(), random.nextInt(120, 180).toDouble()) }
+            val sut = BlockIndex.ofTargets(blocks)
+            for (timeShift in listOf(0, 7)) {
+                for (seconds in 0 until 24 * 3600 step 317) {
+                    assertThat(sut.lowTarget(seconds, timeShift)).isEqualTo(blocks.lowTargetBlockValueBySeconds(seconds, timeShift))
+                    assertThat(sut.highTarget(seconds, timeShift)).isEqualTo(blocks.highTargetBlockValueBySeconds(seconds, timeShift))
+                    assertThat(sut.target(seconds, timeShift)).isEqualTo(blocks.targetBlockValueBySeconds(seconds, timeShift))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun blockBoundaries() {
+        val blocks = listOf(Block(3600 * 1000L, 1.0), Block(0, 5.0), Block(7200 * 1000L, 2.0), Block(18 * 3600 * 1000L, 3.0))
+        val sut = BlockIndex.of(blocks)
+        assertThat(sut.value(0, 1.0, 0)).isEqualTo(1.0)
+        assertThat(sut.value(3599, 1.0, 0)).isEqualTo(1.0)
+        assertThat(sut.value(3600, 1.0, 0)).isEqualTo(2.0)
+        assertThat(sut.value(3 * 3600, 1.0, 0)).isEqualTo(3.0)
+        // not covered part of the day returns last block
+        assertThat(sut.value(22 * 3600, 1.0, 0)).isEqualTo(3.0)
+        assertThat(sut.value(0, 1.0, 1)).isEqualTo(3.0)
+    }
+}
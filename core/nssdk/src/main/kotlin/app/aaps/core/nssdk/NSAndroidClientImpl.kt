@@ -30,6 +30,7 @@ import app.aaps.core.nssdk.remotemodel.RemoteDeviceStatus
 import app.aaps.core.nssdk.remotemodel.RemoteEntry
 import app.aaps.core.nssdk.remotemodel.RemoteFood
 import app.aaps.core.nssdk.remotemodel.RemoteTreatment
+import app.aaps.core.nssdk.utils.mapParallel
 import app.aaps.core.nssdk.utils.retry
 import app.aaps.core.nssdk.utils.toNotNull
 import kotlinx.coroutines.CoroutineDispatcher
@@ -356,6 +357,21 @@ class NSAndroidClientImpl(
             throw UnsuccessfulNightscoutException(response.errorBody()?.string() ?: response.message())
     }
 
+    override suspend fun createSgvs(nsSgvs: List<NSSgvV3>): List<Result<CreateUpdateResponse>> =
+        mapParallel(nsSgvs, BATCH_PARALLEL_REQUESTS) { createSgv(it) }
+
+    override suspend fun updateSgvs(nsSgvs: List<NSSgvV3>): List<Result<CreateUpdateResponse>> =
+        mapParallel(nsSgvs, BATCH_PARALLEL_REQUESTS) { updateSvg(it) }
+
+    override suspend fun createTreatments(nsTreatments: List<NSTreatment>): List<Result<CreateUpdateResponse>> =
+        mapParallel(nsTreatments, BATCH_PARALLEL_REQUESTS) { createTreatment(it) }
+
+    override suspend fun updateTreatments(nsTreatments: List<NSTreatment>): List<Result<CreateUpdateResponse>> =
+        mapParallel(nsTreatments, BATCH_PARALLEL_REQUESTS) { updateTreatment(it) }
+
+    override suspend fun createDeviceStatuses(nsDeviceStatuses: List<NSDeviceStatus>): List<Result<CreateUpdateResponse>> =
+        mapParallel(nsDeviceStatuses, BATCH_PARALLEL_REQUESTS) { createDeviceStatus(it) }
+
     override suspend fun getFoods(limit: Int): NSAndroidClient.ReadResponse<List<NSFood>> = callWrapper(dispatcher) {
 
         val response = api.getFoods(limit)
@@ -503,5 +519,8 @@ class NSAndroidClientImpl(
         // TODO: Parameters?
         private const val RETRIES = 3
         private const val RETRY_DELAY = 100L
+
+        // below OkHttp limit of 5 requests per host
+        private const val BATCH_PARALLEL_REQUESTS = 4
     }
 }
@@ -40,6 +40,20 @@ interface NSAndroidClient {
 
     suspend fun createTreatment(nsTreatment: NSTreatment): CreateUpdateResponse
     suspend fun updateTreatment(nsTreatment: NSTreatment): CreateUpdateResponse
+
+    /*
+     * Batch operations
+     *
+     * NS API v3 accepts single document per request. Requests of one batch are sent in parallel
+     * over shared connection instead of waiting for each response.
+     * Results are returned in order of input, failure if request failed after retries.
+     */
+    suspend fun createSgvs(nsSgvs: List<NSSgvV3>): List<Result<CreateUpdateResponse>>
+    suspend fun updateSgvs(nsSgvs: List<NSSgvV3>): List<Result<CreateUpdateResponse>>
+    suspend fun createTreatments(nsTreatments: List<NSTreatment>): List<Result<CreateUpdateResponse>>
+    suspend fun updateTreatments(nsTreatments: List<NSTreatment>): List<Result<CreateUpdateResponse>>
+    suspend fun createDeviceStatuses(nsDeviceStatuses: List<NSDeviceStatus>): List<Result<CreateUpdateResponse>>
+
     suspend fun getFoods(limit: Int): ReadResponse<List<NSFood>>
 
     //suspend fun getFoodsModifiedSince(from: Long, limit: Int): ReadResponse<List<NSFood>>
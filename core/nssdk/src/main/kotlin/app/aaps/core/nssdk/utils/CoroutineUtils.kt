@@ -1,6 +1,12 @@
 package app.aaps.core.nssdk.utils
 
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlin.coroutines.cancellation.CancellationException
 import kotlin.reflect.KClass
 
 @Suppress("TooGenericExceptionCaught")
@@ -20,3 +26,27 @@ internal suspend fun <T> retry(
     }
     return block()
 }
+
+/**
+ * Run [block] for all [items] with at most [parallelism] blocks running at once
+ *
+ * @return results in order of [items], exception thrown by [block] is returned as failure
+ */
+@Suppress("TooGenericExceptionCaught")
+internal suspend fun <T, R> mapParallel(items: List<T>, parallelism: Int, block: suspend (T) -> R): List<Result<R>> =
+    coroutineScope {
+        val semaphore = Semaphore(parallelism)
+        items.map { item ->
+            async {
+                semaphore.withPermit {
+                    try {
+                        Result.success(block(item))
+                    } catch (exception: CancellationException) {
+                        throw exception
+                    } catch (exception: Exception) {
+                        Result.failure(exception)
+                    }
+                }
+            }
+        }.awaitAll()
+    }
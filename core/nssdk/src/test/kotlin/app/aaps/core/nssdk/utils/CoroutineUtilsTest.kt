@@ -0,0 +1,36 @@
+package app.aaps.core.nssdk.utils
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class CoroutineUtilsTest {
+
+    @Test
+    fun mapParallelKeepsOrderAndLimitsParallelism() = runBlocking {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val result = mapParallel((1..20).toList(), 4) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+            delay((20 - it).toLong())
+            running.decrementAndGet()
+            it * 10
+        }
+        assertThat(result.map { it.getOrThrow() }).isEqualTo((1..20).map { it * 10 })
+        assertThat(maxRunning.get()).isAtMost(4)
+        assertThat(maxRunning.get()).isGreaterThan(1)
+    }
+
+    @Test
+    fun mapParallelReturnsFailures() = runBlocking {
+        val result = mapParallel(listOf(1, 2, 3), 2) {
+            if (it == 2) throw IllegalStateException("failed $it")
+            it
+        }
+        assertThat(result[0].getOrNull()).isEqualTo(1)
+        assertThat(result[1].exceptionOrNull()).isInstanceOf(IllegalStateException::class.java)
+        assertThat(result[2].getOrNull()).isEqualTo(3)
+    }
+}
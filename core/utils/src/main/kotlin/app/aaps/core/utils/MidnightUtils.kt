@@ -4,6 +4,10 @@ import java.time.Duration
 import java.time.Instant
 import java.time.ZoneId
 import java.time.ZonedDateTime
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReferenceArray
+import kotlin.math.max
+import kotlin.math.min
 
 /**
  * Midnight time conversion
@@ -16,13 +20,7 @@ object MidnightUtils {
      *
      * @return seconds
      */
-    fun secondsFromMidnight(): Int {
-        val nowZoned = ZonedDateTime.now()
-        val localTime = nowZoned.toLocalTime()
-        val midnight = nowZoned.toLocalDate().atStartOfDay(nowZoned.zone).toLocalTime()
-        val duration = Duration.between(midnight, localTime)
-        return duration.seconds.toInt()
-    }
+    fun secondsFromMidnight(): Int = secondsFromMidnight(System.currentTimeMillis())
 
     /**
      * Passed seconds from midnight for specified time ignoring DST change
@@ -31,13 +29,7 @@ object MidnightUtils {
      * @param timestamp time
      * @return seconds
      */
-   fun secondsFromMidnight(timestamp: Long): Int {
-        val timeZoned = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
-        val localTime = timeZoned.toLocalTime()
-        val midnight = timeZoned.toLocalDate().atStartOfDay(timeZoned.zone).toLocalTime()
-        val duration: Duration = Duration.between(midnight, localTime)
-        return duration.seconds.toInt()
-    }
+    fun secondsFromMidnight(timestamp: Long): Int = (milliSecFromMidnight(timestamp) / 1000).toInt()
 
     /**
      * Passed milliseconds from midnight for specified time ignoring DST change
@@ -47,10 +39,50 @@ object MidnightUtils {
      * @return milliseconds
      */
     fun milliSecFromMidnight(timestamp: Long): Long {
-        val timeZoned = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())
+        val zone = ZoneId.systemDefault()
+        for (i in 0 until CACHE_SIZE) {
+            val segment = segments.get(i) ?: continue
+            if (segment.contains(timestamp, zone)) return segment.milliSecFromMidnight(timestamp)
+        }
+        val segment = Segment.create(timestamp, zone)
+        segments.set(nextSegment.getAndIncrement() and (CACHE_SIZE - 1), segment)
+        return segment.milliSecFromMidnight(timestamp)
+    }
+
+    private fun calculateMilliSecFromMidnight(timestamp: Long, zone: ZoneId): Long {
+        val timeZoned = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone)
         val localTime = timeZoned.toLocalTime()
         val midnight = timeZoned.toLocalDate().atStartOfDay(timeZoned.zone).toLocalTime()
         val duration = Duration.between(midnight, localTime)
         return duration.toMillis()
     }
-}
\ No newline at end of file
+
+    /**
+     * Part of a day with constant UTC offset, ie. from midnight or DST transition to next midnight or transition.
+     * Inside of it milliseconds from midnight grow linearly with time.
+     */
+    private class Segment(private val zone: ZoneId, private val from: Long, private val to: Long, private val fromMilliSec: Long) {
+
+        fun contains(timestamp: Long, zone: ZoneId): Boolean = timestamp >= from && timestamp < to && zone == this.zone
+
+        fun milliSecFromMidnight(timestamp: Long): Long = fromMilliSec + timestamp - from
+
+        companion object {
+
+            fun create(timestamp: Long, zone: ZoneId): Segment {
+                val instant = Instant.ofEpochMilli(timestamp)
+                val day = ZonedDateTime.ofInstant(instant, zone).toLocalDate()
+                var from = day.atStartOfDay(zone).toInstant().toEpochMilli()
+                var to = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli()
+                zone.rules.previousTransition(instant.plusMillis(1))?.let { from = max(from, it.instant.toEpochMilli()) }
+                zone.rules.nextTransition(instant)?.let { to = min(to, it.instant.toEpochMilli()) }
+                return Segment(zone, from, to, calculateMilliSecFromMidnight(from, zone))
+            }
+        }
+    }
+
+    // recently used segments, calculations usually go through today and yesterday
+    private const val CACHE_SIZE = 4
+    private val segments = AtomicReferenceArray<Segment>(CACHE_SIZE)
+    private val nextSegment = AtomicInteger(0)
+}
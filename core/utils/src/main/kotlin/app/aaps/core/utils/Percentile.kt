@@ -7,14 +7,17 @@ object Percentile {
     // From https://gist.github.com/IceCreamYou/6ffa1b18c4c8f6aeaad2
     // Returns the value at a given percentile in a sorted numeric array.
     // "Linear interpolation between closest ranks" method
-    fun percentile(arr: Array<Double>, p: Double): Double {
-        if (arr.isEmpty()) return 0.0
-        if (p <= 0) return arr[0]
-        if (p >= 1) return arr[arr.size - 1]
-        val index = arr.size * p
+    fun percentile(arr: Array<Double>, p: Double): Double = percentile(arr.size, p) { arr[it] }
+
+    // Same as above for any sorted collection accessible by index
+    fun percentile(size: Int, p: Double, valueAt: (Int) -> Double): Double {
+        if (size == 0) return 0.0
+        if (p <= 0) return valueAt(0)
+        if (p >= 1) return valueAt(size - 1)
+        val index = size * p
         val lower = floor(index)
         val upper = lower + 1
         val weight = index % 1
-        return if (upper >= arr.size) arr[lower.toInt()] else arr[lower.toInt()] * (1 - weight) + arr[upper.toInt()] * weight
+        return if (upper >= size) valueAt(lower.toInt()) else valueAt(lower.toInt()) * (1 - weight) + valueAt(upper.toInt()) * weight
     }
-}
\ No newline at end of file
+}
@@ -19,48 +19,62 @@ class DataWorkerStorage @Inject constructor(
 ) {
 
     private val store = HashMap<Long, Any>()
+    private val actions = HashMap<Long, String>()
+    private val pickedUpTogether = LinkedHashSet<Long>()
     private var counter = 0L
     private val jobGroupName = "data"
 
-    @Synchronized private fun store(value: Any): Long {
+    @Synchronized private fun store(value: Any, action: String?): Long {
         store[counter] = value
+        action?.let { actions[counter] = it }
         return counter++
     }
 
+    private fun pickup(key: Long): Any? {
+        actions.remove(key)
+        return store.remove(key)
+    }
+
     @Synchronized fun pickupBundle(key: Long): Bundle? {
-        val value = store[key]
-        store.remove(key)
-        return value as Bundle?
+        return pickup(key) as Bundle?
     }
 
     @Synchronized fun pickupObject(key: Long): Any? {
-        val value = store[key]
-        store.remove(key)
-        return value
+        return pickup(key)
     }
 
     @Suppress("unused")
     @Synchronized fun pickupString(key: Long): String? {
-        val value = store[key]
-        store.remove(key)
-        return value as String?
+        return pickup(key) as String?
     }
 
     @Synchronized fun pickupJSONArray(key: Long): JSONArray? {
-        val value = store[key]
-        store.remove(key)
-        return value as JSONArray?
+        return pickup(key) as JSONArray?
     }
 
     @Synchronized fun pickupJSONObject(key: Long): JSONObject? {
-        val value = store[key]
-        store.remove(key)
-        return value as JSONObject?
+        return pickup(key) as JSONObject?
     }
 
+    /**
+     * Pick up all waiting bundles stored with [action] in order of arrival
+     */
+    @Synchronized fun pickupBundles(action: String): List<Bundle> =
+        actions.filterValues { it == action }.keys.sorted().mapNotNull { key ->
+            pickedUpTogether.add(key)
+            // workers of replaced or cancelled chain never ask, drop the oldest keys
+            if (pickedUpTogether.size > MAX_PICKED_UP_TOGETHER) pickedUpTogether.remove(pickedUpTogether.first())
+            pickup(key) as Bundle?
+        }
+
+    /**
+     * @return true if data stored under [key] was already picked up by [pickupBundles]
+     */
+    @Synchronized fun wasPickedUpTogether(key: Long): Boolean = pickedUpTogether.remove(key)
+
     fun storeInputData(value: Any, action: String? = null) =
         Data.Builder()
-            .putLong(STORE_KEY, store(value))
+            .putLong(STORE_KEY, store(value, action))
             .putString(ACTION_KEY, action).build()
 
     fun enqueue(request: OneTimeWorkRequest) {
@@ -76,6 +90,7 @@ class DataWorkerStorage @Inject constructor(
 
         const val STORE_KEY = "storeKey"
         const val ACTION_KEY = "action"
+        private const val MAX_PICKED_UP_TOGETHER = 100
     }
 
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package app.aaps.core.utils
 import com.google.common.truth.Truth.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import java.time.Duration
 import java.time.Instant
 import java.time.LocalDate
 import java.time.LocalDateTime
@@ -64,4 +65,22 @@ class MidnightUtilsTest {
         assertThat(MidnightUtils.secondsFromMidnight(dateTime)).isEqualTo(83101)
         assertThat(MidnightUtils.milliSecFromMidnight(dateTime)).isEqualTo(83101 * 1000L)
     }
-}
\ No newline at end of file
+
+    @Test fun cachedConversionMatchesZonedDateTime() {
+        for (zone in listOf("Europe/Amsterdam", "America/Los_Angeles", "Australia/Lord_Howe", "America/Santiago", "UTC")) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone))
+            // around both DST changes of 2020, going forward and back
+            for (start in listOf(ZonedDateTime.of(2020, 3, 27, 0, 0, 0, 0, ZoneId.of(zone)), ZonedDateTime.of(2020, 10, 23, 0, 0, 0, 0, ZoneId.of(zone)))) {
+                val from = start.toInstant().toEpochMilli()
+                val times = (0L until 5 * 24 * 3600 * 1000L step 59_999L).map { from + it }
+                for (time in times + times.reversed()) {
+                    val timeZoned = ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault())
+                    val midnight = timeZoned.toLocalDate().atStartOfDay(timeZoned.zone).toLocalTime()
+                    val expected = Duration.between(midnight, timeZoned.toLocalTime())
+                    assertThat(MidnightUtils.milliSecFromMidnight(time)).isEqualTo(expected.toMillis())
+                    assertThat(MidnightUtils.secondsFromMidnight(time)).isEqualTo(expected.seconds.toInt())
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package app.aaps.core.utils.receivers
+
+import android.content.Context
+import android.os.Bundle
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.mock
+
+class DataWorkerStorageTest {
+
+    private val dataWorkerStorage = DataWorkerStorage(mock(Context::class.java))
+
+    @Test fun pickupBundlesTest() {
+        val first = mock(Bundle::class.java)
+        val second = mock(Bundle::class.java)
+        val firstKey = dataWorkerStorage.storeInputData(first, "action").getLong(DataWorkerStorage.STORE_KEY, -1)
+        val secondKey = dataWorkerStorage.storeInputData(second, "action").getLong(DataWorkerStorage.STORE_KEY, -1)
+        val otherKey = dataWorkerStorage.storeInputData(mock(Bundle::class.java), "other").getLong(DataWorkerStorage.STORE_KEY, -1)
+
+        assertThat(dataWorkerStorage.pickupBundle(firstKey)).isSameInstanceAs(first)
+        assertThat(dataWorkerStorage.pickupBundles("action")).containsExactly(second)
+
+        assertThat(dataWorkerStorage.pickupBundle(secondKey)).isNull()
+        assertThat(dataWorkerStorage.wasPickedUpTogether(secondKey)).isTrue()
+        // reported once
+        assertThat(dataWorkerStorage.wasPickedUpTogether(secondKey)).isFalse()
+        assertThat(dataWorkerStorage.wasPickedUpTogether(firstKey)).isFalse()
+        assertThat(dataWorkerStorage.wasPickedUpTogether(otherKey)).isFalse()
+        // never stored
+        assertThat(dataWorkerStorage.pickupBundle(-1)).isNull()
+        assertThat(dataWorkerStorage.wasPickedUpTogether(-1)).isFalse()
+    }
+
+    @Test fun pickedUpTogetherIsBoundedTest() {
+        val keys = (0 until 150).map { dataWorkerStorage.storeInputData(mock(Bundle::class.java), "action").getLong(DataWorkerStorage.STORE_KEY, -1) }
+        assertThat(dataWorkerStorage.pickupBundles("action")).hasSize(150)
+
+        // keys of workers that never ran are forgotten, the newest are kept
+        assertThat(dataWorkerStorage.wasPickedUpTogether(keys.first())).isFalse()
+        assertThat(dataWorkerStorage.wasPickedUpTogether(keys.last())).isTrue()
+    }
+}
@@ -27,7 +27,9 @@ import java.util.TimeZone
         Index("pumpSerial"),
         Index("pumpType"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("nightscoutId"),
+        Index("referenceId", "timestamp")
     ]
 )
 data class Bolus(
@@ -21,7 +21,8 @@ import java.util.TimeZone
         Index("referenceId"),
         Index("timestamp"),
         Index("id"),
-        Index("isValid")
+        Index("isValid"),
+        Index("nightscoutId")
     ]
 )
 data class BolusCalculatorResult(
@@ -22,7 +22,8 @@ import java.util.TimeZone
         Index("isValid"),
         Index("nightscoutId"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "timestamp")
     ]
 )
 data class Carbs(
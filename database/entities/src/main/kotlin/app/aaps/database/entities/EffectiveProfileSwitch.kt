@@ -24,7 +24,8 @@ import java.util.TimeZone
         Index("id"),
         Index("referenceId"),
         Index("timestamp"),
-        Index("isValid")
+        Index("isValid"),
+        Index("nightscoutId")
     ]
 )
 data class EffectiveProfileSwitch(
@@ -25,7 +25,8 @@ import java.util.TimeZone
         Index("pumpId"),
         Index("pumpType"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("nightscoutId")
     ]
 )
 data class ExtendedBolus(
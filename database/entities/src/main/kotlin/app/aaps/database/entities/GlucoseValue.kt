@@ -22,7 +22,8 @@ import java.util.TimeZone
         Index("nightscoutId"),
         Index("sourceSensor"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "timestamp")
     ]
 )
 data class GlucoseValue(
@@ -26,7 +26,9 @@ import java.util.TimeZone
         Index("pumpSerial"),
         Index("temporaryId"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("pumpId"),
+        Index("referenceId", "timestamp")
     ]
 )
 data class TemporaryBasal(
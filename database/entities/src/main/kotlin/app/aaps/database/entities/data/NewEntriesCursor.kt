@@ -0,0 +1,62 @@
+package app.aaps.database.entities.data
+
+import app.aaps.database.entities.TABLE_APS_RESULTS
+import app.aaps.database.entities.TABLE_APS_RESULT_LINKS
+import app.aaps.database.entities.TABLE_BOLUSES
+import app.aaps.database.entities.TABLE_BOLUS_CALCULATOR_RESULTS
+import app.aaps.database.entities.TABLE_CARBS
+import app.aaps.database.entities.TABLE_EFFECTIVE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_EXTENDED_BOLUSES
+import app.aaps.database.entities.TABLE_GLUCOSE_VALUES
+import app.aaps.database.entities.TABLE_HEART_RATE
+import app.aaps.database.entities.TABLE_MULTIWAVE_BOLUS_LINKS
+import app.aaps.database.entities.TABLE_OFFLINE_EVENTS
+import app.aaps.database.entities.TABLE_PREFERENCE_CHANGES
+import app.aaps.database.entities.TABLE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_TEMPORARY_BASALS
+import app.aaps.database.entities.TABLE_TEMPORARY_TARGETS
+import app.aaps.database.entities.TABLE_THERAPY_EVENTS
+import app.aaps.database.entities.TABLE_TOTAL_DAILY_DOSES
+import app.aaps.database.entities.TABLE_VERSION_CHANGES
+import app.aaps.database.entities.interfaces.DBEntry
+
+/**
+ * Position in paging through [NewEntries]
+ *
+ * Holds id of the last returned entry of every table, next page starts after it.
+ * Unlike offset it stays valid when rows are inserted meanwhile and doesn't need
+ * skipping of already returned rows.
+ */
+data class NewEntriesCursor(val lastIds: Map<String, Long> = emptyMap()) {
+
+    fun afterId(table: String): Long = lastIds[table] ?: 0L
+
+    /**
+     * Cursor after the last entries of [page]
+     */
+    fun next(page: NewEntries): NewEntriesCursor {
+        val ids = lastIds.toMutableMap()
+        fun last(table: String, entries: List<DBEntry>) {
+            entries.maxOfOrNull { it.id }?.let { ids[table] = it }
+        }
+        last(TABLE_APS_RESULTS, page.apsResults)
+        last(TABLE_APS_RESULT_LINKS, page.apsResultLinks)
+        last(TABLE_BOLUS_CALCULATOR_RESULTS, page.bolusCalculatorResults)
+        last(TABLE_BOLUSES, page.boluses)
+        last(TABLE_CARBS, page.carbs)
+        last(TABLE_EFFECTIVE_PROFILE_SWITCHES, page.effectiveProfileSwitches)
+        last(TABLE_EXTENDED_BOLUSES, page.extendedBoluses)
+        last(TABLE_GLUCOSE_VALUES, page.glucoseValues)
+        last(TABLE_MULTIWAVE_BOLUS_LINKS, page.multiwaveBolusLinks)
+        last(TABLE_OFFLINE_EVENTS, page.offlineEvents)
+        last(TABLE_PREFERENCE_CHANGES, page.preferencesChanges)
+        last(TABLE_PROFILE_SWITCHES, page.profileSwitches)
+        last(TABLE_TEMPORARY_BASALS, page.temporaryBasals)
+        last(TABLE_TEMPORARY_TARGETS, page.temporaryTarget)
+        last(TABLE_THERAPY_EVENTS, page.therapyEvents)
+        last(TABLE_TOTAL_DAILY_DOSES, page.totalDailyDoses)
+        last(TABLE_VERSION_CHANGES, page.versionChanges)
+        last(TABLE_HEART_RATE, page.heartRates)
+        return NewEntriesCursor(ids)
+    }
+}
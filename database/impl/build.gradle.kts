@@ -45,6 +45,9 @@ dependencies {
     api(Libs.Dagger.androidSupport)
 
     androidTestImplementation(Libs.AndroidX.Room.testing)
+    testImplementation(Libs.robolectric)
+    testImplementation(Libs.AndroidX.Test.extKtx)
+    testRuntimeOnly(Libs.JUnit.vintageEngine)
 
     kapt(Libs.Dagger.compiler)
     kapt(Libs.AndroidX.Room.compiler)
@@ -45,7 +45,7 @@ import app.aaps.database.impl.daos.UserEntryDao
 import app.aaps.database.impl.daos.VersionChangeDao
 import java.io.Closeable
 
-const val DATABASE_VERSION = 24
+const val DATABASE_VERSION = 25
 
 @Database(
     version = DATABASE_VERSION,
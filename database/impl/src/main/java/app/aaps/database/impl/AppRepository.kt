@@ -13,12 +13,31 @@ import app.aaps.database.entities.GlucoseValue
 import app.aaps.database.entities.HeartRate
 import app.aaps.database.entities.OfflineEvent
 import app.aaps.database.entities.ProfileSwitch
+import app.aaps.database.entities.TABLE_APS_RESULTS
+import app.aaps.database.entities.TABLE_APS_RESULT_LINKS
+import app.aaps.database.entities.TABLE_BOLUSES
+import app.aaps.database.entities.TABLE_BOLUS_CALCULATOR_RESULTS
+import app.aaps.database.entities.TABLE_CARBS
+import app.aaps.database.entities.TABLE_EFFECTIVE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_EXTENDED_BOLUSES
+import app.aaps.database.entities.TABLE_GLUCOSE_VALUES
+import app.aaps.database.entities.TABLE_HEART_RATE
+import app.aaps.database.entities.TABLE_MULTIWAVE_BOLUS_LINKS
+import app.aaps.database.entities.TABLE_OFFLINE_EVENTS
+import app.aaps.database.entities.TABLE_PREFERENCE_CHANGES
+import app.aaps.database.entities.TABLE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_TEMPORARY_BASALS
+import app.aaps.database.entities.TABLE_TEMPORARY_TARGETS
+import app.aaps.database.entities.TABLE_THERAPY_EVENTS
+import app.aaps.database.entities.TABLE_TOTAL_DAILY_DOSES
+import app.aaps.database.entities.TABLE_VERSION_CHANGES
 import app.aaps.database.entities.TemporaryBasal
 import app.aaps.database.entities.TemporaryTarget
 import app.aaps.database.entities.TherapyEvent
 import app.aaps.database.entities.TotalDailyDose
 import app.aaps.database.entities.UserEntry
 import app.aaps.database.entities.data.NewEntries
+import app.aaps.database.entities.data.NewEntriesCursor
 import app.aaps.database.entities.embedments.InterfaceIDs
 import app.aaps.database.entities.interfaces.DBEntry
 import app.aaps.database.impl.transactions.Transaction
@@ -30,6 +49,7 @@ import io.reactivex.rxjava3.schedulers.Schedulers
 import io.reactivex.rxjava3.subjects.PublishSubject
 import java.util.concurrent.Callable
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.roundToInt
@@ -44,6 +64,18 @@ class AppRepository @Inject internal constructor(
 
     fun changeObservable(): Observable<List<DBEntry>> = changeSubject.subscribeOn(Schedulers.io())
 
+    private val treatmentsVersion = AtomicLong()
+
+    /**
+     * Incremented as soon as change of boluses, temporary basals or extended boluses is committed.
+     * Caches of these records can detect change before asynchronous change events are delivered.
+     */
+    fun treatmentsVersion(): Long = treatmentsVersion.get()
+
+    private fun countTreatmentChanges(changes: List<DBEntry>) {
+        if (changes.any { it is Bolus || it is TemporaryBasal || it is ExtendedBolus }) treatmentsVersion.incrementAndGet()
+    }
+
     /**
      * Executes a transaction ignoring its result
      * Runs on IO scheduler
@@ -55,6 +87,7 @@ class AppRepository @Inject internal constructor(
                 transaction.database = DelegatedAppDatabase(changes, database)
                 transaction.run()
             }
+            countTreatmentChanges(changes)
         }.subscribeOn(Schedulers.io()).doOnComplete {
             changeSubject.onNext(changes)
         }
@@ -70,13 +103,16 @@ class AppRepository @Inject internal constructor(
             database.runInTransaction(Callable {
                 transaction.database = DelegatedAppDatabase(changes, database)
                 transaction.run()
-            })
+            }).also { countTreatmentChanges(changes) }
         }.subscribeOn(Schedulers.io()).doOnSuccess {
             changeSubject.onNext(changes)
         }
     }
 
-    fun clearDatabases() = database.clearAllTables()
+    fun clearDatabases() {
+        database.clearAllTables()
+        treatmentsVersion.incrementAndGet()
+    }
 
     fun cleanupDatabase(keepDays: Long, deleteTrackedChanges: Boolean): String {
         val than = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepDays)
@@ -124,6 +160,7 @@ class AppRepository @Inject internal constructor(
             removed.add(Pair("CHANGES OfflineEvent", database.offlineEventDao.deleteTrackedChanges()))
             removed.add(Pair("CHANGES HeartRate", database.heartRateDao.deleteTrackedChanges()))
         }
+        treatmentsVersion.incrementAndGet()
         val ret = StringBuilder()
         removed
             .filter { it.second > 0 }
@@ -765,6 +802,10 @@ class AppRepository @Inject internal constructor(
             .subscribeOn(Schedulers.io())
             .toWrappedSingle()
 
+    fun getExtendedBolusesDataActiveBetweenTimeAndTime(from: Long, to: Long): Single<List<ExtendedBolus>> =
+        database.extendedBolusDao.getExtendedBolusActiveBetweenTimeAndTime(from, to)
+            .subscribeOn(Schedulers.io())
+
     fun getExtendedBolusDataFromTime(timestamp: Long, ascending: Boolean): Single<List<ExtendedBolus>> =
         database.extendedBolusDao.getExtendedBolusDataFromTime(timestamp)
             .map { if (!ascending) it.reversed() else it }
@@ -853,25 +894,28 @@ class AppRepository @Inject internal constructor(
     fun getHeartRatesFromTimeToTime(startMillis: Long, endMillis: Long) =
         database.heartRateDao.getFromTimeToTime(startMillis, endMillis)
 
-    suspend fun collectNewEntriesSince(since: Long, until: Long, limit: Int, offset: Int) = NewEntries(
-        apsResults = database.apsResultDao.getNewEntriesSince(since, until, limit, offset),
-        apsResultLinks = database.apsResultLinkDao.getNewEntriesSince(since, until, limit, offset),
-        bolusCalculatorResults = database.bolusCalculatorResultDao.getNewEntriesSince(since, until, limit, offset),
-        boluses = database.bolusDao.getNewEntriesSince(since, until, limit, offset),
-        carbs = database.carbsDao.getNewEntriesSince(since, until, limit, offset),
-        effectiveProfileSwitches = database.effectiveProfileSwitchDao.getNewEntriesSince(since, until, limit, offset),
-        extendedBoluses = database.extendedBolusDao.getNewEntriesSince(since, until, limit, offset),
-        glucoseValues = database.glucoseValueDao.getNewEntriesSince(since, until, limit, offset),
-        multiwaveBolusLinks = database.multiwaveBolusLinkDao.getNewEntriesSince(since, until, limit, offset),
-        offlineEvents = database.offlineEventDao.getNewEntriesSince(since, until, limit, offset),
-        preferencesChanges = database.preferenceChangeDao.getNewEntriesSince(since, until, limit, offset),
-        profileSwitches = database.profileSwitchDao.getNewEntriesSince(since, until, limit, offset),
-        temporaryBasals = database.temporaryBasalDao.getNewEntriesSince(since, until, limit, offset),
-        temporaryTarget = database.temporaryTargetDao.getNewEntriesSince(since, until, limit, offset),
-        therapyEvents = database.therapyEventDao.getNewEntriesSince(since, until, limit, offset),
-        totalDailyDoses = database.totalDailyDoseDao.getNewEntriesSince(since, until, limit, offset),
-        versionChanges = database.versionChangeDao.getNewEntriesSince(since, until, limit, offset),
-        heartRates = database.heartRateDao.getNewEntriesSince(since, until, limit, offset),
+    /**
+     * Entries created in (since, until], at most [limit] of every table after [cursor]
+     */
+    suspend fun collectNewEntriesSince(since: Long, until: Long, limit: Int, cursor: NewEntriesCursor) = NewEntries(
+        apsResults = database.apsResultDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_APS_RESULTS)),
+        apsResultLinks = database.apsResultLinkDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_APS_RESULT_LINKS)),
+        bolusCalculatorResults = database.bolusCalculatorResultDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_BOLUS_CALCULATOR_RESULTS)),
+        boluses = database.bolusDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_BOLUSES)),
+        carbs = database.carbsDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_CARBS)),
+        effectiveProfileSwitches = database.effectiveProfileSwitchDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_EFFECTIVE_PROFILE_SWITCHES)),
+        extendedBoluses = database.extendedBolusDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_EXTENDED_BOLUSES)),
+        glucoseValues = database.glucoseValueDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_GLUCOSE_VALUES)),
+        multiwaveBolusLinks = database.multiwaveBolusLinkDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_MULTIWAVE_BOLUS_LINKS)),
+        offlineEvents = database.offlineEventDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_OFFLINE_EVENTS)),
+        preferencesChanges = database.preferenceChangeDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_PREFERENCE_CHANGES)),
+        profileSwitches = database.profileSwitchDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_PROFILE_SWITCHES)),
+        temporaryBasals = database.temporaryBasalDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_TEMPORARY_BASALS)),
+        temporaryTarget = database.temporaryTargetDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_TEMPORARY_TARGETS)),
+        therapyEvents = database.therapyEventDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_THERAPY_EVENTS)),
+        totalDailyDoses = database.totalDailyDoseDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_TOTAL_DAILY_DOSES)),
+        versionChanges = database.versionChangeDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_VERSION_CHANGES)),
+        heartRates = database.heartRateDao.getNewEntriesSince(since, until, limit, cursor.afterId(TABLE_HEART_RATE)),
     )
 }
 
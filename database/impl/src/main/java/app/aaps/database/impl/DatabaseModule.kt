@@ -6,7 +6,14 @@ import androidx.room.Room
 import androidx.room.RoomDatabase.Callback
 import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
+import app.aaps.database.entities.TABLE_BOLUSES
+import app.aaps.database.entities.TABLE_BOLUS_CALCULATOR_RESULTS
+import app.aaps.database.entities.TABLE_CARBS
+import app.aaps.database.entities.TABLE_EFFECTIVE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_EXTENDED_BOLUSES
+import app.aaps.database.entities.TABLE_GLUCOSE_VALUES
 import app.aaps.database.entities.TABLE_HEART_RATE
+import app.aaps.database.entities.TABLE_TEMPORARY_BASALS
 import dagger.Module
 import dagger.Provides
 import javax.inject.Qualifier
@@ -38,7 +45,8 @@ open class DatabaseModule {
     @Qualifier
     annotation class DbFileName
 
-    private fun createCustomIndexes(database: SupportSQLiteDatabase) {
+    @VisibleForTesting
+    internal fun createCustomIndexes(database: SupportSQLiteDatabase) {
         database.execSQL("CREATE INDEX IF NOT EXISTS `index_temporaryBasals_end` ON `temporaryBasals` (`timestamp` + `duration`)")
         database.execSQL("CREATE INDEX IF NOT EXISTS `index_extendedBoluses_end` ON `extendedBoluses` (`timestamp` + `duration`)")
         database.execSQL("CREATE INDEX IF NOT EXISTS `index_temporaryTargets_end` ON `temporaryTargets` (`timestamp` + `duration`)")
@@ -114,7 +122,25 @@ open class DatabaseModule {
         }
     }
 
+    private val migration24to25 = object : Migration(24, 25) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            // composite indexes for range queries of current (not historic) records
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_boluses_referenceId_timestamp` ON `$TABLE_BOLUSES` (`referenceId`, `timestamp`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_carbs_referenceId_timestamp` ON `$TABLE_CARBS` (`referenceId`, `timestamp`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_temporaryBasals_referenceId_timestamp` ON `$TABLE_TEMPORARY_BASALS` (`referenceId`, `timestamp`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_glucoseValues_referenceId_timestamp` ON `$TABLE_GLUCOSE_VALUES` (`referenceId`, `timestamp`)")
+            // lookups done by NS and pump synchronization
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_boluses_nightscoutId` ON `$TABLE_BOLUSES` (`nightscoutId`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_extendedBoluses_nightscoutId` ON `$TABLE_EXTENDED_BOLUSES` (`nightscoutId`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_effectiveProfileSwitches_nightscoutId` ON `$TABLE_EFFECTIVE_PROFILE_SWITCHES` (`nightscoutId`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_bolusCalculatorResults_nightscoutId` ON `$TABLE_BOLUS_CALCULATOR_RESULTS` (`nightscoutId`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_temporaryBasals_pumpId` ON `$TABLE_TEMPORARY_BASALS` (`pumpId`)")
+            // Custom indexes must be dropped on migration to pass room schema checking after upgrade
+            dropCustomIndexes(database)
+        }
+    }
+
     /** List of all migrations for easy reply in tests. */
     @VisibleForTesting
-    internal val migrations = arrayOf(migration20to21, migration21to22, migration22to23, migration23to24)
+    internal val migrations = arrayOf(migration20to21, migration21to22, migration22to23, migration23to24, migration24to25)
 }
@@ -21,6 +21,6 @@ internal interface APSResultLinkDao : TraceableDao<APSResultLink> {
     @Query("DELETE FROM $TABLE_APS_RESULTS WHERE referenceId IS NOT NULL")
     override fun deleteTrackedChanges(): Int
 
-    @Query("SELECT * FROM $TABLE_APS_RESULT_LINKS WHERE dateCreated > :since AND dateCreated <= :until LIMIT :limit OFFSET :offset")
-    fun getNewEntriesSince(since: Long, until: Long, limit: Int, offset: Int): List<APSResultLink>
+    @Query("SELECT * FROM $TABLE_APS_RESULT_LINKS WHERE dateCreated > :since AND dateCreated <= :until AND id > :afterId ORDER BY id LIMIT :limit")
+    fun getNewEntriesSince(since: Long, until: Long, limit: Int, afterId: Long): List<APSResultLink>
 }
\ No newline at end of file
@@ -32,7 +32,7 @@ internal interface FoodDao : TraceableDao<Food> {
     fun getFoodData(): Single<List<Food>>
 
     // This query will be used with v3 to get all changed records
-    @Query("SELECT * FROM $TABLE_FOODS WHERE id > :id AND referenceId IS NULL OR id IN (SELECT DISTINCT referenceId FROM $TABLE_FOODS WHERE id > :id) ORDER BY id ASC")
+    @Query("SELECT * FROM $TABLE_FOODS WHERE id > :id AND referenceId IS NULL OR id IN (SELECT DISTINCT referenceId FROM $TABLE_FOODS WHERE id > :id) ORDER BY +id ASC")
     fun getModifiedFrom(id: Long): Single<List<Food>>
 
     // for WS we need 1 record only
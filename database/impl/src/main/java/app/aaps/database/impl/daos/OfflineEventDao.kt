@@ -36,7 +36,7 @@ internal interface OfflineEventDao : TraceableDao<OfflineEvent> {
     fun getOfflineEventDataFromTimeToTime(start: Long, end: Long): Single<List<OfflineEvent>>
 
     // This query will be used with v3 to get all changed records
-    @Query("SELECT * FROM $TABLE_OFFLINE_EVENTS WHERE unlikely(id > :id) AND likely(referenceId IS NULL) OR id IN (SELECT DISTINCT referenceId FROM $TABLE_OFFLINE_EVENTS WHERE id > :id) ORDER BY id ASC")
+    @Query("SELECT * FROM $TABLE_OFFLINE_EVENTS WHERE unlikely(id > :id) AND likely(referenceId IS NULL) OR id IN (SELECT DISTINCT referenceId FROM $TABLE_OFFLINE_EVENTS WHERE id > :id) ORDER BY +id ASC")
     fun getModifiedFrom(id: Long): Single<List<OfflineEvent>>
 
     // for WS we need 1 record only
@@ -46,6 +46,6 @@ internal interface OfflineEventDao : TraceableDao<OfflineEvent> {
     @Query("SELECT * FROM $TABLE_OFFLINE_EVENTS WHERE id = :referenceId")
     fun getCurrentFromHistoric(referenceId: Long): Maybe<OfflineEvent>
 
-    @Query("SELECT * FROM $TABLE_OFFLINE_EVENTS WHERE dateCreated > :since AND dateCreated <= :until LIMIT :limit OFFSET :offset")
-    fun getNewEntriesSince(since: Long, until: Long, limit: Int, offset: Int): List<OfflineEvent>
+    @Query("SELECT * FROM $TABLE_OFFLINE_EVENTS WHERE dateCreated > :since AND dateCreated <= :until AND id > :afterId ORDER BY id LIMIT :limit")
+    fun getNewEntriesSince(since: Long, until: Long, limit: Int, afterId: Long): List<OfflineEvent>
 }
\ No newline at end of file
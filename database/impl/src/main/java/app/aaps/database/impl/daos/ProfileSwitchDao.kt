@@ -49,7 +49,7 @@ internal interface ProfileSwitchDao : ProfileSwitchDaoWorkaround {
     fun getProfileSwitchDataFromTime(timestamp: Long): Single<List<ProfileSwitch>>
 
     // This query will be used with v3 to get all changed records
-    @Query("SELECT * FROM $TABLE_PROFILE_SWITCHES WHERE unlikely(id > :id) AND likely(referenceId IS NULL) OR id IN (SELECT DISTINCT referenceId FROM $TABLE_PROFILE_SWITCHES WHERE id > :id) ORDER BY id ASC")
+    @Query("SELECT * FROM $TABLE_PROFILE_SWITCHES WHERE unlikely(id > :id) AND likely(referenceId IS NULL) OR id IN (SELECT DISTINCT referenceId FROM $TABLE_PROFILE_SWITCHES WHERE id > :id) ORDER BY +id ASC")
     fun getModifiedFrom(id: Long): Single<List<ProfileSwitch>>
 
     // for WS we need 1 record only
@@ -59,8 +59,8 @@ internal interface ProfileSwitchDao : ProfileSwitchDaoWorkaround {
     @Query("SELECT * FROM $TABLE_PROFILE_SWITCHES WHERE id = :referenceId")
     fun getCurrentFromHistoric(referenceId: Long): Maybe<ProfileSwitch>
 
-    @Query("SELECT * FROM $TABLE_PROFILE_SWITCHES WHERE dateCreated > :since AND dateCreated <= :until LIMIT :limit OFFSET :offset")
-    fun getNewEntriesSince(since: Long, until: Long, limit: Int, offset: Int): List<ProfileSwitch>
+    @Query("SELECT * FROM $TABLE_PROFILE_SWITCHES WHERE dateCreated > :since AND dateCreated <= :until AND id > :afterId ORDER BY id LIMIT :limit")
+    fun getNewEntriesSince(since: Long, until: Long, limit: Int, afterId: Long): List<ProfileSwitch>
 }
 
 internal fun ProfileSwitchDao.insertNewEntryImpl(entry: ProfileSwitch): Long {
@@ -17,6 +17,9 @@ internal interface TraceableDao<T : TraceableDBEntry> : TraceableDaoWorkaround<T
     @Insert
     fun insert(entry: T): Long
 
+    @Insert
+    fun insert(entries: List<T>): List<Long>
+
     @Update
     fun update(entry: T)
 }
@@ -27,10 +30,7 @@ internal interface TraceableDao<T : TraceableDBEntry> : TraceableDaoWorkaround<T
  */
 //@Transaction
 internal fun <T : TraceableDBEntry> TraceableDao<T>.insertNewEntryImpl(entry: T): Long {
-    if (entry.id != 0L) throw IllegalArgumentException("ID must be 0.")
-    if (entry.version != 0) throw IllegalArgumentException("Version must be 0.")
-    if (entry.referenceId != null) throw IllegalArgumentException("Reference ID must be null.")
-    if (!entry.foreignKeysValid) throw IllegalArgumentException("One or more foreign keys are invalid (e.g. 0 value).")
+    checkNewEntry(entry)
     val lastModified = System.currentTimeMillis()
     entry.dateCreated = lastModified
     val id = insert(entry)
@@ -38,6 +38,27 @@ internal fun <T : TraceableDBEntry> TraceableDao<T>.insertNewEntryImpl(entry: T)
     return id
 }
 
+/**
+ * Inserts new entries by one statement
+ * @return The IDs of the newly generated entries
+ */
+//@Transaction
+internal fun <T : TraceableDBEntry> TraceableDao<T>.insertNewEntriesImpl(entries: List<T>): List<Long> {
+    entries.forEach { checkNewEntry(it) }
+    val lastModified = System.currentTimeMillis()
+    entries.forEach { it.dateCreated = lastModified }
+    val ids = insert(entries)
+    entries.forEachIndexed { index, entry -> entry.id = ids[index] }
+    return ids
+}
+
+private fun checkNewEntry(entry: TraceableDBEntry) {
+    if (entry.id != 0L) throw IllegalArgumentException("ID must be 0.")
+    if (entry.version != 0) throw IllegalArgumentException("Version must be 0.")
+    if (entry.referenceId != null) throw IllegalArgumentException("Reference ID must be null.")
+    if (!entry.foreignKeysValid) throw IllegalArgumentException("One or more foreign keys are invalid (e.g. 0 value).")
+}
+
 /**
  * Updates an existing entry
  * @return The ID of the newly generated HISTORIC entry
@@ -11,6 +11,11 @@ internal class DelegatedGlucoseValueDao(changes: MutableList<DBEntry>, private v
         return dao.insertNewEntry(entry)
     }
 
+    override fun insertNewEntries(entries: List<GlucoseValue>): List<Long> {
+        changes.addAll(entries)
+        return dao.insertNewEntries(entries)
+    }
+
     override fun updateExistingEntry(entry: GlucoseValue): Long {
         changes.add(entry)
         return dao.updateExistingEntry(entry)
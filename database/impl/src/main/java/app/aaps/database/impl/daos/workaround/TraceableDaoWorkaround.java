@@ -2,6 +2,8 @@ package app.aaps.database.impl.daos.workaround;
 
 import androidx.room.Transaction;
 
+import java.util.List;
+
 import app.aaps.database.entities.interfaces.TraceableDBEntry;
 import app.aaps.database.impl.daos.TraceableDao;
 import app.aaps.database.impl.daos.TraceableDaoKt;
@@ -19,6 +21,16 @@ public interface TraceableDaoWorkaround<T extends TraceableDBEntry> {
         return TraceableDaoKt.insertNewEntryImpl((TraceableDao<T>) this, entry);
     }
 
+    /**
+     * Inserts new entries by one statement. Delegated DAO must override it to track changes.
+     *
+     * @return The IDs of the newly generated entries
+     */
+    @Transaction
+    default List<Long> insertNewEntries(List<T> entries) {
+        return TraceableDaoKt.insertNewEntriesImpl((TraceableDao<T>) this, entries);
+    }
+
     /**
      * Updates an existing entry
      *
@@ -0,0 +1,18 @@
+package app.aaps.database.impl.transactions
+
+/**
+ * Runs [transactions] in single database transaction
+ *
+ * Used for synchronization of large blocks of pump history. Listeners are notified once about all changes.
+ * @return results of [transactions] in the same order
+ */
+class BatchTransaction(
+    private val transactions: List<Transaction<*>>
+) : Transaction<List<Any?>>() {
+
+    override fun run(): List<Any?> =
+        transactions.map { transaction ->
+            transaction.database = database
+            transaction.run()
+        }
+}
\ No newline at end of file
@@ -15,8 +15,15 @@ class CgmSourceTransaction(
 
     override fun run(): TransactionResult {
         val result = TransactionResult()
+        // existing records of whole batch by one query
+        val stored = HashMap<Pair<Long, GlucoseValue.SourceSensor>, GlucoseValue>()
+        if (glucoseValues.isNotEmpty())
+            database.glucoseValueDao.findByTimestampRange(glucoseValues.minOf { it.timestamp }, glucoseValues.maxOf { it.timestamp })
+                .forEach { stored.putIfAbsent(Pair(it.timestamp, it.sourceSensor), it) }
+        // new records, inserted at the end by one statement
+        val pending = LinkedHashMap<Pair<Long, GlucoseValue.SourceSensor>, GlucoseValue>()
         glucoseValues.forEach {
-            val current = database.glucoseValueDao.findByTimestampAndSensor(it.timestamp, it.sourceSensor)
+            val key = Pair(it.timestamp, it.sourceSensor)
             val glucoseValue = GlucoseValue(
                 timestamp = it.timestamp,
                 raw = it.raw,
@@ -29,6 +36,13 @@ class CgmSourceTransaction(
             ).also { gv ->
                 gv.interfaceIDs.nightscoutId = it.nightscoutId
             }
+            // the same value repeated in batch, latest wins
+            pending[key]?.let { previous ->
+                if (glucoseValue.interfaceIDs.nightscoutId == null) glucoseValue.interfaceIDs.nightscoutId = previous.interfaceIDs.nightscoutId
+                pending[key] = glucoseValue
+                return@forEach
+            }
+            val current = stored[key]
             // if nsId is not provided in new record, copy from current if exists
             if (glucoseValue.interfaceIDs.nightscoutId == null)
                 current?.let { existing -> glucoseValue.interfaceIDs.nightscoutId = existing.interfaceIDs.nightscoutId }
@@ -37,13 +51,13 @@ class CgmSourceTransaction(
             when {
                 // new record, create new
                 current == null                                                      -> {
-                    database.glucoseValueDao.insertNewEntry(glucoseValue)
-                    result.inserted.add(glucoseValue)
+                    pending[key] = glucoseValue
                 }
                 // different record, update
                 !current.contentEqualsTo(glucoseValue)                               -> {
                     glucoseValue.id = current.id
                     database.glucoseValueDao.updateExistingEntry(glucoseValue)
+                    stored[key] = glucoseValue
                     result.updated.add(glucoseValue)
                 }
                 // update NS id if didn't exist and now provided
@@ -54,6 +68,10 @@ class CgmSourceTransaction(
                 }
             }
         }
+        if (pending.isNotEmpty()) {
+            database.glucoseValueDao.insertNewEntries(pending.values.toList())
+            result.inserted.addAll(pending.values)
+        }
         calibrations.forEach {
             if (database.therapyEventDao.findByTimestamp(TherapyEvent.Type.FINGER_STICK_BG_VALUE, it.timestamp) == null) {
                 val therapyEvent = TherapyEvent(
@@ -0,0 +1,190 @@
+package app.aaps.database.impl
+
+import android.content.Context
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import app.aaps.database.entities.Bolus
+import app.aaps.database.entities.Carbs
+import app.aaps.database.entities.GlucoseValue
+import app.aaps.database.entities.TABLE_BOLUSES
+import app.aaps.database.entities.TABLE_BOLUS_CALCULATOR_RESULTS
+import app.aaps.database.entities.TABLE_CARBS
+import app.aaps.database.entities.TABLE_EFFECTIVE_PROFILE_SWITCHES
+import app.aaps.database.entities.TABLE_EXTENDED_BOLUSES
+import app.aaps.database.entities.TABLE_GLUCOSE_VALUES
+import app.aaps.database.entities.TABLE_TEMPORARY_BASALS
+import app.aaps.database.entities.TemporaryBasal
+import app.aaps.database.entities.embedments.InterfaceIDs
+import com.google.common.truth.Truth.assertWithMessage
+import com.google.gson.JsonParser
+import org.junit.After
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.annotation.Config
+import java.io.File
+
+/**
+ * Hot queries of calculation and synchronization must not fall back to full table scan.
+ * Real DAO methods are called and the SQL Room executes is captured by query callback.
+ */
+@RunWith(AndroidJUnit4::class)
+@Config(sdk = [28])
+class QueryPlanTest {
+
+    private val context = ApplicationProvider.getApplicationContext<Context>()
+
+    private class ExecutedQuery(val sql: String, val args: List<Any?>)
+
+    private val executed = mutableListOf<ExecutedQuery>()
+    private var capture = false
+
+    private val hotQueries: List<Pair<String, AppDatabase.() -> Unit>> = listOf(
+        // BolusDao
+        TABLE_BOLUSES to { bolusDao.findByTimestamp(NOW) },
+        TABLE_BOLUSES to { bolusDao.findByNSId("id") },
+        TABLE_BOLUSES to { bolusDao.getBolusesFromTime(NOW).blockingGet() },
+        TABLE_BOLUSES to { bolusDao.getBolusesFromTime(NOW, NOW).blockingGet() },
+        TABLE_BOLUSES to { bolusDao.getBolusesIncludingInvalidFromTime(NOW).blockingGet() },
+        TABLE_BOLUSES to { bolusDao.getNewEntriesSince(NOW, NOW, 1000, 0) },
+        // CarbsDao
+        TABLE_CARBS to { carbsDao.getCarbsFromTime(NOW).blockingGet() },
+        TABLE_CARBS to { carbsDao.getCarbsFromTimeExpandable(NOW).blockingGet() },
+        TABLE_CARBS to { carbsDao.getCarbsFromTimeToTimeExpandable(NOW, NOW).blockingGet() },
+        TABLE_CARBS to { carbsDao.getCarbsIncludingInvalidFromTime(NOW).blockingGet() },
+        TABLE_CARBS to { carbsDao.getCarbsIncludingInvalidFromTimeToTime(NOW, NOW).blockingGet() },
+        TABLE_CARBS to { carbsDao.getNewEntriesSince(NOW, NOW, 1000, 0) },
+        // TemporaryBasalDao
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.findByPumpIds(1, InterfaceIDs.PumpType.USER, "serial") },
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.getTemporaryBasalActiveAt(NOW).blockingGet() },
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.getTemporaryBasalActiveBetweenTimeAndTime(NOW, NOW).blockingGet() },
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.getTemporaryBasalDataFromTime(NOW).blockingGet() },
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.getTemporaryBasalDataFromTimeToTime(NOW, NOW).blockingGet() },
+        TABLE_TEMPORARY_BASALS to { temporaryBasalDao.getNewEntriesSince(NOW, NOW, 1000, 0) },
+        // GlucoseValueDao
+        TABLE_GLUCOSE_VALUES to { glucoseValueDao.getLast().blockingGet() },
+        TABLE_GLUCOSE_VALUES to { glucoseValueDao.findByTimestampRange(NOW, NOW) },
+        TABLE_GLUCOSE_VALUES to { glucoseValueDao.compatGetBgReadingsDataFromTime(NOW).blockingGet() },
+        TABLE_GLUCOSE_VALUES to { glucoseValueDao.compatGetBgReadingsDataFromTime(NOW, NOW).blockingGet() },
+        TABLE_GLUCOSE_VALUES to { glucoseValueDao.getNewEntriesSince(NOW, NOW, 1000, 0) },
+        // NS synchronization
+        TABLE_EXTENDED_BOLUSES to { extendedBolusDao.findByNSId("id") },
+        TABLE_EFFECTIVE_PROFILE_SWITCHES to { effectiveProfileSwitchDao.findByNSId("id") },
+        TABLE_BOLUS_CALCULATOR_RESULTS to { bolusCalculatorResultDao.findByNSId("id") }
+    )
+
+    private fun RoomDatabase.Builder<AppDatabase>.buildCapturing() =
+        setQueryCallback({ sql, args -> if (capture) executed.add(ExecutedQuery(sql, args)) }, Runnable::run)
+            .addCallback(object : RoomDatabase.Callback() {
+                override fun onOpen(db: SupportSQLiteDatabase) {
+                    // created by DatabaseModule on open
+                    DatabaseModule().createCustomIndexes(db)
+                }
+            })
+            .allowMainThreadQueries()
+            .build()
+
+    private fun seed(database: AppDatabase) {
+        for (i in 0 until 2000) {
+            val timestamp = NOW - i * 5 * 60 * 1000L
+            database.glucoseValueDao.insertNewEntry(
+                GlucoseValue(
+                    timestamp = timestamp, raw = 0.0, value = 100.0, noise = 0.0,
+                    trendArrow = GlucoseValue.TrendArrow.FLAT, sourceSensor = GlucoseValue.SourceSensor.UNKNOWN
+                )
+            )
+            if (i % 3 == 0) database.temporaryBasalDao.insertNewEntry(
+                TemporaryBasal(timestamp = timestamp, type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = 1.0, duration = 30 * 60 * 1000L)
+            )
+            if (i % 20 == 0) {
+                val id = database.bolusDao.insertNewEntry(Bolus(timestamp = timestamp, amount = 1.0, type = Bolus.Type.NORMAL))
+                // historic record
+                database.bolusDao.insert(Bolus(timestamp = timestamp, amount = 2.0, type = Bolus.Type.NORMAL, referenceId = id, isValid = false))
+            }
+            if (i % 50 == 0) database.carbsDao.insertNewEntry(Carbs(timestamp = timestamp, amount = 10.0, duration = 0))
+        }
+    }
+
+    private fun queryPlan(supportDb: SupportSQLiteDatabase, query: ExecutedQuery): List<String> {
+        val details = mutableListOf<String>()
+        supportDb.query("EXPLAIN QUERY PLAN ${query.sql}", query.args.toTypedArray()).use { c ->
+            while (c.moveToNext()) details.add(c.getString(c.getColumnIndexOrThrow("detail")))
+        }
+        return details
+    }
+
+    private fun assertNoFullScan(database: AppDatabase) {
+        val supportDb = database.openHelper.writableDatabase
+        for ((table, call) in hotQueries) {
+            executed.clear()
+            capture = true
+            database.call()
+            capture = false
+            val query = executed.single { it.sql.startsWith("SELECT") }
+            val plan = queryPlan(supportDb, query)
+            // older SQLite versions report "SCAN TABLE table"
+            val fullScan = Regex("^SCAN (TABLE )?$table$")
+            assertWithMessage("Full scan: ${query.sql}\n$plan").that(plan.none { fullScan.matches(it) }).isTrue()
+        }
+    }
+
+    /**
+     * Create database of [version] from schema exported by Room compiler
+     */
+    private fun createDatabaseFromSchema(name: String, version: Int) {
+        val schema = File("schemas/${AppDatabase::class.java.name}/$version.json").readText()
+        val database = JsonParser.parseString(schema).asJsonObject.getAsJsonObject("database")
+        val configuration = SupportSQLiteOpenHelper.Configuration.builder(context)
+            .name(name)
+            .callback(object : SupportSQLiteOpenHelper.Callback(version) {
+                override fun onCreate(db: SupportSQLiteDatabase) {
+                    for (entity in database.getAsJsonArray("entities").map { it.asJsonObject }) {
+                        val tableName = entity.get("tableName").asString
+                        db.execSQL(entity.get("createSql").asString.replace("\${TABLE_NAME}", tableName))
+                        entity.getAsJsonArray("indices")?.forEach { db.execSQL(it.asJsonObject.get("createSql").asString.replace("\${TABLE_NAME}", tableName)) }
+                    }
+                    database.getAsJsonArray("setupQueries").forEach { db.execSQL(it.asString) }
+                }
+
+                override fun onUpgrade(db: SupportSQLiteDatabase, oldVersion: Int, newVersion: Int) {}
+            })
+            .build()
+        FrameworkSQLiteOpenHelperFactory().create(configuration).use { it.writableDatabase }
+    }
+
+    @After
+    fun deleteDatabase() {
+        context.deleteDatabase(TEST_DB_NAME)
+    }
+
+    @Test
+    fun hotQueries_useIndexes() {
+        Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).buildCapturing().use { db ->
+            seed(db)
+            assertNoFullScan(db)
+        }
+    }
+
+    @Test
+    fun hotQueries_useIndexesAfterMigration() {
+        createDatabaseFromSchema(TEST_DB_NAME, 24)
+        // Room validates migrated schema against entities on open
+        Room.databaseBuilder(context, AppDatabase::class.java, TEST_DB_NAME)
+            .addMigrations(*DatabaseModule().migrations)
+            .buildCapturing()
+            .use { db ->
+                seed(db)
+                assertNoFullScan(db)
+            }
+    }
+
+    companion object {
+
+        private const val TEST_DB_NAME = "testDatabase"
+        private const val NOW = 1_700_000_000_000L
+    }
+}
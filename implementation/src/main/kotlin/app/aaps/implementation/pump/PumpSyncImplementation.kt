@@ -32,6 +32,7 @@ import app.aaps.database.entities.UserEntry
 import app.aaps.database.entities.ValueWithUnit
 import app.aaps.database.entities.embedments.InterfaceIDs
 import app.aaps.database.impl.AppRepository
+import app.aaps.database.impl.transactions.BatchTransaction
 import app.aaps.database.impl.transactions.InsertBolusWithTempIdTransaction
 import app.aaps.database.impl.transactions.InsertIfNewByTimestampCarbsTransaction
 import app.aaps.database.impl.transactions.InsertIfNewByTimestampTherapyEventTransaction
@@ -48,6 +49,7 @@ import app.aaps.database.impl.transactions.SyncPumpExtendedBolusTransaction
 import app.aaps.database.impl.transactions.SyncPumpTemporaryBasalTransaction
 import app.aaps.database.impl.transactions.SyncPumpTotalDailyDoseTransaction
 import app.aaps.database.impl.transactions.SyncTemporaryBasalWithTempIdTransaction
+import app.aaps.database.impl.transactions.Transaction
 import io.reactivex.rxjava3.disposables.CompositeDisposable
 import io.reactivex.rxjava3.kotlin.plusAssign
 import javax.inject.Inject
@@ -215,83 +217,14 @@ class PumpSyncImplementation @Inject constructor(
             }
     }
 
-    override fun syncBolusWithPumpId(timestamp: Long, amount: Double, type: DetailedBolusInfo.BolusType?, pumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        val bolus = Bolus(
-            timestamp = timestamp,
-            amount = amount,
-            type = type?.toDBbBolusType() ?: Bolus.Type.NORMAL,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        repository.runTransactionForResult(SyncPumpBolusTransaction(bolus, type?.toDBbBolusType()))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving Bolus", it) }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Bolus $it") }
-                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated Bolus $it") }
-                return result.inserted.size > 0
-            }
-    }
+    override fun syncBolusWithPumpId(timestamp: Long, amount: Double, type: DetailedBolusInfo.BolusType?, pumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.Bolus(timestamp, amount, type, pumpId)), pumpType, pumpSerial)[0]
 
-    override fun syncCarbsWithTimestamp(timestamp: Long, amount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        val carbs = Carbs(
-            timestamp = timestamp,
-            amount = amount,
-            duration = 0,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        repository.runTransactionForResult(InsertIfNewByTimestampCarbsTransaction(carbs))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving Carbs", it) }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Carbs $it") }
-                return result.inserted.size > 0
-            }
-    }
+    override fun syncCarbsWithTimestamp(timestamp: Long, amount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.Carbs(timestamp, amount, pumpId)), pumpType, pumpSerial)[0]
 
-    override fun insertTherapyEventIfNewWithTimestamp(timestamp: Long, type: DetailedBolusInfo.EventType, note: String?, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        val therapyEvent = TherapyEvent(
-            timestamp = timestamp,
-            type = type.toDBbEventType(),
-            duration = 0,
-            note = note,
-            enteredBy = "AndroidAPS",
-            glucose = null,
-            glucoseType = null,
-            glucoseUnit = TherapyEvent.GlucoseUnit.MGDL,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        uel.log(
-            action = UserEntry.Action.CAREPORTAL,
-            source = pumpType.source.toDbSource(),
-            note = note,
-            timestamp = timestamp,
-            ValueWithUnit.Timestamp(timestamp), ValueWithUnit.TherapyEventType(type.toDBbEventType())
-        )
-        repository.runTransactionForResult(InsertIfNewByTimestampTherapyEventTransaction(therapyEvent))
-            .doOnError {
-                aapsLogger.error(LTag.DATABASE, "Error while saving TherapyEvent", it)
-            }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TherapyEvent $it") }
-                return result.inserted.size > 0
-            }
-    }
+    override fun insertTherapyEventIfNewWithTimestamp(timestamp: Long, type: DetailedBolusInfo.EventType, note: String?, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.TherapyEvent(timestamp, type, note, pumpId)), pumpType, pumpSerial)[0]
 
     override fun insertFingerBgIfNewWithTimestamp(timestamp: Long, glucose: Double, glucoseUnit: GlucoseUnit, note: String?, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean {
         if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
@@ -348,42 +281,11 @@ class PumpSyncImplementation @Inject constructor(
         pumpId: Long,
         pumpType: PumpType,
         pumpSerial: String
-    ): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        val temporaryBasal = TemporaryBasal(
-            timestamp = timestamp,
-            rate = rate,
-            duration = duration,
-            type = type?.toDbType() ?: TemporaryBasal.Type.NORMAL,
-            isAbsolute = isAbsolute,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        repository.runTransactionForResult(SyncPumpTemporaryBasalTransaction(temporaryBasal, type?.toDbType()))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while TemporaryBasal", it) }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryBasal $it") }
-                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal ${it.first} New: ${it.second}") }
-                return result.inserted.size > 0
-            }
-    }
+    ): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.TemporaryBasal(timestamp, rate, duration, isAbsolute, type, pumpId)), pumpType, pumpSerial)[0]
 
-    override fun syncStopTemporaryBasalWithPumpId(timestamp: Long, endPumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        repository.runTransactionForResult(SyncPumpCancelTemporaryBasalIfAnyTransaction(timestamp, endPumpId, pumpType.toDbPumpType(), pumpSerial))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving TemporaryBasal", it) }
-            .blockingGet()
-            .also { result ->
-                result.updated.forEach {
-                    aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal ${it.first} New: ${it.second}")
-                }
-                return result.updated.size > 0
-            }
-    }
+    override fun syncStopTemporaryBasalWithPumpId(timestamp: Long, endPumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.StopTemporaryBasal(timestamp, endPumpId)), pumpType, pumpSerial)[0]
 
     override fun addTemporaryBasalWithTempId(
         timestamp: Long,
@@ -492,63 +394,180 @@ class PumpSyncImplementation @Inject constructor(
             }
     }
 
-    override fun syncExtendedBolusWithPumpId(timestamp: Long, amount: Double, duration: Long, isEmulatingTB: Boolean, pumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        val extendedBolus = ExtendedBolus(
-            timestamp = timestamp,
-            amount = amount,
-            duration = duration,
-            isEmulatingTempBasal = isEmulatingTB,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        repository.runTransactionForResult(SyncPumpExtendedBolusTransaction(extendedBolus))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while ExtendedBolus", it) }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted ExtendedBolus $it") }
-                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it") }
-                return result.inserted.size > 0
-            }
+    override fun syncExtendedBolusWithPumpId(timestamp: Long, amount: Double, duration: Long, isEmulatingTB: Boolean, pumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.ExtendedBolus(timestamp, amount, duration, isEmulatingTB, pumpId)), pumpType, pumpSerial)[0]
+
+    override fun syncStopExtendedBolusWithPumpId(timestamp: Long, endPumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.StopExtendedBolus(timestamp, endPumpId)), pumpType, pumpSerial)[0]
+
+    override fun createOrUpdateTotalDailyDose(timestamp: Long, bolusAmount: Double, basalAmount: Double, totalAmount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean =
+        syncHistory(listOf(PumpSync.HistoryRecord.TotalDailyDose(timestamp, bolusAmount, basalAmount, totalAmount, pumpId)), pumpType, pumpSerial)[0]
+
+    /*
+     *   BATCH SYNCHRONIZATION
+     */
+
+    /**
+     * Prepared transaction of one history record
+     *
+     * @param processResult logs result of [transaction] and returns value of single record function
+     */
+    private class Sync<T : Any>(val transaction: Transaction<T>, private val processResult: (T) -> Boolean) {
+
+        @Suppress("UNCHECKED_CAST")
+        fun process(result: Any?): Boolean = processResult(result as T)
     }
 
-    override fun syncStopExtendedBolusWithPumpId(timestamp: Long, endPumpId: Long, pumpType: PumpType, pumpSerial: String): Boolean {
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial)) return false
-        repository.runTransactionForResult(SyncPumpCancelExtendedBolusIfAnyTransaction(timestamp, endPumpId, pumpType.toDbPumpType(), pumpSerial))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving ExtendedBolus", it) }
+    override fun syncHistory(records: List<PumpSync.HistoryRecord>, pumpType: PumpType, pumpSerial: String): List<Boolean> {
+        val syncs = records.map { record ->
+            // there are probably old TDD data in pump -> do not show notification, just ignore
+            val showNotification = record !is PumpSync.HistoryRecord.TotalDailyDose
+            if (confirmActivePump(record.timestamp, pumpType, pumpSerial, showNotification)) prepareSync(record, pumpType, pumpSerial)
+            else null
+        }
+        val transactions = syncs.mapNotNull { it?.transaction }
+        if (transactions.isEmpty()) return syncs.map { false }
+        val results = repository.runTransactionForResult(BatchTransaction(transactions))
+            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving pump history", it) }
             .blockingGet()
-            .also { result ->
-                result.updated.forEach {
-                    aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it")
+            .iterator()
+        return syncs.map { sync -> sync?.process(results.next()) ?: false }
+    }
+
+    private fun prepareSync(record: PumpSync.HistoryRecord, pumpType: PumpType, pumpSerial: String): Sync<*> =
+        when (record) {
+            is PumpSync.HistoryRecord.Bolus              -> {
+                val bolus = Bolus(
+                    timestamp = record.timestamp,
+                    amount = record.amount,
+                    type = record.type?.toDBbBolusType() ?: Bolus.Type.NORMAL,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                Sync(SyncPumpBolusTransaction(bolus, record.type?.toDBbBolusType())) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Bolus $it") }
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated Bolus $it") }
+                    result.inserted.size > 0
                 }
-                return result.updated.size > 0
             }
-    }
 
-    override fun createOrUpdateTotalDailyDose(timestamp: Long, bolusAmount: Double, basalAmount: Double, totalAmount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean {
-        // there are probably old data in pump -> do not show notification, just ignore
-        if (!confirmActivePump(timestamp, pumpType, pumpSerial, showNotification = false)) return false
-        val tdd = TotalDailyDose(
-            timestamp = timestamp,
-            bolusAmount = bolusAmount,
-            basalAmount = basalAmount,
-            totalAmount = totalAmount,
-            interfaceIDs_backing = InterfaceIDs(
-                pumpId = pumpId,
-                pumpType = pumpType.toDbPumpType(),
-                pumpSerial = pumpSerial
-            )
-        )
-        repository.runTransactionForResult(SyncPumpTotalDailyDoseTransaction(tdd))
-            .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving TotalDailyDose", it) }
-            .blockingGet()
-            .also { result ->
-                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TotalDailyDose $it") }
-                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TotalDailyDose $it") }
-                return result.inserted.size > 0
+            is PumpSync.HistoryRecord.Carbs              -> {
+                val carbs = Carbs(
+                    timestamp = record.timestamp,
+                    amount = record.amount,
+                    duration = 0,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                Sync(InsertIfNewByTimestampCarbsTransaction(carbs)) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Carbs $it") }
+                    result.inserted.size > 0
+                }
             }
-    }
+
+            is PumpSync.HistoryRecord.TherapyEvent       -> {
+                val therapyEvent = TherapyEvent(
+                    timestamp = record.timestamp,
+                    type = record.type.toDBbEventType(),
+                    duration = 0,
+                    note = record.note,
+                    enteredBy = "AndroidAPS",
+                    glucose = null,
+                    glucoseType = null,
+                    glucoseUnit = TherapyEvent.GlucoseUnit.MGDL,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                uel.log(
+                    action = UserEntry.Action.CAREPORTAL,
+                    source = pumpType.source.toDbSource(),
+                    note = record.note,
+                    timestamp = record.timestamp,
+                    ValueWithUnit.Timestamp(record.timestamp), ValueWithUnit.TherapyEventType(record.type.toDBbEventType())
+                )
+                Sync(InsertIfNewByTimestampTherapyEventTransaction(therapyEvent)) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TherapyEvent $it") }
+                    result.inserted.size > 0
+                }
+            }
+
+            is PumpSync.HistoryRecord.TemporaryBasal     -> {
+                val temporaryBasal = TemporaryBasal(
+                    timestamp = record.timestamp,
+                    rate = record.rate,
+                    duration = record.duration,
+                    type = record.type?.toDbType() ?: TemporaryBasal.Type.NORMAL,
+                    isAbsolute = record.isAbsolute,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                Sync(SyncPumpTemporaryBasalTransaction(temporaryBasal, record.type?.toDbType())) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryBasal $it") }
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal ${it.first} New: ${it.second}") }
+                    result.inserted.size > 0
+                }
+            }
+
+            is PumpSync.HistoryRecord.StopTemporaryBasal ->
+                Sync(SyncPumpCancelTemporaryBasalIfAnyTransaction(record.timestamp, record.endPumpId, pumpType.toDbPumpType(), pumpSerial)) { result ->
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal ${it.first} New: ${it.second}") }
+                    result.updated.size > 0
+                }
+
+            is PumpSync.HistoryRecord.ExtendedBolus      -> {
+                val extendedBolus = ExtendedBolus(
+                    timestamp = record.timestamp,
+                    amount = record.amount,
+                    duration = record.duration,
+                    isEmulatingTempBasal = record.isEmulatingTB,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                Sync(SyncPumpExtendedBolusTransaction(extendedBolus)) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted ExtendedBolus $it") }
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it") }
+                    result.inserted.size > 0
+                }
+            }
+
+            is PumpSync.HistoryRecord.StopExtendedBolus  ->
+                Sync(SyncPumpCancelExtendedBolusIfAnyTransaction(record.timestamp, record.endPumpId, pumpType.toDbPumpType(), pumpSerial)) { result ->
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it") }
+                    result.updated.size > 0
+                }
+
+            is PumpSync.HistoryRecord.TotalDailyDose     -> {
+                val tdd = TotalDailyDose(
+                    timestamp = record.timestamp,
+                    bolusAmount = record.bolusAmount,
+                    basalAmount = record.basalAmount,
+                    totalAmount = record.totalAmount,
+                    interfaceIDs_backing = InterfaceIDs(
+                        pumpId = record.pumpId,
+                        pumpType = pumpType.toDbPumpType(),
+                        pumpSerial = pumpSerial
+                    )
+                )
+                Sync(SyncPumpTotalDailyDoseTransaction(tdd)) { result ->
+                    result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TotalDailyDose $it") }
+                    result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TotalDailyDose $it") }
+                    result.inserted.size > 0
+                }
+            }
+        }
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import android.content.Context
 import android.content.Intent
 import android.os.Handler
 import android.os.HandlerThread
-import android.os.SystemClock
 import android.text.Spanned
 import androidx.appcompat.app.AppCompatActivity
 import app.aaps.annotations.OpenForTesting
@@ -33,6 +32,7 @@ import app.aaps.core.interfaces.rx.events.EventDismissBolusProgressIfRunning
 import app.aaps.core.interfaces.rx.events.EventDismissNotification
 import app.aaps.core.interfaces.rx.events.EventMobileToWear
 import app.aaps.core.interfaces.rx.events.EventProfileSwitchChanged
+import app.aaps.core.interfaces.rx.events.EventPumpStatusChanged
 import app.aaps.core.interfaces.rx.weardata.EventData
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.ui.UiInteraction
@@ -75,8 +75,10 @@ import io.reactivex.rxjava3.disposables.CompositeDisposable
 import io.reactivex.rxjava3.kotlin.plusAssign
 import java.util.LinkedList
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlin.concurrent.withLock
 
 @OpenForTesting
 @Singleton
@@ -107,9 +109,18 @@ class CommandQueueImplementation @Inject constructor(
     private val queue = LinkedList<Command>()
     @Volatile private var thread: QueueThread? = null
 
+    // guards queue and wakes up QueueThread on change
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+    private var changePending = false
+
     @Volatile var performing: Command? = null
 
     init {
+        disposable += rxBus
+            .toObservable(EventPumpStatusChanged::class.java)
+            .filter { it.status == EventPumpStatusChanged.Status.CONNECTED || it.status == EventPumpStatusChanged.Status.DISCONNECTED }
+            .subscribe({ signalChange() }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventProfileSwitchChanged::class.java)
             .observeOn(aapsSchedulers.io)
@@ -159,7 +170,7 @@ class CommandQueueImplementation @Inject constructor(
 
     @Synchronized
     private fun removeAll(type: CommandType) {
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices.reversed()) {
                 if (queue[i].commandType == type) {
                     queue.removeAt(i)
@@ -171,7 +182,7 @@ class CommandQueueImplementation @Inject constructor(
     @Suppress("SameParameterValue")
     @Synchronized
     fun isLastScheduled(type: CommandType): Boolean {
-        synchronized(queue) {
+        lock.withLock {
             if (queue.size > 0 && queue[queue.size - 1].commandType == type) {
                 return true
             }
@@ -179,30 +190,41 @@ class CommandQueueImplementation @Inject constructor(
         return false
     }
 
+    /**
+     * Routine reading of pump data waits for commands added later.
+     * Commands of the same priority are performed in order of adding.
+     */
+    private fun priority(command: Command): Int = if (command.routine) 1 else 0
+
     @Synchronized
     private fun add(command: Command) {
         aapsLogger.debug(LTag.PUMPQUEUE, "Adding: " + command.javaClass.simpleName + " - " + command.log())
-        synchronized(queue) { queue.add(command) }
+        lock.withLock {
+            val index = queue.indexOfFirst { priority(it) > priority(command) }
+            if (index >= 0) queue.add(index, command) else queue.add(command)
+            signalChange()
+        }
     }
 
     @Synchronized
     override fun pickup() {
-        synchronized(queue) { performing = queue.poll() }
+        lock.withLock { performing = queue.poll() }
     }
 
     @Synchronized
     override fun clear() {
         performing = null
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices) {
                 queue[i].cancel()
 
             }
             queue.clear()
+            signalChange()
         }
     }
 
-    override fun size(): Int = queue.size
+    override fun size(): Int = lock.withLock { queue.size }
 
     override fun performing(): Command? = performing
 
@@ -225,13 +247,44 @@ class CommandQueueImplementation @Inject constructor(
 
     fun waitForFinishedThread() {
         thread?.let { thread ->
-            while (thread.state != Thread.State.TERMINATED && thread.waitingForDisconnect) {
+            if (thread.waitingForDisconnect) {
                 aapsLogger.debug(LTag.PUMPQUEUE, "Waiting for previous thread finish")
-                SystemClock.sleep(500)
+                thread.join()
             }
         }
     }
 
+    private fun signalChange() {
+        lock.withLock {
+            changePending = true
+            changed.signalAll()
+        }
+    }
+
+    /**
+     * Block [QueueThread] until command is added, queue is cleared, pump is connected or disconnected
+     * or [timeout] in milliseconds elapses
+     */
+    internal fun awaitChange(timeout: Long) {
+        lock.withLock {
+            var nanos = TimeUnit.MILLISECONDS.toNanos(timeout)
+            while (!changePending && nanos > 0) nanos = changed.awaitNanos(nanos)
+            changePending = false
+        }
+    }
+
+    /**
+     * Mark [thread] as disconnecting if there is nothing to do.
+     * Must be done atomically with queue check, otherwise command added meanwhile would wait for another command
+     *
+     * @return true if [thread] can disconnect and finish
+     */
+    internal fun finishIfIdle(thread: QueueThread): Boolean =
+        lock.withLock {
+            if (queue.isEmpty() && performing == null) thread.waitingForDisconnect = true
+            thread.waitingForDisconnect
+        }
+
     override fun independentConnect(reason: String, callback: Callback?) {
         aapsLogger.debug(LTag.PUMPQUEUE, "Starting new queue")
         val tempCommandQueue = CommandQueueImplementation(
@@ -247,7 +300,7 @@ class CommandQueueImplementation @Inject constructor(
     override fun bolusInQueue(): Boolean {
         if (isRunning(CommandType.BOLUS)) return true
         if (isRunning(CommandType.SMB_BOLUS)) return true
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices) {
                 if (queue[i].commandType == CommandType.BOLUS) return true
                 if (queue[i].commandType == CommandType.SMB_BOLUS) return true
@@ -466,15 +519,23 @@ class CommandQueueImplementation @Inject constructor(
     }
 
     // returns true if command is queued
-    override fun readStatus(reason: String, callback: Callback?): Boolean {
-        if (isLastScheduled(CommandType.READSTATUS)) {
+    override fun readStatus(reason: String, callback: Callback?): Boolean = readStatus(reason, callback, false)
+
+    @Synchronized
+    override fun readStatus(reason: String, callback: Callback?, routine: Boolean): Boolean {
+        // routine reading is not needed if any reading is pending,
+        // other reading is not needed only if it would be performed next after the last command
+        val duplicated =
+            if (routine) statusInQueue()
+            else lock.withLock { queue.lastOrNull { !it.routine }?.commandType == CommandType.READSTATUS }
+        if (duplicated) {
             aapsLogger.debug(LTag.PUMPQUEUE, "READSTATUS $reason ignored as duplicated")
             callback?.result(executingNowError())?.run()
             return false
         }
 
         // add new command to queue
-        add(CommandReadStatus(injector, reason, callback))
+        add(CommandReadStatus(injector, reason, callback, routine))
         notifyAboutNewCommand()
         return true
     }
@@ -482,7 +543,7 @@ class CommandQueueImplementation @Inject constructor(
     @Synchronized
     override fun statusInQueue(): Boolean {
         if (isRunning(CommandType.READSTATUS)) return true
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices) {
                 if (queue[i].commandType == CommandType.READSTATUS) {
                     return true
@@ -606,7 +667,7 @@ class CommandQueueImplementation @Inject constructor(
         if (isCustomCommandRunning(customCommandType)) {
             return true
         }
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices) {
                 val command = queue[i]
                 if (command is CommandCustomCommand && customCommandType.isInstance(command.customCommand)) {
@@ -624,7 +685,7 @@ class CommandQueueImplementation @Inject constructor(
 
     @Synchronized
     private fun removeAllCustomCommands(targetType: Class<out CustomCommand>) {
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices.reversed()) {
                 val command = queue[i]
                 if (command is CustomCommand && targetType.isInstance(command.commandType)) {
@@ -642,7 +703,7 @@ class CommandQueueImplementation @Inject constructor(
             s += "<b>" + perf.status() + "</b>"
             line++
         }
-        synchronized(queue) {
+        lock.withLock {
             for (i in queue.indices) {
                 if (line != 0) s += "<br>"
                 s += queue[i].status()
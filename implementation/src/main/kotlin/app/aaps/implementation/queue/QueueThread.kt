@@ -12,7 +12,6 @@ import app.aaps.core.interfaces.logging.AAPSLogger
 import app.aaps.core.interfaces.logging.LTag
 import app.aaps.core.interfaces.plugin.ActivePlugin
 import app.aaps.core.interfaces.pump.VirtualPump
-import app.aaps.core.interfaces.queue.CommandQueue
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.rx.bus.RxBus
 import app.aaps.core.interfaces.rx.events.EventDismissBolusProgressIfRunning
@@ -25,7 +24,7 @@ import app.aaps.core.utils.extensions.safeDisable
 import app.aaps.core.utils.extensions.safeEnable
 
 class QueueThread internal constructor(
-    private val queue: CommandQueue,
+    private val queue: CommandQueueImplementation,
     private val context: Context,
     private val aapsLogger: AAPSLogger,
     private val rxBus: RxBus,
@@ -37,7 +36,7 @@ class QueueThread internal constructor(
 ) : Thread() {
 
     private var connectLogged = false
-    var waitingForDisconnect = false
+    @Volatile var waitingForDisconnect = false
     private var mWakeLock: PowerManager.WakeLock? = null
 
     init {
@@ -101,20 +100,20 @@ class QueueThread internal constructor(
                 if (pump.isHandshakeInProgress()) {
                     aapsLogger.debug(LTag.PUMPQUEUE, "handshaking $secondsElapsed")
                     rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.HANDSHAKING, secondsElapsed.toInt()))
-                    SystemClock.sleep(100)
+                    queue.awaitChange(100)
                     continue
                 }
                 if (pump.isConnecting()) {
                     aapsLogger.debug(LTag.PUMPQUEUE, "connecting $secondsElapsed")
                     rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.CONNECTING, secondsElapsed.toInt()))
-                    SystemClock.sleep(1000)
+                    queue.awaitChange(1000)
                     continue
                 }
                 if (!pump.isConnected()) {
                     aapsLogger.debug(LTag.PUMPQUEUE, "connect")
                     rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.CONNECTING, secondsElapsed.toInt()))
                     pump.connect("Connection needed")
-                    SystemClock.sleep(1000)
+                    queue.awaitChange(1000)
                     continue
                 }
                 if (queue.performing() == null) {
@@ -133,7 +132,6 @@ class QueueThread internal constructor(
                             queue.resetPerforming()
                             rxBus.send(EventQueueChanged())
                             lastCommandTime = System.currentTimeMillis()
-                            SystemClock.sleep(100)
                             true
                         } ?: false
                         if (cont) {
@@ -142,9 +140,10 @@ class QueueThread internal constructor(
                     }
                 }
                 if (queue.size() == 0 && queue.performing() == null) {
-                    val secondsFromLastCommand = (System.currentTimeMillis() - lastCommandTime) / 1000
-                    if (secondsFromLastCommand >= pump.waitForDisconnectionInSeconds()) {
-                        waitingForDisconnect = true
+                    val timeToDisconnect = lastCommandTime + T.secs(pump.waitForDisconnectionInSeconds().toLong()).msecs() - System.currentTimeMillis()
+                    if (timeToDisconnect <= 0) {
+                        // command added meanwhile is picked up in next round
+                        if (!queue.finishIfIdle(this)) continue
                         aapsLogger.debug(LTag.PUMPQUEUE, "queue empty. disconnect")
                         rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.DISCONNECTING))
                         pump.disconnect("Queue empty")
@@ -154,7 +153,7 @@ class QueueThread internal constructor(
                     } else {
                         rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.WAITING_FOR_DISCONNECTION))
                         aapsLogger.debug(LTag.PUMPQUEUE, "waiting for disconnect")
-                        SystemClock.sleep(1000)
+                        queue.awaitChange(timeToDisconnect)
                     }
                 }
             }
@@ -13,7 +13,8 @@ import javax.inject.Inject
 class CommandReadStatus(
     injector: HasAndroidInjector,
     val reason: String,
-    callback: Callback?
+    callback: Callback?,
+    override val routine: Boolean = false
 ) : Command(injector, CommandType.READSTATUS, callback) {
 
     @Inject lateinit var activePlugin: ActivePlugin
@@ -0,0 +1,241 @@
+package app.aaps.implementation.stats
+
+import app.aaps.core.interfaces.utils.T
+
+/**
+ * Rolling accumulator of values needed for TDD calculation
+ *
+ * Basal and extended bolus insulin are kept in 5 min steps starting at [origin],
+ * boluses and carbs as time sorted events. Everything is stored as prefix sums
+ * so sum over any window is a difference of two values.
+ *
+ * Steps are appended at the end only. Change of history invalidates everything from
+ * the time of change and missing part is appended again on next request.
+ * Not thread safe, caller must synchronize.
+ */
+class TddAccumulator {
+
+    /** Time of first step, aligned to 5 min */
+    var origin = 0L
+        private set
+
+    /** Number of filled steps */
+    var stepCount = 0
+        private set
+
+    /** Last time (inclusive) covered by bolus and carbs events */
+    var eventsEnd = -1L
+        private set
+
+    private val basal = DoubleSums()
+    private val extended = DoubleSums()
+    private val tbrRunning = DoubleSums()
+    private val profileMissing = DoubleSums()
+
+    private val bolusTimes = LongList()
+    private val boluses = DoubleSums()
+    private val carbsTimes = LongList()
+    private val carbs = DoubleSums()
+
+    /** Time after last filled step */
+    val stepsEnd get() = origin + stepCount * STEP
+
+    fun isEmpty() = origin == 0L
+
+    /**
+     * Drop everything and start again at [origin]
+     */
+    fun reset(origin: Long) {
+        this.origin = origin - origin % STEP
+        stepCount = 0
+        eventsEnd = this.origin - 1
+        listOf(basal, extended, tbrRunning, profileMissing, boluses, carbs).forEach { it.truncate(0) }
+        bolusTimes.truncate(0)
+        carbsTimes.truncate(0)
+    }
+
+    /**
+     * Append step starting at [stepsEnd]
+     *
+     * @param basalAmount basal insulin delivered during step
+     * @param extendedAmount extended bolus insulin delivered during step
+     */
+    fun addStep(basalAmount: Double, extendedAmount: Double, isTempBasalRunning: Boolean) {
+        basal.add(basalAmount)
+        extended.add(extendedAmount)
+        tbrRunning.add(if (isTempBasalRunning) 1.0 else 0.0)
+        profileMissing.add(0.0)
+        stepCount++
+    }
+
+    /**
+     * Append step starting at [stepsEnd] without valid profile
+     */
+    fun addMissingStep() {
+        basal.add(0.0)
+        extended.add(0.0)
+        tbrRunning.add(0.0)
+        profileMissing.add(1.0)
+        stepCount++
+    }
+
+    /**
+     * Add bolus. Events must be added in time order and after [eventsEnd]
+     */
+    fun addBolus(timestamp: Long, amount: Double) {
+        require(timestamp > eventsEnd && (bolusTimes.size == 0 || timestamp >= bolusTimes.last()))
+        bolusTimes.add(timestamp)
+        boluses.add(amount)
+    }
+
+    /**
+     * Add carbs. Events must be added in time order and after [eventsEnd]
+     */
+    fun addCarbs(timestamp: Long, amount: Double) {
+        require(timestamp > eventsEnd && (carbsTimes.size == 0 || timestamp >= carbsTimes.last()))
+        carbsTimes.add(timestamp)
+        carbs.add(amount)
+    }
+
+    /**
+     * Mark events up to [timestamp] (inclusive) as loaded
+     */
+    fun eventsLoaded(timestamp: Long) {
+        if (timestamp > eventsEnd) eventsEnd = timestamp
+    }
+
+    /**
+     * Forget everything at [timestamp] and later
+     */
+    fun invalidate(timestamp: Long) {
+        if (timestamp <= origin) {
+            reset(origin)
+            return
+        }
+        val steps = ((timestamp - origin + STEP - 1) / STEP).toInt()
+        if (steps < stepCount) {
+            stepCount = steps
+            listOf(basal, extended, tbrRunning, profileMissing).forEach { it.truncate(steps) }
+        }
+        if (timestamp <= eventsEnd) {
+            eventsEnd = timestamp - 1
+            boluses.truncate(bolusTimes.lowerBound(timestamp))
+            bolusTimes.truncate(boluses.size)
+            carbs.truncate(carbsTimes.lowerBound(timestamp))
+            carbsTimes.truncate(carbs.size)
+        }
+    }
+
+    /**
+     * Drop steps and events before [timestamp] to limit memory
+     */
+    fun trim(timestamp: Long) {
+        val steps = ((timestamp - origin) / STEP).toInt().coerceAtMost(stepCount)
+        if (steps <= 0) return
+        origin += steps * STEP
+        stepCount -= steps
+        listOf(basal, extended, tbrRunning, profileMissing).forEach { it.dropFirst(steps) }
+        val dropBoluses = bolusTimes.lowerBound(origin)
+        bolusTimes.dropFirst(dropBoluses)
+        boluses.dropFirst(dropBoluses)
+        val dropCarbs = carbsTimes.lowerBound(origin)
+        carbsTimes.dropFirst(dropCarbs)
+        carbs.dropFirst(dropCarbs)
+        if (eventsEnd < origin - 1) eventsEnd = origin - 1
+    }
+
+    /** Basal insulin of steps starting in [from, to), both aligned to 5 min */
+    fun basal(from: Long, to: Long): Double = basal.sum(step(from), step(to))
+
+    /** Extended bolus insulin of steps starting in [from, to), both aligned to 5 min */
+    fun extended(from: Long, to: Long): Double = extended.sum(step(from), step(to))
+
+    /** True if temporary basal was running in any step starting in [from, to) */
+    fun isTempBasalRunning(from: Long, to: Long): Boolean = tbrRunning.sum(step(from), step(to)) > 0
+
+    /** True if profile was missing in any step starting in [from, to) */
+    fun isProfileMissing(from: Long, to: Long): Boolean = profileMissing.sum(step(from), step(to)) > 0
+
+    /** Sum of boluses with timestamp in [from, to] */
+    fun boluses(from: Long, to: Long): Double =
+        if (from > to) 0.0 else boluses.sum(bolusTimes.lowerBound(from), bolusTimes.lowerBound(to + 1))
+
+    /** Sum of carbs with timestamp in [from, to] */
+    fun carbs(from: Long, to: Long): Double =
+        if (from > to) 0.0 else carbs.sum(carbsTimes.lowerBound(from), carbsTimes.lowerBound(to + 1))
+
+    private fun step(time: Long): Int {
+        require(time % STEP == 0L && time >= origin && time <= stepsEnd)
+        return ((time - origin) / STEP).toInt()
+    }
+
+    /**
+     * Growable array of prefix sums, sums[i] = sum of first i added values
+     */
+    private class DoubleSums {
+
+        private var sums = DoubleArray(INITIAL_CAPACITY + 1)
+        var size = 0
+            private set
+
+        fun add(value: Double) {
+            if (size + 1 == sums.size) sums = sums.copyOf(sums.size * 2)
+            sums[size + 1] = sums[size] + value
+            size++
+        }
+
+        fun sum(from: Int, to: Int): Double = if (to <= from) 0.0 else sums[to] - sums[from]
+
+        fun truncate(newSize: Int) {
+            if (newSize < size) size = newSize
+        }
+
+        fun dropFirst(count: Int) {
+            if (count <= 0) return
+            val base = sums[count]
+            for (i in 0..size - count) sums[i] = sums[i + count] - base
+            size -= count
+        }
+    }
+
+    private class LongList {
+
+        private var values = LongArray(INITIAL_CAPACITY)
+        var size = 0
+            private set
+
+        fun add(value: Long) {
+            if (size == values.size) values = values.copyOf(values.size * 2)
+            values[size++] = value
+        }
+
+        fun last(): Long = values[size - 1]
+
+        fun truncate(newSize: Int) {
+            if (newSize < size) size = newSize
+        }
+
+        fun dropFirst(count: Int) {
+            if (count <= 0) return
+            values.copyInto(values, 0, count, size)
+            size -= count
+        }
+
+        // index of first item >= value
+        fun lowerBound(value: Long): Int {
+            var low = 0
+            var high = size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (values[mid] < value) low = mid + 1 else high = mid
+            }
+            return low
+        }
+    }
+
+    companion object {
+
+        val STEP = T.mins(5).msecs()
+        private const val INITIAL_CAPACITY = 512
+    }
+}
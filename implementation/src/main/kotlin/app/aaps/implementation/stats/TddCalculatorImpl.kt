@@ -15,17 +15,24 @@ import app.aaps.core.interfaces.logging.LTag
 import app.aaps.core.interfaces.plugin.ActivePlugin
 import app.aaps.core.interfaces.profile.ProfileFunction
 import app.aaps.core.interfaces.resources.ResourceHelper
+import app.aaps.core.interfaces.rx.bus.RxBus
+import app.aaps.core.interfaces.rx.events.EventNewHistoryData
 import app.aaps.core.interfaces.stats.TddCalculator
 import app.aaps.core.interfaces.utils.DateUtil
 import app.aaps.core.interfaces.utils.MidnightTime
 import app.aaps.core.interfaces.utils.T
+import app.aaps.core.interfaces.utils.fabric.FabricPrivacy
 import app.aaps.database.ValueWrapper
 import app.aaps.database.entities.Bolus
 import app.aaps.database.entities.TotalDailyDose
 import app.aaps.database.entities.embedments.InterfaceIDs
 import app.aaps.database.impl.AppRepository
+import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.kotlin.plusAssign
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
+import kotlin.math.min
 
 @Singleton
 class TddCalculatorImpl @Inject constructor(
@@ -35,9 +42,26 @@ class TddCalculatorImpl @Inject constructor(
     private val profileFunction: ProfileFunction,
     private val dateUtil: DateUtil,
     private val iobCobCalculator: IobCobCalculator,
-    private val repository: AppRepository
+    private val repository: AppRepository,
+    private val rxBus: RxBus,
+    private val fabricPrivacy: FabricPrivacy
 ) : TddCalculator {
 
+    private val disposable = CompositeDisposable()
+    private val accumulator = TddAccumulator()
+    private var fakingTempsByExtendedBoluses = false
+
+    // oldest change of history not yet applied to accumulator
+    private val invalidateFrom = AtomicLong(Long.MAX_VALUE)
+
+    init {
+        // processed on sender's thread, must be applied before recalculation triggered by the same event
+        disposable += rxBus
+            .toObservable(EventNewHistoryData::class.java)
+            .filter { !it.reloadBgData }
+            .subscribe({ event -> invalidateFrom.accumulateAndGet(event.oldDataTimestamp, ::min) }, fabricPrivacy::logException)
+    }
+
     override fun calculate(days: Long, allowMissingDays: Boolean): LongSparseArray<TotalDailyDose>? {
         var startTime = MidnightTime.calcDaysBack(days)
         val endTime = MidnightTime.calc(dateUtil.now())
@@ -85,32 +109,17 @@ class TddCalculatorImpl @Inject constructor(
     }
 
     override fun calculate(startTime: Long, endTime: Long, allowMissingData: Boolean): TotalDailyDose? {
-        val startTimeAligned = startTime - startTime % (5 * 60 * 1000)
-        val endTimeAligned = endTime - endTime % (5 * 60 * 1000)
+        val startTimeAligned = startTime - startTime % TddAccumulator.STEP
+        val endTimeAligned = endTime - endTime % TddAccumulator.STEP
         val tdd = TotalDailyDose(timestamp = startTimeAligned)
-        var tbrFound = false
-        repository.getBolusesDataFromTimeToTime(startTime, endTime, true).blockingGet()
-            .filter { it.type != Bolus.Type.PRIMING }
-            .forEach { t ->
-                tdd.bolusAmount += t.amount
-            }
-        repository.getCarbsDataFromTimeToTimeExpanded(startTime, endTime, true).blockingGet().forEach { t ->
-            tdd.carbs += t.amount
-        }
-        val calculationStep = T.mins(5).msecs()
-        for (t in startTimeAligned until endTimeAligned step calculationStep) {
-
-            val profile = profileFunction.getProfile(t) ?: if (allowMissingData) continue else return null
-            val tbr = iobCobCalculator.getBasalData(profile, t)
-            if (tbr.isTempBasalRunning) tbrFound = true
-            val absoluteRate = tbr.tempBasalAbsolute
-            tdd.basalAmount += absoluteRate / 60.0 * 5.0
-
-            if (!activePlugin.activePump.isFakingTempsByExtendedBoluses) {
-                val eb = iobCobCalculator.getExtendedBolus(t)
-                val absoluteEbRate = eb?.rate ?: 0.0
-                tdd.bolusAmount += absoluteEbRate / 60.0 * 5.0
-            }
+        val tbrFound: Boolean
+        synchronized(accumulator) {
+            prepare(startTimeAligned, endTimeAligned, endTime)
+            if (!allowMissingData && accumulator.isProfileMissing(startTimeAligned, endTimeAligned)) return null
+            tbrFound = accumulator.isTempBasalRunning(startTimeAligned, endTimeAligned)
+            tdd.basalAmount = accumulator.basal(startTimeAligned, endTimeAligned)
+            tdd.bolusAmount = accumulator.boluses(startTime, endTime) + accumulator.extended(startTimeAligned, endTimeAligned)
+            tdd.carbs = accumulator.carbs(startTime, endTime)
         }
         tdd.totalAmount = tdd.bolusAmount + tdd.basalAmount
         aapsLogger.debug(LTag.CORE, tdd.toString())
@@ -118,6 +127,44 @@ class TddCalculatorImpl @Inject constructor(
         return null
     }
 
+    /**
+     * Make [accumulator] cover steps [startTimeAligned, endTimeAligned) and events up to [endTime]
+     */
+    private fun prepare(startTimeAligned: Long, endTimeAligned: Long, endTime: Long) {
+        val invalidFrom = invalidateFrom.getAndSet(Long.MAX_VALUE)
+        if (invalidFrom != Long.MAX_VALUE && !accumulator.isEmpty()) accumulator.invalidate(invalidFrom)
+        val fakingTempsByExtendedBoluses = activePlugin.activePump.isFakingTempsByExtendedBoluses
+        if (accumulator.isEmpty() || startTimeAligned < accumulator.origin || fakingTempsByExtendedBoluses != this.fakingTempsByExtendedBoluses) {
+            accumulator.reset(startTimeAligned)
+            this.fakingTempsByExtendedBoluses = fakingTempsByExtendedBoluses
+        }
+        accumulator.trim(startTimeAligned - T.days(KEEP_DAYS).msecs())
+
+        val stepsFrom = accumulator.stepsEnd
+        for (t in stepsFrom until endTimeAligned step TddAccumulator.STEP) {
+            val profile = profileFunction.getProfile(t)
+            if (profile == null) {
+                accumulator.addMissingStep()
+                continue
+            }
+            val tbr = iobCobCalculator.getBasalData(profile, t)
+            val absoluteEbRate = if (!fakingTempsByExtendedBoluses) iobCobCalculator.getExtendedBolus(t)?.rate ?: 0.0 else 0.0
+            accumulator.addStep(tbr.tempBasalAbsolute / 60.0 * 5.0, absoluteEbRate / 60.0 * 5.0, tbr.isTempBasalRunning)
+        }
+        if (stepsFrom < endTimeAligned) aapsLogger.debug(LTag.CORE, "TDD steps calculated ${dateUtil.dateAndTimeString(stepsFrom)} - ${dateUtil.dateAndTimeString(endTimeAligned)}")
+
+        val eventsFrom = accumulator.eventsEnd + 1
+        if (eventsFrom <= endTime) {
+            repository.getBolusesDataFromTimeToTime(eventsFrom, endTime, true).blockingGet()
+                .filter { it.type != Bolus.Type.PRIMING }
+                .sortedBy { it.timestamp }
+                .forEach { accumulator.addBolus(it.timestamp, it.amount) }
+            repository.getCarbsDataFromTimeToTimeExpanded(eventsFrom, endTime, true).blockingGet()
+                .forEach { accumulator.addCarbs(it.timestamp, it.amount) }
+            accumulator.eventsLoaded(endTime)
+        }
+    }
+
     override fun averageTDD(tdds: LongSparseArray<TotalDailyDose>?): TotalDailyDose? {
         val totalTdd = TotalDailyDose(timestamp = dateUtil.now())
         tdds ?: return null
@@ -172,4 +219,10 @@ class TddCalculatorImpl @Inject constructor(
             }
         }
     }
+
+    companion object {
+
+        // steps kept before oldest requested time
+        private const val KEEP_DAYS = 8L
+    }
 }
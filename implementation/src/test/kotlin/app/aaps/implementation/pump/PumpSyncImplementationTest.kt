@@ -0,0 +1,77 @@
+package app.aaps.implementation.pump
+
+import app.aaps.core.interfaces.logging.UserEntryLogger
+import app.aaps.core.interfaces.pump.DetailedBolusInfo
+import app.aaps.core.interfaces.pump.PumpSync
+import app.aaps.core.interfaces.pump.defs.PumpType
+import app.aaps.core.interfaces.utils.T
+import app.aaps.database.entities.Bolus
+import app.aaps.database.entities.TemporaryBasal
+import app.aaps.database.impl.AppRepository
+import app.aaps.database.impl.transactions.BatchTransaction
+import app.aaps.database.impl.transactions.SyncPumpBolusTransaction
+import app.aaps.database.impl.transactions.SyncPumpCancelTemporaryBasalIfAnyTransaction
+import app.aaps.database.impl.transactions.SyncPumpTemporaryBasalTransaction
+import app.aaps.shared.tests.TestBaseWithProfile
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.rxjava3.core.Single
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.Mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+class PumpSyncImplementationTest : TestBaseWithProfile() {
+
+    @Mock lateinit var repository: AppRepository
+    @Mock lateinit var uel: UserEntryLogger
+
+    private lateinit var sut: PumpSyncImplementation
+
+    private val pumpType = PumpType.DANA_I
+    private val pumpSerial = "ABC123"
+
+    @BeforeEach
+    fun setUp() {
+        `when`(sp.getString(app.aaps.core.utils.R.string.key_active_pump_type, "")).thenReturn(pumpType.description)
+        `when`(sp.getString(app.aaps.core.utils.R.string.key_active_pump_serial_number, "")).thenReturn(pumpSerial)
+        `when`(sp.getLong(app.aaps.core.utils.R.string.key_active_pump_change_timestamp, 0L)).thenReturn(now - T.hours(5).msecs())
+        sut = PumpSyncImplementation(aapsLogger, dateUtil, sp, rxBus, rh, profileFunction, repository, uel, activePlugin)
+    }
+
+    @Test
+    fun historyIsSyncedInOneTransaction() {
+        val temporaryBasal = TemporaryBasal(timestamp = now - T.hours(2).msecs(), type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = 1.0, duration = T.mins(30).msecs())
+        val bolusResult = SyncPumpBolusTransaction.TransactionResult().also { it.inserted.add(Bolus(timestamp = now - T.hours(3).msecs(), amount = 1.0, type = Bolus.Type.NORMAL)) }
+        // already known TBR, only updated
+        val temporaryBasalResult = SyncPumpTemporaryBasalTransaction.TransactionResult().also { it.updated.add(Pair(temporaryBasal, temporaryBasal)) }
+        val cancelResult = SyncPumpCancelTemporaryBasalIfAnyTransaction.TransactionResult().also { it.updated.add(Pair(temporaryBasal, temporaryBasal)) }
+        `when`(repository.runTransactionForResult(anyObject<BatchTransaction>())).thenReturn(Single.just(listOf(bolusResult, temporaryBasalResult, cancelResult)))
+
+        val results = sut.syncHistory(
+            listOf(
+                PumpSync.HistoryRecord.Bolus(now - T.hours(3).msecs(), 1.0, DetailedBolusInfo.BolusType.NORMAL, 1),
+                // older than pump registration
+                PumpSync.HistoryRecord.Bolus(now - T.hours(6).msecs(), 2.0, DetailedBolusInfo.BolusType.NORMAL, 2),
+                PumpSync.HistoryRecord.TemporaryBasal(now - T.hours(2).msecs(), 1.0, T.mins(30).msecs(), true, PumpSync.TemporaryBasalType.NORMAL, 3),
+                PumpSync.HistoryRecord.StopTemporaryBasal(now - T.hours(1).msecs(), 4)
+            ), pumpType, pumpSerial
+        )
+
+        assertThat(results).containsExactly(true, false, false, true).inOrder()
+        verify(repository, times(1)).runTransactionForResult(anyObject<BatchTransaction>())
+    }
+
+    @Test
+    fun rejectedHistoryIsNotWritten() {
+        val results = sut.syncHistory(
+            listOf(PumpSync.HistoryRecord.Carbs(now - T.hours(6).msecs(), 10.0, 1)),
+            pumpType, pumpSerial
+        )
+
+        assertThat(results).containsExactly(false)
+        verify(repository, never()).runTransactionForResult(anyObject<BatchTransaction>())
+    }
+}
@@ -32,6 +32,7 @@ import app.aaps.implementation.queue.commands.CommandBolus
 import app.aaps.implementation.queue.commands.CommandCustomCommand
 import app.aaps.implementation.queue.commands.CommandExtendedBolus
 import app.aaps.implementation.queue.commands.CommandLoadHistory
+import app.aaps.implementation.queue.commands.CommandReadStatus
 import app.aaps.implementation.queue.commands.CommandTempBasalPercent
 import app.aaps.shared.tests.TestBaseWithProfile
 import app.aaps.shared.tests.TestPumpPlugin
@@ -568,6 +569,70 @@ class CommandQueueImplementationTest : TestBaseWithProfile() {
         assertThat(commandQueue.statusInQueue()).isTrue()
     }
 
+    private fun performedOrder(): List<Command.CommandType?> {
+        val order = mutableListOf<Command.CommandType?>()
+        while (commandQueue.size() > 0) {
+            commandQueue.pickup()
+            order.add(commandQueue.performing?.commandType)
+        }
+        return order
+    }
+
+    @Test
+    fun readStatusIsNotOvertakenByBolus() {
+        // given
+        assertThat(commandQueue.size()).isEqualTo(0)
+
+        // when reading after bolus error
+        commandQueue.readStatus("bolus error", null)
+        commandQueue.loadEvents(null)
+        commandQueue.bolus(DetailedBolusInfo(), null)
+
+        // then
+        assertThat(performedOrder()).containsExactly(
+            Command.CommandType.READSTATUS, Command.CommandType.LOAD_EVENTS, Command.CommandType.BOLUS
+        ).inOrder()
+    }
+
+    @Test
+    fun routineReadStatusWaitsForLaterCommands() {
+        // given
+        assertThat(commandQueue.size()).isEqualTo(0)
+
+        // when
+        commandQueue.readStatus("keep alive", null, routine = true)
+        commandQueue.tempBasalAbsolute(0.0, 30, true, validProfile, PumpSync.TemporaryBasalType.NORMAL, null)
+        commandQueue.bolus(DetailedBolusInfo(), null)
+
+        // then
+        assertThat(performedOrder()).containsExactly(
+            Command.CommandType.TEMPBASAL, Command.CommandType.BOLUS, Command.CommandType.READSTATUS
+        ).inOrder()
+    }
+
+    @Test
+    fun routineReadStatusDoesNotReplaceRequiredOne() {
+        // given
+        assertThat(commandQueue.size()).isEqualTo(0)
+
+        // when
+        val routine = commandQueue.readStatus("keep alive", null, routine = true)
+        val required = commandQueue.readStatus("unconfirmed command", null)
+        val routine2 = commandQueue.readStatus("keep alive", null, routine = true)
+        commandQueue.bolus(DetailedBolusInfo(), null)
+
+        // then
+        assertThat(routine).isTrue()
+        assertThat(required).isTrue()
+        assertThat(routine2).isFalse()
+        commandQueue.pickup()
+        assertThat((commandQueue.performing as CommandReadStatus).routine).isFalse()
+        commandQueue.pickup()
+        assertThat(commandQueue.performing?.commandType).isEqualTo(Command.CommandType.BOLUS)
+        commandQueue.pickup()
+        assertThat((commandQueue.performing as CommandReadStatus).routine).isTrue()
+    }
+
     private class CustomCommand1 : CustomCommand {
 
         override val statusDescription: String
@@ -1,17 +1,23 @@
 package app.aaps.implementation.queue
 
 import android.content.Context
+import android.os.Handler
 import android.os.PowerManager
+import app.aaps.core.interfaces.alerts.LocalAlertUtils
 import app.aaps.core.interfaces.androidPermissions.AndroidPermission
 import app.aaps.core.interfaces.constraints.ConstraintsChecker
 import app.aaps.core.interfaces.db.PersistenceLayer
+import app.aaps.core.interfaces.nsclient.ProcessedDeviceStatusData
 import app.aaps.core.interfaces.pump.PumpSync
 import app.aaps.core.interfaces.pump.defs.PumpDescription
+import app.aaps.core.interfaces.queue.Callback
 import app.aaps.core.interfaces.queue.Command
 import app.aaps.core.interfaces.ui.UiInteraction
 import app.aaps.core.main.constraints.ConstraintObject
 import app.aaps.database.impl.AppRepository
+import app.aaps.implementation.queue.commands.CommandReadStatus
 import app.aaps.implementation.queue.commands.CommandTempBasalAbsolute
+import app.aaps.pump.virtual.VirtualPumpPlugin
 import app.aaps.shared.tests.TestBaseWithProfile
 import app.aaps.shared.tests.TestPumpPlugin
 import com.google.common.truth.Truth.assertThat
@@ -22,6 +28,9 @@ import org.junit.jupiter.api.Test
 import org.mockito.ArgumentMatchers
 import org.mockito.Mock
 import org.mockito.Mockito
+import org.mockito.invocation.InvocationOnMock
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class QueueThreadTest : TestBaseWithProfile() {
 
@@ -31,6 +40,9 @@ class QueueThreadTest : TestBaseWithProfile() {
     @Mock lateinit var androidPermission: AndroidPermission
     @Mock lateinit var uiInteraction: UiInteraction
     @Mock lateinit var persistenceLayer: PersistenceLayer
+    @Mock lateinit var pumpSync: PumpSync
+    @Mock lateinit var processedDeviceStatusData: ProcessedDeviceStatusData
+    @Mock lateinit var localAlertUtils: LocalAlertUtils
 
     private val injector = HasAndroidInjector {
         AndroidInjector {
@@ -42,6 +54,10 @@ class QueueThreadTest : TestBaseWithProfile() {
                 it.activePlugin = activePlugin
                 it.rh = rh
             }
+            if (it is CommandReadStatus) {
+                it.activePlugin = activePlugin
+                it.localAlertUtils = localAlertUtils
+            }
         }
     }
 
@@ -75,6 +91,7 @@ class QueueThreadTest : TestBaseWithProfile() {
         Mockito.`when`(constraintChecker.applyBasalPercentConstraints(anyObject(), anyObject()))
             .thenReturn(percentageConstraint)
         Mockito.`when`(rh.gs(ArgumentMatchers.eq(app.aaps.core.ui.R.string.temp_basal_absolute), anyObject(), anyObject())).thenReturn("TEMP BASAL %1\$.2f U/h %2\$d min")
+        Mockito.`when`(rh.gs(ArgumentMatchers.eq(app.aaps.core.ui.R.string.read_status), anyObject())).thenReturn("READ STATUS")
 
         sut = QueueThread(commandQueue, context, aapsLogger, rxBus, activePlugin, rh, sp, androidPermission, config)
     }
@@ -86,4 +103,41 @@ class QueueThreadTest : TestBaseWithProfile() {
         sut.run()
         assertThat(commandQueue.size()).isEqualTo(0)
     }
+
+    @Test
+    fun commandIsPerformedWithoutPolling() {
+        var keepConnectedSeconds = 60
+        val virtualPump = object : VirtualPumpPlugin(
+            injector, aapsLogger, rxBus, fabricPrivacy, rh, aapsSchedulers, sp, profileFunction, iobCobCalculator,
+            commandQueue, pumpSync, config, dateUtil, processedDeviceStatusData, persistenceLayer
+        ) {
+
+            override fun waitForDisconnectionInSeconds(): Int = keepConnectedSeconds
+        }
+        Mockito.`when`(activePlugin.activePump).thenReturn(virtualPump)
+        val handler = Mockito.mock(Handler::class.java)
+        Mockito.`when`(handler.post(anyObject())).thenAnswer { invocation: InvocationOnMock ->
+            (invocation.arguments[0] as Runnable).run()
+            true
+        }
+        commandQueue.handler = handler
+
+        val first = CountDownLatch(1)
+        commandQueue.readStatus("first", object : Callback() {
+            override fun run() = first.countDown()
+        })
+        assertThat(first.await(5, TimeUnit.SECONDS)).isTrue()
+
+        // queue thread is waiting for disconnection now and must wake up on new command
+        val second = CountDownLatch(1)
+        val start = System.currentTimeMillis()
+        commandQueue.readStatus("second", object : Callback() {
+            override fun run() = second.countDown()
+        })
+        assertThat(second.await(5, TimeUnit.SECONDS)).isTrue()
+        assertThat(System.currentTimeMillis() - start).isLessThan(500L)
+
+        keepConnectedSeconds = 0
+        commandQueue.clear()
+    }
 }
@@ -0,0 +1,107 @@
+package app.aaps.implementation.stats
+
+import app.aaps.core.interfaces.utils.T
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class TddAccumulatorTest {
+
+    private val step = TddAccumulator.STEP
+    private val origin = 1_700_000_000_000L - 1_700_000_000_000L % step
+    private val random = Random(1)
+
+    private class Step(val basal: Double, val extended: Double, val tbr: Boolean, val missing: Boolean)
+
+    private val steps = ArrayList<Step>()
+    private val boluses = ArrayList<Pair<Long, Double>>()
+    private val carbs = ArrayList<Pair<Long, Double>>()
+
+    private val sut = TddAccumulator().also { it.reset(origin) }
+
+    @Test
+    fun windowsMatchDirectSums() {
+        fill(T.days(2).msecs())
+        compare()
+    }
+
+    @Test
+    fun invalidateAndRefill() {
+        fill(T.days(2).msecs())
+        repeat(20) {
+            val from = origin + random.nextLong(T.days(2).msecs())
+            sut.invalidate(from)
+            steps.subList(((from - origin + step - 1) / step).toInt(), steps.size).clear()
+            boluses.removeIf { it.first >= from }
+            carbs.removeIf { it.first >= from }
+            assertThat(sut.eventsEnd).isEqualTo(from - 1)
+            fill(T.days(2).msecs())
+            compare()
+        }
+    }
+
+    @Test
+    fun trimKeepsNewerData() {
+        fill(T.days(3).msecs())
+        val trimTo = origin + T.days(1).msecs() + T.mins(2).msecs()
+        sut.trim(trimTo)
+        assertThat(sut.origin).isEqualTo(origin + T.days(1).msecs())
+        compare()
+        fill(T.days(4).msecs())
+        compare()
+    }
+
+    @Test
+    fun invalidateBeforeOriginResets() {
+        fill(T.hours(5).msecs())
+        sut.invalidate(origin - 1)
+        assertThat(sut.stepCount).isEqualTo(0)
+        assertThat(sut.eventsEnd).isEqualTo(origin - 1)
+        assertThat(sut.boluses(origin, origin + T.hours(5).msecs())).isEqualTo(0.0)
+    }
+
+    // append steps and events up to origin + duration
+    private fun fill(duration: Long) {
+        val end = origin + duration
+        while (sut.stepsEnd < end) {
+            if (random.nextInt(50) == 0) {
+                sut.addMissingStep()
+                steps.add(Step(0.0, 0.0, tbr = false, missing = true))
+            } else {
+                val s = Step(random.nextInt(0, 20) / 100.0, if (random.nextInt(10) == 0) 0.1 else 0.0, random.nextBoolean(), false)
+                sut.addStep(s.basal, s.extended, s.tbr)
+                steps.add(s)
+            }
+        }
+        var time = sut.eventsEnd + 1 + random.nextLong(T.mins(20).msecs())
+        while (time <= end) {
+            if (random.nextBoolean()) {
+                val amount = random.nextInt(1, 50) / 10.0
+                sut.addBolus(time, amount)
+                boluses.add(time to amount)
+            } else {
+                val amount = random.nextInt(1, 60).toDouble()
+                sut.addCarbs(time, amount)
+                carbs.add(time to amount)
+            }
+            time += random.nextLong(1, T.mins(40).msecs())
+        }
+        sut.eventsLoaded(end)
+    }
+
+    private fun compare() {
+        repeat(200) {
+            val from = sut.origin + random.nextLong(sut.stepsEnd - sut.origin)
+            val to = from + random.nextLong(sut.stepsEnd - from + 1)
+            val fromAligned = from - from % step
+            val toAligned = to - to % step
+            val window = steps.subList(((fromAligned - origin) / step).toInt(), ((toAligned - origin) / step).toInt())
+            assertThat(sut.basal(fromAligned, toAligned)).isWithin(1e-9).of(window.sumOf { it.basal })
+            assertThat(sut.extended(fromAligned, toAligned)).isWithin(1e-9).of(window.sumOf { it.extended })
+            assertThat(sut.isTempBasalRunning(fromAligned, toAligned)).isEqualTo(window.any { it.tbr })
+            assertThat(sut.isProfileMissing(fromAligned, toAligned)).isEqualTo(window.any { it.missing })
+            assertThat(sut.boluses(from, to)).isWithin(1e-9).of(boluses.filter { it.first in from..to }.sumOf { it.second })
+            assertThat(sut.carbs(from, to)).isWithin(1e-9).of(carbs.filter { it.first in from..to }.sumOf { it.second })
+        }
+    }
+}
@@ -4,6 +4,7 @@ import app.aaps.plugins.aps.logger.LoggerCallback
 import app.aaps.plugins.aps.openAPSAMA.DetermineBasalAdapterAMAJS
 import app.aaps.plugins.aps.openAPSAMA.DetermineBasalResultAMA
 import app.aaps.plugins.aps.openAPSSMB.DetermineBasalAdapterSMBJS
+import app.aaps.plugins.aps.openAPSSMB.DetermineBasalAdapterSMBKotlin
 import app.aaps.plugins.aps.openAPSSMB.DetermineBasalResultSMB
 import app.aaps.plugins.aps.openAPSSMBDynamicISF.DetermineBasalAdapterSMBDynamicISFJS
 import dagger.Module
@@ -18,5 +19,6 @@ abstract class AlgModule {
     @ContributesAndroidInjector abstract fun determineBasalResultAMAInjector(): DetermineBasalResultAMA
     @ContributesAndroidInjector abstract fun determineBasalAdapterAMAJSInjector(): DetermineBasalAdapterAMAJS
     @ContributesAndroidInjector abstract fun determineBasalAdapterSMBJSInjector(): DetermineBasalAdapterSMBJS
+    @ContributesAndroidInjector abstract fun determineBasalAdapterSMBKotlinInjector(): DetermineBasalAdapterSMBKotlin
     @ContributesAndroidInjector abstract fun determineBasalAdapterSMBAutoISFJSInjector(): DetermineBasalAdapterSMBDynamicISFJS
 }
\ No newline at end of file
@@ -31,6 +31,15 @@ class LoggerCallback : ScriptableObject() {
 
         private var errorBuffer = StringBuffer()
         private var logBuffer = StringBuffer()
+
+        /**
+         * Reset buffers before next script invocation
+         */
+        fun clear() {
+            errorBuffer = StringBuffer()
+            logBuffer = StringBuffer()
+        }
+
         val scriptDebug: String
             get() {
                 var ret = ""
@@ -53,8 +62,7 @@ class LoggerCallback : ScriptableObject() {
 
     init {
         //empty constructor needed for Rhino
-        errorBuffer = StringBuffer()
-        logBuffer = StringBuffer()
+        clear()
         @Suppress("DEPRECATION")
         StaticInjector.getInstance().androidInjector().inject(this)
     }
@@ -19,36 +19,33 @@ import app.aaps.core.main.extensions.plannedRemainingMinutes
 import app.aaps.plugins.aps.APSResultObject
 import app.aaps.plugins.aps.R
 import app.aaps.plugins.aps.logger.LoggerCallback
-import app.aaps.plugins.aps.utils.ScriptReader
+import app.aaps.plugins.aps.utils.ScriptRuntime
 import dagger.android.HasAndroidInjector
 import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
 import org.mozilla.javascript.Context
-import org.mozilla.javascript.Function
 import org.mozilla.javascript.NativeJSON
 import org.mozilla.javascript.NativeObject
 import org.mozilla.javascript.RhinoException
 import org.mozilla.javascript.Scriptable
-import org.mozilla.javascript.ScriptableObject
 import org.mozilla.javascript.Undefined
 import java.io.IOException
 import java.lang.reflect.InvocationTargetException
-import java.nio.charset.StandardCharsets
 import javax.inject.Inject
 import kotlin.math.min
 
-class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader, injector: HasAndroidInjector) : DetermineBasalAdapter {
+class DetermineBasalAdapterAMAJS internal constructor(injector: HasAndroidInjector) : DetermineBasalAdapter {
 
     private val injector: HasAndroidInjector
 
     @Inject lateinit var aapsLogger: AAPSLogger
+    @Inject lateinit var scriptRuntime: ScriptRuntime
     @Inject lateinit var constraintChecker: ConstraintsChecker
     @Inject lateinit var sp: SP
     @Inject lateinit var profileFunction: ProfileFunction
     @Inject lateinit var iobCobCalculator: IobCobCalculator
 
-    private val mScriptReader: ScriptReader
     private var profile = JSONObject()
     private var glucoseStatus = JSONObject()
     private var iobData: JSONArray? = null
@@ -73,56 +70,31 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
         aapsLogger.debug(LTag.APS, "Meal data:      " + mealData.toString().also { mealDataParam = it })
         aapsLogger.debug(LTag.APS, "Autosens data:  $autosensData")
         var determineBasalResultAMA: DetermineBasalResultAMA? = null
-        val rhino = Context.enter()
-        val scope: Scriptable = rhino.initStandardObjects()
-        // Turn off optimization to make Rhino Android compatible
-        rhino.optimizationLevel = -1
         try {
-
-            //register logger callback for console.log and console.error
-            ScriptableObject.defineClass(scope, LoggerCallback::class.java)
-            val myLogger = rhino.newObject(scope, "LoggerCallback", null)
-            scope.put("console2", scope, myLogger)
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/loggerhelper.js"), "JavaScript", 0, null)
-
-            //set module parent
-            rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "var round_basal = function round_basal(basal, profile) { return basal; };", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "require = function() {return round_basal;};", "JavaScript", 0, null)
-
-            //generate functions "determine_basal" and "setTempBasal"
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/determine-basal.js"), "JavaScript", 0, null)
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/basal-set-temp.js"), "setTempBasal.js", 0, null)
-            val determineBasalObj = scope["determine_basal", scope]
-            val setTempBasalFunctionsObj = scope["tempBasalFunctions", scope]
-
-            //call determine-basal
-            if (determineBasalObj is Function && setTempBasalFunctionsObj is NativeObject) {
-
+            determineBasalResultAMA = scriptRuntime.execute(ScriptRuntime.Algorithm.AMA) { rhino, script ->
                 //prepare parameters
                 val params = arrayOf(
-                    makeParam(glucoseStatus, rhino, scope),
-                    makeParam(currentTemp, rhino, scope),
-                    makeParamArray(iobData, rhino, scope),
-                    makeParam(profile, rhino, scope),
-                    makeParam(autosensData, rhino, scope),
-                    makeParam(mealData, rhino, scope),
-                    setTempBasalFunctionsObj
+                    makeParam(glucoseStatus, rhino, script.scope),
+                    makeParam(currentTemp, rhino, script.scope),
+                    makeParamArray(iobData, rhino, script.scope),
+                    makeParam(profile, rhino, script.scope),
+                    makeParam(autosensData, rhino, script.scope),
+                    makeParam(mealData, rhino, script.scope),
+                    script.tempBasalFunctions
                 )
-                val jsResult = determineBasalObj.call(rhino, scope, scope, params) as NativeObject
+                val jsResult = script.determineBasal.call(rhino, script.scope, script.scope, params) as NativeObject
                 scriptDebug = LoggerCallback.scriptDebug
 
                 // Parse the jsResult object to a JSON-String
-                val result = NativeJSON.stringify(rhino, scope, jsResult, null, null).toString()
+                val result = NativeJSON.stringify(rhino, script.scope, jsResult, null, null).toString()
                 aapsLogger.debug(LTag.APS, "Result: $result")
                 try {
                     val resultJson = JSONObject(result)
-                    determineBasalResultAMA = DetermineBasalResultAMA(injector, jsResult, resultJson)
+                    DetermineBasalResultAMA(injector, jsResult, resultJson)
                 } catch (e: JSONException) {
                     aapsLogger.error(LTag.APS, "Unhandled exception", e)
+                    null
                 }
-            } else {
-                aapsLogger.error(LTag.APS, "Problem loading JS Functions")
             }
         } catch (e: IOException) {
             aapsLogger.error(LTag.APS, "IOException")
@@ -134,8 +106,6 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
             aapsLogger.error(LTag.APS, e.toString())
         } catch (e: InvocationTargetException) {
             aapsLogger.error(LTag.APS, e.toString())
-        } finally {
-            Context.exit()
         }
         glucoseStatusParam = glucoseStatus.toString()
         iobDataParam = iobData.toString()
@@ -233,18 +203,8 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
         return NativeJSON.parse(rhino, scope, jsonArray.toString()) { _: Context?, _: Scriptable?, _: Scriptable?, objects: Array<Any?> -> objects[1] }
     }
 
-    @Throws(IOException::class) private fun readFile(filename: String): String {
-        val bytes = mScriptReader.readFile(filename)
-        var string = String(bytes, StandardCharsets.UTF_8)
-        if (string.startsWith("#!/usr/bin/env node")) {
-            string = string.substring(20)
-        }
-        return string
-    }
-
     init {
         injector.androidInjector().inject(this)
-        mScriptReader = scriptReader
         this.injector = injector
     }
 }
\ No newline at end of file
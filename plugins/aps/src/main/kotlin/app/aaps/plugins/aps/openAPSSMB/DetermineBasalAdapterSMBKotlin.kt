@@ -0,0 +1,205 @@
+package app.aaps.plugins.aps.openAPSSMB
+
+import app.aaps.core.interfaces.aps.DetermineBasalAdapter
+import app.aaps.core.interfaces.aps.SMBDefaults
+import app.aaps.core.interfaces.constraints.ConstraintsChecker
+import app.aaps.core.interfaces.db.GlucoseUnit
+import app.aaps.core.interfaces.iob.GlucoseStatus
+import app.aaps.core.interfaces.iob.IobCobCalculator
+import app.aaps.core.interfaces.iob.IobTotal
+import app.aaps.core.interfaces.iob.MealData
+import app.aaps.core.interfaces.logging.AAPSLogger
+import app.aaps.core.interfaces.logging.LTag
+import app.aaps.core.interfaces.plugin.ActivePlugin
+import app.aaps.core.interfaces.profile.Profile
+import app.aaps.core.interfaces.profile.ProfileFunction
+import app.aaps.core.interfaces.sharedPreferences.SP
+import app.aaps.core.interfaces.utils.DateUtil
+import app.aaps.core.interfaces.utils.SafeParse
+import app.aaps.core.main.extensions.convertedToAbsolute
+import app.aaps.core.main.extensions.getPassedDurationToTimeInMinutes
+import app.aaps.core.main.extensions.plannedRemainingMinutes
+import app.aaps.plugins.aps.APSResultObject
+import app.aaps.plugins.aps.R
+import dagger.android.HasAndroidInjector
+import org.json.JSONException
+import org.json.JSONObject
+import javax.inject.Inject
+
+/**
+ * Same inputs as [DetermineBasalAdapterSMBJS] but evaluated by native [DetermineBasalSMB]
+ * instead of running determine-basal.js in Rhino
+ */
+class DetermineBasalAdapterSMBKotlin internal constructor(private val injector: HasAndroidInjector) : DetermineBasalAdapter {
+
+    @Inject lateinit var aapsLogger: AAPSLogger
+    @Inject lateinit var constraintChecker: ConstraintsChecker
+    @Inject lateinit var sp: SP
+    @Inject lateinit var profileFunction: ProfileFunction
+    @Inject lateinit var iobCobCalculator: IobCobCalculator
+    @Inject lateinit var activePlugin: ActivePlugin
+    @Inject lateinit var dateUtil: DateUtil
+
+    private var profile: OapsProfile? = null
+    private var glucoseStatus: GlucoseStatus? = null
+    private var iobData: Array<IobTotal>? = null
+    private var mealData: MealData? = null
+    private var currentTemp: DetermineBasalSMB.CurrentTemp? = null
+    private var autosensDataRatio = 1.0
+    private var microBolusAllowed = false
+    private var smbAlwaysAllowed = false
+    private var currentTime: Long = 0
+    private var flatBGsDetected = false
+
+    override var currentTempParam: String? = null
+    override var iobDataParam: String? = null
+    override var glucoseStatusParam: String? = null
+    override var profileParam: String? = null
+    override var mealDataParam: String? = null
+    override var scriptDebug = ""
+
+    @Suppress("SpellCheckingInspection")
+    override operator fun invoke(): APSResultObject? {
+        val profile = profile ?: return null
+        val glucoseStatus = glucoseStatus ?: return null
+        val iobData = iobData ?: return null
+        val mealData = mealData ?: return null
+        val currentTemp = currentTemp ?: return null
+        aapsLogger.debug(LTag.APS, ">>> Invoking determine_basal (native) <<<")
+        aapsLogger.debug(LTag.APS, "Glucose status: " + glucoseStatusParam)
+        aapsLogger.debug(LTag.APS, "IOB data:       " + iobDataParam)
+        aapsLogger.debug(LTag.APS, "Current temp:   " + currentTempParam)
+        aapsLogger.debug(LTag.APS, "Profile:        " + profileParam)
+        aapsLogger.debug(LTag.APS, "Meal data:      " + mealDataParam)
+        aapsLogger.debug(LTag.APS, "Autosens data:  $autosensDataRatio")
+        aapsLogger.debug(LTag.APS, "MicroBolusAllowed:  $microBolusAllowed")
+        aapsLogger.debug(LTag.APS, "SMBAlwaysAllowed:  $smbAlwaysAllowed")
+        aapsLogger.debug(LTag.APS, "CurrentTime: $currentTime")
+        aapsLogger.debug(LTag.APS, "flatBGsDetected: $flatBGsDetected")
+        val determineBasal = DetermineBasalSMB(dateUtil)
+        return try {
+            val result = determineBasal.determine_basal(
+                glucoseStatus, currentTemp, iobData, profile, autosensDataRatio, mealData, microBolusAllowed, currentTime, flatBGsDetected
+            ).json(dateUtil)
+            scriptDebug = "d:\n" + determineBasal.consoleLog.toString()
+            aapsLogger.debug(LTag.APS, "Result: $result")
+            DetermineBasalResultSMB(injector, result)
+        } catch (e: JSONException) {
+            aapsLogger.error(LTag.APS, "Unhandled exception", e)
+            null
+        }
+    }
+
+    @Suppress("SpellCheckingInspection")
+    override fun setData(
+        profile: Profile,
+        maxIob: Double,
+        maxBasal: Double,
+        minBg: Double,
+        maxBg: Double,
+        targetBg: Double,
+        basalRate: Double,
+        iobArray: Array<IobTotal>,
+        glucoseStatus: GlucoseStatus,
+        mealData: MealData,
+        autosensDataRatio: Double,
+        tempTargetSet: Boolean,
+        microBolusAllowed: Boolean,
+        uamAllowed: Boolean,
+        advancedFiltering: Boolean,
+        flatBGsDetected: Boolean,
+        tdd1D: Double?,
+        tdd7D: Double?,
+        tddLast24H: Double?,
+        tddLast4H: Double?,
+        tddLast8to4H: Double?
+    ) {
+        val pump = activePlugin.activePump
+        val pumpBolusStep = pump.pumpDescription.bolusStep
+        val smbEnabled = sp.getBoolean(R.string.key_use_smb, false)
+        val oapsProfile = OapsProfile(
+            max_iob = maxIob,
+            max_daily_basal = profile.getMaxDailyBasal(),
+            max_basal = maxBasal,
+            min_bg = minBg,
+            max_bg = maxBg,
+            target_bg = targetBg,
+            carb_ratio = profile.getIc(),
+            sens = profile.getIsfMgdl(),
+            max_daily_safety_multiplier = sp.getInt(R.string.key_openapsama_max_daily_safety_multiplier, 3).toDouble(),
+            current_basal_safety_multiplier = sp.getDouble(R.string.key_openapsama_current_basal_safety_multiplier, 4.0),
+            high_temptarget_raises_sensitivity = false,
+            low_temptarget_lowers_sensitivity = false,
+            sensitivity_raises_target = sp.getBoolean(R.string.key_sensitivity_raises_target, SMBDefaults.sensitivity_raises_target),
+            resistance_lowers_target = sp.getBoolean(R.string.key_resistance_lowers_target, SMBDefaults.resistance_lowers_target),
+            adv_target_adjustments = SMBDefaults.adv_target_adjustments,
+            exercise_mode = SMBDefaults.exercise_mode,
+            half_basal_exercise_target = SMBDefaults.half_basal_exercise_target.toDouble(),
+            maxCOB = SMBDefaults.maxCOB.toDouble(),
+            skip_neutral_temps = pump.setNeutralTempAtFullHour(),
+            remainingCarbsCap = SMBDefaults.remainingCarbsCap.toDouble(),
+            enableUAM = uamAllowed,
+            A52_risk_enable = SMBDefaults.A52_risk_enable,
+            SMBInterval = sp.getInt(R.string.key_smb_interval, SMBDefaults.SMBInterval).toDouble(),
+            enableSMB_with_COB = smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_COB, false),
+            enableSMB_with_temptarget = smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_temptarget, false),
+            allowSMB_with_high_temptarget = smbEnabled && sp.getBoolean(R.string.key_allowSMB_with_high_temptarget, false),
+            enableSMB_always = smbEnabled && sp.getBoolean(R.string.key_enableSMB_always, false) && advancedFiltering,
+            enableSMB_after_carbs = smbEnabled && sp.getBoolean(R.string.key_enableSMB_after_carbs, false) && advancedFiltering,
+            maxSMBBasalMinutes = sp.getInt(R.string.key_smb_max_minutes, SMBDefaults.maxSMBBasalMinutes).toDouble(),
+            maxUAMSMBBasalMinutes = sp.getInt(R.string.key_uam_smb_max_minutes, SMBDefaults.maxUAMSMBBasalMinutes).toDouble(),
+            //set the min SMB amount to be the amount set by the pump.
+            bolus_increment = pumpBolusStep,
+            carbsReqThreshold = sp.getInt(R.string.key_carbsReqThreshold, SMBDefaults.carbsReqThreshold).toDouble(),
+            current_basal = basalRate,
+            temptargetSet = tempTargetSet,
+            autosens_max = SafeParse.stringToDouble(sp.getString(app.aaps.core.utils.R.string.key_openapsama_autosens_max, "1.2")),
+            out_units = if (profileFunction.getUnits() == GlucoseUnit.MMOL) "mmol/L" else null
+        )
+        val now = dateUtil.now()
+        val tb = iobCobCalculator.getTempBasalIncludingConvertedExtended(now)
+        val currentTemp = DetermineBasalSMB.CurrentTemp(
+            duration = tb?.plannedRemainingMinutes?.toDouble() ?: 0.0,
+            rate = tb?.convertedToAbsolute(now, profile) ?: 0.0,
+            // as we have non default temps longer than 30 mintues
+            minutesrunning = tb?.getPassedDurationToTimeInMinutes(now)?.toDouble()
+        )
+        val usedGlucoseStatus =
+            if (sp.getBoolean(R.string.key_always_use_shortavg, false)) glucoseStatus.copy(delta = glucoseStatus.shortAvgDelta)
+            else glucoseStatus
+        this.profile = oapsProfile
+        this.currentTemp = currentTemp
+        this.iobData = iobArray
+        this.glucoseStatus = usedGlucoseStatus
+        this.mealData = mealData
+        this.autosensDataRatio = if (constraintChecker.isAutosensModeEnabled().value()) autosensDataRatio else 1.0
+        this.microBolusAllowed = microBolusAllowed
+        smbAlwaysAllowed = advancedFiltering
+        currentTime = now
+        this.flatBGsDetected = flatBGsDetected
+
+        profileParam = oapsProfile.json().toString()
+        currentTempParam = currentTemp.json().toString()
+        iobDataParam = iobCobCalculator.convertToJSONArray(iobArray).toString()
+        glucoseStatusParam = JSONObject()
+            .put("glucose", usedGlucoseStatus.glucose)
+            .put("noise", usedGlucoseStatus.noise)
+            .put("delta", usedGlucoseStatus.delta)
+            .put("short_avgdelta", usedGlucoseStatus.shortAvgDelta)
+            .put("long_avgdelta", usedGlucoseStatus.longAvgDelta)
+            .put("date", usedGlucoseStatus.date)
+            .toString()
+        mealDataParam = JSONObject()
+            .put("carbs", mealData.carbs)
+            .put("mealCOB", mealData.mealCOB)
+            .put("slopeFromMaxDeviation", mealData.slopeFromMaxDeviation)
+            .put("slopeFromMinDeviation", mealData.slopeFromMinDeviation)
+            .put("lastBolusTime", mealData.lastBolusTime)
+            .put("lastCarbTime", mealData.lastCarbTime)
+            .toString()
+    }
+
+    init {
+        injector.androidInjector().inject(this)
+    }
+}
@@ -0,0 +1,1148 @@
+package app.aaps.plugins.aps.openAPSSMB
+
+import app.aaps.core.interfaces.iob.GlucoseStatus
+import app.aaps.core.interfaces.iob.IobTotal
+import app.aaps.core.interfaces.iob.MealData
+import app.aaps.core.interfaces.utils.DateUtil
+import org.json.JSONArray
+import org.json.JSONObject
+import java.math.BigDecimal
+import java.text.SimpleDateFormat
+import java.util.Calendar
+import java.util.Locale
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.pow
+
+/**
+ * Kotlin port of oref1 SMB determine-basal.js and basal-set-temp.js (OpenAPSSMB assets)
+ *
+ * Must be kept in sync with JS version. Numeric semantics of JS are preserved (NaN propagation,
+ * Math.round half-up, truthiness of numbers) so results are identical for the same inputs.
+ * Console output of the script is collected to [consoleLog].
+ */
+@Suppress("SpellCheckingInspection", "LocalVariableName", "FunctionName")
+class DetermineBasalSMB(private val dateUtil: DateUtil) {
+
+    data class CurrentTemp(
+        val duration: Double,
+        val rate: Double,
+        val minutesrunning: Double? = null
+    ) {
+
+        fun json(): JSONObject = JSONObject()
+            .put("temp", "absolute")
+            .put("duration", duration)
+            .put("rate", rate)
+            .also { if (minutesrunning != null) it.put("minutesrunning", minutesrunning) }
+    }
+
+    class Predictions {
+
+        var IOB: MutableList<Double>? = null
+        var ZT: MutableList<Double>? = null
+        var COB: MutableList<Double>? = null
+        var UAM: MutableList<Double>? = null
+
+        fun json(): JSONObject = JSONObject().also { json ->
+            IOB?.let { json.put("IOB", JSONArray(it)) }
+            ZT?.let { json.put("ZT", JSONArray(it)) }
+            COB?.let { json.put("COB", JSONArray(it)) }
+            UAM?.let { json.put("UAM", JSONArray(it)) }
+        }
+    }
+
+    /**
+     * Mirror of `rT` object. Properties are serialized in the same order as JS creates them
+     */
+    class RT {
+
+        var error: String? = null
+        var temp: String? = null
+        var bg: Double? = null
+        var tick: Any? = null
+        var eventualBG: Double? = null
+        var targetBG: Double? = null
+        var insulinReq: Double? = null
+        var deliverAt: Long? = null
+        var sensitivityRatio: Double? = null
+        var predBGs: Predictions? = null
+        var COB: Double? = null
+        var IOB: Double? = null
+        var reason: String? = null
+        var carbsReq: Double? = null
+        var carbsReqWithin: Double? = null
+        var units: Double? = null
+        var rate: Double? = null
+        var duration: Double? = null
+
+        // JSON.stringify() of JS writes NaN as null, leave such values out
+        fun json(dateUtil: DateUtil): JSONObject = JSONObject().also { json ->
+            fun put(key: String, value: Any?) {
+                if (value != null && !(value is Double && value.isNaN())) json.put(key, value)
+            }
+            put("error", error)
+            put("temp", temp)
+            put("bg", bg)
+            put("tick", tick)
+            put("eventualBG", eventualBG)
+            put("targetBG", targetBG)
+            put("insulinReq", insulinReq)
+            put("deliverAt", deliverAt?.let { dateUtil.toISOString(it) })
+            put("sensitivityRatio", sensitivityRatio)
+            put("predBGs", predBGs?.json())
+            put("COB", COB)
+            put("IOB", IOB)
+            put("reason", reason)
+            put("carbsReq", carbsReq)
+            put("carbsReqWithin", carbsReqWithin)
+            put("units", units)
+            put("rate", rate)
+            put("duration", duration)
+        }
+    }
+
+    val consoleLog = StringBuilder()
+
+    private fun console(vararg args: Any?) {
+        consoleLog.append(args.joinToString(" ") { jsString(it) }).append('\n')
+    }
+
+    // Rounds value to 'digits' decimal places
+    // floor(x + 0.5) keeps JS Math.round semantics for negative halves and NaN
+    private fun round(value: Double, digits: Int = 0): Double {
+        val scale = 10.0.pow(digits)
+        return floor(value * scale + 0.5) / scale
+    }
+
+    // we expect BG to rise or fall at the rate of BGI,
+    // adjusted by the rate at which BG would need to rise /
+    // fall to get eventualBG to target over 2 hours
+    private fun calculate_expected_delta(target_bg: Double, eventual_bg: Double, bgi: Double): Double {
+        // (hours * mins_per_hour) / 5 = how many 5 minute periods in 2h = 24
+        val five_min_blocks = (2 * 60) / 5
+        val target_delta = target_bg - eventual_bg
+        return round(bgi + (target_delta / five_min_blocks), 1)
+    }
+
+    private fun convert_bg(value: Double, profile: OapsProfile): String =
+        if (profile.out_units == "mmol/L") toFixed(round(value / 18, 1), 1)
+        else jsString(round(value))
+
+    // round-basal.js is replaced by identity function in AAPS
+    private fun round_basal(basal: Double): Double = basal
+
+    private fun enable_smb(profile: OapsProfile, microBolusAllowed: Boolean, meal_data: MealData, target_bg: Double): Boolean {
+        // disable SMB when a high temptarget is set
+        if (!microBolusAllowed) {
+            console("SMB disabled (!microBolusAllowed)")
+            return false
+        } else if (!profile.allowSMB_with_high_temptarget && profile.temptargetSet && target_bg > 100) {
+            console("SMB disabled due to high temptarget of", target_bg)
+            return false
+        }
+        // meal_data.bwFound is never set in AAPS
+
+        // enable SMB/UAM if always-on (unless previously disabled for high temptarget)
+        if (profile.enableSMB_always) {
+            console("SMB enabled due to enableSMB_always")
+            return true
+        }
+
+        // enable SMB/UAM (if enabled in preferences) while we have COB
+        if (profile.enableSMB_with_COB && truthy(meal_data.mealCOB)) {
+            console("SMB enabled for COB of", meal_data.mealCOB)
+            return true
+        }
+
+        // enable SMB/UAM (if enabled in preferences) for a full 6 hours after any carb entry
+        // (6 hours is defined in carbWindow in lib/meal/total.js)
+        if (profile.enableSMB_after_carbs && truthy(meal_data.carbs)) {
+            console("SMB enabled for 6h after carb entry")
+            return true
+        }
+
+        // enable SMB/UAM (if enabled in preferences) if a low temptarget is set
+        if (profile.enableSMB_with_temptarget && (profile.temptargetSet && target_bg < 100)) {
+            console("SMB enabled for temptarget of", convert_bg(target_bg, profile))
+            return true
+        }
+
+        console("SMB disabled (no enableSMB preferences active or no condition satisfied)")
+        return false
+    }
+
+    private fun getMaxSafeBasal(profile: OapsProfile): Double =
+        min(profile.max_basal, min(profile.max_daily_safety_multiplier * profile.max_daily_basal, profile.current_basal_safety_multiplier * profile.current_basal))
+
+    private fun reason(rT: RT, msg: String) {
+        rT.reason = (if (rT.reason.isNullOrEmpty()) "" else rT.reason + ". ") + msg
+        console(msg)
+    }
+
+    private fun setTempBasal(_rate: Double, duration: Double, profile: OapsProfile, rT: RT, currenttemp: CurrentTemp): RT {
+        val maxSafeBasal = getMaxSafeBasal(profile)
+        var rate = _rate
+
+        if (rate < 0) rate = 0.0
+        else if (rate > maxSafeBasal) rate = maxSafeBasal
+
+        val suggestedRate = round_basal(rate)
+        if (currenttemp.duration > (duration - 10) && currenttemp.duration <= 120 && suggestedRate <= currenttemp.rate * 1.2 && suggestedRate >= currenttemp.rate * 0.8 && duration > 0) {
+            rT.reason += " " + jsString(currenttemp.duration) + "m left and " + jsString(currenttemp.rate) + " ~ req " + jsString(suggestedRate) + "U/hr: no temp required"
+            return rT
+        }
+
+        if (suggestedRate == profile.current_basal) {
+            if (profile.skip_neutral_temps) {
+                if (currenttemp.duration > 0) {
+                    reason(rT, "Suggested rate is same as profile rate, a temp basal is active, canceling current temp")
+                    rT.duration = 0.0
+                    rT.rate = 0.0
+                    return rT
+                } else {
+                    reason(rT, "Suggested rate is same as profile rate, no temp basal is active, doing nothing")
+                    return rT
+                }
+            } else {
+                reason(rT, "Setting neutral temp basal of " + jsString(profile.current_basal) + "U/hr")
+                rT.duration = duration
+                rT.rate = suggestedRate
+                return rT
+            }
+        } else {
+            rT.duration = duration
+            rT.rate = suggestedRate
+            return rT
+        }
+    }
+
+    fun determine_basal(
+        glucose_status: GlucoseStatus, currenttemp: CurrentTemp, iob_data_array: Array<IobTotal>, profile: OapsProfile, autosens_data_ratio: Double, meal_data: MealData,
+        microBolusAllowed: Boolean, currentTime: Long, flatBGsDetected: Boolean
+    ): RT {
+        consoleLog.clear()
+        var rT = RT() //short for requestedTemp
+
+        val deliverAt = currentTime
+
+        val profile_current_basal = round_basal(profile.current_basal)
+        var basal = profile_current_basal
+
+        val systemTime = currentTime
+        val bgTime = glucose_status.date
+        val minAgo = round((systemTime - bgTime) / 60.0 / 1000.0, 1)
+
+        val bg = glucose_status.glucose
+        val noise = glucose_status.noise
+        // 38 is an xDrip error state that usually indicates sensor failure
+        // all other BG values between 11 and 37 mg/dL reflect non-error-code BG values, so we should zero temp for those
+        if (bg <= 10 || bg == 38.0 || noise >= 3) {  //Dexcom is in ??? mode or calibrating, or xDrip reports high noise
+            rT.reason = "CGM is calibrating, in ??? state, or noise is high"
+        }
+        if (minAgo > 12 || minAgo < -5) { // Dexcom data is too old, or way in the future
+            rT.reason = "If current system time " + jsString(systemTime.toDouble()) + " is correct, then BG data is too old. The last BG data was read " + jsString(minAgo) + "m ago at " + jsDate(bgTime)
+            // if BG is too old/noisy, or is changing less than 1 mg/dL/5m for 45m, cancel any high temps and shorten any long zero temps
+        } else if (bg > 60 && flatBGsDetected) {
+            // glucose_status.last_cal is never set in AAPS
+            rT.reason = "Error: CGM data is unchanged for the past ~45m"
+        }
+        if (bg <= 10 || bg == 38.0 || noise >= 3 || minAgo > 12 || minAgo < -5 || (bg > 60 && flatBGsDetected)) {
+            if (currenttemp.rate > basal) { // high temp is running
+                rT.reason += ". Replacing high temp basal of " + jsString(currenttemp.rate) + " with neutral temp of " + jsString(basal)
+                rT.deliverAt = deliverAt
+                rT.temp = "absolute"
+                rT.duration = 30.0
+                rT.rate = basal
+                return rT
+            } else if (currenttemp.rate == 0.0 && currenttemp.duration > 30) { //shorten long zero temps to 30m
+                rT.reason += ". Shortening " + jsString(currenttemp.duration) + "m long zero temp to 30m. "
+                rT.deliverAt = deliverAt
+                rT.temp = "absolute"
+                rT.duration = 30.0
+                rT.rate = 0.0
+                return rT
+            } else { //do nothing.
+                rT.reason += ". Temp " + jsString(currenttemp.rate) + " <= current basal " + jsString(round(basal, 2)) + "U/hr; doing nothing. "
+                return rT
+            }
+        }
+
+        val max_iob = profile.max_iob // maximum amount of non-bolus IOB OpenAPS will ever deliver
+
+        // if min and max are set, then set target to their average
+        var min_bg = profile.min_bg
+        var max_bg = profile.max_bg
+        var target_bg = (profile.min_bg + profile.max_bg) / 2
+
+        var sensitivityRatio: Double
+        val high_temptarget_raises_sensitivity = profile.exercise_mode || profile.high_temptarget_raises_sensitivity
+        val normalTarget = 100 // evaluate high/low temptarget against 100, not scheduled target (which might change)
+        // when temptarget is 160 mg/dL, run 50% basal (120 = 75%; 140 = 60%)
+        // 80 mg/dL with low_temptarget_lowers_sensitivity would give 1.5x basal, but is limited to autosens_max (1.2x by default)
+        val halfBasalTarget = if (truthy(profile.half_basal_exercise_target)) profile.half_basal_exercise_target else 160.0
+        if (high_temptarget_raises_sensitivity && profile.temptargetSet && target_bg > normalTarget
+            || profile.low_temptarget_lowers_sensitivity && profile.temptargetSet && target_bg < normalTarget
+        ) {
+            // w/ target 100, temp target 110 = .89, 120 = 0.8, 140 = 0.67, 160 = .57, and 200 = .44
+            // e.g.: Sensitivity ratio set to 0.8 based on temp target of 120; Adjusting basal from 1.65 to 1.35; ISF from 58.9 to 73.6
+            val c = halfBasalTarget - normalTarget
+            sensitivityRatio = c / (c + target_bg - normalTarget)
+            // limit sensitivityRatio to profile.autosens_max (1.2x by default)
+            sensitivityRatio = min(sensitivityRatio, profile.autosens_max)
+            sensitivityRatio = round(sensitivityRatio, 2)
+            console("Sensitivity ratio set to " + jsString(sensitivityRatio) + " based on temp target of " + jsString(target_bg) + "; ")
+        } else {
+            sensitivityRatio = autosens_data_ratio
+            console("Autosens ratio: " + jsString(sensitivityRatio) + "; ")
+        }
+        if (truthy(sensitivityRatio)) {
+            basal = profile.current_basal * sensitivityRatio
+            basal = round_basal(basal)
+            if (basal != profile_current_basal)
+                console("Adjusting basal from " + jsString(profile_current_basal) + " to " + jsString(basal) + "; ")
+            else
+                console("Basal unchanged: " + jsString(basal) + "; ")
+        }
+
+        // adjust min, max, and target BG for sensitivity, such that 50% increase in ISF raises target from 100 to 120
+        if (profile.temptargetSet) {
+            //console.log("Temp Target set, not adjusting with autosens; ");
+        } else {
+            if (profile.sensitivity_raises_target && autosens_data_ratio < 1 || profile.resistance_lowers_target && autosens_data_ratio > 1) {
+                // with a target of 100, default 0.7-1.2 autosens min/max range would allow a 93-117 target range
+                min_bg = round((min_bg - 60) / autosens_data_ratio) + 60
+                max_bg = round((max_bg - 60) / autosens_data_ratio) + 60
+                var new_target_bg = round((target_bg - 60) / autosens_data_ratio) + 60
+                // don't allow target_bg below 80
+                new_target_bg = max(80.0, new_target_bg)
+                if (target_bg == new_target_bg)
+                    console("target_bg unchanged: " + jsString(new_target_bg) + "; ")
+                else
+                    console("target_bg from " + jsString(target_bg) + " to " + jsString(new_target_bg) + "; ")
+                target_bg = new_target_bg
+            }
+        }
+
+        if (iob_data_array.size <= 1) {
+            rT.error = "Error: iob_data missing some property. "
+            return rT
+        }
+        val iob_data = iob_data_array[0]
+
+        val tick: Any =
+            if (glucose_status.delta > -0.5) "+" + jsString(round(glucose_status.delta, 0))
+            else round(glucose_status.delta, 0)
+        //var minDelta = Math.min(glucose_status.delta, glucose_status.short_avgdelta, glucose_status.long_avgdelta);
+        val minDelta = min(glucose_status.delta, glucose_status.shortAvgDelta)
+        val minAvgDelta = min(glucose_status.shortAvgDelta, glucose_status.longAvgDelta)
+        val maxDelta = max(glucose_status.delta, max(glucose_status.shortAvgDelta, glucose_status.longAvgDelta))
+
+        val profile_sens = round(profile.sens, 1)
+        var sens = profile.sens / sensitivityRatio
+        sens = round(sens, 1)
+        if (sens != profile_sens)
+            console("ISF from " + jsString(profile_sens) + " to " + jsString(sens))
+        else
+            console("ISF unchanged: " + jsString(sens))
+        //console.log(" (autosens ratio "+sensitivityRatio+")");
+        console("CR:", profile.carb_ratio)
+
+        // iob_data.lastTemp is not provided by AAPS, lastTempAge is always 0
+        val lastTempAge = 0.0
+        val tempModulus = (lastTempAge + currenttemp.duration) % 30
+        console("currenttemp:", round(currenttemp.rate, 2), "lastTempAge:", lastTempAge, "m", "tempModulus:", tempModulus, "m")
+        rT.temp = "absolute"
+        rT.deliverAt = deliverAt
+
+        //calculate BG impact: the amount BG "should" be rising or falling based on insulin activity alone
+        val bgi = round((-iob_data.activity * sens * 5), 2)
+        // project deviations for 30 minutes
+        var deviation = round(30.0 / 5 * (minDelta - bgi))
+        // don't overreact to a big negative delta: use minAvgDelta if deviation is negative
+        if (deviation < 0) {
+            deviation = round((30.0 / 5) * (minAvgDelta - bgi))
+            // and if deviation is still negative, use long_avgdelta
+            if (deviation < 0) {
+                deviation = round((30.0 / 5) * (glucose_status.longAvgDelta - bgi))
+            }
+        }
+
+        // calculate the naive (bolus calculator math) eventual BG based on net IOB and sensitivity
+        val naive_eventualBG =
+            if (iob_data.iob > 0) round(bg - (iob_data.iob * sens))
+            else  // if IOB is negative, be more conservative and use the lower of sens, profile.sens
+                round(bg - (iob_data.iob * min(sens, profile.sens)))
+        // and adjust it for the deviation above
+        var eventualBG = naive_eventualBG + deviation
+
+        // raise target for noisy / raw CGM data
+        if (glucose_status.noise >= 2) {
+            // increase target at least 10% (default 30%) for raw / noisy data
+            // profile.noisyCGMTargetMultiplier is not provided by AAPS
+            val noisyCGMTargetMultiplier = max(1.1, Double.NaN)
+            val adjustedMinBG = round(min(200.0, min_bg * noisyCGMTargetMultiplier))
+            val adjustedTargetBG = round(min(200.0, target_bg * noisyCGMTargetMultiplier))
+            val adjustedMaxBG = round(min(200.0, max_bg * noisyCGMTargetMultiplier))
+            console("Raising target_bg for noisy / raw CGM data, from " + jsString(target_bg) + " to " + jsString(adjustedTargetBG) + "; ")
+            min_bg = adjustedMinBG
+            target_bg = adjustedTargetBG
+            max_bg = adjustedMaxBG
+            // adjust target BG range if configured to bring down high BG faster
+        } else if (bg > max_bg && profile.adv_target_adjustments && !profile.temptargetSet) {
+            // with target=100, as BG rises from 100 to 160, adjustedTarget drops from 100 to 80
+            val adjustedMinBG = round(max(80.0, min_bg - (bg - min_bg) / 3), 0)
+            val adjustedTargetBG = round(max(80.0, target_bg - (bg - target_bg) / 3), 0)
+            val adjustedMaxBG = round(max(80.0, max_bg - (bg - max_bg) / 3), 0)
+            // if eventualBG, naive_eventualBG, and target_bg aren't all above adjustedMinBG, don’t use it
+            if (eventualBG > adjustedMinBG && naive_eventualBG > adjustedMinBG && min_bg > adjustedMinBG) {
+                console("Adjusting targets for high BG: min_bg from " + jsString(min_bg) + " to " + jsString(adjustedMinBG) + "; ")
+                min_bg = adjustedMinBG
+            } else {
+                console("min_bg unchanged: " + jsString(min_bg) + "; ")
+            }
+            // if eventualBG, naive_eventualBG, and target_bg aren't all above adjustedTargetBG, don’t use it
+            if (eventualBG > adjustedTargetBG && naive_eventualBG > adjustedTargetBG && target_bg > adjustedTargetBG) {
+                console("target_bg from " + jsString(target_bg) + " to " + jsString(adjustedTargetBG) + "; ")
+                target_bg = adjustedTargetBG
+            } else {
+                console("target_bg unchanged: " + jsString(target_bg) + "; ")
+            }
+            // if eventualBG, naive_eventualBG, and max_bg aren't all above adjustedMaxBG, don’t use it
+            if (eventualBG > adjustedMaxBG && naive_eventualBG > adjustedMaxBG && max_bg > adjustedMaxBG) {
+                console("max_bg from " + jsString(max_bg) + " to " + jsString(adjustedMaxBG))
+                max_bg = adjustedMaxBG
+            } else {
+                console("max_bg unchanged: " + jsString(max_bg))
+            }
+        }
+
+        val expectedDelta = calculate_expected_delta(target_bg, eventualBG, bgi)
+        if (eventualBG.isNaN()) {
+            rT.error = "Error: could not calculate eventualBG. "
+            return rT
+        }
+
+        // min_bg of 90 -> threshold of 65, 100 -> 70 110 -> 75, and 130 -> 85
+        val threshold = min_bg - 0.5 * (min_bg - 40)
+
+        rT = RT().also {
+            it.temp = "absolute"
+            it.bg = bg
+            it.tick = tick
+            it.eventualBG = eventualBG
+            it.targetBG = target_bg
+            it.insulinReq = 0.0
+            it.deliverAt = deliverAt // The time at which the microbolus should be delivered
+            it.sensitivityRatio = sensitivityRatio // autosens ratio (fraction of normal basal)
+        }
+
+        // generate predicted future BGs based on IOB, COB, and current absorption rate
+
+        val COBpredBGs = mutableListOf<Double>()
+        val aCOBpredBGs = mutableListOf<Double>()
+        val IOBpredBGs = mutableListOf<Double>()
+        val UAMpredBGs = mutableListOf<Double>()
+        val ZTpredBGs = mutableListOf<Double>()
+        COBpredBGs.add(bg)
+        aCOBpredBGs.add(bg)
+        IOBpredBGs.add(bg)
+        ZTpredBGs.add(bg)
+        UAMpredBGs.add(bg)
+
+        var enableSMB = enable_smb(profile, microBolusAllowed, meal_data, target_bg)
+
+        // enable UAM (if enabled in preferences)
+        val enableUAM = profile.enableUAM
+
+        // carb impact and duration are 0 unless changed below
+        var ci: Double
+        val cid: Double
+        // calculate current carb absorption rate, and how long to absorb all carbs
+        // CI = current carb impact on BG in mg/dL/5m
+        ci = round((minDelta - bgi), 1)
+        val uci = round((minDelta - bgi), 1)
+        // ISF (mg/dL/U) / CR (g/U) = CSF (mg/dL/g)
+
+        // use autosens-adjusted sens to counteract autosens meal insulin dosing adjustments so that
+        // autotuned CR is still in effect even when basals and ISF are being adjusted by TT or autosens
+        // this avoids overdosing insulin for large meals when low temp targets are active
+        val csf = sens / profile.carb_ratio
+        console("profile.sens:", profile.sens, "sens:", sens, "CSF:", csf)
+
+        val maxCarbAbsorptionRate = 30 // g/h; maximum rate to assume carbs will absorb if no CI observed
+        // limit Carb Impact to maxCarbAbsorptionRate * csf in mg/dL per 5m
+        val maxCI = round(maxCarbAbsorptionRate * csf * 5 / 60, 1)
+        if (ci > maxCI) {
+            console("Limiting carb impact from", ci, "to", maxCI, "mg/dL/5m (", maxCarbAbsorptionRate, "g/h )")
+            ci = maxCI
+        }
+        var remainingCATimeMin = 3.0 // h; duration of expected not-yet-observed carb absorption
+        // adjust remainingCATime (instead of CR) for autosens if sensitivityRatio defined
+        if (truthy(sensitivityRatio)) {
+            remainingCATimeMin = remainingCATimeMin / sensitivityRatio
+        }
+        // 20 g/h means that anything <= 60g will get a remainingCATimeMin, 80g will get 4h, and 120g 6h
+        // when actual absorption ramps up it will take over from remainingCATime
+        val assumedCarbAbsorptionRate = 20 // g/h; maximum rate to assume carbs will absorb if no CI observed
+        var remainingCATime = remainingCATimeMin
+        if (truthy(meal_data.carbs)) {
+            // if carbs * assumedCarbAbsorptionRate > remainingCATimeMin, raise it
+            // so <= 90g is assumed to take 3h, and 120g=4h
+            remainingCATimeMin = max(remainingCATimeMin, meal_data.mealCOB / assumedCarbAbsorptionRate)
+            val lastCarbAge = round((systemTime - meal_data.lastCarbTime) / 60000.0)
+
+            val fractionCOBAbsorbed = (meal_data.carbs - meal_data.mealCOB) / meal_data.carbs
+            remainingCATime = remainingCATimeMin + 1.5 * lastCarbAge / 60
+            remainingCATime = round(remainingCATime, 1)
+            console("Last carbs", lastCarbAge, "minutes ago; remainingCATime:", remainingCATime, "hours;", jsString(round(fractionCOBAbsorbed * 100)) + "% carbs absorbed")
+        }
+
+        // calculate the number of carbs absorbed over remainingCATime hours at current CI
+        // CI (mg/dL/5m) * (5m)/5 (m) * 60 (min/hr) * 4 (h) / 2 (linear decay factor) = total carb impact (mg/dL)
+        val totalCI = max(0.0, ci / 5 * 60 * remainingCATime / 2)
+        // totalCI (mg/dL) / CSF (mg/dL/g) = total carbs absorbed (g)
+        val totalCA = totalCI / csf
+        var remainingCarbsCap = 90.0 // default to 90
+        val remainingCarbsFraction = 1.0 // profile.remainingCarbsFraction is not provided by AAPS
+        if (truthy(profile.remainingCarbsCap)) remainingCarbsCap = min(90.0, profile.remainingCarbsCap)
+        val remainingCarbsIgnore = 1 - remainingCarbsFraction
+        var remainingCarbs = max(0.0, meal_data.mealCOB - totalCA - meal_data.carbs * remainingCarbsIgnore)
+        remainingCarbs = min(remainingCarbsCap, remainingCarbs)
+        // assume remainingCarbs will absorb in a /\ shaped bilinear curve
+        // peaking at remainingCATime / 2 and ending at remainingCATime hours
+        // area of the /\ triangle is the same as a remainingCIpeak-height rectangle out to remainingCATime/2
+        // remainingCIpeak (mg/dL/5m) = remainingCarbs (g) * CSF (mg/dL/g) * 5 (m/5m) * 1h/60m / (remainingCATime/2) (h)
+        val remainingCIpeak = remainingCarbs * csf * 5 / 60 / (remainingCATime / 2)
+
+        // calculate peak deviation in last hour, and slope from that to current deviation
+        val slopeFromMaxDeviation = round(meal_data.slopeFromMaxDeviation, 2)
+        // calculate lowest deviation in last hour, and slope from that to current deviation
+        val slopeFromMinDeviation = round(meal_data.slopeFromMinDeviation, 2)
+        // assume deviations will drop back down at least at 1/3 the rate they ramped up
+        val slopeFromDeviations = min(slopeFromMaxDeviation, -slopeFromMinDeviation / 3)
+
+        val aci = 10.0
+        //5m data points = g * (1U/10g) * (40mg/dL/1U) / (mg/dL/5m)
+        // duration (in 5m data points) = COB (g) * CSF (mg/dL/g) / ci (mg/dL/5m)
+        // limit cid to remainingCATime hours: the reset goes to remainingCI
+        cid =
+            if (ci == 0.0) 0.0 // avoid divide by zero
+            else min(remainingCATime * 60 / 5 / 2, max(0.0, meal_data.mealCOB * csf / ci))
+        val acid = max(0.0, meal_data.mealCOB * csf / aci)
+        // duration (hours) = duration (5m) * 5 / 60 * 2 (to account for linear decay)
+        console("Carb Impact:", ci, "mg/dL per 5m; CI Duration:", round(cid * 5 / 60 * 2, 1), "hours; remaining CI (~2h peak):", round(remainingCIpeak, 1), "mg/dL per 5m")
+        var minIOBPredBG = 999.0
+        var minCOBPredBG = 999.0
+        var minUAMPredBG = 999.0
+        var minGuardBG: Double
+        var minCOBGuardBG = 999.0
+        var minUAMGuardBG = 999.0
+        var minIOBGuardBG = 999.0
+        var minZTGuardBG = 999.0
+        var minPredBG: Double
+        var avgPredBG: Double
+        var IOBpredBG = eventualBG
+        var maxIOBPredBG = bg
+        var maxCOBPredBG = bg
+        var lastIOBpredBG: Double
+        var lastCOBpredBG: Double? = null
+        var lastUAMpredBG: Double? = null
+        var UAMduration = 0.0
+        var remainingCItotal = 0.0
+        val remainingCIs = mutableListOf<Double>()
+        val predCIs = mutableListOf<Double>()
+        var COBpredBG = Double.NaN
+        var UAMpredBG = Double.NaN
+        for (iobTick in iob_data_array) {
+            val iobWithZeroTemp = iobTick.iobWithZeroTemp
+            if (iobWithZeroTemp == null) {
+                console("Problem with iobArray.  Optional feature Advanced Meal Assist disabled")
+                break
+            }
+            val predBGI = round((-iobTick.activity * sens * 5), 2)
+            val predZTBGI = round((-iobWithZeroTemp.activity * sens * 5), 2)
+            // for IOBpredBGs, predicted deviation impact drops linearly from current deviation down to zero
+            // over 60 minutes (data points every 5m)
+            val predDev = ci * (1 - min(1.0, IOBpredBGs.size / (60.0 / 5)))
+            IOBpredBG = IOBpredBGs[IOBpredBGs.size - 1] + predBGI + predDev
+            // calculate predBGs with long zero temp without deviations
+            val ZTpredBG = ZTpredBGs[ZTpredBGs.size - 1] + predZTBGI
+            // for COBpredBGs, predicted carb impact drops linearly from current carb impact down to zero
+            // eventually accounting for all carbs (if they can be absorbed over DIA)
+            val predCI = max(0.0, max(0.0, ci) * (1 - COBpredBGs.size / max(cid * 2, 1.0)))
+            val predACI = max(0.0, max(0.0, aci) * (1 - COBpredBGs.size / max(acid * 2, 1.0)))
+            // if any carbs aren't absorbed after remainingCATime hours, assume they'll absorb in a /\ shaped
+            // bilinear curve peaking at remainingCIpeak at remainingCATime/2 hours (remainingCATime/2*12 * 5m)
+            // and ending at remainingCATime h (remainingCATime*12 * 5m intervals)
+            val intervals = min(COBpredBGs.size.toDouble(), (remainingCATime * 12) - COBpredBGs.size)
+            val remainingCI = max(0.0, intervals / (remainingCATime / 2 * 12) * remainingCIpeak)
+            remainingCItotal += predCI + remainingCI
+            remainingCIs.add(round(remainingCI, 0))
+            predCIs.add(round(predCI, 0))
+            COBpredBG = COBpredBGs[COBpredBGs.size - 1] + predBGI + min(0.0, predDev) + predCI + remainingCI
+            val aCOBpredBG = aCOBpredBGs[aCOBpredBGs.size - 1] + predBGI + min(0.0, predDev) + predACI
+            // for UAMpredBGs, predicted carb impact drops at slopeFromDeviations
+            // calculate predicted CI from UAM based on slopeFromDeviations
+            val predUCIslope = max(0.0, uci + (UAMpredBGs.size * slopeFromDeviations))
+            // if slopeFromDeviations is too flat, predicted deviation impact drops linearly from
+            // current deviation down to zero over 3h (data points every 5m)
+            val predUCImax = max(0.0, uci * (1 - UAMpredBGs.size / max(3.0 * 60 / 5, 1.0)))
+            // predicted CI from UAM is the lesser of CI based on deviationSlope or DIA
+            val predUCI = min(predUCIslope, predUCImax)
+            if (predUCI > 0) {
+                UAMduration = round((UAMpredBGs.size + 1) * 5 / 60.0, 1)
+            }
+            UAMpredBG = UAMpredBGs[UAMpredBGs.size - 1] + predBGI + min(0.0, predDev) + predUCI
+            // truncate all BG predictions at 4 hours
+            if (IOBpredBGs.size < 48) IOBpredBGs.add(IOBpredBG)
+            if (COBpredBGs.size < 48) COBpredBGs.add(COBpredBG)
+            if (aCOBpredBGs.size < 48) aCOBpredBGs.add(aCOBpredBG)
+            if (UAMpredBGs.size < 48) UAMpredBGs.add(UAMpredBG)
+            if (ZTpredBGs.size < 48) ZTpredBGs.add(ZTpredBG)
+            // calculate minGuardBGs without a wait from COB, UAM, IOB predBGs
+            if (COBpredBG < minCOBGuardBG) minCOBGuardBG = round(COBpredBG)
+            if (UAMpredBG < minUAMGuardBG) minUAMGuardBG = round(UAMpredBG)
+            if (IOBpredBG < minIOBGuardBG) minIOBGuardBG = round(IOBpredBG)
+            if (ZTpredBG < minZTGuardBG) minZTGuardBG = round(ZTpredBG)
+
+            // set minPredBGs starting when currently-dosed insulin activity will peak
+            // look ahead 60m (regardless of insulin type) so as to be less aggressive on slower insulins
+            // add 30m to allow for insulin delivery (SMBs or temps)
+            val insulinPeakTime = 90
+            val insulinPeak5m = (insulinPeakTime / 60.0) * 12
+
+            // wait 90m before setting minIOBPredBG
+            if (IOBpredBGs.size > insulinPeak5m && (IOBpredBG < minIOBPredBG)) minIOBPredBG = round(IOBpredBG)
+            if (IOBpredBG > maxIOBPredBG) maxIOBPredBG = IOBpredBG
+            // wait 85-105m before setting COB and 60m for UAM minPredBGs
+            if ((truthy(cid) || remainingCIpeak > 0) && COBpredBGs.size > insulinPeak5m && (COBpredBG < minCOBPredBG)) minCOBPredBG = round(COBpredBG)
+            if ((truthy(cid) || remainingCIpeak > 0) && COBpredBG > maxIOBPredBG) maxCOBPredBG = COBpredBG
+            if (enableUAM && UAMpredBGs.size > 12 && (UAMpredBG < minUAMPredBG)) minUAMPredBG = round(UAMpredBG)
+        }
+        if (truthy(meal_data.mealCOB)) {
+            console("predCIs (mg/dL/5m):", predCIs.joinToString(separator = " ") { jsString(it) })
+            console("remainingCIs:      ", remainingCIs.joinToString(separator = " ") { jsString(it) })
+        }
+        rT.predBGs = Predictions()
+        roundPredictions(IOBpredBGs)
+        trimFlatTail(IOBpredBGs)
+        rT.predBGs?.IOB = IOBpredBGs
+        lastIOBpredBG = round(IOBpredBGs[IOBpredBGs.size - 1])
+        roundPredictions(ZTpredBGs)
+        for (i in ZTpredBGs.size - 1 downTo 7) {
+            // stop displaying ZTpredBGs once they're rising and above target
+            if (ZTpredBGs[i - 1] >= ZTpredBGs[i] || ZTpredBGs[i] <= target_bg) break
+            else ZTpredBGs.removeAt(ZTpredBGs.size - 1)
+        }
+        rT.predBGs?.ZT = ZTpredBGs
+        if (meal_data.mealCOB > 0) {
+            roundPredictions(aCOBpredBGs)
+            trimFlatTail(aCOBpredBGs)
+        }
+        if (meal_data.mealCOB > 0 && (ci > 0 || remainingCIpeak > 0)) {
+            roundPredictions(COBpredBGs)
+            trimFlatTail(COBpredBGs)
+            rT.predBGs?.COB = COBpredBGs
+            lastCOBpredBG = round(COBpredBGs[COBpredBGs.size - 1])
+            eventualBG = max(eventualBG, round(COBpredBGs[COBpredBGs.size - 1]))
+        }
+        if (ci > 0 || remainingCIpeak > 0) {
+            if (enableUAM) {
+                roundPredictions(UAMpredBGs)
+                trimFlatTail(UAMpredBGs)
+                rT.predBGs?.UAM = UAMpredBGs
+                lastUAMpredBG = round(UAMpredBGs[UAMpredBGs.size - 1])
+                if (truthy(UAMpredBGs[UAMpredBGs.size - 1])) {
+                    eventualBG = max(eventualBG, round(UAMpredBGs[UAMpredBGs.size - 1]))
+                }
+            }
+
+            // set eventualBG based on COB or UAM predBGs
+            rT.eventualBG = eventualBG
+        }
+
+        console("UAM Impact:", uci, "mg/dL per 5m; UAM Duration:", UAMduration, "hours")
+
+        minIOBPredBG = max(39.0, minIOBPredBG)
+        minCOBPredBG = max(39.0, minCOBPredBG)
+        minUAMPredBG = max(39.0, minUAMPredBG)
+        minPredBG = round(minIOBPredBG)
+
+        val fractionCarbsLeft = meal_data.mealCOB / meal_data.carbs
+        // if we have COB and UAM is enabled, average both
+        avgPredBG =
+            if (minUAMPredBG < 999 && minCOBPredBG < 999) {
+                // weight COBpredBG vs. UAMpredBG based on how many carbs remain as COB
+                round((1 - fractionCarbsLeft) * UAMpredBG + fractionCarbsLeft * COBpredBG)
+                // if UAM is disabled, average IOB and COB
+            } else if (minCOBPredBG < 999) {
+                round((IOBpredBG + COBpredBG) / 2)
+                // if we have UAM but no COB, average IOB and UAM
+            } else if (minUAMPredBG < 999) {
+                round((IOBpredBG + UAMpredBG) / 2)
+            } else {
+                round(IOBpredBG)
+            }
+        // if avgPredBG is below minZTGuardBG, bring it up to that level
+        if (minZTGuardBG > avgPredBG) {
+            avgPredBG = minZTGuardBG
+        }
+
+        // if we have both minCOBGuardBG and minUAMGuardBG, blend according to fractionCarbsLeft
+        minGuardBG =
+            if ((truthy(cid) || remainingCIpeak > 0)) {
+                if (enableUAM) fractionCarbsLeft * minCOBGuardBG + (1 - fractionCarbsLeft) * minUAMGuardBG
+                else minCOBGuardBG
+            } else if (enableUAM) minUAMGuardBG
+            else minIOBGuardBG
+        minGuardBG = round(minGuardBG)
+
+        var minZTUAMPredBG = minUAMPredBG
+        // if minZTGuardBG is below threshold, bring down any super-high minUAMPredBG by averaging
+        // this helps prevent UAM from giving too much insulin in case absorption falls off suddenly
+        if (minZTGuardBG < threshold) {
+            minZTUAMPredBG = (minUAMPredBG + minZTGuardBG) / 2
+            // if minZTGuardBG is between threshold and target, blend in the averaging
+        } else if (minZTGuardBG < target_bg) {
+            // target 100, threshold 70, minZTGuardBG 85 gives 50%: (85-70) / (100-70)
+            val blendPct = (minZTGuardBG - threshold) / (target_bg - threshold)
+            val blendedMinZTGuardBG = minUAMPredBG * blendPct + minZTGuardBG * (1 - blendPct)
+            minZTUAMPredBG = (minUAMPredBG + blendedMinZTGuardBG) / 2
+            // if minUAMPredBG is below minZTGuardBG, bring minUAMPredBG up by averaging
+            // this allows more insulin if lastUAMPredBG is below target, but minZTGuardBG is still high
+        } else if (minZTGuardBG > minUAMPredBG) {
+            minZTUAMPredBG = (minUAMPredBG + minZTGuardBG) / 2
+        }
+        minZTUAMPredBG = round(minZTUAMPredBG)
+        // if any carbs have been entered recently
+        if (truthy(meal_data.carbs)) {
+
+            // if UAM is disabled, use max of minIOBPredBG, minCOBPredBG
+            if (!enableUAM && minCOBPredBG < 999) {
+                minPredBG = round(max(minIOBPredBG, minCOBPredBG))
+                // if we have COB, use minCOBPredBG, or blendedMinPredBG if it's higher
+            } else if (minCOBPredBG < 999) {
+                // calculate blendedMinPredBG based on how many carbs remain as COB
+                val blendedMinPredBG = fractionCarbsLeft * minCOBPredBG + (1 - fractionCarbsLeft) * minZTUAMPredBG
+                // if blendedMinPredBG > minCOBPredBG, use that instead
+                minPredBG = round(max(minIOBPredBG, max(minCOBPredBG, blendedMinPredBG)))
+                // if carbs have been entered, but have expired, use minUAMPredBG
+            } else if (enableUAM) {
+                minPredBG = minZTUAMPredBG
+            } else {
+                minPredBG = minGuardBG
+            }
+            // in pure UAM mode, use the higher of minIOBPredBG,minUAMPredBG
+        } else if (enableUAM) {
+            minPredBG = round(max(minIOBPredBG, minZTUAMPredBG))
+        }
+
+        // make sure minPredBG isn't higher than avgPredBG
+        minPredBG = min(minPredBG, avgPredBG)
+
+        console("minPredBG: " + jsString(minPredBG) + " minIOBPredBG: " + jsString(minIOBPredBG) + " minZTGuardBG: " + jsString(minZTGuardBG))
+        if (minCOBPredBG < 999) {
+            console(" minCOBPredBG: " + jsString(minCOBPredBG))
+        }
+        if (minUAMPredBG < 999) {
+            console(" minUAMPredBG: " + jsString(minUAMPredBG))
+        }
+        console(" avgPredBG:", avgPredBG, "COB:", meal_data.mealCOB, "/", meal_data.carbs)
+        // But if the COB line falls off a cliff, don't trust UAM too much:
+        // use maxCOBPredBG if it's been set and lower than minPredBG
+        if (maxCOBPredBG > bg) {
+            minPredBG = min(minPredBG, maxCOBPredBG)
+        }
+
+        rT.COB = meal_data.mealCOB
+        rT.IOB = iob_data.iob
+        rT.reason =
+            "COB: " + jsString(round(meal_data.mealCOB, 1)) + ", Dev: " + convert_bg(deviation, profile) + ", BGI: " + convert_bg(bgi, profile) + ", ISF: " + convert_bg(sens, profile) +
+                ", CR: " + jsString(round(profile.carb_ratio, 2)) + ", Target: " + convert_bg(target_bg, profile) + ", minPredBG " + convert_bg(minPredBG, profile) +
+                ", minGuardBG " + convert_bg(minGuardBG, profile) + ", IOBpredBG " + convert_bg(lastIOBpredBG, profile)
+        if (lastCOBpredBG != null && lastCOBpredBG > 0) {
+            rT.reason += ", COBpredBG " + convert_bg(lastCOBpredBG, profile)
+        }
+        if (lastUAMpredBG != null && lastUAMpredBG > 0) {
+            rT.reason += ", UAMpredBG " + convert_bg(lastUAMpredBG, profile)
+        }
+        rT.reason += "; "
+        // use naive_eventualBG if above 40, but switch to minGuardBG if both eventualBGs hit floor of 39
+        var carbsReqBG = naive_eventualBG
+        if (carbsReqBG < 40) {
+            carbsReqBG = min(minGuardBG, carbsReqBG)
+        }
+        var bgUndershoot: Double = threshold - carbsReqBG
+        // calculate how long until COB (or IOB) predBGs drop below min_bg
+        var minutesAboveMinBG = 240
+        var minutesAboveThreshold = 240
+        val predBGsForTimeCheck = if (meal_data.mealCOB > 0 && (ci > 0 || remainingCIpeak > 0)) COBpredBGs else IOBpredBGs
+        for (i in predBGsForTimeCheck.indices) {
+            if (predBGsForTimeCheck[i] < min_bg) {
+                minutesAboveMinBG = 5 * i
+                break
+            }
+        }
+        for (i in predBGsForTimeCheck.indices) {
+            if (predBGsForTimeCheck[i] < threshold) {
+                minutesAboveThreshold = 5 * i
+                break
+            }
+        }
+
+        if (enableSMB && minGuardBG < threshold) {
+            console("minGuardBG", convert_bg(minGuardBG, profile), "projected below", convert_bg(threshold, profile), "- disabling SMB")
+            enableSMB = false
+        }
+        if (maxDelta > 0.20 * bg) {
+            console("maxDelta", convert_bg(maxDelta, profile), "> 20% of BG", convert_bg(bg, profile), "- disabling SMB")
+            rT.reason += "maxDelta " + convert_bg(maxDelta, profile) + " > 20% of BG " + convert_bg(bg, profile) + ": SMB disabled; "
+            enableSMB = false
+        }
+
+        console("BG projected to remain above", convert_bg(min_bg, profile), "for", minutesAboveMinBG, "minutes")
+        if (minutesAboveThreshold < 240 || minutesAboveMinBG < 60) {
+            console("BG projected to remain above", convert_bg(threshold, profile), "for", minutesAboveThreshold, "minutes")
+        }
+        // include at least minutesAboveThreshold worth of zero temps in calculating carbsReq
+        // always include at least 30m worth of zero temp (carbs to 80, low temp up to target)
+        val zeroTempDuration = minutesAboveThreshold
+        // BG undershoot, minus effect of zero temps until hitting min_bg, converted to grams, minus COB
+        var zeroTempEffect = profile.current_basal * sens * zeroTempDuration / 60
+        // don't count the last 25% of COB against carbsReq
+        val COBforCarbsReq = max(0.0, meal_data.mealCOB - 0.25 * meal_data.carbs)
+        var carbsReq = (bgUndershoot - zeroTempEffect) / csf - COBforCarbsReq
+        zeroTempEffect = round(zeroTempEffect)
+        carbsReq = round(carbsReq)
+        console("naive_eventualBG:", naive_eventualBG, "bgUndershoot:", bgUndershoot, "zeroTempDuration:", zeroTempDuration, "zeroTempEffect:", zeroTempEffect, "carbsReq:", carbsReq)
+        if (carbsReq >= profile.carbsReqThreshold && minutesAboveThreshold <= 45) {
+            rT.carbsReq = carbsReq
+            rT.carbsReqWithin = minutesAboveThreshold.toDouble()
+            rT.reason += jsString(carbsReq) + " add'l carbs req w/in " + jsString(minutesAboveThreshold) + "m; "
+        }
+
+        // don't low glucose suspend if IOB is already super negative and BG is rising faster than predicted
+        if (bg < threshold && iob_data.iob < -profile.current_basal * 20 / 60 && minDelta > 0 && minDelta > expectedDelta) {
+            rT.reason += "IOB " + jsString(iob_data.iob) + " < " + jsString(round(-profile.current_basal * 20 / 60, 2))
+            rT.reason += " and minDelta " + convert_bg(minDelta, profile) + " > " + "expectedDelta " + convert_bg(expectedDelta, profile) + "; "
+            // predictive low glucose suspend mode: BG is / is projected to be < threshold
+        } else if (bg < threshold || minGuardBG < threshold) {
+            rT.reason += "minGuardBG " + convert_bg(minGuardBG, profile) + "<" + convert_bg(threshold, profile)
+            bgUndershoot = target_bg - minGuardBG
+            val worstCaseInsulinReq = bgUndershoot / sens
+            var durationReq = round(60 * worstCaseInsulinReq / profile.current_basal)
+            durationReq = round(durationReq / 30) * 30
+            // always set a 30-120m zero temp (oref0-pump-loop will let any longer SMB zero temp run)
+            durationReq = min(120.0, max(30.0, durationReq))
+            return setTempBasal(0.0, durationReq, profile, rT, currenttemp)
+        }
+
+        // if not in LGS mode, cancel temps before the top of the hour to reduce beeping/vibration
+        val deliverAtMinutes = Calendar.getInstance().also { it.timeInMillis = deliverAt }[Calendar.MINUTE]
+        if (profile.skip_neutral_temps && deliverAtMinutes >= 55) {
+            rT.reason += "; Canceling temp at " + jsString(deliverAtMinutes) + "m past the hour. "
+            return setTempBasal(0.0, 0.0, profile, rT, currenttemp)
+        }
+
+        var rate: Double
+        var insulinReq: Double
+        if (eventualBG < min_bg) { // if eventual BG is below target:
+            rT.reason += "Eventual BG " + convert_bg(eventualBG, profile) + " < " + convert_bg(min_bg, profile)
+            // if 5m or 30m avg BG is rising faster than expected delta
+            if (minDelta > expectedDelta && minDelta > 0 && !truthy(carbsReq)) {
+                // if naive_eventualBG < 40, set a 30m zero temp (oref0-pump-loop will let any longer SMB zero temp run)
+                if (naive_eventualBG < 40) {
+                    rT.reason += ", naive_eventualBG < 40. "
+                    return setTempBasal(0.0, 30.0, profile, rT, currenttemp)
+                }
+                if (glucose_status.delta > minDelta) {
+                    rT.reason += ", but Delta " + convert_bg(tickValue(tick), profile) + " > expectedDelta " + convert_bg(expectedDelta, profile)
+                } else {
+                    rT.reason += ", but Min. Delta " + toFixed(minDelta, 2) + " > Exp. Delta " + convert_bg(expectedDelta, profile)
+                }
+                if (currenttemp.duration > 15 && (round_basal(basal) == round_basal(currenttemp.rate))) {
+                    rT.reason += ", temp " + jsString(currenttemp.rate) + " ~ req " + jsString(round(basal, 2)) + "U/hr. "
+                    return rT
+                } else {
+                    rT.reason += "; setting current basal of " + jsString(round(basal, 2)) + " as temp. "
+                    return setTempBasal(basal, 30.0, profile, rT, currenttemp)
+                }
+            }
+
+            // calculate 30m low-temp required to get projected BG up to target
+            // multiply by 2 to low-temp faster for increased hypo safety
+            insulinReq = 2 * min(0.0, (eventualBG - target_bg) / sens)
+            insulinReq = round(insulinReq, 2)
+            // calculate naiveInsulinReq based on naive_eventualBG
+            var naiveInsulinReq = min(0.0, (naive_eventualBG - target_bg) / sens)
+            naiveInsulinReq = round(naiveInsulinReq, 2)
+            if (minDelta < 0 && minDelta > expectedDelta) {
+                // if we're barely falling, newinsulinReq should be barely negative
+                val newinsulinReq = round((insulinReq * (minDelta / expectedDelta)), 2)
+                insulinReq = newinsulinReq
+            }
+            // rate required to deliver insulinReq less insulin over 30m:
+            rate = basal + (2 * insulinReq)
+            rate = round_basal(rate)
+
+            // if required temp < existing temp basal
+            val insulinScheduled = currenttemp.duration * (currenttemp.rate - basal) / 60
+            // if current temp would deliver a lot (30% of basal) less than the required insulin,
+            // by both normal and naive calculations, then raise the rate
+            val minInsulinReq = min(insulinReq, naiveInsulinReq)
+            if (insulinScheduled < minInsulinReq - basal * 0.3) {
+                rT.reason += ", " + jsString(currenttemp.duration) + "m@" + toFixed(currenttemp.rate, 2) + " is a lot less than needed. "
+                return setTempBasal(rate, 30.0, profile, rT, currenttemp)
+            }
+            if (currenttemp.duration > 5 && rate >= currenttemp.rate * 0.8) {
+                rT.reason += ", temp " + jsString(currenttemp.rate) + " ~< req " + jsString(round(rate, 2)) + "U/hr. "
+                return rT
+            } else {
+                // calculate a long enough zero temp to eventually correct back up to target
+                if (rate <= 0) {
+                    bgUndershoot = target_bg - naive_eventualBG
+                    val worstCaseInsulinReq = bgUndershoot / sens
+                    var durationReq = round(60 * worstCaseInsulinReq / profile.current_basal)
+                    if (durationReq < 0) {
+                        durationReq = 0.0
+                        // don't set a temp longer than 120 minutes
+                    } else {
+                        durationReq = round(durationReq / 30) * 30
+                        durationReq = min(120.0, max(0.0, durationReq))
+                    }
+                    if (durationReq > 0) {
+                        rT.reason += ", setting " + jsString(durationReq) + "m zero temp. "
+                        return setTempBasal(rate, durationReq, profile, rT, currenttemp)
+                    }
+                } else {
+                    rT.reason += ", setting " + jsString(round(rate, 2)) + "U/hr. "
+                }
+                return setTempBasal(rate, 30.0, profile, rT, currenttemp)
+            }
+        }
+
+        // if eventual BG is above min but BG is falling faster than expected Delta
+        if (minDelta < expectedDelta) {
+            // if in SMB mode, don't cancel SMB zero temp
+            if (!(microBolusAllowed && enableSMB)) {
+                if (glucose_status.delta < minDelta) {
+                    rT.reason += "Eventual BG " + convert_bg(eventualBG, profile) + " > " + convert_bg(min_bg, profile) + " but Delta " + convert_bg(tickValue(tick), profile) +
+                        " < Exp. Delta " + convert_bg(expectedDelta, profile)
+                } else {
+                    rT.reason += "Eventual BG " + convert_bg(eventualBG, profile) + " > " + convert_bg(min_bg, profile) + " but Min. Delta " + toFixed(minDelta, 2) +
+                        " < Exp. Delta " + convert_bg(expectedDelta, profile)
+                }
+                if (currenttemp.duration > 15 && (round_basal(basal) == round_basal(currenttemp.rate))) {
+                    rT.reason += ", temp " + jsString(currenttemp.rate) + " ~ req " + jsString(round(basal, 2)) + "U/hr. "
+                    return rT
+                } else {
+                    rT.reason += "; setting current basal of " + jsString(round(basal, 2)) + " as temp. "
+                    return setTempBasal(basal, 30.0, profile, rT, currenttemp)
+                }
+            }
+        }
+        // eventualBG or minPredBG is below max_bg
+        if (min(eventualBG, minPredBG) < max_bg) {
+            // if in SMB mode, don't cancel SMB zero temp
+            if (!(microBolusAllowed && enableSMB)) {
+                rT.reason += convert_bg(eventualBG, profile) + "-" + convert_bg(minPredBG, profile) + " in range: no temp required"
+                if (currenttemp.duration > 15 && (round_basal(basal) == round_basal(currenttemp.rate))) {
+                    rT.reason += ", temp " + jsString(currenttemp.rate) + " ~ req " + jsString(round(basal, 2)) + "U/hr. "
+                    return rT
+                } else {
+                    rT.reason += "; setting current basal of " + jsString(round(basal, 2)) + " as temp. "
+                    return setTempBasal(basal, 30.0, profile, rT, currenttemp)
+                }
+            }
+        }
+
+        // eventual BG is at/above target
+        // if iob is over max, just cancel any temps
+        if (eventualBG >= max_bg) {
+            rT.reason += "Eventual BG " + convert_bg(eventualBG, profile) + " >= " + convert_bg(max_bg, profile) + ", "
+        }
+        if (iob_data.iob > max_iob) {
+            rT.reason += "IOB " + jsString(round(iob_data.iob, 2)) + " > max_iob " + jsString(max_iob)
+            if (currenttemp.duration > 15 && (round_basal(basal) == round_basal(currenttemp.rate))) {
+                rT.reason += ", temp " + jsString(currenttemp.rate) + " ~ req " + jsString(round(basal, 2)) + "U/hr. "
+                return rT
+            } else {
+                rT.reason += "; setting current basal of " + jsString(round(basal, 2)) + " as temp. "
+                return setTempBasal(basal, 30.0, profile, rT, currenttemp)
+            }
+        } else { // otherwise, calculate 30m high-temp required to get projected BG down to target
+
+            // insulinReq is the additional insulin required to get minPredBG down to target_bg
+            insulinReq = round((min(minPredBG, eventualBG) - target_bg) / sens, 2)
+            // if that would put us over max_iob, then reduce accordingly
+            if (insulinReq > max_iob - iob_data.iob) {
+                rT.reason += "max_iob " + jsString(max_iob) + ", "
+                insulinReq = max_iob - iob_data.iob
+            }
+
+            // rate required to deliver insulinReq more insulin over 30m:
+            rate = basal + (2 * insulinReq)
+            rate = round_basal(rate)
+            insulinReq = round(insulinReq, 3)
+            rT.insulinReq = insulinReq
+            // minutes since last bolus
+            val lastBolusAge = round((systemTime - iob_data.lastBolusTime) / 60000.0, 1)
+            // only allow microboluses with COB or low temp targets, or within DIA hours of a bolus
+            if (microBolusAllowed && enableSMB && bg > threshold) {
+                // never bolus more than maxSMBBasalMinutes worth of basal
+                val mealInsulinReq = round(meal_data.mealCOB / profile.carb_ratio, 3)
+                val maxBolus: Double
+                if (iob_data.iob > mealInsulinReq && iob_data.iob > 0) {
+                    // if IOB covers more than COB, limit maxBolus to 30m of basal
+                    console("IOB", iob_data.iob, "> COB", jsString(meal_data.mealCOB) + "; mealInsulinReq =", mealInsulinReq)
+                    if (truthy(profile.maxUAMSMBBasalMinutes)) {
+                        console("profile.maxUAMSMBBasalMinutes:", profile.maxUAMSMBBasalMinutes, "profile.current_basal:", profile.current_basal)
+                        maxBolus = round(profile.current_basal * profile.maxUAMSMBBasalMinutes / 60, 1)
+                    } else {
+                        console("profile.maxUAMSMBBasalMinutes undefined: defaulting to 30m")
+                        maxBolus = round(profile.current_basal * 30 / 60, 1)
+                    }
+                } else {
+                    console("profile.maxSMBBasalMinutes:", profile.maxSMBBasalMinutes, "profile.current_basal:", profile.current_basal)
+                    maxBolus = round(profile.current_basal * profile.maxSMBBasalMinutes / 60, 1)
+                }
+                // bolus 1/2 the insulinReq, up to maxBolus, rounding down to nearest bolus increment
+                val roundSMBTo = 1 / profile.bolus_increment
+                val microBolus = floor(min(insulinReq / 2, maxBolus) * roundSMBTo) / roundSMBTo
+                // calculate a long enough zero temp to eventually correct back up to target
+                val smbTarget = target_bg
+                val worstCaseInsulinReq = (smbTarget - (naive_eventualBG + minIOBPredBG) / 2) / sens
+                var durationReq = round(60 * worstCaseInsulinReq / profile.current_basal)
+
+                // if insulinReq > 0 but not enough for a microBolus, don't set an SMB zero temp
+                if (insulinReq > 0 && microBolus < profile.bolus_increment) {
+                    durationReq = 0.0
+                }
+
+                var smbLowTempReq = 0.0
+                if (durationReq <= 0) {
+                    durationReq = 0.0
+                    // don't set an SMB zero temp longer than 60 minutes
+                } else if (durationReq >= 30) {
+                    durationReq = round(durationReq / 30) * 30
+                    durationReq = min(60.0, max(0.0, durationReq))
+                } else {
+                    // if SMB durationReq is less than 30m, set a nonzero low temp
+                    smbLowTempReq = round(basal * durationReq / 30, 2)
+                    durationReq = 30.0
+                }
+                rT.reason += " insulinReq " + jsString(insulinReq)
+                if (microBolus >= maxBolus) {
+                    rT.reason += "; maxBolus " + jsString(maxBolus)
+                }
+                if (durationReq > 0) {
+                    rT.reason += "; setting " + jsString(durationReq) + "m low temp of " + jsString(smbLowTempReq) + "U/h"
+                }
+                rT.reason += ". "
+
+                //allow SMBs every 3 minutes by default
+                var SMBInterval = 3.0
+                if (truthy(profile.SMBInterval)) {
+                    // allow SMBIntervals between 1 and 10 minutes
+                    SMBInterval = min(10.0, max(1.0, profile.SMBInterval))
+                }
+                val nextBolusMins = round(SMBInterval - lastBolusAge, 0)
+                val nextBolusSeconds = round((SMBInterval - lastBolusAge) * 60, 0) % 60
+                console(
+                    "naive_eventualBG", jsString(naive_eventualBG) + ",", jsString(durationReq) + "m " + jsString(smbLowTempReq) + "U/h temp needed; last bolus",
+                    jsString(lastBolusAge) + "m ago; maxBolus: " + jsString(maxBolus)
+                )
+                if (lastBolusAge > SMBInterval) {
+                    if (microBolus > 0) {
+                        rT.units = microBolus
+                        rT.reason += "Microbolusing " + jsString(microBolus) + "U. "
+                    }
+                } else {
+                    rT.reason += "Waiting " + jsString(nextBolusMins) + "m " + jsString(nextBolusSeconds) + "s to microbolus again. "
+                }
+
+                // if no zero temp is required, don't return yet; allow later code to set a high temp
+                if (durationReq > 0) {
+                    rT.rate = smbLowTempReq
+                    rT.duration = durationReq
+                    return rT
+                }
+            }
+
+            val maxSafeBasal = getMaxSafeBasal(profile)
+
+            if (rate > maxSafeBasal) {
+                rT.reason += "adj. req. rate: " + jsString(round(rate, 2)) + " to maxSafeBasal: " + jsString(maxSafeBasal) + ", "
+                rate = round_basal(maxSafeBasal)
+            }
+
+            val insulinScheduled = currenttemp.duration * (currenttemp.rate - basal) / 60
+            if (insulinScheduled >= insulinReq * 2) { // if current temp would deliver >2x more than the required insulin, lower the rate
+                rT.reason += jsString(currenttemp.duration) + "m@" + toFixed(currenttemp.rate, 2) + " > 2 * insulinReq. Setting temp basal of " + jsString(round(rate, 2)) + "U/hr. "
+                return setTempBasal(rate, 30.0, profile, rT, currenttemp)
+            }
+
+            if (currenttemp.duration == 0.0) { // no temp is set
+                rT.reason += "no temp, setting " + jsString(round(rate, 2)) + "U/hr. "
+                return setTempBasal(rate, 30.0, profile, rT, currenttemp)
+            }
+
+            if (currenttemp.duration > 5 && (round_basal(rate) <= round_basal(currenttemp.rate))) { // if required temp <~ existing temp basal
+                rT.reason += "temp " + toFixed(currenttemp.rate, 2) + " >~ req " + jsString(round(rate, 2)) + "U/hr. "
+                return rT
+            }
+
+            // required temp > existing temp basal
+            rT.reason += "temp " + toFixed(currenttemp.rate, 2) + " < " + jsString(round(rate, 2)) + "U/hr. "
+            return setTempBasal(rate, 30.0, profile, rT, currenttemp)
+        }
+    }
+
+    private fun roundPredictions(predictions: MutableList<Double>) {
+        for (i in predictions.indices) predictions[i] = round(min(401.0, max(39.0, predictions[i])))
+    }
+
+    private fun trimFlatTail(predictions: MutableList<Double>) {
+        for (i in predictions.size - 1 downTo 13) {
+            if (predictions[i - 1] != predictions[i]) break
+            else predictions.removeAt(predictions.size - 1)
+        }
+    }
+
+    private fun tickValue(tick: Any): Double = if (tick is String) tick.toDouble() else tick as Double
+
+    companion object {
+
+        /**
+         * Numbers are falsy in JS if equal to 0 or NaN
+         */
+        fun truthy(value: Double?): Boolean = value != null && value != 0.0 && !value.isNaN()
+
+        /**
+         * Number.toString() of JS
+         */
+        fun jsString(value: Any?): String = when (value) {
+            null           -> "undefined"
+            is Double      -> when {
+                value.isNaN()                                    -> "NaN"
+                value.isInfinite()                               -> if (value > 0) "Infinity" else "-Infinity"
+                value == floor(value) && kotlin.math.abs(value) < 1e21 -> value.toLong().toString()
+                kotlin.math.abs(value) >= 1e-6                  -> BigDecimal(value.toString()).toPlainString()
+                else                                             -> value.toString()
+            }
+
+            is Int, is Long -> value.toString()
+            is JSONObject  -> value.toString()
+            else           -> value.toString()
+        }
+
+        /**
+         * Number.toFixed() of JS
+         */
+        fun toFixed(value: Double, digits: Int): String = String.format(Locale.US, "%.${digits}f", value)
+
+        private fun jsDate(time: Long): String = SimpleDateFormat("EEE MMM dd yyyy HH:mm:ss 'GMT'Z (zzzz)", Locale.US).format(time)
+    }
+}
@@ -0,0 +1,130 @@
+package app.aaps.plugins.aps.openAPSSMB
+
+import org.json.JSONObject
+
+/**
+ * Typed counterpart of profile JSON passed to oref1 SMB determine_basal
+ *
+ * Field names follow JS naming to keep [json] and determine-basal.js in sync
+ */
+@Suppress("SpellCheckingInspection", "PropertyName")
+data class OapsProfile(
+    val max_iob: Double,
+    val max_daily_basal: Double,
+    val max_basal: Double,
+    val min_bg: Double,
+    val max_bg: Double,
+    val target_bg: Double,
+    val carb_ratio: Double,
+    val sens: Double,
+    val max_daily_safety_multiplier: Double,
+    val current_basal_safety_multiplier: Double,
+    val high_temptarget_raises_sensitivity: Boolean,
+    val low_temptarget_lowers_sensitivity: Boolean,
+    val sensitivity_raises_target: Boolean,
+    val resistance_lowers_target: Boolean,
+    val adv_target_adjustments: Boolean,
+    val exercise_mode: Boolean,
+    val half_basal_exercise_target: Double,
+    val maxCOB: Double,
+    val skip_neutral_temps: Boolean,
+    val remainingCarbsCap: Double,
+    val enableUAM: Boolean,
+    val A52_risk_enable: Boolean,
+    val SMBInterval: Double,
+    val enableSMB_with_COB: Boolean,
+    val enableSMB_with_temptarget: Boolean,
+    val allowSMB_with_high_temptarget: Boolean,
+    val enableSMB_always: Boolean,
+    val enableSMB_after_carbs: Boolean,
+    val maxSMBBasalMinutes: Double,
+    val maxUAMSMBBasalMinutes: Double,
+    val bolus_increment: Double,
+    val carbsReqThreshold: Double,
+    val current_basal: Double,
+    val temptargetSet: Boolean,
+    val autosens_max: Double,
+    val out_units: String? = null
+) {
+
+    fun json(): JSONObject = JSONObject()
+        .put("max_iob", max_iob)
+        .put("type", "current")
+        .put("max_daily_basal", max_daily_basal)
+        .put("max_basal", max_basal)
+        .put("min_bg", min_bg)
+        .put("max_bg", max_bg)
+        .put("target_bg", target_bg)
+        .put("carb_ratio", carb_ratio)
+        .put("sens", sens)
+        .put("max_daily_safety_multiplier", max_daily_safety_multiplier)
+        .put("current_basal_safety_multiplier", current_basal_safety_multiplier)
+        .put("high_temptarget_raises_sensitivity", high_temptarget_raises_sensitivity)
+        .put("low_temptarget_lowers_sensitivity", low_temptarget_lowers_sensitivity)
+        .put("sensitivity_raises_target", sensitivity_raises_target)
+        .put("resistance_lowers_target", resistance_lowers_target)
+        .put("adv_target_adjustments", adv_target_adjustments)
+        .put("exercise_mode", exercise_mode)
+        .put("half_basal_exercise_target", half_basal_exercise_target)
+        .put("maxCOB", maxCOB)
+        .put("skip_neutral_temps", skip_neutral_temps)
+        .put("remainingCarbsCap", remainingCarbsCap)
+        .put("enableUAM", enableUAM)
+        .put("A52_risk_enable", A52_risk_enable)
+        .put("SMBInterval", SMBInterval)
+        .put("enableSMB_with_COB", enableSMB_with_COB)
+        .put("enableSMB_with_temptarget", enableSMB_with_temptarget)
+        .put("allowSMB_with_high_temptarget", allowSMB_with_high_temptarget)
+        .put("enableSMB_always", enableSMB_always)
+        .put("enableSMB_after_carbs", enableSMB_after_carbs)
+        .put("maxSMBBasalMinutes", maxSMBBasalMinutes)
+        .put("maxUAMSMBBasalMinutes", maxUAMSMBBasalMinutes)
+        .put("bolus_increment", bolus_increment)
+        .put("carbsReqThreshold", carbsReqThreshold)
+        .put("current_basal", current_basal)
+        .put("temptargetSet", temptargetSet)
+        .put("autosens_max", autosens_max)
+        .also { if (out_units != null) it.put("out_units", out_units) }
+
+    companion object {
+
+        fun fromJson(json: JSONObject): OapsProfile = OapsProfile(
+            max_iob = json.getDouble("max_iob"),
+            max_daily_basal = json.getDouble("max_daily_basal"),
+            max_basal = json.getDouble("max_basal"),
+            min_bg = json.getDouble("min_bg"),
+            max_bg = json.getDouble("max_bg"),
+            target_bg = json.getDouble("target_bg"),
+            carb_ratio = json.getDouble("carb_ratio"),
+            sens = json.getDouble("sens"),
+            max_daily_safety_multiplier = json.getDouble("max_daily_safety_multiplier"),
+            current_basal_safety_multiplier = json.getDouble("current_basal_safety_multiplier"),
+            high_temptarget_raises_sensitivity = json.getBoolean("high_temptarget_raises_sensitivity"),
+            low_temptarget_lowers_sensitivity = json.getBoolean("low_temptarget_lowers_sensitivity"),
+            sensitivity_raises_target = json.getBoolean("sensitivity_raises_target"),
+            resistance_lowers_target = json.getBoolean("resistance_lowers_target"),
+            adv_target_adjustments = json.getBoolean("adv_target_adjustments"),
+            exercise_mode = json.getBoolean("exercise_mode"),
+            half_basal_exercise_target = json.getDouble("half_basal_exercise_target"),
+            maxCOB = json.getDouble("maxCOB"),
+            skip_neutral_temps = json.getBoolean("skip_neutral_temps"),
+            remainingCarbsCap = json.getDouble("remainingCarbsCap"),
+            enableUAM = json.getBoolean("enableUAM"),
+            A52_risk_enable = json.getBoolean("A52_risk_enable"),
+            SMBInterval = json.getDouble("SMBInterval"),
+            enableSMB_with_COB = json.getBoolean("enableSMB_with_COB"),
+            enableSMB_with_temptarget = json.getBoolean("enableSMB_with_temptarget"),
+            allowSMB_with_high_temptarget = json.getBoolean("allowSMB_with_high_temptarget"),
+            enableSMB_always = json.getBoolean("enableSMB_always"),
+            enableSMB_after_carbs = json.getBoolean("enableSMB_after_carbs"),
+            maxSMBBasalMinutes = json.getDouble("maxSMBBasalMinutes"),
+            maxUAMSMBBasalMinutes = json.getDouble("maxUAMSMBBasalMinutes"),
+            bolus_increment = json.getDouble("bolus_increment"),
+            carbsReqThreshold = json.getDouble("carbsReqThreshold"),
+            current_basal = json.getDouble("current_basal"),
+            temptargetSet = json.getBoolean("temptargetSet"),
+            autosens_max = json.getDouble("autosens_max"),
+            out_units = if (json.has("out_units")) json.getString("out_units") else null
+        )
+    }
+}
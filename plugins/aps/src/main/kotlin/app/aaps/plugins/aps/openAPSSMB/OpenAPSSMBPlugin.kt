@@ -38,7 +38,6 @@ import app.aaps.plugins.aps.OpenAPSFragment
 import app.aaps.plugins.aps.R
 import app.aaps.plugins.aps.events.EventOpenAPSUpdateGui
 import app.aaps.plugins.aps.events.EventResetOpenAPSGui
-import app.aaps.plugins.aps.utils.ScriptReader
 import dagger.android.HasAndroidInjector
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -354,5 +353,7 @@ open class OpenAPSSMBPlugin @Inject constructor(
         return value
     }
 
-    open fun provideDetermineBasalAdapter(): DetermineBasalAdapter = DetermineBasalAdapterSMBJS(ScriptReader(context), injector)
+    open fun provideDetermineBasalAdapter(): DetermineBasalAdapter =
+        if (sp.getBoolean(R.string.key_openapssmb_native_engine, false)) DetermineBasalAdapterSMBKotlin(injector)
+        else DetermineBasalAdapterSMBJS(injector)
 }
\ No newline at end of file
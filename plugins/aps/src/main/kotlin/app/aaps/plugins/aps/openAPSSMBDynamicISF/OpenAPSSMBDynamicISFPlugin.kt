@@ -26,7 +26,6 @@ import app.aaps.database.impl.AppRepository
 import app.aaps.plugins.aps.R
 import app.aaps.plugins.aps.openAPSSMB.DetermineBasalAdapterSMBJS
 import app.aaps.plugins.aps.openAPSSMB.OpenAPSSMBPlugin
-import app.aaps.plugins.aps.utils.ScriptReader
 import dagger.android.HasAndroidInjector
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -92,10 +91,10 @@ class OpenAPSSMBDynamicISFPlugin @Inject constructor(
                 Notification.SMB_FALLBACK, dateUtil.now(),
                 rh.gs(R.string.fallback_smb_no_tdd), Notification.INFO, dateUtil.now() + T.mins(1).msecs()
             )
-            DetermineBasalAdapterSMBJS(ScriptReader(context), injector)
+            DetermineBasalAdapterSMBJS(injector)
         } else {
             uiInteraction.dismissNotification(Notification.SMB_FALLBACK)
-            DetermineBasalAdapterSMBDynamicISFJS(ScriptReader(context), injector)
+            DetermineBasalAdapterSMBDynamicISFJS(injector)
         }
 
     override fun isAutosensModeEnabled(value: Constraint<Boolean>): Constraint<Boolean> {
@@ -3,8 +3,9 @@ package app.aaps.plugins.aps.utils
 import android.content.Context
 import java.io.ByteArrayOutputStream
 import java.io.IOException
+import javax.inject.Inject
 
-class ScriptReader(private val context: Context) {
+class ScriptReader @Inject constructor(private val context: Context) {
 
     @Throws(IOException::class)
     fun readFile(fileName: String): ByteArray {
@@ -0,0 +1,147 @@
+package app.aaps.plugins.aps.utils
+
+import app.aaps.core.interfaces.logging.AAPSLogger
+import app.aaps.core.interfaces.logging.LTag
+import app.aaps.plugins.aps.logger.LoggerCallback
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Function
+import org.mozilla.javascript.NativeObject
+import org.mozilla.javascript.RhinoException
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.util.EnumMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Long-lived Rhino runtime for determine-basal scripts
+ *
+ * Every asset is read and compiled only once. Each [Algorithm] gets its own top-level scope
+ * (prototype is a sealed scope with standard objects shared by all algorithms) where
+ * compiled scripts are executed once to define `determine_basal` and `tempBasalFunctions`.
+ * Subsequent invocations reuse the resolved functions and reset only per-call state
+ * (logger buffers and implicit globals).
+ */
+@Singleton
+class ScriptRuntime @Inject constructor(
+    private val aapsLogger: AAPSLogger,
+    private val scriptReader: ScriptReader
+) {
+
+    enum class Algorithm(val determineBasal: String, val basalSetTemp: String) {
+        AMA("OpenAPSAMA/determine-basal.js", "OpenAPSAMA/basal-set-temp.js"),
+        SMB("OpenAPSSMB/determine-basal.js", "OpenAPSSMB/basal-set-temp.js"),
+        SMB_DYNAMIC_ISF("OpenAPSSMBDynamicISF/determine-basal.js", "OpenAPSSMB/basal-set-temp.js")
+    }
+
+    class LoadedScript(
+        val scope: Scriptable,
+        val determineBasal: Function,
+        val tempBasalFunctions: NativeObject
+    ) {
+
+        private val loadedIds = scope.ids.toSet()
+
+        /**
+         * Remove implicit globals created by previous invocation
+         * (scripts assign some variables without `var` declaration)
+         */
+        fun resetGlobals() {
+            for (id in scope.ids)
+                if (id !in loadedIds && id is String) scope.delete(id)
+        }
+    }
+
+    private var sharedScope: ScriptableObject? = null
+    private val compiledScripts = HashMap<String, Script>()
+    private val loadedScripts = EnumMap<Algorithm, LoadedScript>(Algorithm::class.java)
+
+    /**
+     * Run [block] with entered Rhino [Context] and loaded [algorithm]
+     *
+     * @return result of [block] or null if script functions cannot be resolved
+     */
+    @Synchronized
+    fun <T> execute(algorithm: Algorithm, block: (rhino: Context, script: LoadedScript) -> T): T? {
+        val rhino = Context.enter()
+        // Turn off optimization to make Rhino Android compatible
+        rhino.optimizationLevel = -1
+        try {
+            val script = loadedScripts[algorithm] ?: load(rhino, algorithm)?.also { loadedScripts[algorithm] = it }
+            if (script == null) {
+                aapsLogger.error(LTag.APS, "Problem loading JS Functions")
+                return null
+            }
+            LoggerCallback.clear()
+            script.resetGlobals()
+            return block(rhino, script)
+        } catch (e: RhinoException) {
+            // script state may be inconsistent after failure, start from scratch next time
+            loadedScripts.remove(algorithm)
+            throw e
+        } finally {
+            Context.exit()
+        }
+    }
+
+    /**
+     * Drop all loaded scopes and compiled scripts
+     */
+    @Synchronized
+    fun reset() {
+        loadedScripts.clear()
+        compiledScripts.clear()
+        sharedScope = null
+    }
+
+    private fun load(rhino: Context, algorithm: Algorithm): LoadedScript? {
+        val shared = sharedScope ?: rhino.initStandardObjects(null, true).also {
+            it.sealObject()
+            sharedScope = it
+        }
+        val scope = rhino.newObject(shared)
+        scope.prototype = shared
+        scope.parentScope = null
+
+        //register logger callback for console.log and console.error
+        ScriptableObject.defineClass(scope, LoggerCallback::class.java)
+        val myLogger = rhino.newObject(scope, "LoggerCallback", null)
+        scope.put("console2", scope, myLogger)
+        compile(rhino, "OpenAPSAMA/loggerhelper.js", "JavaScript").exec(rhino, scope)
+
+        //set module parent
+        compile(rhino, "module-prelude", "JavaScript") { MODULE_PRELUDE }.exec(rhino, scope)
+
+        //generate functions "determine_basal" and "setTempBasal"
+        compile(rhino, algorithm.determineBasal, "JavaScript").exec(rhino, scope)
+        compile(rhino, algorithm.basalSetTemp, "setTempBasal.js").exec(rhino, scope)
+        val determineBasalObj = scope["determine_basal", scope]
+        val setTempBasalFunctionsObj = scope["tempBasalFunctions", scope]
+        return if (determineBasalObj is Function && setTempBasalFunctionsObj is NativeObject)
+            LoadedScript(scope, determineBasalObj, setTempBasalFunctionsObj)
+        else null
+    }
+
+    private fun compile(rhino: Context, key: String, sourceName: String, source: () -> String = { readFile(key) }): Script =
+        compiledScripts.getOrPut(key) { rhino.compileString(source(), sourceName, 0, null) }
+
+    @Throws(IOException::class) private fun readFile(filename: String): String {
+        val bytes = scriptReader.readFile(filename)
+        var string = String(bytes, StandardCharsets.UTF_8)
+        if (string.startsWith("#!/usr/bin/env node")) {
+            string = string.substring(20)
+        }
+        return string
+    }
+
+    companion object {
+
+        private const val MODULE_PRELUDE =
+            "var module = {\"parent\":Boolean(1)};\n" +
+                "var round_basal = function round_basal(basal, profile) { return basal; };\n" +
+                "require = function() {return round_basal;};"
+    }
+}
@@ -0,0 +1,148 @@
+package app.aaps.plugins.aps.openAPSSMB
+
+import app.aaps.core.interfaces.iob.GlucoseStatus
+import app.aaps.core.interfaces.iob.IobTotal
+import app.aaps.core.interfaces.iob.MealData
+import app.aaps.plugins.aps.logger.LoggerCallback
+import app.aaps.plugins.aps.utils.ScriptReader
+import app.aaps.plugins.aps.utils.ScriptRuntime
+import app.aaps.plugins.aps.utils.StaticInjector
+import app.aaps.shared.tests.TestBaseWithProfile
+import com.google.common.truth.Truth.assertThat
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.NativeJSON
+import org.mozilla.javascript.NativeObject
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.Undefined
+import java.io.File
+
+/**
+ * Runs recorded determine_basal inputs through both determine-basal.js and [DetermineBasalSMB]
+ * and expects identical results
+ */
+class DetermineBasalSMBParityTest : TestBaseWithProfile() {
+
+    @Mock lateinit var scriptReader: ScriptReader
+    private lateinit var scriptRuntime: ScriptRuntime
+
+    private val injector = HasAndroidInjector {
+        AndroidInjector {
+            if (it is LoggerCallback) it.aapsLogger = aapsLogger
+        }
+    }
+
+    @BeforeEach
+    fun prepare() {
+        StaticInjector(injector)
+        `when`(scriptReader.readFile(anyString())).thenAnswer { File("src/main/assets/" + it.arguments[0]).readBytes() }
+        scriptRuntime = ScriptRuntime(aapsLogger, scriptReader)
+    }
+
+    @Test
+    fun steadyInRange() = compare("steady_in_range")
+
+    @Test
+    fun cobSmbMmol() = compare("cob_smb_mmol")
+
+    @Test
+    fun predictedLowZeroTemp() = compare("predicted_low_zero_temp")
+
+    @Test
+    fun uamSmb() = compare("uam_smb")
+
+    @Test
+    fun smbLowTemp() = compare("smb_low_temp")
+
+    @Test
+    fun carbsRequired() = compare("carbs_required")
+
+    private fun compare(fixture: String) {
+        val input = JSONObject(File("src/test/res/determineBasal/$fixture.json").readText())
+        val js = runJs(input)
+        val kotlin = runKotlin(input)
+
+        for (key in listOf("rate", "duration", "units", "eventualBG", "insulinReq", "carbsReq", "carbsReqWithin"))
+            assertThat(kotlin.has(key)).isEqualTo(js.has(key))
+        assertThat(kotlin.optDouble("rate")).isEqualTo(js.optDouble("rate"))
+        assertThat(kotlin.optDouble("duration")).isEqualTo(js.optDouble("duration"))
+        assertThat(kotlin.optDouble("units")).isEqualTo(js.optDouble("units"))
+        assertThat(kotlin.optDouble("eventualBG")).isEqualTo(js.optDouble("eventualBG"))
+        assertThat(kotlin.optDouble("insulinReq")).isEqualTo(js.optDouble("insulinReq"))
+        assertThat(kotlin.optDouble("carbsReq")).isEqualTo(js.optDouble("carbsReq"))
+        assertThat(kotlin.getString("reason")).isEqualTo(js.getString("reason"))
+        val kotlinPredictions = kotlin.getJSONObject("predBGs")
+        val jsPredictions = js.getJSONObject("predBGs")
+        for (curve in listOf("IOB", "ZT", "COB", "UAM")) {
+            assertThat(kotlinPredictions.has(curve)).isEqualTo(jsPredictions.has(curve))
+            if (jsPredictions.has(curve)) assertThat(doubles(kotlinPredictions.getJSONArray(curve))).isEqualTo(doubles(jsPredictions.getJSONArray(curve)))
+        }
+    }
+
+    private fun runJs(input: JSONObject): JSONObject =
+        scriptRuntime.execute(ScriptRuntime.Algorithm.SMB) { rhino, script ->
+            fun param(json: Any) = NativeJSON.parse(rhino, script.scope, json.toString()) { _: Context?, _: Scriptable?, _: Scriptable?, objects: Array<Any?> -> objects[1] }
+            val params = arrayOf(
+                param(input.getJSONObject("glucoseStatus")),
+                param(input.getJSONObject("currentTemp")),
+                param(input.getJSONArray("iobData")),
+                param(input.getJSONObject("profile")),
+                param(input.getJSONObject("autosensData")),
+                param(input.getJSONObject("mealData")),
+                script.tempBasalFunctions,
+                java.lang.Boolean.valueOf(input.getBoolean("microBolusAllowed")),
+                Undefined.instance,
+                java.lang.Long.valueOf(input.getLong("currentTime")),
+                java.lang.Boolean.valueOf(input.getBoolean("flatBGsDetected"))
+            )
+            val jsResult = script.determineBasal.call(rhino, script.scope, script.scope, params) as NativeObject
+            JSONObject(NativeJSON.stringify(rhino, script.scope, jsResult, null, null).toString())
+        }!!
+
+    private fun runKotlin(input: JSONObject): JSONObject {
+        val glucoseStatusJson = input.getJSONObject("glucoseStatus")
+        val glucoseStatus = GlucoseStatus(
+            glucose = glucoseStatusJson.getDouble("glucose"),
+            noise = glucoseStatusJson.getDouble("noise"),
+            delta = glucoseStatusJson.getDouble("delta"),
+            shortAvgDelta = glucoseStatusJson.getDouble("short_avgdelta"),
+            longAvgDelta = glucoseStatusJson.getDouble("long_avgdelta"),
+            date = glucoseStatusJson.getLong("date")
+        )
+        val currentTempJson = input.getJSONObject("currentTemp")
+        val currentTemp = DetermineBasalSMB.CurrentTemp(currentTempJson.getDouble("duration"), currentTempJson.getDouble("rate"))
+        val iobJson = input.getJSONArray("iobData")
+        val iobArray = Array(iobJson.length()) { i -> iobTotal(iobJson.getJSONObject(i)) }
+        val mealDataJson = input.getJSONObject("mealData")
+        val mealData = MealData().also {
+            it.carbs = mealDataJson.getDouble("carbs")
+            it.mealCOB = mealDataJson.getDouble("mealCOB")
+            it.slopeFromMaxDeviation = mealDataJson.getDouble("slopeFromMaxDeviation")
+            it.slopeFromMinDeviation = mealDataJson.getDouble("slopeFromMinDeviation")
+            it.lastBolusTime = mealDataJson.getLong("lastBolusTime")
+            it.lastCarbTime = mealDataJson.getLong("lastCarbTime")
+        }
+        return DetermineBasalSMB(dateUtil).determine_basal(
+            glucoseStatus, currentTemp, iobArray, OapsProfile.fromJson(input.getJSONObject("profile")),
+            input.getJSONObject("autosensData").getDouble("ratio"), mealData,
+            input.getBoolean("microBolusAllowed"), input.getLong("currentTime"), input.getBoolean("flatBGsDetected")
+        ).json(dateUtil)
+    }
+
+    private fun iobTotal(json: JSONObject): IobTotal = IobTotal(0).also {
+        it.iob = json.getDouble("iob")
+        it.activity = json.getDouble("activity")
+        it.lastBolusTime = json.getLong("lastBolusTime")
+        if (json.has("iobWithZeroTemp")) it.iobWithZeroTemp = iobTotal(json.getJSONObject("iobWithZeroTemp"))
+    }
+
+    private fun doubles(array: JSONArray): List<Double> = List(array.length()) { array.getDouble(it) }
+}
@@ -7,6 +7,7 @@ import app.aaps.core.interfaces.utils.T
 import app.aaps.plugins.automation.actions.Action
 import app.aaps.plugins.automation.actions.ActionDummy
 import app.aaps.plugins.automation.actions.ActionStopProcessing
+import app.aaps.plugins.automation.triggers.EvaluationContext
 import app.aaps.plugins.automation.triggers.TriggerConnector
 import app.aaps.plugins.automation.triggers.TriggerDummy
 import dagger.android.HasAndroidInjector
@@ -35,8 +36,11 @@ class AutomationEventObject(private val injector: HasAndroidInjector) : Automati
         injector.androidInjector().inject(this)
     }
 
-    override fun canRun(): Boolean = trigger.shouldRun()
-    override fun preconditionCanRun(): Boolean = getPreconditions().shouldRun()
+    override fun canRun(): Boolean = canRun(EvaluationContext(injector))
+    override fun preconditionCanRun(): Boolean = preconditionCanRun(EvaluationContext(injector))
+
+    fun canRun(context: EvaluationContext): Boolean = trigger.shouldRun(context)
+    fun preconditionCanRun(context: EvaluationContext): Boolean = getPreconditions().shouldRun(context)
 
     internal fun getPreconditions(): TriggerConnector {
         val trigger = TriggerConnector(injector, TriggerConnector.Type.AND)
@@ -294,7 +294,6 @@ class AutomationFragment : DaggerFragment(), OnStartDragListener, MenuProvider {
                 selectedItems.forEach { _, event ->
                     uel.log(Action.AUTOMATION_REMOVED, Sources.Automation, event.title)
                     automationPlugin.remove(event)
-                    rxBus.send(EventAutomationDataChanged())
                 }
                 actionHelper.finish()
             })
@@ -46,6 +46,7 @@ import app.aaps.plugins.automation.events.EventAutomationDataChanged
 import app.aaps.plugins.automation.events.EventAutomationUpdateGui
 import app.aaps.plugins.automation.events.EventLocationChange
 import app.aaps.plugins.automation.services.LocationServiceHelper
+import app.aaps.plugins.automation.triggers.EvaluationContext
 import app.aaps.plugins.automation.triggers.Trigger
 import app.aaps.plugins.automation.triggers.TriggerAutosensValue
 import app.aaps.plugins.automation.triggers.TriggerBTDevice
@@ -250,28 +251,37 @@ class AutomationPlugin @Inject constructor(
         }
 
         aapsLogger.debug(LTag.AUTOMATION, "processActions")
-        val iterator = synchronized(this) { automationEvents.toMutableList().iterator() }
-        while (iterator.hasNext()) {
-            val event = iterator.next()
-            if (event.isEnabled && !event.userAction && event.shouldRun())
-                if (event.systemAction || commonEventsEnabled) {
-                    processEvent(event)
-                    if (event.hasStopProcessing()) break
-                }
-        }
+        processEvents(synchronized(this) { automationEvents.toMutableList() }, commonEventsEnabled)
 
         // we cannot detect connected BT devices
         // so let's collect all connection/disconnections between 2 runs of processActions()
         // TriggerBTDevice can pick up and process these events
         // after processing clear events to prevent repeated actions
         btConnects.clear()
+    }
 
-        storeToSP() // save last run time
+    internal fun processEvents(events: List<AutomationEventObject>, commonEventsEnabled: Boolean) {
+        // events see the same data, IOB, COB etc. is calculated only once
+        var context = EvaluationContext(injector)
+        for (event in events) {
+            if (event.isEnabled && !event.userAction && event.shouldRun())
+                if (event.systemAction || commonEventsEnabled) {
+                    // executed actions may have changed the data, following events must see the new state
+                    if (processEvent(event, context)) context = EvaluationContext(injector)
+                    if (event.hasStopProcessing()) break
+                }
+        }
     }
 
     override fun processEvent(someEvent: AutomationEvent) {
-        val event = someEvent as AutomationEventObject
-        if (event.canRun() && event.preconditionCanRun()) {
+        processEvent(someEvent as AutomationEventObject, EvaluationContext(injector))
+    }
+
+    /**
+     * @return true if actions of [event] have been executed
+     */
+    private fun processEvent(event: AutomationEventObject, context: EvaluationContext): Boolean {
+        if (event.canRun(context) && event.preconditionCanRun(context)) {
             val actions = event.actions
             for (action in actions) {
                 action.title = event.title
@@ -303,7 +313,9 @@ class AutomationPlugin @Inject constructor(
             SystemClock.sleep(1100)
             event.lastRun = dateUtil.now()
             if (event.autoRemove) remove(event)
+            return true
         }
+        return false
     }
 
     @Synchronized
@@ -340,6 +352,7 @@ class AutomationPlugin @Inject constructor(
     @Synchronized
     fun remove(event: AutomationEvent) {
         automationEvents.remove(event)
+        rxBus.send(EventAutomationDataChanged())
     }
 
     fun at(index: Int) = automationEvents[index]
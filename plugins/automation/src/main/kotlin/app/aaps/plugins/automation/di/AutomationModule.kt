@@ -27,6 +27,7 @@ import app.aaps.plugins.automation.dialogs.EditActionDialog
 import app.aaps.plugins.automation.dialogs.EditEventDialog
 import app.aaps.plugins.automation.dialogs.EditTriggerDialog
 import app.aaps.plugins.automation.services.LocationService
+import app.aaps.plugins.automation.triggers.EvaluationContext
 import app.aaps.plugins.automation.triggers.Trigger
 import app.aaps.plugins.automation.triggers.TriggerAutosensValue
 import app.aaps.plugins.automation.triggers.TriggerBTDevice
@@ -67,6 +68,7 @@ abstract class AutomationModule {
     @ContributesAndroidInjector abstract fun contributesEditEventDialog(): EditEventDialog
     @ContributesAndroidInjector abstract fun contributesEditTriggerDialog(): EditTriggerDialog
     @ContributesAndroidInjector abstract fun automationEventInjector(): AutomationEventObject
+    @ContributesAndroidInjector abstract fun evaluationContextInjector(): EvaluationContext
 
     @ContributesAndroidInjector abstract fun triggerInjector(): Trigger
     @ContributesAndroidInjector abstract fun triggerAutosensValueInjector(): TriggerAutosensValue
@@ -0,0 +1,54 @@
+package app.aaps.plugins.automation.triggers
+
+import android.location.Location
+import app.aaps.core.interfaces.aps.AutosensData
+import app.aaps.core.interfaces.iob.CobInfo
+import app.aaps.core.interfaces.iob.GlucoseStatus
+import app.aaps.core.interfaces.iob.GlucoseStatusProvider
+import app.aaps.core.interfaces.iob.IobCobCalculator
+import app.aaps.core.interfaces.iob.IobTotal
+import app.aaps.core.interfaces.logging.AAPSLogger
+import app.aaps.core.interfaces.profile.Profile
+import app.aaps.core.interfaces.profile.ProfileFunction
+import app.aaps.core.interfaces.utils.DateUtil
+import app.aaps.database.ValueWrapper
+import app.aaps.database.entities.Bolus
+import app.aaps.database.entities.TemporaryTarget
+import app.aaps.database.impl.AppRepository
+import app.aaps.plugins.automation.services.LastLocationDataContainer
+import dagger.android.HasAndroidInjector
+import javax.inject.Inject
+
+/**
+ * Data shared by all triggers evaluated in one run of automation
+ *
+ * Every value is loaded on first use only and then it's kept for the whole run.
+ * Many events testing IOB or BG don't repeat the same calculation and database queries
+ * and all of them see the same state.
+ */
+class EvaluationContext(injector: HasAndroidInjector) {
+
+    @Inject lateinit var aapsLogger: AAPSLogger
+    @Inject lateinit var profileFunction: ProfileFunction
+    @Inject lateinit var iobCobCalculator: IobCobCalculator
+    @Inject lateinit var glucoseStatusProvider: GlucoseStatusProvider
+    @Inject lateinit var repository: AppRepository
+    @Inject lateinit var locationDataContainer: LastLocationDataContainer
+    @Inject lateinit var dateUtil: DateUtil
+
+    init {
+        injector.androidInjector().inject(this)
+    }
+
+    val now: Long = dateUtil.now()
+
+    val profile: Profile? by lazy { profileFunction.getProfile() }
+    val isProfileChangePending: Boolean by lazy { profileFunction.isProfileChangePending() }
+    val iob: IobTotal? by lazy { profile?.let { iobCobCalculator.calculateFromTreatmentsAndTemps(now, it) } }
+    val cobInfo: CobInfo by lazy { iobCobCalculator.getCobInfo("Automation") }
+    val glucoseStatus: GlucoseStatus? by lazy { glucoseStatusProvider.glucoseStatusData }
+    val autosensData: AutosensData? by lazy { iobCobCalculator.ads.getLastAutosensData("Automation trigger", aapsLogger, dateUtil) }
+    val temporaryTarget: ValueWrapper<TemporaryTarget> by lazy { repository.getTemporaryTargetActiveAt(now).blockingGet() }
+    val lastNormalBolus: ValueWrapper<Bolus> by lazy { repository.getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL).blockingGet() }
+    val lastLocation: Location? by lazy { locationDataContainer.lastLocation }
+}
@@ -50,7 +50,13 @@ abstract class Trigger(val injector: HasAndroidInjector) {
         injector.androidInjector().inject(this)
     }
 
-    abstract fun shouldRun(): Boolean
+    /**
+     * @param context data shared with other triggers evaluated in the same automation run
+     */
+    abstract fun shouldRun(context: EvaluationContext): Boolean
+
+    fun shouldRun(): Boolean = shouldRun(EvaluationContext(injector))
+
     abstract fun dataJSON(): JSONObject
     abstract fun fromJSON(data: String): Trigger
 
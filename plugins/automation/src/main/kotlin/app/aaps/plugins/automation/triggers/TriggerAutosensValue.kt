@@ -30,8 +30,8 @@ class TriggerAutosensValue(injector: HasAndroidInjector) : Trigger(injector) {
         comparator = Comparator(rh, triggerAutosensValue.comparator.value)
     }
 
-    override fun shouldRun(): Boolean {
-        val autosensData = iobCobCalculator.ads.getLastAutosensData("Automation trigger", aapsLogger, dateUtil)
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val autosensData = context.autosensData
             ?: return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
                 true
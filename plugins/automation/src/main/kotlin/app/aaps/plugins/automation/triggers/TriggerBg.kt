@@ -45,8 +45,8 @@ class TriggerBg(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val glucoseStatus = glucoseStatusProvider.glucoseStatusData
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val glucoseStatus = context.glucoseStatus
         if (glucoseStatus == null && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
@@ -5,7 +5,6 @@ import app.aaps.core.interfaces.logging.LTag
 import app.aaps.core.utils.JsonHelper
 import app.aaps.core.utils.JsonHelper.safeGetString
 import app.aaps.database.ValueWrapper
-import app.aaps.database.entities.Bolus
 import app.aaps.plugins.automation.R
 import app.aaps.plugins.automation.elements.Comparator
 import app.aaps.plugins.automation.elements.InputDuration
@@ -36,8 +35,8 @@ class TriggerBolusAgo(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val lastBolus = repository.getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL).blockingGet()
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val lastBolus = context.lastNormalBolus
         val lastBolusTime = if (lastBolus is ValueWrapper.Existing) lastBolus.value.timestamp else 0L
         if (lastBolusTime == 0L)
             return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
@@ -47,7 +46,7 @@ class TriggerBolusAgo(injector: HasAndroidInjector) : Trigger(injector) {
                 aapsLogger.debug(LTag.AUTOMATION, "NOT ready for execution: " + friendlyDescription())
                 false
             }
-        val last = (dateUtil.now() - lastBolusTime).toDouble() / (60 * 1000)
+        val last = (context.now - lastBolusTime).toDouble() / (60 * 1000)
         aapsLogger.debug(LTag.AUTOMATION, "LastBolus min ago: $minutesAgo")
         val doRun = comparator.value.check(last.toInt(), minutesAgo.getMinutes())
         if (doRun) {
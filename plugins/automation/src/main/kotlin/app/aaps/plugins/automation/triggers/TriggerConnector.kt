@@ -69,13 +69,13 @@ class TriggerConnector(injector: HasAndroidInjector) : Trigger(injector) {
         return -1
     }
 
-    @Synchronized override fun shouldRun(): Boolean {
+    @Synchronized override fun shouldRun(context: EvaluationContext): Boolean {
         var result = true
         // check first trigger
-        if (list.isNotEmpty()) result = list[0].shouldRun()
+        if (list.isNotEmpty()) result = list[0].shouldRun(context)
         // check all others
         for (i in 1 until list.size) {
-            result = connectorType.apply(result, list[i].shouldRun())
+            result = connectorType.apply(result, list[i].shouldRun(context))
         }
         if (result) aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription().replace("\n", " "))
         return result
@@ -62,8 +62,8 @@ class TriggerDelta(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val glucoseStatus = glucoseStatusProvider.glucoseStatusData
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val glucoseStatus = context.glucoseStatus
             ?: return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
                 true
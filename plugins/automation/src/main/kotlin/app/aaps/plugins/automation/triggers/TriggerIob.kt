@@ -33,9 +33,8 @@ class TriggerIob(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val profile = profileFunction.getProfile() ?: return false
-        val iob = iobCobCalculator.calculateFromTreatmentsAndTemps(dateUtil.now(), profile)
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val iob = context.iob ?: return false
         if (comparator.value.check(iob.iob, insulin.value)) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
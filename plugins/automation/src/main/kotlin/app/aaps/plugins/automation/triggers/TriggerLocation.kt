@@ -44,8 +44,8 @@ class TriggerLocation(injector: HasAndroidInjector) : Trigger(injector) {
         name = triggerLocation.name
     }
 
-    @Synchronized override fun shouldRun(): Boolean {
-        val location: Location = locationDataContainer.lastLocation ?: return false
+    @Synchronized override fun shouldRun(context: EvaluationContext): Boolean {
+        val location: Location = context.lastLocation ?: return false
         val a = Location("Trigger")
         a.latitude = latitude.value
         a.longitude = longitude.value
@@ -40,9 +40,9 @@ class TriggerProfilePercent(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val profile = profileFunction.getProfile()
-        if (profileFunction.isProfileChangePending()) {
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val profile = context.profile
+        if (context.isProfileChangePending) {
             aapsLogger.debug(LTag.AUTOMATION, "NOT ready for execution: " + "Profile change is already pending: " + friendlyDescription())
             return false
         }
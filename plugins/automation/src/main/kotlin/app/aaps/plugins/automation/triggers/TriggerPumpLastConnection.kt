@@ -40,7 +40,7 @@ class TriggerPumpLastConnection(injector: HasAndroidInjector) : Trigger(injector
         return this
     }
 
-    override fun shouldRun(): Boolean {
+    override fun shouldRun(context: EvaluationContext): Boolean {
         val lastConnection = activePlugin.activePump.lastDataTime()
         if (lastConnection == 0L && comparator.value === Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
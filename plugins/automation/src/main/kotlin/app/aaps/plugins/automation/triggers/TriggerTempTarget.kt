@@ -29,8 +29,8 @@ class TriggerTempTarget(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val tt = repository.getTemporaryTargetActiveAt(dateUtil.now()).blockingGet()
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val tt = context.temporaryTarget
         if (tt is ValueWrapper.Absent && comparator.value == ComparatorExists.Compare.NOT_EXISTS) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
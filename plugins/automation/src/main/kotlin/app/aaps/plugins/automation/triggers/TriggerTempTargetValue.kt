@@ -46,8 +46,8 @@ class TriggerTempTargetValue(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val tt = repository.getTemporaryTargetActiveAt(dateUtil.now()).blockingGet()
+    override fun shouldRun(context: EvaluationContext): Boolean {
+        val tt = context.temporaryTarget
         if (tt is ValueWrapper.Absent && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
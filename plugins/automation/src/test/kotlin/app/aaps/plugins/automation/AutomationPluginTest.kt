@@ -0,0 +1,107 @@
+package app.aaps.plugins.automation
+
+import app.aaps.core.interfaces.aps.Loop
+import app.aaps.core.interfaces.constraints.ConstraintsChecker
+import app.aaps.core.interfaces.queue.Callback
+import app.aaps.database.ValueWrapper
+import app.aaps.database.entities.TemporaryTarget
+import app.aaps.plugins.automation.actions.Action
+import app.aaps.plugins.automation.elements.ComparatorExists
+import app.aaps.plugins.automation.services.LocationServiceHelper
+import app.aaps.plugins.automation.triggers.TriggerConnector
+import app.aaps.plugins.automation.triggers.TriggerTempTarget
+import app.aaps.plugins.automation.triggers.TriggerTestBase
+import app.aaps.plugins.automation.ui.TimerUtil
+import com.google.common.truth.Truth.assertThat
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import io.reactivex.rxjava3.core.Single
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.ArgumentMatchers.anyLong
+import org.mockito.Mock
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+class AutomationPluginTest : TriggerTestBase() {
+
+    @Mock lateinit var loop: Loop
+    @Mock lateinit var constraintChecker: ConstraintsChecker
+    @Mock lateinit var locationServiceHelper: LocationServiceHelper
+    @Mock lateinit var timerUtil: TimerUtil
+
+    private lateinit var automationPlugin: AutomationPlugin
+    private var temporaryTarget: ValueWrapper<TemporaryTarget> = ValueWrapper.Absent()
+
+    private val pluginInjector = HasAndroidInjector {
+        AndroidInjector {
+            injector.androidInjector().inject(it)
+            if (it is AutomationEventObject) {
+                it.aapsLogger = aapsLogger
+                it.dateUtil = dateUtil
+            }
+            if (it is Action) {
+                it.aapsLogger = aapsLogger
+                it.rh = rh
+            }
+        }
+    }
+
+    private inner class ActionStartTT : Action(pluginInjector) {
+
+        var executed = 0
+
+        override fun friendlyName(): Int = R.string.starttemptarget
+        override fun shortDescription(): String = "Start TT"
+        override fun doAction(callback: Callback) {
+            executed++
+            temporaryTarget = ValueWrapper.Existing(
+                TemporaryTarget(timestamp = dateUtil.now(), reason = TemporaryTarget.Reason.AUTOMATION, highTarget = 140.0, lowTarget = 140.0, duration = 3600000)
+            )
+        }
+
+        override fun isValid(): Boolean = true
+        override fun icon(): Int = app.aaps.core.main.R.drawable.ic_temptarget_high
+    }
+
+    private fun startTTIfNotExists(action: Action) = AutomationEventObject(pluginInjector).also { event ->
+        event.trigger = TriggerConnector(pluginInjector).also { it.list.add(TriggerTempTarget(pluginInjector, ComparatorExists.Compare.NOT_EXISTS)) }
+        event.addAction(action)
+    }
+
+    @BeforeEach
+    fun prepare() {
+        `when`(repository.getTemporaryTargetActiveAt(anyLong())).thenAnswer { Single.just(temporaryTarget) }
+        automationPlugin = AutomationPlugin(
+            pluginInjector, rh, context, sp, fabricPrivacy, loop, rxBus, constraintChecker, aapsLogger, aapsSchedulers, config,
+            locationServiceHelper, dateUtil, activePlugin, timerUtil
+        )
+    }
+
+    @Test
+    fun eventSeesResultOfPreviousEventActions() {
+        val first = ActionStartTT()
+        val second = ActionStartTT()
+
+        automationPlugin.processEvents(listOf(startTTIfNotExists(first), startTTIfNotExists(second)), true)
+
+        assertThat(first.executed).isEqualTo(1)
+        assertThat(second.executed).isEqualTo(0)
+    }
+
+    @Test
+    fun dataIsReusedUntilActionsAreExecuted() {
+        temporaryTarget = ValueWrapper.Existing(
+            TemporaryTarget(timestamp = dateUtil.now(), reason = TemporaryTarget.Reason.CUSTOM, highTarget = 100.0, lowTarget = 100.0, duration = 3600000)
+        )
+        val first = ActionStartTT()
+        val second = ActionStartTT()
+
+        automationPlugin.processEvents(listOf(startTTIfNotExists(first), startTTIfNotExists(second)), true)
+
+        assertThat(first.executed).isEqualTo(0)
+        assertThat(second.executed).isEqualTo(0)
+        verify(repository, times(1)).getTemporaryTargetActiveAt(anyLong())
+    }
+}
@@ -9,6 +9,8 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.mockito.ArgumentMatchers
 import org.mockito.Mockito.`when`
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
 import org.skyscreamer.jsonassert.JSONAssert
 
 class TriggerIobTest : TriggerTestBase() {
@@ -39,6 +41,17 @@ class TriggerIobTest : TriggerTestBase() {
         assertThat(t.shouldRun()).isFalse()
     }
 
+    @Test fun iobIsCalculatedOncePerContext() {
+        `when`(iobCobCalculator.calculateFromTreatmentsAndTemps(ArgumentMatchers.anyLong(), anyObject())).thenReturn(generateIobRecordData())
+        val context = EvaluationContext(injector)
+        val t = TriggerConnector(injector, TriggerConnector.Type.AND)
+        t.list.add(TriggerIob(injector).setValue(0.8).comparator(Comparator.Compare.IS_GREATER))
+        t.list.add(TriggerIob(injector).setValue(1.2).comparator(Comparator.Compare.IS_LESSER))
+        assertThat(t.shouldRun(context)).isTrue()
+        assertThat(TriggerIob(injector).setValue(1.0).comparator(Comparator.Compare.IS_EQUAL).shouldRun(context)).isTrue()
+        verify(iobCobCalculator, times(1)).calculateFromTreatmentsAndTemps(ArgumentMatchers.anyLong(), anyObject())
+    }
+
     @Test fun copyConstructorTest() {
         val t: TriggerIob = TriggerIob(injector).setValue(213.0).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
         assertThat(t.insulin.value).isWithin(0.01).of(213.0)
@@ -42,6 +42,15 @@ open class TriggerTestBase : TestBaseWithProfile() {
                 it.dateUtil = dateUtil
                 it.profileUtil = profileUtil
             }
+            if (it is EvaluationContext) {
+                it.aapsLogger = aapsLogger
+                it.profileFunction = profileFunction
+                it.iobCobCalculator = iobCobCalculator
+                it.glucoseStatusProvider = GlucoseStatusProviderImpl(aapsLogger, iobCobCalculator, dateUtil, decimalFormatter)
+                it.repository = repository
+                it.locationDataContainer = locationDataContainer
+                it.dateUtil = dateUtil
+            }
             if (it is TriggerBg) {
                 it.profileFunction = profileFunction
             }
@@ -17,6 +17,7 @@ import app.aaps.core.interfaces.utils.T
 import app.aaps.database.entities.Bolus
 import app.aaps.database.entities.embedments.InsulinConfiguration
 import dagger.android.HasAndroidInjector
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.exp
 import kotlin.math.pow
 
@@ -74,8 +75,12 @@ abstract class InsulinOrefBasePlugin(
             return profile?.dia ?: hardLimits.minDia()
         }
 
+    // curves of used (peak, dia) pairs shared by all IOB calculations
+    private val curves = ConcurrentHashMap<Pair<Int, Double>, OrefCurveTable>()
+
     override fun iobCalcForTreatment(bolus: Bolus, time: Long, dia: Double): Iob {
         assert(dia != 0.0)
+        val peak = this.peak // evaluated once, may be read from preferences
         assert(peak != 0)
         val result = Iob()
         if (bolus.amount != 0.0) {
@@ -84,7 +89,11 @@ abstract class InsulinOrefBasePlugin(
             val td = dia * 60 //getDIA() always >= MIN_DIA
             val tp = peak.toDouble()
             // force the IOB to 0 if over DIA hours have passed
-            if (t < td) {
+            if (t >= 0 && t < td && OrefCurveTable.isSupported(peak, dia)) {
+                val curve = curves.getOrPut(Pair(peak, dia)) { OrefCurveTable(peak, dia) }
+                result.activityContrib = bolus.amount * curve.activity(t)
+                result.iobContrib = bolus.amount * curve.iob(t)
+            } else if (t < td) {
                 val tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
                 val a = 2 * tau / td
                 val s = 1 / (1 - a + (1 + a) * exp(-td / tau))
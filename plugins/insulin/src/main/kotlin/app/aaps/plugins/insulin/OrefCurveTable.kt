@@ -0,0 +1,73 @@
+package app.aaps.plugins.insulin
+
+import kotlin.math.ceil
+import kotlin.math.exp
+import kotlin.math.pow
+
+/**
+ * Oref exponential insulin curve of 1U bolus for one (peak, dia) pair sampled at 1 minute resolution
+ *
+ * Values between samples are calculated by cubic Hermite interpolation. Derivatives are exact
+ * (IOB decreases by activity, activity derivative is analytical) so the error is bounded by h^4/384 * max|f''''|.
+ * For peaks 35 - 120 min and DIA 5 - 10 h it is below 1e-8 U of IOB and 1e-9 U/min of activity,
+ * ie. far below rounding of any displayed or used value.
+ *
+ * @param peak time of peak activity in minutes
+ * @param dia duration of insulin action in hours
+ */
+class OrefCurveTable(val peak: Int, val dia: Double) {
+
+    private val td = dia * 60
+    private val tau = peak * (1 - peak / td) / (1 - 2 * peak / td)
+    private val a = 2 * tau / td
+    private val s = 1 / (1 - a + (1 + a) * exp(-td / tau))
+
+    private val size = ceil(td).toInt() + 1
+    private val activity = DoubleArray(size) { activityAt(it.toDouble()) }
+    private val activityDerivative = DoubleArray(size) { activityDerivativeAt(it.toDouble()) }
+    private val iob = DoubleArray(size) { iobAt(it.toDouble()) }
+
+    /**
+     * Activity of 1U bolus [t] minutes after bolus, valid for 0 <= t <= td
+     */
+    fun activity(t: Double): Double {
+        val i = index(t)
+        return hermite(activity[i], activity[i + 1], activityDerivative[i], activityDerivative[i + 1], t - i)
+    }
+
+    /**
+     * IOB of 1U bolus [t] minutes after bolus, valid for 0 <= t <= td
+     */
+    fun iob(t: Double): Double {
+        val i = index(t)
+        return hermite(iob[i], iob[i + 1], -activity[i], -activity[i + 1], t - i)
+    }
+
+    /**
+     * Exact value of activity as calculated originally
+     */
+    fun activityAt(t: Double): Double = (s / tau.pow(2.0)) * t * (1 - t / td) * exp(-t / tau)
+
+    /**
+     * Exact value of IOB as calculated originally
+     */
+    fun iobAt(t: Double): Double = 1 - s * (1 - a) * ((t.pow(2.0) / (tau * td * (1 - a)) - t / tau - 1) * exp(-t / tau) + 1)
+
+    private fun activityDerivativeAt(t: Double): Double = (s / tau.pow(2.0)) * exp(-t / tau) * ((1 - 2 * t / td) - t * (1 - t / td) / tau)
+
+    private fun index(t: Double): Int = t.toInt().coerceIn(0, size - 2)
+
+    private fun hermite(y0: Double, y1: Double, d0: Double, d1: Double, x: Double): Double {
+        val x2 = x * x
+        val x3 = x2 * x
+        return (2 * x3 - 3 * x2 + 1) * y0 + (x3 - 2 * x2 + x) * d0 + (3 * x2 - 2 * x3) * y1 + (x3 - x2) * d1
+    }
+
+    companion object {
+
+        /**
+         * Curve is usable only if peak is before half of DIA, otherwise original formula is used
+         */
+        fun isSupported(peak: Int, dia: Double): Boolean = peak > 0 && 2 * peak < dia * 60
+    }
+}
@@ -0,0 +1,39 @@
+package app.aaps.plugins.insulin
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+
+class OrefCurveTableTest {
+
+    @Test
+    fun interpolationMatchesFormula() {
+        for (peak in listOf(35, 45, 55, 75, 120))
+            for (dia in listOf(5.0, 5.5, 6.25, 8.0, 10.0)) {
+                val sut = OrefCurveTable(peak, dia)
+                var t = 0.0
+                while (t < dia * 60) {
+                    assertThat(sut.iob(t)).isWithin(1e-8).of(sut.iobAt(t))
+                    assertThat(sut.activity(t)).isWithin(1e-9).of(sut.activityAt(t))
+                    t += 0.37
+                }
+            }
+    }
+
+    @Test
+    fun samplesAreExact() {
+        val sut = OrefCurveTable(75, 5.0)
+        for (t in 0..300) {
+            assertThat(sut.iob(t.toDouble())).isEqualTo(sut.iobAt(t.toDouble()))
+            assertThat(sut.activity(t.toDouble())).isEqualTo(sut.activityAt(t.toDouble()))
+        }
+        assertThat(sut.iob(0.0)).isWithin(1e-12).of(1.0)
+        assertThat(sut.iob(300.0)).isWithin(1e-12).of(0.0)
+    }
+
+    @Test
+    fun isSupportedTest() {
+        assertThat(OrefCurveTable.isSupported(75, 5.0)).isTrue()
+        assertThat(OrefCurveTable.isSupported(150, 5.0)).isFalse()
+        assertThat(OrefCurveTable.isSupported(0, 5.0)).isFalse()
+    }
+}
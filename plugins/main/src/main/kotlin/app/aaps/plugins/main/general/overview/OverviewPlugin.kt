@@ -124,8 +124,7 @@ class OverviewPlugin @Inject constructor(
                                overviewBus.send(EventUpdateOverviewNotification("EventDismissNotification"))
                        }, fabricPrivacy::logException)
         disposable += rxBus
-            .toObservable(EventIobCalculationProgress::class.java)
-            .observeOn(aapsSchedulers.io)
+            .toObservable(EventIobCalculationProgress::class.java, aapsSchedulers.io, coalesce = true)
             .subscribe({
                            overviewData.calcProgressPct = it.finalPercent
                            overviewBus.send(EventUpdateOverviewCalcProgress("EventIobCalculationProgress"))
@@ -84,8 +84,7 @@ class PersistentNotificationPlugin @Inject constructor(
         super.onStart()
         notificationHolder.createNotificationChannel()
         disposable += rxBus
-            .toObservable(EventRefreshOverview::class.java)
-            .observeOn(aapsSchedulers.io)
+            .toObservable(EventRefreshOverview::class.java, aapsSchedulers.io, coalesce = true)
             .subscribe({ triggerNotificationUpdate() }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventInitializationChanged::class.java)
@@ -52,6 +52,7 @@ import app.aaps.database.entities.interfaces.end
 import app.aaps.database.impl.AppRepository
 import app.aaps.plugins.main.R
 import app.aaps.plugins.main.iob.iobCobCalculator.data.AutosensDataStoreObject
+import app.aaps.plugins.main.iob.iobCobCalculator.data.TreatmentTimeline
 import dagger.android.HasAndroidInjector
 import io.reactivex.rxjava3.disposables.CompositeDisposable
 import io.reactivex.rxjava3.kotlin.plusAssign
@@ -101,6 +102,10 @@ class IobCobCalculatorPlugin @Inject constructor(
     private val dataLock = Any()
     private var thread: Thread? = null
 
+    // boluses, temporary basals and extended boluses for calculation, dropped on every history change
+    private val treatmentTimelineLock = Any()
+    @Volatile private var treatmentTimeline: TreatmentTimeline? = null
+
     override fun onStart() {
         super.onStart()
         // EventConfigBuilderChange
@@ -167,6 +172,41 @@ class IobCobCalculatorPlugin @Inject constructor(
             iobTable = LongSparseArray()
             basalDataTable = LongSparseArray()
         }
+        invalidateTreatmentTimeline()
+    }
+
+    /**
+     * Treatments from [from] or older loaded from database once and reused until history is changed
+     *
+     * Change is detected by version of treatments in repository, which is updated as soon as transaction is committed,
+     * so lookups done right after storing of new treatment see it. History change events are delivered asynchronously.
+     */
+    private fun treatmentTimeline(from: Long): TreatmentTimeline {
+        val version = repository.treatmentsVersion()
+        treatmentTimeline?.let { if (it.start <= from && it.version == version) return it }
+        synchronized(treatmentTimelineLock) {
+            val current = treatmentTimeline?.takeIf { it.version == version }
+            if (current != null && current.start <= from) return current
+            // load whole DIA-extended calculation range at once, go deeper if asked for older data
+            val start =
+                if (current == null) min(from, dateUtil.now() - T.hours(24).msecs() - 2 * range())
+                else min(from, current.start) - T.hours(24).msecs()
+            val timeline = TreatmentTimeline(
+                start,
+                version,
+                repository.getBolusesDataFromTime(start, true).blockingGet(),
+                repository.getTemporaryBasalsDataActiveBetweenTimeAndTime(start - 1, Long.MAX_VALUE).blockingGet(),
+                repository.getExtendedBolusesDataActiveBetweenTimeAndTime(start - 1, Long.MAX_VALUE).blockingGet()
+            )
+            treatmentTimeline = timeline
+            return timeline
+        }
+    }
+
+    private fun invalidateTreatmentTimeline() {
+        synchronized(treatmentTimelineLock) {
+            treatmentTimeline = null
+        }
     }
 
     private fun oldestDataAvailable(): Long {
@@ -383,6 +423,8 @@ class IobCobCalculatorPlugin @Inject constructor(
 
     @Synchronized
     private fun scheduleHistoryDataChange(event: EventNewHistoryData) {
+        // treatments must be reloaded immediately, recalculation can wait
+        invalidateTreatmentTimeline()
         // if there is nothing scheduled or asking reload deeper to the past
         if (scheduledEvent == null || event.oldDataTimestamp < (scheduledEvent?.oldDataTimestamp ?: 0L)) {
             // cancel waiting task to prevent sending multiple posts
@@ -425,6 +467,7 @@ class IobCobCalculatorPlugin @Inject constructor(
     private fun newHistoryData(oldDataTimestamp: Long, bgDataReload: Boolean, event: Event) {
         //log.debug("Locking onNewHistoryData");
         calculationWorkflow.stopCalculation(CalculationWorkflow.MAIN_CALCULATION, "onEventNewHistoryData")
+        invalidateTreatmentTimeline()
         synchronized(dataLock) {
 
             // clear up 5 min back for proper COB calculation
@@ -493,7 +536,7 @@ class IobCobCalculatorPlugin @Inject constructor(
         val divisor = sp.getDouble(app.aaps.core.utils.R.string.key_openapsama_bolus_snooze_dia_divisor, 2.0)
         assert(divisor > 0)
 
-        val boluses = repository.getBolusesDataFromTime(toTime - range(), true).blockingGet()
+        val boluses = treatmentTimeline(toTime - range()).bolusesFromTime(toTime - range())
 
         boluses.forEach { t ->
             if (t.isValid && t.timestamp < toTime) {
@@ -521,15 +564,11 @@ class IobCobCalculatorPlugin @Inject constructor(
         val now = dateUtil.now()
         val pumpInterface = activePlugin.activePump
         if (!pumpInterface.isFakingTempsByExtendedBoluses) {
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = treatmentTimeline(toTime - range()).extendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                var e = extendedBoluses[pos]
                 if (e.timestamp > toTime) continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
+                if (e.end > now) e = e.cutTo(now)
                 val profile = profileFunction.getProfile(e.timestamp) ?: return total
                 val calc = e.iobCalc(toTime, profile, activePlugin.activeInsulin)
                 total.plus(calc)
@@ -552,25 +591,21 @@ class IobCobCalculatorPlugin @Inject constructor(
 
     private fun getConvertedExtended(timestamp: Long): TemporaryBasal? {
         if (activePlugin.activePump.isFakingTempsByExtendedBoluses) {
-            val eb = repository.getExtendedBolusActiveAt(timestamp).blockingGet()
+            val eb = treatmentTimeline(timestamp).extendedBolusActiveAt(timestamp)
             val profile = profileFunction.getProfile(timestamp) ?: return null
-            if (eb is ValueWrapper.Existing) return eb.value.toTemporaryBasal(profile)
+            if (eb != null) return eb.toTemporaryBasal(profile)
         }
         return null
     }
 
-    override fun getTempBasalIncludingConvertedExtended(timestamp: Long): TemporaryBasal? {
-        val tb = repository.getTemporaryBasalActiveAt(timestamp).blockingGet()
-        if (tb is ValueWrapper.Existing) return tb.value
-        return getConvertedExtended(timestamp)
-    }
+    override fun getTempBasalIncludingConvertedExtended(timestamp: Long): TemporaryBasal? =
+        treatmentTimeline(timestamp).temporaryBasalActiveAt(timestamp) ?: getConvertedExtended(timestamp)
 
     override fun getTempBasalIncludingConvertedExtendedForRange(startTime: Long, endTime: Long, calculationStep: Long): Map<Long, TemporaryBasal?> {
         val tempBasals = HashMap<Long, TemporaryBasal?>()
-        val tbs = repository.getTemporaryBasalsDataActiveBetweenTimeAndTime(startTime, endTime).blockingGet()
+        val timeline = treatmentTimeline(startTime)
         for (t in startTime until endTime step calculationStep) {
-            val tb = tbs.firstOrNull { basal -> basal.timestamp <= t && (basal.timestamp + basal.duration) > t }
-            tempBasals[t] = tb ?: getConvertedExtended(t)
+            tempBasals[t] = timeline.temporaryBasalActiveAt(t) ?: getConvertedExtended(t)
         }
         return tempBasals
     }
@@ -607,28 +642,25 @@ class IobCobCalculatorPlugin @Inject constructor(
         val now = dateUtil.now()
         val pumpInterface = activePlugin.activePump
 
-        val temporaryBasals = repository.getTemporaryBasalsDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+        val timeline = treatmentTimeline(toTime - range())
+        val temporaryBasals = timeline.temporaryBasalsFromTimeToTime(toTime - range(), toTime)
         for (pos in temporaryBasals.indices) {
-            val t = temporaryBasals[pos]
+            var t = temporaryBasals[pos]
             if (t.timestamp > toTime) continue
             val profile = profileFunction.getProfile(t.timestamp) ?: continue
-            if (t.end > now) t.duration = now - t.timestamp
+            if (t.end > now) t = t.copy(duration = now - t.timestamp)
             val calc = t.iobCalc(toTime, profile, activePlugin.activeInsulin)
             //log.debug("BasalIOB " + new Date(time) + " >>> " + calc.basalIob);
             total.plus(calc)
         }
         if (pumpInterface.isFakingTempsByExtendedBoluses) {
             val totalExt = IobTotal(toTime)
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = timeline.extendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                var e = extendedBoluses[pos]
                 if (e.timestamp > toTime) continue
                 val profile = profileFunction.getProfile(e.timestamp) ?: continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
+                if (e.end > now) e = e.cutTo(now)
                 val calc = e.iobCalc(toTime, profile, activePlugin.activeInsulin)
                 totalExt.plus(calc)
             }
@@ -646,28 +678,25 @@ class IobCobCalculatorPlugin @Inject constructor(
         val total = IobTotal(toTime)
         val pumpInterface = activePlugin.activePump
         val now = dateUtil.now()
-        val temporaryBasals = repository.getTemporaryBasalsDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+        val timeline = treatmentTimeline(toTime - range())
+        val temporaryBasals = timeline.temporaryBasalsFromTimeToTime(toTime - range(), toTime)
         for (pos in temporaryBasals.indices) {
-            val t = temporaryBasals[pos]
+            var t = temporaryBasals[pos]
             if (t.timestamp > toTime) continue
             val profile = profileFunction.getProfile(t.timestamp) ?: continue
-            if (t.end > now) t.duration = now - t.timestamp
+            if (t.end > now) t = t.copy(duration = now - t.timestamp)
             val calc = t.iobCalc(toTime, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget, activePlugin.activeInsulin)
             //log.debug("BasalIOB " + new Date(time) + " >>> " + calc.basalIob);
             total.plus(calc)
         }
         if (pumpInterface.isFakingTempsByExtendedBoluses) {
             val totalExt = IobTotal(toTime)
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = timeline.extendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                var e = extendedBoluses[pos]
                 if (e.timestamp > toTime) continue
                 val profile = profileFunction.getProfile(e.timestamp) ?: continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
+                if (e.end > now) e = e.cutTo(now)
                 val calc = e.iobCalc(toTime, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget, activePlugin.activeInsulin)
                 totalExt.plus(calc)
             }
@@ -680,4 +709,10 @@ class IobCobCalculatorPlugin @Inject constructor(
         }
         return total
     }
-}
\ No newline at end of file
+
+    // records in TreatmentTimeline are shared, running extended bolus is shortened on a copy
+    private fun ExtendedBolus.cutTo(now: Long): ExtendedBolus {
+        val newDuration = now - timestamp
+        return copy(amount = amount * (newDuration.toDouble() / duration), duration = newDuration)
+    }
+}
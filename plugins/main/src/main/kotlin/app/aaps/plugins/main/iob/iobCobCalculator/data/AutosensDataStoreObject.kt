@@ -1,7 +1,6 @@
 package app.aaps.plugins.main.iob.iobCobCalculator.data
 
 import androidx.collection.LongSparseArray
-import androidx.collection.size
 import app.aaps.annotations.OpenForTesting
 import app.aaps.core.interfaces.aps.AutosensData
 import app.aaps.core.interfaces.aps.AutosensDataStore
@@ -12,6 +11,7 @@ import app.aaps.core.interfaces.utils.DateUtil
 import app.aaps.core.interfaces.utils.T
 import app.aaps.database.entities.GlucoseValue
 import kotlin.math.abs
+import kotlin.math.min
 import kotlin.math.roundToLong
 
 @OpenForTesting
@@ -28,20 +28,44 @@ class AutosensDataStoreObject : AutosensDataStore {
         @Synchronized set
         @Synchronized get
 
-    override var autosensDataTable = LongSparseArray<AutosensData>() // oldest at index 0
-        @Synchronized set
-        @Synchronized get
+    // table is shared with clones and copied before first modification
+    @Volatile private var table = LongSparseArray<AutosensData>()
+    private var tableShared = false
+
+    override var autosensDataTable: LongSparseArray<AutosensData> // oldest at index 0
+        @Synchronized set(value) {
+            table = value
+            tableShared = false
+        }
+        // caller can modify returned table, so it must not be shared
+        @Synchronized get() {
+            if (tableShared) {
+                table = table.clone()
+                tableShared = false
+            }
+            return table
+        }
 
     override var bucketedData: MutableList<InMemoryGlucoseValue>? = null
         @Synchronized set
         @Synchronized get
 
+    /**
+     * Copy-on-write clone
+     *
+     * bgReadings and bucketedData are always replaced as a whole and never modified in place so they are shared.
+     * autosensDataTable is shared until one of the stores hands it out for modification.
+     */
     override fun clone(): AutosensDataStore =
         AutosensDataStoreObject().also {
             synchronized(dataLock) {
-                it.bgReadings = this.bgReadings.toMutableList()
-                it.autosensDataTable = LongSparseArray<AutosensData>(this.autosensDataTable.size).apply { putAll(this@AutosensDataStoreObject.autosensDataTable) }
-                it.bucketedData = this.bucketedData?.toMutableList()
+                it.bgReadings = this.bgReadings
+                it.bucketedData = this.bucketedData
+                synchronized(this) {
+                    tableShared = true
+                    it.table = table
+                    it.tableShared = true
+                }
             }
         }
 
@@ -49,18 +73,20 @@ class AutosensDataStoreObject : AutosensDataStore {
     override fun getBgReadingsDataTableCopy(): List<GlucoseValue> = synchronized(dataLock) { bgReadings.toMutableList() }
 
     override fun reset() {
-        synchronized(autosensDataTable) { autosensDataTable = LongSparseArray() }
+        autosensDataTable = LongSparseArray()
     }
 
+    @Synchronized
     override fun newHistoryData(time: Long, aapsLogger: AAPSLogger, dateUtil: DateUtil) {
-        synchronized(autosensDataTable) {
-            for (index in autosensDataTable.size() - 1 downTo 0) {
-                if (autosensDataTable.keyAt(index) > time) {
-                    aapsLogger.debug(LTag.AUTOSENS) { "Removing from autosensDataTable: ${dateUtil.dateAndTimeAndSecondsString(autosensDataTable.keyAt(index))}" }
-                    autosensDataTable.removeAt(index)
-                } else {
-                    break
-                }
+        // nothing to invalidate, keep table shared
+        if (table.size() == 0 || table.keyAt(table.size() - 1) <= time) return
+        val writableTable = autosensDataTable
+        for (index in writableTable.size() - 1 downTo 0) {
+            if (writableTable.keyAt(index) > time) {
+                aapsLogger.debug(LTag.AUTOSENS) { "Removing from autosensDataTable: ${dateUtil.dateAndTimeAndSecondsString(writableTable.keyAt(index))}" }
+                writableTable.removeAt(index)
+            } else {
+                break
             }
         }
     }
@@ -95,16 +121,15 @@ class AutosensDataStoreObject : AutosensDataStore {
 
     override fun lastDataTime(dateUtil: DateUtil): String =
         synchronized(dataLock) {
-            if (autosensDataTable.size() > 0) dateUtil.dateAndTimeAndSecondsString(autosensDataTable.valueAt(autosensDataTable.size() - 1).time)
+            val table = table
+            if (table.size() > 0) dateUtil.dateAndTimeAndSecondsString(table.valueAt(table.size() - 1).time)
             else "autosensDataTable empty"
         }
 
     fun findPreviousTimeFromBucketedData(time: Long): Long? {
         val bData = bucketedData ?: return null
-        for (index in bData.indices) {
-            if (bData[index].timestamp <= time) return bData[index].timestamp
-        }
-        return null
+        val index = firstNotNewer(bData, time) { it.timestamp }
+        return if (index < bData.size) bData[index].timestamp else null
     }
 
     override fun getAutosensDataAtTime(fromTime: Long): AutosensData? {
@@ -112,7 +137,7 @@ class AutosensDataStoreObject : AutosensDataStore {
             val now = System.currentTimeMillis()
             if (fromTime > now) return null
             val previous = findPreviousTimeFromBucketedData(fromTime) ?: return null
-            return autosensDataTable[roundUpTime(previous)]
+            return table[roundUpTime(previous)]
         }
     }
 
@@ -125,6 +150,7 @@ class AutosensDataStoreObject : AutosensDataStore {
 
     override fun getLastAutosensData(reason: String, aapsLogger: AAPSLogger, dateUtil: DateUtil): AutosensData? {
         synchronized(dataLock) {
+            val autosensDataTable = table
             if (autosensDataTable.size() < 1) {
                 aapsLogger.debug(LTag.AUTOSENS, "AUTOSENSDATA null: autosensDataTable empty ($reason)")
                 return storedLastAutosensResult
@@ -196,28 +222,44 @@ class AutosensDataStoreObject : AutosensDataStore {
         if (fiveMinData) createBucketedData5min(aapsLogger, dateUtil) else createBucketedDataRecalculated(aapsLogger, dateUtil)
     }
 
+    /**
+     * Index of first item not newer than [time] in list sorted from newest, list size if there is none
+     */
+    private inline fun <T> firstNotNewer(list: List<T>, time: Long, timestamp: (T) -> Long): Int {
+        var low = 0
+        var high = list.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timestamp(list[mid]) > time) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
     fun findNewer(time: Long): GlucoseValue? {
-        var lastFound = bgReadings[0]
-        if (lastFound.timestamp < time) return null
-        for (i in 1 until bgReadings.size) {
-            if (bgReadings[i].timestamp == time) return bgReadings[i]
-            if (bgReadings[i].timestamp > time) continue
-            lastFound = bgReadings[i - 1]
-            if (bgReadings[i].timestamp < time) break
+        val bgReadings = bgReadings
+        if (bgReadings[0].timestamp < time) return null
+        val index = firstNotNewer(bgReadings, time) { it.timestamp }
+        return when {
+            index == bgReadings.size            -> bgReadings[0]
+            index == 0                          -> if (bgReadings.size > 1 && bgReadings[1].timestamp == time) bgReadings[1] else bgReadings[0]
+            bgReadings[index].timestamp == time -> bgReadings[index]
+            else                                -> bgReadings[index - 1]
         }
-        return lastFound
     }
 
     fun findOlder(time: Long): GlucoseValue? {
-        var lastFound = bgReadings[bgReadings.size - 1]
-        if (lastFound.timestamp > time) return null
-        for (i in bgReadings.size - 2 downTo 0) {
-            if (bgReadings[i].timestamp == time) return bgReadings[i]
-            if (bgReadings[i].timestamp < time) continue
-            lastFound = bgReadings[i + 1]
-            if (bgReadings[i].timestamp > time) break
+        val bgReadings = bgReadings
+        val last = bgReadings.size - 1
+        if (bgReadings[last].timestamp > time) return null
+        // first older than time
+        val older = firstNotNewer(bgReadings, time - 1) { it.timestamp }
+        if (older == 0) return bgReadings[last]
+        val index = min(older - 1, last - 1)
+        return when {
+            index < 0                           -> bgReadings[last]
+            bgReadings[index].timestamp == time -> bgReadings[index]
+            else                                -> bgReadings[index + 1]
         }
-        return lastFound
     }
 
     private fun createBucketedDataRecalculated(aapsLogger: AAPSLogger, dateUtil: DateUtil) {
@@ -335,6 +377,7 @@ class AutosensDataStoreObject : AutosensDataStore {
         var count = 0
         val valuesToProcess = timeInMinutes / 5
         synchronized(dataLock) {
+            val autosensDataTable = table
             var i = autosensDataTable.size() - 1
             while (i >= 0 && count < valuesToProcess) {
                 if (autosensDataTable.valueAt(i).failOverToMinAbsorptionRate) sum++
@@ -0,0 +1,104 @@
+package app.aaps.plugins.main.iob.iobCobCalculator.data
+
+import app.aaps.database.entities.Bolus
+import app.aaps.database.entities.ExtendedBolus
+import app.aaps.database.entities.TemporaryBasal
+import app.aaps.database.entities.interfaces.DBEntryWithTimeAndDuration
+import app.aaps.database.entities.interfaces.end
+import kotlin.math.max
+
+/**
+ * Immutable in-memory copy of valid boluses, temporary basals and extended boluses
+ * answering the same questions as AppRepository queries used by IobCobCalculatorPlugin
+ *
+ * Contains boluses from [start] and temporary basals and extended boluses running at [start] or later.
+ * Lookups are valid only for times >= [start]. Returned records are shared, do not modify them.
+ *
+ * @param version AppRepository.treatmentsVersion() read before loading the records
+ * @param boluses result of AppRepository.getBolusesDataFromTime(start)
+ * @param temporaryBasals result of AppRepository.getTemporaryBasalsDataActiveBetweenTimeAndTime(start - 1, Long.MAX_VALUE)
+ * @param extendedBoluses result of AppRepository.getExtendedBolusesDataActiveBetweenTimeAndTime(start - 1, Long.MAX_VALUE)
+ */
+class TreatmentTimeline(
+    val start: Long,
+    val version: Long,
+    boluses: List<Bolus>,
+    temporaryBasals: List<TemporaryBasal>,
+    extendedBoluses: List<ExtendedBolus>
+) {
+
+    private val boluses = boluses.sortedByDescending { it.id }
+    private val temporaryBasals = Intervals(temporaryBasals)
+    private val extendedBoluses = Intervals(extendedBoluses)
+
+    /**
+     * Same as AppRepository.getBolusesDataFromTime(from, true), ie. ordered by id descending
+     */
+    fun bolusesFromTime(from: Long): List<Bolus> = boluses.filter { it.timestamp >= from }
+
+    /**
+     * Same as AppRepository.getTemporaryBasalsDataFromTimeToTime(from, to, true)
+     */
+    fun temporaryBasalsFromTimeToTime(from: Long, to: Long): List<TemporaryBasal> = temporaryBasals.fromTimeToTime(from, to)
+
+    /**
+     * Same as AppRepository.getExtendedBolusDataFromTimeToTime(from, to, true)
+     */
+    fun extendedBolusesFromTimeToTime(from: Long, to: Long): List<ExtendedBolus> = extendedBoluses.fromTimeToTime(from, to)
+
+    /**
+     * Same as AppRepository.getTemporaryBasalActiveAt(timestamp)
+     */
+    fun temporaryBasalActiveAt(timestamp: Long): TemporaryBasal? = temporaryBasals.activeAt(timestamp)
+
+    /**
+     * Same as AppRepository.getExtendedBolusActiveAt(timestamp)
+     */
+    fun extendedBolusActiveAt(timestamp: Long): ExtendedBolus? = extendedBoluses.activeAt(timestamp)
+
+    /**
+     * Records sorted by timestamp with running maximum of end time
+     * to stop searching for active record as soon as nothing older can be running
+     */
+    private class Intervals<T : DBEntryWithTimeAndDuration>(records: List<T>) {
+
+        private val records = records.sortedBy { it.timestamp }
+        private val times = LongArray(this.records.size) { this.records[it].timestamp }
+        private val maxEnd = LongArray(this.records.size)
+
+        init {
+            var end = Long.MIN_VALUE
+            for (i in this.records.indices) {
+                end = max(end, this.records[i].end)
+                maxEnd[i] = end
+            }
+        }
+
+        fun fromTimeToTime(from: Long, to: Long): List<T> =
+            if (from > to) emptyList()
+            else records.subList(lowerBound(times, from), lowerBound(times, to + 1))
+
+        fun activeAt(timestamp: Long): T? {
+            var i = lowerBound(times, timestamp + 1) - 1
+            while (i >= 0 && maxEnd[i] > timestamp) {
+                if (records[i].end > timestamp) return records[i]
+                i--
+            }
+            return null
+        }
+    }
+
+    companion object {
+
+        // index of first item >= value
+        private fun lowerBound(array: LongArray, value: Long): Int {
+            var low = 0
+            var high = array.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (array[mid] < value) low = mid + 1 else high = mid
+            }
+            return low
+        }
+    }
+}
@@ -1541,4 +1541,26 @@ class AutosensDataStoreTest : TestBase() {
         ads.autosensDataTable.append(now - T.mins(20).msecs(), AutosensDataObject(injector).apply { time = now - T.mins(20).msecs() })
         assertThat(ads.getLastAutosensData("test", aapsLogger, dateUtilMocked)?.time).isEqualTo(now - 1)
     }
+
+    @Test
+    fun cloneIsCopyOnWriteTest() {
+        val ads = AutosensDataStoreObject()
+        ads.autosensDataTable.append(T.mins(5).msecs(), AutosensDataObject(injector).apply { time = T.mins(5).msecs() })
+        ads.autosensDataTable.append(T.mins(10).msecs(), AutosensDataObject(injector).apply { time = T.mins(10).msecs() })
+        val clone = ads.clone()
+
+        // modification of clone is not visible in original
+        clone.autosensDataTable.append(T.mins(15).msecs(), AutosensDataObject(injector).apply { time = T.mins(15).msecs() })
+        assertThat(clone.autosensDataTable.size()).isEqualTo(3)
+        assertThat(ads.autosensDataTable.size()).isEqualTo(2)
+
+        // and vice versa
+        val clone2 = ads.clone()
+        ads.newHistoryData(T.mins(7).msecs(), aapsLogger, dateUtil)
+        assertThat(ads.autosensDataTable.size()).isEqualTo(1)
+        assertThat(clone2.autosensDataTable.size()).isEqualTo(2)
+        ads.reset()
+        assertThat(ads.autosensDataTable.size()).isEqualTo(0)
+        assertThat(clone2.autosensDataTable.size()).isEqualTo(2)
+    }
 }
@@ -0,0 +1,71 @@
+package app.aaps.plugins.main.iob
+
+import app.aaps.core.interfaces.utils.T
+import app.aaps.database.entities.Bolus
+import app.aaps.database.entities.ExtendedBolus
+import app.aaps.database.entities.TemporaryBasal
+import app.aaps.plugins.main.iob.iobCobCalculator.data.TreatmentTimeline
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class TreatmentTimelineTest {
+
+    private val now = 1_700_000_000_000L
+    private val start = now - T.hours(30).msecs()
+    private val random = Random(1)
+
+    // SMB every few minutes, ids not following timestamps
+    private val boluses = (1L..300L).shuffled(random).map {
+        Bolus(id = it, timestamp = start + random.nextLong(T.hours(31).msecs()), amount = 0.1, type = Bolus.Type.SMB)
+    }
+
+    // overlapping temporary basals and one very long
+    private val temporaryBasals = List(200) {
+        TemporaryBasal(
+            timestamp = start - T.hours(1).msecs() + random.nextLong(T.hours(31).msecs()), duration = T.mins(random.nextLong(0, 60)).msecs(),
+            rate = 1.0, isAbsolute = true, type = TemporaryBasal.Type.NORMAL
+        )
+    } + TemporaryBasal(timestamp = start - T.hours(20).msecs(), duration = T.hours(25).msecs(), rate = 0.5, isAbsolute = true, type = TemporaryBasal.Type.NORMAL)
+
+    private val extendedBoluses = List(30) {
+        ExtendedBolus(timestamp = start - T.hours(2).msecs() + random.nextLong(T.hours(31).msecs()), duration = T.mins(random.nextLong(30, 240)).msecs(), amount = 1.0)
+    }
+
+    // what database returns
+    private val sut = TreatmentTimeline(
+        start,
+        0,
+        boluses.filter { it.timestamp >= start }.sortedByDescending { it.id },
+        temporaryBasals.filter { it.timestamp + it.duration > start - 1 }.sortedByDescending { it.timestamp },
+        extendedBoluses.filter { it.timestamp + it.duration > start - 1 }.sortedByDescending { it.timestamp }
+    )
+
+    @Test
+    fun bolusesFromTimeTest() {
+        for (from in start until now step T.mins(5).msecs()) {
+            assertThat(sut.bolusesFromTime(from)).containsExactlyElementsIn(boluses.filter { it.timestamp >= from }.sortedByDescending { it.id }).inOrder()
+        }
+    }
+
+    @Test
+    fun fromTimeToTimeTest() {
+        for (from in start until now step T.mins(5).msecs()) {
+            val to = from + T.hours(3).msecs()
+            assertThat(sut.temporaryBasalsFromTimeToTime(from, to).toSet()).isEqualTo(temporaryBasals.filter { it.timestamp in from..to }.toSet())
+            assertThat(sut.temporaryBasalsFromTimeToTime(from, to).map { it.timestamp }).isInOrder()
+            assertThat(sut.extendedBolusesFromTimeToTime(from, to).toSet()).isEqualTo(extendedBoluses.filter { it.timestamp in from..to }.toSet())
+        }
+        assertThat(sut.temporaryBasalsFromTimeToTime(now, now - 1)).isEmpty()
+    }
+
+    @Test
+    fun activeAtTest() {
+        for (time in start until now + T.hours(2).msecs() step T.mins(1).msecs()) {
+            val temporaryBasal = temporaryBasals.filter { it.timestamp <= time && it.timestamp + it.duration > time }.maxByOrNull { it.timestamp }
+            assertThat(sut.temporaryBasalActiveAt(time)?.timestamp).isEqualTo(temporaryBasal?.timestamp)
+            val extendedBolus = extendedBoluses.filter { it.timestamp <= time && it.timestamp + it.duration > time }.maxByOrNull { it.timestamp }
+            assertThat(sut.extendedBolusActiveAt(time)?.timestamp).isEqualTo(extendedBolus?.timestamp)
+        }
+    }
+}
@@ -13,19 +13,14 @@ import app.aaps.core.interfaces.profile.ProfileFunction
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.utils.DateUtil
-import app.aaps.core.utils.MidnightUtils
-import app.aaps.core.utils.Percentile
-import app.aaps.database.entities.TherapyEvent
 import app.aaps.database.impl.AppRepository
-import app.aaps.plugins.sensitivity.extensions.isPSEvent5minBack
-import app.aaps.plugins.sensitivity.extensions.isTherapyEventEvent5minBack
+import app.aaps.plugins.sensitivity.window.DeviationSegment
+import app.aaps.plugins.sensitivity.window.SensitivityWindow
 import dagger.android.HasAndroidInjector
 import org.json.JSONException
 import org.json.JSONObject
-import java.util.Arrays
 import javax.inject.Inject
 import javax.inject.Singleton
-import kotlin.math.roundToInt
 
 @OpenForTesting
 @Singleton
@@ -48,6 +43,8 @@ class SensitivityAAPSPlugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ) {
 
+    private val window = SensitivityWindow(repository)
+
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         val age = sp.getString(app.aaps.core.utils.R.string.key_age, "")
         var defaultHours = 24
@@ -69,74 +66,39 @@ class SensitivityAAPSPlugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No autosens data available. toTime: " + dateUtil.dateAndTimeString(toTime) + " lastDataTime: " + ads.lastDataTime(dateUtil))
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getProfileSwitchDataFromTime(fromTime, true).blockingGet()
-        val deviationsArray: MutableList<Double> = ArrayList()
-        var pastSensitivity = ""
-        var index = 0
-        while (index < ads.autosensDataTable.size()) {
-            val autosensData = ads.autosensDataTable.valueAt(index)
-            if (autosensData.time < fromTime) {
-                index++
-                continue
-            }
-            if (autosensData.time > toTime) {
-                index++
-                continue
-            }
+        val detectionPeriod = DeviationSegment.Config(hours = hoursForDetection.toDouble(), maxDeviations = (hoursForDetection * 60 / 5).toDouble(), withExtraDeviations = false)
+        return synchronized(window) {
+            window.update(ads, fromTime, toTime, listOf(detectionPeriod))
+            val segment = window.segments[0]
+            val pastSensitivity = window.pastSensitivity()
+            val index = ads.autosensDataTable.size()
+            val sens = profile.getIsfMgdl()
+            val ratioLimit = ""
+            val sensResult: String
+            aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
+            val percentile = segment.percentile(0.50)
+            val basalOff = percentile * (60.0 / 5.0) / sens
+            val ratio = 1 + basalOff / profile.getMaxDailyBasal()
+            sensResult = when {
+                percentile < 0 -> "Excess insulin sensitivity detected"
+                percentile > 0 -> "Excess insulin resistance detected"
+                else           -> "Sensitivity normal"
 
-            // reset deviations after site change
-            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
-                deviationsArray.clear()
-                pastSensitivity += "(SITECHANGE)"
             }
-
-            // reset deviations after profile switch
-            if (profileSwitches.isPSEvent5minBack(autosensData.time)) {
-                deviationsArray.clear()
-                pastSensitivity += "(PROFILESWITCH)"
-            }
-            var deviation = autosensData.deviation
-
-            //set positive deviations to zero if bg < 80
-            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
-            if (autosensData.validDeviation) if (autosensData.time > toTime - hoursForDetection * 60 * 60 * 1000L) deviationsArray.add(deviation)
-            if (deviationsArray.size > hoursForDetection * 60 / 5) deviationsArray.removeAt(0)
-            pastSensitivity += autosensData.pastSensitivity
-            val secondsFromMidnight = MidnightUtils.secondsFromMidnight(autosensData.time)
-            if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
-            }
-            index++
-        }
-        val deviations = Array(deviationsArray.size) { i -> deviationsArray[i] }
-        val sens = profile.getIsfMgdl()
-        val ratioLimit = ""
-        val sensResult: String
-        aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
-        Arrays.sort(deviations)
-        val percentile = Percentile.percentile(deviations, 0.50)
-        val basalOff = percentile * (60.0 / 5.0) / sens
-        val ratio = 1 + basalOff / profile.getMaxDailyBasal()
-        sensResult = when {
-            percentile < 0 -> "Excess insulin sensitivity detected"
-            percentile > 0 -> "Excess insulin resistance detected"
-            else           -> "Sensitivity normal"
-
+            aapsLogger.debug(LTag.AUTOSENS, sensResult)
+            val output = fillResult(
+                ratio, current.cob, pastSensitivity, ratioLimit,
+                sensResult, segment.size
+            )
+            aapsLogger.debug(
+                LTag.AUTOSENS, "Sensitivity to: "
+                    + dateUtil.dateAndTimeString(toTime) +
+                    " ratio: " + output.ratio
+                    + " mealCOB: " + current.cob
+            )
+            aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: deviations " + segment.sortedDeviations())
+            output
         }
-        aapsLogger.debug(LTag.AUTOSENS, sensResult)
-        val output = fillResult(
-            ratio, current.cob, pastSensitivity, ratioLimit,
-            sensResult, deviationsArray.size
-        )
-        aapsLogger.debug(
-            LTag.AUTOSENS, "Sensitivity to: "
-                + dateUtil.dateAndTimeString(toTime) +
-                " ratio: " + output.ratio
-                + " mealCOB: " + current.cob
-        )
-        aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: deviations " + deviations.contentToString())
-        return output
     }
 
     override fun maxAbsorptionHours(): Double = sp.getDouble(app.aaps.core.utils.R.string.key_absorption_maxtime, Constants.DEFAULT_MAX_ABSORPTION_TIME)
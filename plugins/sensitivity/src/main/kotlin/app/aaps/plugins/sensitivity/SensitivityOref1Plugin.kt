@@ -16,16 +16,12 @@ import app.aaps.core.interfaces.profile.ProfileFunction
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.utils.DateUtil
-import app.aaps.core.utils.MidnightUtils
-import app.aaps.core.utils.Percentile
-import app.aaps.database.entities.TherapyEvent
 import app.aaps.database.impl.AppRepository
-import app.aaps.plugins.sensitivity.extensions.isPSEvent5minBack
-import app.aaps.plugins.sensitivity.extensions.isTherapyEventEvent5minBack
+import app.aaps.plugins.sensitivity.window.DeviationSegment
+import app.aaps.plugins.sensitivity.window.SensitivityWindow
 import dagger.android.HasAndroidInjector
 import org.json.JSONException
 import org.json.JSONObject
-import java.util.Arrays
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.roundToInt
@@ -53,6 +49,12 @@ class SensitivityOref1Plugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ), PluginConstraints {
 
+    private val window = SensitivityWindow(repository)
+    private val detectionPeriods = listOf(
+        DeviationSegment.Config(hours = 8.0, maxDeviations = 96.0, withExtraDeviations = true),
+        DeviationSegment.Config(hours = 24.0, maxDeviations = 288.0, withExtraDeviations = true)
+    )
+
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         val profile = profileFunction.getProfile()
         if (profile == null) {
@@ -70,138 +72,79 @@ class SensitivityOref1Plugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No autosens data available. toTime: " + dateUtil.dateAndTimeString(toTime) + " lastDataTime: " + ads.lastDataTime(dateUtil))
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getProfileSwitchDataFromTime(fromTime, true).blockingGet()
-
-        //[0] = 8 hour
-        //[1] = 24 hour
-        //deviationsHour has DeviationsArray
-        val deviationsHour = mutableListOf(ArrayList(), ArrayList<Double>())
-        val pastSensitivityArray = mutableListOf("", "")
-        val sensResultArray = mutableListOf("", "")
-        val ratioArray = mutableListOf(0.0, 0.0)
-        val deviationCategory = listOf(96.0, 288.0)
-        val ratioLimitArray = mutableListOf("", "")
-        val hoursDetection = listOf(8.0, 24.0)
-        var index = 0
-        while (index < ads.autosensDataTable.size()) {
-            val autosensData = ads.autosensDataTable.valueAt(index)
-            if (autosensData.time < fromTime) {
-                index++
-                continue
-            }
-            if (autosensData.time > toTime) {
-                index++
-                continue
+        return synchronized(window) {
+            //[0] = 8 hour
+            //[1] = 24 hour
+            window.update(ads, fromTime, toTime, detectionPeriods)
+            val pastSensitivity = window.pastSensitivity()
+            val sensResultArray = mutableListOf("", "")
+            val ratioArray = mutableListOf(0.0, 0.0)
+            val deviationsSize = mutableListOf(0, 0)
+            val ratioLimitArray = mutableListOf("", "")
+            val index = ads.autosensDataTable.size()
+
+            // when we have less than 8h/24 worth of deviation data, add up to 90m of zero deviations
+            // this dampens any large sensitivity changes detected based on too little data, without ignoring them completely
+            val zeroDeviations = window.segments.map { segment ->
+                aapsLogger.debug(LTag.AUTOSENS, "Using most recent " + segment.size + " deviations")
+                if (segment.size < segment.config.maxDeviations) {
+                    val pad = ((1 - segment.size.toDouble() / segment.config.maxDeviations) * 18).roundToInt()
+                    aapsLogger.debug(LTag.AUTOSENS, "Adding $pad more zero deviations")
+                    pad
+                } else 0
             }
-            var hourSegment = 0
-            //hourSegment = 0 = 8 hour
-            //hourSegment = 1 = 24 hour
-            while (hourSegment < deviationsHour.size) {
-                val deviationsArray = deviationsHour[hourSegment]
-                var pastSensitivity = pastSensitivityArray[hourSegment]
-
-                // reset deviations after site change
-                if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
-                    deviationsArray.clear()
-                    pastSensitivity += "(SITECHANGE)"
-                }
-
-                // reset deviations after profile switch
-                if (profileSwitches.isPSEvent5minBack(autosensData.time)) {
-                    deviationsArray.clear()
-                    pastSensitivity += "(PROFILESWITCH)"
-                }
-                var deviation = autosensData.deviation
-
-                //set positive deviations to zero if bg < 80
-                if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
-                if (autosensData.validDeviation) if (autosensData.time > toTime - hoursDetection[hourSegment] * 60 * 60 * 1000L) deviationsArray.add(deviation)
-                deviationsArray.addAll(autosensData.extraDeviation)
-                if (deviationsArray.size > deviationCategory[hourSegment]) {
-                    deviationsArray.removeAt(0)
-                }
-                pastSensitivity += autosensData.pastSensitivity
-                val secondsFromMidnight = MidnightUtils.secondsFromMidnight(autosensData.time)
-                if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                    pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+            var hourUsed = 0
+            while (hourUsed < window.segments.size) {
+                val segment = window.segments[hourUsed]
+                val pad = zeroDeviations[hourUsed]
+                var sensResult = "(8 hours) "
+                if (hourUsed == 1) sensResult = "(24 hours) "
+                val ratioLimit = ""
+                val sens = profile.getIsfMgdl()
+                aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
+                val pSensitive = segment.percentile(0.50, pad)
+                val pResistant = segment.percentile(0.50, pad)
+                var basalOff = 0.0
+                when {
+                    pSensitive < 0 -> { // sensitive
+                        basalOff = pSensitive * (60.0 / 5) / sens
+                        sensResult += "Excess insulin sensitivity detected"
+                    }
+
+                    pResistant > 0 -> { // resistant
+                        basalOff = pResistant * (60.0 / 5) / sens
+                        sensResult += "Excess insulin resistance detected"
+                    }
+
+                    else           -> sensResult += "Sensitivity normal"
                 }
+                aapsLogger.debug(LTag.AUTOSENS, sensResult)
+                val ratio = 1 + basalOff / profile.getMaxDailyBasal()
 
                 //Update the data back to the parent
-                deviationsHour[hourSegment] = deviationsArray
-                pastSensitivityArray[hourSegment] = pastSensitivity
-                hourSegment++
+                sensResultArray[hourUsed] = sensResult
+                ratioArray[hourUsed] = ratio
+                ratioLimitArray[hourUsed] = ratioLimit
+                deviationsSize[hourUsed] = segment.size + pad
+                hourUsed++
             }
-            index++
-        }
-
-        // when we have less than 8h/24 worth of deviation data, add up to 90m of zero deviations
-        // this dampens any large sensitivity changes detected based on too little data, without ignoring them completely
-        for (i in deviationsHour.indices) {
-            val deviations = deviationsHour[i]
-            aapsLogger.debug(LTag.AUTOSENS, "Using most recent " + deviations.size + " deviations")
-            if (deviations.size < deviationCategory[i]) {
-                val pad = ((1 - deviations.size.toDouble() / deviationCategory[i]) * 18).roundToInt()
-                aapsLogger.debug(LTag.AUTOSENS, "Adding $pad more zero deviations")
-                for (d in 0 until pad) {
-                    deviations.add(0.0)
-                }
-            }
-            //Update the data back to the parent
-            deviationsHour[i] = deviations
-        }
-        var hourUsed = 0
-        while (hourUsed < deviationsHour.size) {
-            val deviationsArray: ArrayList<Double> = deviationsHour[hourUsed]
-            val pastSensitivity = pastSensitivityArray[hourUsed]
-            var sensResult = "(8 hours) "
-            if (hourUsed == 1) sensResult = "(24 hours) "
-            val ratioLimit = ""
-            val deviations: Array<Double> = Array(deviationsArray.size) { i -> deviationsArray[i] }
-            val sens = profile.getIsfMgdl()
-            aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
-            Arrays.sort(deviations)
-            val pSensitive = Percentile.percentile(deviations, 0.50)
-            val pResistant = Percentile.percentile(deviations, 0.50)
-            var basalOff = 0.0
-            when {
-                pSensitive < 0 -> { // sensitive
-                    basalOff = pSensitive * (60.0 / 5) / sens
-                    sensResult += "Excess insulin sensitivity detected"
-                }
-
-                pResistant > 0 -> { // resistant
-                    basalOff = pResistant * (60.0 / 5) / sens
-                    sensResult += "Excess insulin resistance detected"
-                }
-
-                else           -> sensResult += "Sensitivity normal"
+            var key = 1
+            val comparison = " 8 h ratio " + ratioArray[0] + " vs 24h ratio " + ratioArray[1]
+            //use 24 hour ratio by default
+            //if the 8 hour ratio is less than the 24 hour ratio, the 8 hour ratio is used
+            if (ratioArray[0] < ratioArray[1]) {
+                key = 0
             }
-            aapsLogger.debug(LTag.AUTOSENS, sensResult)
-            val ratio = 1 + basalOff / profile.getMaxDailyBasal()
-
-            //Update the data back to the parent
-            sensResultArray[hourUsed] = sensResult
-            ratioArray[hourUsed] = ratio
-            ratioLimitArray[hourUsed] = ratioLimit
-            hourUsed++
-        }
-        var key = 1
-        val comparison = " 8 h ratio " + ratioArray[0] + " vs 24h ratio " + ratioArray[1]
-        //use 24 hour ratio by default
-        //if the 8 hour ratio is less than the 24 hour ratio, the 8 hour ratio is used
-        if (ratioArray[0] < ratioArray[1]) {
-            key = 0
+            //String message = hoursDetection.get(key) + " of sensitivity used";
+            val output = fillResult(ratioArray[key], current.cob, pastSensitivity, ratioLimitArray[key], sensResultArray[key] + comparison, deviationsSize[key])
+            aapsLogger.debug(
+                LTag.AUTOSENS, "Sensitivity to: "
+                    + dateUtil.dateAndTimeString(toTime) +
+                    " ratio: " + output.ratio
+                    + " mealCOB: " + current.cob
+            )
+            output
         }
-        //String message = hoursDetection.get(key) + " of sensitivity used";
-        val output = fillResult(ratioArray[key], current.cob, pastSensitivityArray[key], ratioLimitArray[key], sensResultArray[key] + comparison, deviationsHour[key].size)
-        aapsLogger.debug(
-            LTag.AUTOSENS, "Sensitivity to: "
-                + dateUtil.dateAndTimeString(toTime) +
-                " ratio: " + output.ratio
-                + " mealCOB: " + current.cob
-        )
-        return output
     }
 
     override fun maxAbsorptionHours(): Double = sp.getDouble(app.aaps.core.utils.R.string.key_absorption_cutoff, Constants.DEFAULT_MAX_ABSORPTION_TIME)
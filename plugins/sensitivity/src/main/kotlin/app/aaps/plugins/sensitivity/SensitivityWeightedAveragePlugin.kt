@@ -14,17 +14,13 @@ import app.aaps.core.interfaces.profile.ProfileFunction
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.utils.DateUtil
-import app.aaps.core.utils.MidnightUtils
-import app.aaps.database.entities.TherapyEvent
 import app.aaps.database.impl.AppRepository
-import app.aaps.plugins.sensitivity.extensions.isPSEvent5minBack
-import app.aaps.plugins.sensitivity.extensions.isTherapyEventEvent5minBack
+import app.aaps.plugins.sensitivity.window.SensitivityWindow
 import dagger.android.HasAndroidInjector
 import org.json.JSONException
 import org.json.JSONObject
 import javax.inject.Inject
 import javax.inject.Singleton
-import kotlin.math.roundToInt
 
 @OpenForTesting
 @Singleton
@@ -47,6 +43,8 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ) {
 
+    private val window = SensitivityWindow(repository)
+
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         val age = sp.getString(app.aaps.core.utils.R.string.key_age, "")
         var defaultHours = 24
@@ -68,51 +66,23 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No profile available")
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getProfileSwitchDataFromTime(fromTime, true).blockingGet()
-        var pastSensitivity = ""
-        var index = 0
         val data = LongSparseArray<Double>()
-        while (index < ads.autosensDataTable.size()) {
-            val autosensData = ads.autosensDataTable.valueAt(index)
-            if (autosensData.time < fromTime) {
-                index++
-                continue
-            }
-            if (autosensData.time > toTime) {
-                index++
-                continue
-            }
-            if (autosensData.time < toTime - hoursForDetection * 60 * 60 * 1000L) {
-                index++
-                continue
-            }
-
-            // reset deviations after site change
-            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
-                data.clear()
-                pastSensitivity += "(SITECHANGE)"
-            }
-
-            // reset deviations after profile switch
-            if (profileSwitches.isPSEvent5minBack(autosensData.time)) {
-                data.clear()
-                pastSensitivity += "(PROFILESWITCH)"
-            }
-            var deviation = autosensData.deviation
+        val pastSensitivity = StringBuilder()
+        val index = ads.autosensDataTable.size()
+        synchronized(window) {
+            window.update(ads, fromTime, toTime)
+            // weighted sum depends on order of records, replay detection period only
+            for (i in window.indexOf(toTime - hoursForDetection * 60 * 60 * 1000L) until window.records.size) {
+                val record = window.records[i]
 
-            //set positive deviations to zero if bg < 80
-            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+                // reset deviations after site change or profile switch
+                if (record.reset) data.clear()
 
-            //data.append(autosensData.time);
-            val reverseWeight = (toTime - autosensData.time) / (5 * 60 * 1000L)
-            if (autosensData.validDeviation) data.append(reverseWeight, deviation)
-            pastSensitivity += autosensData.pastSensitivity
-            val secondsFromMidnight = MidnightUtils.secondsFromMidnight(autosensData.time)
-            if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+                //data.append(autosensData.time);
+                val reverseWeight = (toTime - record.time) / (5 * 60 * 1000L)
+                if (record.validDeviation) data.append(reverseWeight, record.deviation)
+                pastSensitivity.append(record.pastSensitivity)
             }
-            index++
         }
         if (data.size() == 0) {
             aapsLogger.debug(LTag.AUTOSENS, "Data size: " + data.size() + " fromTime: " + dateUtil.dateAndTimeString(fromTime) + " toTime: " + dateUtil.dateAndTimeString(toTime))
@@ -147,7 +117,7 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
         }
         aapsLogger.debug(LTag.AUTOSENS, sensResult)
         val output = fillResult(
-            ratio, current.cob, pastSensitivity, ratioLimit,
+            ratio, current.cob, pastSensitivity.toString(), ratioLimit,
             sensResult, data.size()
         )
         aapsLogger.debug(
@@ -0,0 +1,147 @@
+package app.aaps.plugins.sensitivity.window
+
+import app.aaps.core.utils.Percentile
+
+/**
+ * Deviations used by one detection period (ie. 8h or 24h) kept sorted between calls
+ *
+ * Reproduces the original list based algorithm: every record adds its deviation (only when inside of detection period)
+ * and optionally extra deviations and then the oldest item is dropped if list is longer than [Config.maxDeviations].
+ * Content of that list is always the tail of all added values so only its size must be simulated
+ * and the tail is moved in [SortedDeviations] by difference against previous call.
+ */
+class DeviationSegment(val config: Config) {
+
+    data class Config(val hours: Double, val maxDeviations: Double, val withExtraDeviations: Boolean)
+
+    // per record since last reset
+    private val times = ArrayList<Long>()
+    private val firstValue = ArrayList<Int>()
+    private val extrasBefore = ArrayList<Int>()
+    private val sizeWithExtrasOnly = ArrayList<Int>()
+
+    // all values added since last reset
+    private val values = ArrayList<Double>()
+    private val isExtra = ArrayList<Boolean>()
+    private val extraPositions = ArrayList<Int>()
+
+    private val sorted = SortedDeviations()
+    private var selectedFrom = 0
+    private var selectedExtrasTo = 0
+    private var selectedTo = 0
+
+    /**
+     * Number of deviations selected by last [select]
+     */
+    val size: Int get() = sorted.size
+
+    fun add(record: SensitivityWindow.Record) {
+        if (record.reset) clear()
+        times.add(record.time)
+        firstValue.add(values.size)
+        extrasBefore.add(extraPositions.size)
+        if (record.validDeviation) {
+            values.add(record.deviation)
+            isExtra.add(false)
+        }
+        var extras = 0
+        if (config.withExtraDeviations)
+            for (extra in record.extraDeviation) {
+                extraPositions.add(values.size)
+                values.add(extra)
+                isExtra.add(true)
+                extras++
+            }
+        var size = (sizeWithExtrasOnly.lastOrNull() ?: 0) + extras
+        if (size > config.maxDeviations) size--
+        sizeWithExtrasOnly.add(size)
+    }
+
+    /**
+     * Select deviations valid for calculation ending at [toTime]
+     */
+    fun select(toTime: Long) {
+        val detectionStart = toTime - config.hours * 60 * 60 * 1000L
+        // records before detectionStart contribute extra deviations only
+        val first = firstAfter(detectionStart)
+        var size = if (first > 0) sizeWithExtrasOnly[first - 1] else 0
+        for (i in first until times.size) {
+            size += valuesOf(i)
+            if (size > config.maxDeviations) size--
+        }
+        val extrasFrom = if (first < times.size) firstValue[first] else values.size
+        val to = values.size
+        val from =
+            if (size <= to - extrasFrom) to - size
+            else {
+                val extras = if (first < times.size) extrasBefore[first] else extraPositions.size
+                extraPositions[extras - (size - (to - extrasFrom))]
+            }
+        move(from, extrasFrom, to)
+    }
+
+    /**
+     * @param zeros number of zero deviations added to selected ones
+     */
+    fun percentile(p: Double, zeros: Int = 0): Double {
+        repeat(zeros) { sorted.add(0.0) }
+        val result = Percentile.percentile(sorted.size, p) { sorted[it] }
+        repeat(zeros) { sorted.remove(0.0) }
+        return result
+    }
+
+    fun sortedDeviations(): List<Double> = sorted.toList()
+
+    private fun clear() {
+        times.clear()
+        firstValue.clear()
+        extrasBefore.clear()
+        sizeWithExtrasOnly.clear()
+        values.clear()
+        isExtra.clear()
+        extraPositions.clear()
+        sorted.clear()
+        selectedFrom = 0
+        selectedExtrasTo = 0
+        selectedTo = 0
+    }
+
+    private fun valuesOf(record: Int): Int =
+        (if (record + 1 < times.size) firstValue[record + 1] else values.size) - firstValue[record]
+
+    private fun firstAfter(time: Double): Int {
+        var low = 0
+        var high = times.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (times[mid] > time) high = mid else low = mid + 1
+        }
+        return low
+    }
+
+    private fun isSelected(position: Int, from: Int, extrasTo: Int, to: Int): Boolean =
+        position in from until to && (position >= extrasTo || isExtra[position])
+
+    // membership of a value can change only between old and new position of each boundary
+    private fun move(from: Int, extrasTo: Int, to: Int) {
+        val ranges = listOf(
+            minOf(from, selectedFrom) to maxOf(from, selectedFrom),
+            minOf(extrasTo, selectedExtrasTo) to maxOf(extrasTo, selectedExtrasTo),
+            minOf(to, selectedTo) to maxOf(to, selectedTo)
+        ).sortedBy { it.first }
+        var position = 0
+        for (range in ranges) {
+            position = maxOf(position, range.first)
+            while (position < range.second) {
+                val wasSelected = isSelected(position, selectedFrom, selectedExtrasTo, selectedTo)
+                val selected = isSelected(position, from, extrasTo, to)
+                if (wasSelected && !selected) sorted.remove(values[position])
+                if (selected && !wasSelected) sorted.add(values[position])
+                position++
+            }
+        }
+        selectedFrom = from
+        selectedExtrasTo = extrasTo
+        selectedTo = to
+    }
+}
@@ -0,0 +1,140 @@
+package app.aaps.plugins.sensitivity.window
+
+import app.aaps.core.interfaces.aps.AutosensData
+import app.aaps.core.interfaces.aps.AutosensDataStore
+import app.aaps.core.utils.MidnightUtils
+import app.aaps.database.entities.ProfileSwitch
+import app.aaps.database.entities.TherapyEvent
+import app.aaps.database.impl.AppRepository
+import app.aaps.plugins.sensitivity.extensions.isPSEvent5minBack
+import app.aaps.plugins.sensitivity.extensions.isTherapyEventEvent5minBack
+import kotlin.math.roundToInt
+
+/**
+ * Autosens records between fromTime and toTime processed incrementally
+ *
+ * IobCobOref1Worker and IobCobOrefWorker call detectSensitivity for every 5 min bucket with the same
+ * [AutosensDataStore] and fromTime and increasing toTime. Records processed by previous call are kept,
+ * only new records are added and site changes and profile switches are loaded once per calculation.
+ * Anything else (different store or fromTime, going back in time, changed table) starts from scratch.
+ */
+class SensitivityWindow(private val repository: AppRepository) {
+
+    class Record(
+        val time: Long,
+        /** deviations are reset by site change or profile switch */
+        val reset: Boolean,
+        /** positive deviations set to zero if bg < 80 */
+        val deviation: Double,
+        val validDeviation: Boolean,
+        val extraDeviation: List<Double>,
+        /** contribution to AutosensResult.pastSensitivity */
+        val pastSensitivity: String
+    )
+
+    private var ads: AutosensDataStore? = null
+    private var fromTime = 0L
+    private var firstIndex = 0
+    private var lastData: AutosensData? = null
+    private var siteChanges: List<TherapyEvent> = emptyList()
+    private var profileSwitches: List<ProfileSwitch> = emptyList()
+    private val pastSensitivity = StringBuilder()
+
+    val records = ArrayList<Record>()
+    var segments: List<DeviationSegment> = emptyList()
+        private set
+
+    /**
+     * Bring window to [toTime] and select deviations of [segments]
+     *
+     * @param configs detection periods to maintain, empty if only records are needed
+     */
+    @Synchronized
+    fun update(ads: AutosensDataStore, fromTime: Long, toTime: Long, configs: List<DeviationSegment.Config> = emptyList()) {
+        if (!canContinue(ads, fromTime, toTime)) reset(ads, fromTime)
+        if (segments.map { it.config } != configs) {
+            segments = configs.map { DeviationSegment(it) }
+            for (record in records) segments.forEach { it.add(record) }
+        }
+        val table = ads.autosensDataTable
+        var index = firstIndex + records.size
+        while (index < table.size()) {
+            val autosensData = table.valueAt(index)
+            if (autosensData.time > toTime) break
+            val record = record(autosensData)
+            records.add(record)
+            pastSensitivity.append(record.pastSensitivity)
+            segments.forEach { it.add(record) }
+            lastData = autosensData
+            index++
+        }
+        segments.forEach { it.select(toTime) }
+    }
+
+    /**
+     * pastSensitivity of all records up to last [update]
+     */
+    @Synchronized
+    fun pastSensitivity(): String = pastSensitivity.toString()
+
+    /**
+     * @return index of first record with time >= [time]
+     */
+    @Synchronized
+    fun indexOf(time: Long): Int {
+        var low = 0
+        var high = records.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (records[mid].time < time) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    private fun canContinue(ads: AutosensDataStore, fromTime: Long, toTime: Long): Boolean {
+        if (ads !== this.ads || fromTime != this.fromTime || records.isEmpty()) return false
+        if (records[records.size - 1].time > toTime) return false
+        val table = ads.autosensDataTable
+        val last = firstIndex + records.size - 1
+        if (last >= table.size() || table.valueAt(last) !== lastData) return false
+        return firstIndex == 0 || table.valueAt(firstIndex - 1).time < fromTime
+    }
+
+    private fun reset(ads: AutosensDataStore, fromTime: Long) {
+        this.ads = ads
+        this.fromTime = fromTime
+        val table = ads.autosensDataTable
+        firstIndex = 0
+        while (firstIndex < table.size() && table.valueAt(firstIndex).time < fromTime) firstIndex++
+        lastData = null
+        records.clear()
+        pastSensitivity.setLength(0)
+        segments = segments.map { DeviationSegment(it.config) }
+        siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
+        profileSwitches = repository.getProfileSwitchDataFromTime(fromTime, true).blockingGet()
+    }
+
+    private fun record(autosensData: AutosensData): Record {
+        var pastSensitivity = ""
+        var reset = false
+        // reset deviations after site change
+        if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+            reset = true
+            pastSensitivity += "(SITECHANGE)"
+        }
+        // reset deviations after profile switch
+        if (profileSwitches.isPSEvent5minBack(autosensData.time)) {
+            reset = true
+            pastSensitivity += "(PROFILESWITCH)"
+        }
+        var deviation = autosensData.deviation
+        //set positive deviations to zero if bg < 80
+        if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+        pastSensitivity += autosensData.pastSensitivity
+        val secondsFromMidnight = MidnightUtils.secondsFromMidnight(autosensData.time)
+        if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
+            pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+        }
+        return Record(autosensData.time, reset, deviation, autosensData.validDeviation, ArrayList(autosensData.extraDeviation), pastSensitivity)
+    }
+}
@@ -0,0 +1,141 @@
+package app.aaps.plugins.sensitivity.window
+
+/**
+ * Multiset of deviations with access to n-th smallest value in O(log n)
+ *
+ * Implemented as treap with size counters. Ordering is the same as Arrays.sort() of boxed doubles
+ * (-0.0 < 0.0, NaN last) so percentiles are identical to sorting the list
+ */
+class SortedDeviations {
+
+    private class Node(val value: Double, val priority: Int) {
+
+        var count = 1
+        var size = 1
+        var left: Node? = null
+        var right: Node? = null
+
+        fun update() {
+            size = count + (left?.size ?: 0) + (right?.size ?: 0)
+        }
+    }
+
+    private var root: Node? = null
+    private var seed = 0x2545F491
+
+    val size: Int get() = root?.size ?: 0
+
+    fun clear() {
+        root = null
+    }
+
+    fun add(value: Double) {
+        root = insert(root, value)
+    }
+
+    fun remove(value: Double) {
+        root = delete(root, value)
+    }
+
+    /**
+     * @param index zero based position in sorted order
+     */
+    operator fun get(index: Int): Double {
+        require(index in 0 until size) { "Index $index out of bounds for size $size" }
+        var node = root
+        var position = index
+        while (node != null) {
+            val leftSize = node.left?.size ?: 0
+            when {
+                position < leftSize              -> node = node.left
+                position < leftSize + node.count -> return node.value
+                else                             -> {
+                    position -= leftSize + node.count
+                    node = node.right
+                }
+            }
+        }
+        throw IllegalStateException()
+    }
+
+    fun toList(): List<Double> = ArrayList<Double>(size).also { fill(root, it) }
+
+    private fun fill(node: Node?, list: MutableList<Double>) {
+        node ?: return
+        fill(node.left, list)
+        repeat(node.count) { list.add(node.value) }
+        fill(node.right, list)
+    }
+
+    private fun nextPriority(): Int {
+        // xorshift, deterministic so the tree shape is reproducible
+        seed = seed xor (seed shl 13)
+        seed = seed xor (seed ushr 17)
+        seed = seed xor (seed shl 5)
+        return seed
+    }
+
+    private fun insert(node: Node?, value: Double): Node {
+        node ?: return Node(value, nextPriority())
+        val compare = java.lang.Double.compare(value, node.value)
+        var result: Node = node
+        when {
+            compare == 0 -> node.count++
+            compare < 0  -> {
+                node.left = insert(node.left, value)
+                if (node.left!!.priority > node.priority) result = rotateRight(node)
+            }
+
+            else         -> {
+                node.right = insert(node.right, value)
+                if (node.right!!.priority > node.priority) result = rotateLeft(node)
+            }
+        }
+        node.update()
+        result.update()
+        return result
+    }
+
+    private fun delete(node: Node?, value: Double): Node? {
+        node ?: throw IllegalStateException("Value $value not present")
+        val compare = java.lang.Double.compare(value, node.value)
+        when {
+            compare < 0     -> node.left = delete(node.left, value)
+            compare > 0     -> node.right = delete(node.right, value)
+            node.count > 1  -> node.count--
+            else            -> return merge(node.left, node.right)
+        }
+        node.update()
+        return node
+    }
+
+    private fun merge(left: Node?, right: Node?): Node? {
+        left ?: return right
+        right ?: return left
+        return if (left.priority > right.priority) {
+            left.right = merge(left.right, right)
+            left.update()
+            left
+        } else {
+            right.left = merge(left, right.left)
+            right.update()
+            right
+        }
+    }
+
+    private fun rotateRight(node: Node): Node {
+        val left = node.left!!
+        node.left = left.right
+        left.right = node
+        node.update()
+        return left
+    }
+
+    private fun rotateLeft(node: Node): Node {
+        val right = node.right!!
+        node.right = right.left
+        right.left = node
+        node.update()
+        return right
+    }
+}
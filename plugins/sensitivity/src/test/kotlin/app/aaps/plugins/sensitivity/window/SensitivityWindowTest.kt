@@ -0,0 +1,158 @@
+package app.aaps.plugins.sensitivity.window
+
+import androidx.collection.LongSparseArray
+import app.aaps.core.interfaces.aps.AutosensData
+import app.aaps.core.interfaces.aps.AutosensDataStore
+import app.aaps.core.interfaces.utils.T
+import app.aaps.core.utils.MidnightUtils
+import app.aaps.core.utils.Percentile
+import app.aaps.database.entities.TherapyEvent
+import app.aaps.database.impl.AppRepository
+import app.aaps.shared.tests.TestBase
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.rxjava3.core.Single
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import java.util.Arrays
+import kotlin.math.roundToInt
+import kotlin.random.Random
+
+class SensitivityWindowTest : TestBase() {
+
+    @Mock lateinit var repository: AppRepository
+
+    private val fromTime = 1_700_000_000_000L - 1_700_000_000_000L % T.mins(5).msecs()
+    private val configs = listOf(
+        DeviationSegment.Config(hours = 8.0, maxDeviations = 96.0, withExtraDeviations = true),
+        DeviationSegment.Config(hours = 24.0, maxDeviations = 288.0, withExtraDeviations = true),
+        DeviationSegment.Config(hours = 4.0, maxDeviations = 48.0, withExtraDeviations = false)
+    )
+    private lateinit var siteChanges: List<TherapyEvent>
+
+    @BeforeEach
+    fun prepare() {
+        siteChanges = listOf(fromTime + T.hours(5).msecs() + 1000, fromTime + T.hours(20).msecs() + 1000).map {
+            TherapyEvent(timestamp = it, type = TherapyEvent.Type.CANNULA_CHANGE, glucoseUnit = TherapyEvent.GlucoseUnit.MGDL)
+        }
+        `when`(repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true)).thenReturn(Single.just(siteChanges))
+        `when`(repository.getProfileSwitchDataFromTime(fromTime, true)).thenReturn(Single.just(emptyList()))
+    }
+
+    @Test
+    fun incrementalCalculationMatchesFullScan() {
+        val data = generate(Random(1), 30 * 12)
+        val ads = store(LongSparseArray())
+        val sut = SensitivityWindow(repository)
+        for (autosensData in data) {
+            // same as IobCobOref1Worker, add new bucket and detect sensitivity
+            ads.autosensDataTable.put(autosensData.time, autosensData)
+            sut.update(ads, fromTime, autosensData.time, configs)
+            compare(sut, data, autosensData.time)
+        }
+    }
+
+    @Test
+    fun tableFilledInAdvanceAndRecalculated() {
+        val data = generate(Random(2), 30 * 12)
+        val table = LongSparseArray<AutosensData>()
+        data.forEach { table.put(it.time, it) }
+        val sut = SensitivityWindow(repository)
+        var ads = store(table)
+        repeat(2) {
+            // new store instance must start again
+            ads = store(table)
+            for (autosensData in data) {
+                sut.update(ads, fromTime, autosensData.time, configs)
+                compare(sut, data, autosensData.time)
+            }
+        }
+        // going back in time
+        sut.update(ads, fromTime, data[100].time, configs)
+        compare(sut, data, data[100].time)
+    }
+
+    @Test
+    fun recordsForWeightedAverage() {
+        val data = generate(Random(3), 10 * 12)
+        val ads = store(LongSparseArray())
+        val sut = SensitivityWindow(repository)
+        for (autosensData in data) {
+            ads.autosensDataTable.put(autosensData.time, autosensData)
+            sut.update(ads, fromTime, autosensData.time)
+        }
+        assertThat(sut.segments).isEmpty()
+        assertThat(sut.records.map { it.time }).isEqualTo(data.map { it.time })
+        val start = data.last().time - T.hours(4).msecs()
+        assertThat(sut.records[sut.indexOf(start)].time).isEqualTo(start)
+        assertThat(sut.records.count { it.reset }).isEqualTo(1)
+    }
+
+    private fun compare(sut: SensitivityWindow, data: List<AutosensData>, toTime: Long) {
+        assertThat(sut.pastSensitivity()).isEqualTo(referencePastSensitivity(data, toTime))
+        for ((i, config) in configs.withIndex()) {
+            val segment = sut.segments[i]
+            val expected = referenceDeviations(data, toTime, config)
+            assertThat(segment.size).isEqualTo(expected.size)
+            assertThat(segment.sortedDeviations()).isEqualTo(expected.sorted())
+            val pad = if (expected.size < config.maxDeviations) ((1 - expected.size.toDouble() / config.maxDeviations) * 18).roundToInt() else 0
+            val padded = (expected + List(pad) { 0.0 }).toTypedArray()
+            Arrays.sort(padded)
+            assertThat(segment.percentile(0.50, pad)).isEqualTo(Percentile.percentile(padded, 0.50))
+            assertThat(segment.percentile(0.50)).isEqualTo(Percentile.percentile(expected.sorted().toTypedArray(), 0.50))
+        }
+    }
+
+    private fun isSiteChange(time: Long) = siteChanges.any { it.timestamp <= time && it.timestamp > time - T.mins(5).msecs() }
+
+    // original detection loop of SensitivityOref1Plugin and SensitivityAAPSPlugin
+    private fun referenceDeviations(data: List<AutosensData>, toTime: Long, config: DeviationSegment.Config): List<Double> {
+        val deviationsArray = ArrayList<Double>()
+        for (autosensData in data) {
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue
+            if (isSiteChange(autosensData.time)) deviationsArray.clear()
+            var deviation = autosensData.deviation
+            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+            if (autosensData.validDeviation) if (autosensData.time > toTime - config.hours * 60 * 60 * 1000L) deviationsArray.add(deviation)
+            if (config.withExtraDeviations) deviationsArray.addAll(autosensData.extraDeviation)
+            if (deviationsArray.size > config.maxDeviations) deviationsArray.removeAt(0)
+        }
+        return deviationsArray
+    }
+
+    private fun referencePastSensitivity(data: List<AutosensData>, toTime: Long): String {
+        var pastSensitivity = ""
+        for (autosensData in data) {
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue
+            if (isSiteChange(autosensData.time)) pastSensitivity += "(SITECHANGE)"
+            pastSensitivity += autosensData.pastSensitivity
+            val secondsFromMidnight = MidnightUtils.secondsFromMidnight(autosensData.time)
+            if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
+                pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+            }
+        }
+        return pastSensitivity
+    }
+
+    private fun store(table: LongSparseArray<AutosensData>): AutosensDataStore =
+        mock(AutosensDataStore::class.java).also { `when`(it.autosensDataTable).thenReturn(table) }
+
+    private fun generate(random: Random, count: Int): List<AutosensData> =
+        List(count) { i ->
+            val autosensData = mock(AutosensData::class.java)
+            val extraDeviation = when {
+                i % 24 == 0     -> mutableListOf(0.0)
+                i % 37 == 0     -> mutableListOf(-1.5, -1.5)
+                else            -> mutableListOf()
+            }
+            `when`(autosensData.time).thenReturn(fromTime + i * T.mins(5).msecs())
+            `when`(autosensData.bg).thenReturn(random.nextInt(60, 250).toDouble())
+            `when`(autosensData.deviation).thenReturn(random.nextInt(-200, 200) / 10.0)
+            `when`(autosensData.validDeviation).thenReturn(random.nextInt(10) != 0)
+            `when`(autosensData.extraDeviation).thenReturn(extraDeviation)
+            `when`(autosensData.pastSensitivity).thenReturn(listOf("", "=", "+", "-", "C")[random.nextInt(5)])
+            autosensData
+        }
+}
@@ -3,6 +3,7 @@ package app.aaps.plugins.source
 import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
+import android.os.Bundle
 import androidx.core.content.ContextCompat
 import androidx.work.WorkerParameters
 import androidx.work.workDataOf
@@ -23,6 +24,7 @@ import app.aaps.core.interfaces.utils.T
 import app.aaps.core.main.extensions.fromConstant
 import app.aaps.core.main.utils.worker.LoggingWorker
 import app.aaps.core.utils.receivers.DataWorkerStorage
+import app.aaps.database.ValueWrapper
 import app.aaps.database.entities.GlucoseValue
 import app.aaps.database.entities.TherapyEvent
 import app.aaps.database.entities.UserEntry.Action
@@ -36,6 +38,7 @@ import app.aaps.plugins.source.activities.RequestDexcomPermissionActivity
 import app.aaps.shared.impl.extensions.safeGetInstalledPackages
 import dagger.android.HasAndroidInjector
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.abs
@@ -87,69 +90,91 @@ class DexcomPlugin @Inject constructor(
         @Inject lateinit var uel: UserEntryLogger
         @Inject lateinit var profileUtil: ProfileUtil
 
+        /**
+         * Regular update brings one new value. Backfill after lost connection brings more values
+         * newer than the last stored one and following broadcasts may be waiting.
+         */
+        private fun isBackfill(bundle: Bundle): Boolean {
+            val glucoseValues = bundle.getBundle("glucoseValues") ?: return false
+            if (glucoseValues.size() < 2) return false
+            val lastStored = repository.getLastGlucoseValueWrapped().blockingGet().let { if (it is ValueWrapper.Existing) it.value.timestamp else 0L }
+            val newValues = (0 until glucoseValues.size()).mapNotNull { glucoseValues.getBundle(it.toString())?.getLong("timestamp")?.times(1000) }.filter { it > lastStored }
+            return newValues.isNotEmpty() && newValues.max() - newValues.min() > T.mins(4).msecs()
+        }
+
         override suspend fun doWorkAndLog(): Result {
             var ret = Result.success()
 
             if (!dexcomPlugin.isEnabled()) return Result.success(workDataOf("Result" to "Plugin not enabled"))
-            val bundle = dataWorkerStorage.pickupBundle(inputData.getLong(DataWorkerStorage.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
+            val key = inputData.getLong(DataWorkerStorage.STORE_KEY, -1)
+            val bundle = dataWorkerStorage.pickupBundle(key)
+                ?: return if (dataWorkerStorage.wasPickedUpTogether(key)) Result.success(workDataOf("Result" to "Already processed"))
+                else Result.failure(workDataOf("Error" to "missing input data"))
             try {
-                val sourceSensor = when (bundle.getString("sensorType") ?: "") {
-                    "G6" -> GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE
-                    "G5" -> GlucoseValue.SourceSensor.DEXCOM_G5_NATIVE
-                    else -> GlucoseValue.SourceSensor.DEXCOM_NATIVE_UNKNOWN
-                }
+                val bundles = mutableListOf(bundle)
+                // backfill comes in more broadcasts, save all waiting ones in one transaction
+                if (isBackfill(bundle)) delay(BACKFILL_COALESCE_WINDOW)
+                inputData.getString(DataWorkerStorage.ACTION_KEY)?.let { bundles += dataWorkerStorage.pickupBundles(it) }
                 val calibrations = mutableListOf<CgmSourceTransaction.Calibration>()
-                bundle.getBundle("meters")?.let { meters ->
-                    for (i in 0 until meters.size()) {
-                        meters.getBundle(i.toString())?.let {
-                            val timestamp = it.getLong("timestamp") * 1000
-                            val now = dateUtil.now()
-                            val value = it.getInt("meterValue").toDouble()
-                            if (timestamp > now - T.months(1).msecs() && timestamp < now) {
-                                calibrations.add(
-                                    CgmSourceTransaction.Calibration(
-                                        timestamp = it.getLong("timestamp") * 1000,
-                                        value = value,
-                                        glucoseUnit = TherapyEvent.GlucoseUnit.fromConstant(profileUtil.unitsDetect(value))
+                val glucoseValues = mutableListOf<TransactionGlucoseValue>()
+                var sensorStartTime: Long? = null
+                for (received in bundles) {
+                    val sourceSensor = when (received.getString("sensorType") ?: "") {
+                        "G6" -> GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE
+                        "G5" -> GlucoseValue.SourceSensor.DEXCOM_G5_NATIVE
+                        else -> GlucoseValue.SourceSensor.DEXCOM_NATIVE_UNKNOWN
+                    }
+                    val receivedCalibrations = mutableListOf<CgmSourceTransaction.Calibration>()
+                    received.getBundle("meters")?.let { meters ->
+                        for (i in 0 until meters.size()) {
+                            meters.getBundle(i.toString())?.let {
+                                val timestamp = it.getLong("timestamp") * 1000
+                                val now = dateUtil.now()
+                                val value = it.getInt("meterValue").toDouble()
+                                if (timestamp > now - T.months(1).msecs() && timestamp < now) {
+                                    receivedCalibrations.add(
+                                        CgmSourceTransaction.Calibration(
+                                            timestamp = it.getLong("timestamp") * 1000,
+                                            value = value,
+                                            glucoseUnit = TherapyEvent.GlucoseUnit.fromConstant(profileUtil.unitsDetect(value))
+                                        )
                                     )
-                                )
+                                }
                             }
                         }
                     }
-                }
-                val now = dateUtil.now()
-                val glucoseValuesBundle = bundle.getBundle("glucoseValues")
-                    ?: return Result.failure(workDataOf("Error" to "missing glucoseValues"))
-                val glucoseValues = mutableListOf<TransactionGlucoseValue>()
-                for (i in 0 until glucoseValuesBundle.size()) {
-                    val glucoseValueBundle = glucoseValuesBundle.getBundle(i.toString())!!
-                    val timestamp = glucoseValueBundle.getLong("timestamp") * 1000
-                    // G5 calibration bug workaround (calibration is sent as glucoseValue too)
-                    var valid = true
-                    if (sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G5_NATIVE)
-                        calibrations.forEach { calibration -> if (calibration.timestamp == timestamp) valid = false }
-                    // G6 is sending one 24h old changed value causing recalculation. Ignore
-                    if (sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE)
-                        if ((now - timestamp) > T.hours(20).msecs()) valid = false
-                    if (valid)
-                        glucoseValues += TransactionGlucoseValue(
-                            timestamp = timestamp,
-                            value = glucoseValueBundle.getInt("glucoseValue").toDouble(),
-                            noise = null,
-                            raw = null,
-                            trendArrow = GlucoseValue.TrendArrow.fromString(glucoseValueBundle.getString("trendArrow")!!),
-                            sourceSensor = sourceSensor
-                        )
-                }
-                var sensorStartTime = if (sp.getBoolean(R.string.key_dexcom_log_ns_sensor_change, false) && bundle.containsKey("sensorInsertionTime")) {
-                    bundle.getLong("sensorInsertionTime", 0) * 1000
-                } else {
-                    null
-                }
-                // check start time validity
-                sensorStartTime?.let {
-                    if (abs(it - now) > T.months(1).msecs() || it > now) sensorStartTime = null
+                    calibrations += receivedCalibrations
+                    val now = dateUtil.now()
+                    val glucoseValuesBundle = received.getBundle("glucoseValues")
+                    if (glucoseValuesBundle == null) {
+                        ret = Result.failure(workDataOf("Error" to "missing glucoseValues"))
+                        continue
+                    }
+                    for (i in 0 until glucoseValuesBundle.size()) {
+                        val glucoseValueBundle = glucoseValuesBundle.getBundle(i.toString())!!
+                        val timestamp = glucoseValueBundle.getLong("timestamp") * 1000
+                        // G5 calibration bug workaround (calibration is sent as glucoseValue too)
+                        var valid = true
+                        if (sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G5_NATIVE)
+                            receivedCalibrations.forEach { calibration -> if (calibration.timestamp == timestamp) valid = false }
+                        // G6 is sending one 24h old changed value causing recalculation. Ignore
+                        if (sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE)
+                            if ((now - timestamp) > T.hours(20).msecs()) valid = false
+                        if (valid)
+                            glucoseValues += TransactionGlucoseValue(
+                                timestamp = timestamp,
+                                value = glucoseValueBundle.getInt("glucoseValue").toDouble(),
+                                noise = null,
+                                raw = null,
+                                trendArrow = GlucoseValue.TrendArrow.fromString(glucoseValueBundle.getString("trendArrow")!!),
+                                sourceSensor = sourceSensor
+                            )
+                    }
+                    if (sp.getBoolean(R.string.key_dexcom_log_ns_sensor_change, false) && received.containsKey("sensorInsertionTime")) {
+                        val insertionTime = received.getLong("sensorInsertionTime", 0) * 1000
+                        // check start time validity
+                        if (abs(insertionTime - now) <= T.months(1).msecs() && insertionTime <= now) sensorStartTime = insertionTime
+                    }
                 }
                 repository.runTransactionForResult(CgmSourceTransaction(glucoseValues, calibrations, sensorStartTime))
                     .doOnError {
@@ -160,7 +185,7 @@ class DexcomPlugin @Inject constructor(
                     .also { result ->
                         // G6 calibration bug workaround (2 additional GVs are created within 1 minute)
                         for (i in result.inserted.indices) {
-                            if (sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE) {
+                            if (result.inserted[i].sourceSensor == GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE) {
                                 if (i < result.inserted.size - 1) {
                                     if (abs(result.inserted[i].timestamp - result.inserted[i + 1].timestamp) < T.mins(1).msecs()) {
                                         repository.runTransactionForResult(InvalidateGlucoseValueTransaction(result.inserted[i].id))
@@ -238,5 +263,8 @@ class DexcomPlugin @Inject constructor(
             "com.dexcom.g6", "com.dexcom.g7"
         )
         const val PERMISSION = "com.dexcom.cgm.EXTERNAL_PERMISSION"
+
+        // time to wait for following broadcasts of backfill
+        private const val BACKFILL_COALESCE_WINDOW = 2000L
     }
 }
@@ -10,14 +10,20 @@ import app.aaps.core.interfaces.plugin.PluginDescription
 import app.aaps.core.interfaces.plugin.PluginType
 import app.aaps.core.interfaces.resources.ResourceHelper
 import app.aaps.core.interfaces.rx.bus.RxBus
+import app.aaps.core.interfaces.rx.events.EventEffectiveProfileSwitchChanged
+import app.aaps.core.interfaces.rx.events.EventLoopUpdateGui
 import app.aaps.core.interfaces.rx.events.EventNewBG
+import app.aaps.core.interfaces.rx.events.EventOfflineChange
 import app.aaps.core.interfaces.rx.events.EventPreferenceChange
+import app.aaps.core.interfaces.rx.events.EventTempBasalChange
+import app.aaps.core.interfaces.rx.events.EventTreatmentChange
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.database.entities.GlucoseValue
 import app.aaps.plugins.sync.R
 import com.google.gson.JsonArray
 import com.google.gson.JsonObject
 import dagger.android.HasAndroidInjector
+import io.reactivex.rxjava3.core.Observable
 import io.reactivex.rxjava3.disposables.CompositeDisposable
 import io.reactivex.rxjava3.schedulers.Schedulers
 import java.math.BigDecimal
@@ -122,6 +128,20 @@ class GarminPlugin @Inject constructor(
                 .observeOn(Schedulers.io())
                 .subscribe(::onNewBloodGlucose)
         )
+        // Responses of side effect free HTTP endpoints are cached until values they contain change.
+        disposable.add(
+            Observable.merge(
+                listOf(
+                    rxBus.toObservable(EventNewBG::class.java),
+                    rxBus.toObservable(EventLoopUpdateGui::class.java),
+                    rxBus.toObservable(EventTreatmentChange::class.java),
+                    rxBus.toObservable(EventTempBasalChange::class.java),
+                    rxBus.toObservable(EventEffectiveProfileSwitchChanged::class.java),
+                    rxBus.toObservable(EventOfflineChange::class.java),
+                    rxBus.toObservable(EventPreferenceChange::class.java)
+                )
+            ).subscribe { server?.invalidateCache() }
+        )
         setupHttpServer()
         if (garminAapsKey.isNotEmpty())
             setupGarminMessenger()
@@ -139,10 +159,11 @@ class GarminPlugin @Inject constructor(
             aapsLogger.info(LTag.GARMIN, "starting HTTP server on $port")
             server?.close()
             server = HttpServer(aapsLogger, port).apply {
-                registerEndpoint("/get", requestHandler(::onGetBloodGlucose))
-                registerEndpoint("/carbs", requestHandler(::onPostCarbs))
-                registerEndpoint("/connect", requestHandler(::onConnectPump))
-                registerEndpoint("/sgv.json", requestHandler(::onSgv))
+                // not cacheable, stores heart rate and long-polls with wait parameter
+                registerEndpoint("/get", endpoint = requestHandler(::onGetBloodGlucose))
+                registerEndpoint("/carbs", endpoint = requestHandler(::onPostCarbs))
+                registerEndpoint("/connect", endpoint = requestHandler(::onConnectPump))
+                registerEndpoint("/sgv.json", cacheable = true, requestHandler(::onSgv))
                 awaitReady(wait)
             }
         } else if (server != null) {
@@ -4,39 +4,74 @@ import android.os.StrictMode
 import androidx.annotation.VisibleForTesting
 import app.aaps.core.interfaces.logging.AAPSLogger
 import app.aaps.core.interfaces.logging.LTag
-import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
 import java.io.Closeable
 import java.io.IOException
 import java.io.InputStream
-import java.io.OutputStream
 import java.lang.Thread.UncaughtExceptionHandler
 import java.net.HttpURLConnection
 import java.net.Inet4Address
 import java.net.InetSocketAddress
-import java.net.ServerSocket
-import java.net.Socket
 import java.net.SocketAddress
-import java.net.SocketTimeoutException
 import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.nio.channels.ServerSocketChannel
+import java.nio.channels.SocketChannel
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
 import java.time.Duration
+import java.util.TreeMap
+import java.util.concurrent.ArrayBlockingQueue
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.Executor
-import java.util.concurrent.Executors
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.locks.ReentrantLock
 import java.util.regex.Pattern
 import kotlin.concurrent.withLock
 
-/** Basic HTTP server to communicate with Garmin device via localhost. */
+/**
+ * Basic HTTP server to communicate with Garmin device via localhost.
+ *
+ * Connections are served by a single selector thread and kept alive between requests.
+ * Endpoints run on a bounded worker pool. Responses of cacheable endpoints are reused
+ * for the same path and query until [invalidateCache] is called.
+ */
 class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val port: Int) : Closeable {
 
+    private class Endpoint(val handler: (SocketAddress, URI, String?) -> Pair<Int, CharSequence>, val cacheable: Boolean)
+
+    private class Response(val code: Int, val body: ByteArray?, val eTag: String?)
+
+    private class Connection(val channel: SocketChannel, val remoteAddress: SocketAddress) {
+
+        var received = ByteArray(0)
+        var output: ByteBuffer? = null
+        var keepAlive = true
+
+        /** A request is being processed, don't read the next one before response is sent. */
+        var busy = false
+        var lastActivity = System.nanoTime()
+    }
+
     private val serverThread: Thread
-    private val workerExecutor: Executor = Executors.newCachedThreadPool()
-    private val endpoints: MutableMap<String, (SocketAddress, URI, String?) -> Pair<Int, CharSequence>> =
-        ConcurrentHashMap()
-    private var serverSocket: ServerSocket? = null
+    private val selector: Selector = Selector.open()
+    private val workerExecutor = ThreadPoolExecutor(
+        WORKERS, WORKERS, 60L, TimeUnit.SECONDS, ArrayBlockingQueue(MAX_QUEUED_REQUESTS)
+    ) { r -> Thread(r, "GarminHttpWorker").apply { isDaemon = true } }.apply { allowCoreThreadTimeOut(true) }
+    private val endpoints: MutableMap<String, Endpoint> = ConcurrentHashMap()
+    private val cache: MutableMap<String, Response> = ConcurrentHashMap()
+    private val cacheVersion = AtomicLong()
+    private val responses = ConcurrentLinkedQueue<Pair<Connection, ByteArray>>()
+    private val readBuffer = ByteBuffer.allocate(8192)
+    @Volatile private var serverChannel: ServerSocketChannel? = null
+    @Volatile private var closed = false
     private val readyLock = ReentrantLock()
     private val readyCond = readyLock.newCondition()
 
@@ -47,17 +82,16 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
         serverThread.uncaughtExceptionHandler = UncaughtExceptionHandler { _, e ->
             e.printStackTrace()
             aapsLogger.error(LTag.GARMIN, "uncaught in HTTP server", e)
-            serverSocket?.use {}
+            serverChannel?.use {}
         }
         serverThread.start()
     }
 
     override fun close() {
-        try {
-            serverSocket?.close()
-            serverSocket = null
-        } catch (_: IOException) {
-        }
+        // Server thread closes the channels.
+        closed = true
+        selector.wakeup()
+        workerExecutor.shutdownNow()
         try {
             serverThread.join(10_000L)
         } catch (_: InterruptedException) {
@@ -68,81 +102,95 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
     fun awaitReady(wait: Duration): Boolean {
         var waitNanos = wait.toNanos()
         readyLock.withLock {
-            while (serverSocket?.isBound != true && waitNanos > 0L) {
+            while (serverChannel?.socket()?.isBound != true && waitNanos > 0L) {
                 waitNanos = readyCond.awaitNanos(waitNanos)
             }
         }
-        return serverSocket?.isBound ?: false
+        return serverChannel?.socket()?.isBound ?: false
     }
 
-    /** Register an endpoint (path) to handle requests. */
-    fun registerEndpoint(path: String, endpoint: (SocketAddress, URI, String?) -> Pair<Int, CharSequence>) {
+    /**
+     * Register an endpoint (path) to handle requests.
+     *
+     * @param cacheable successful responses are reused for requests with the same query,
+     *   only for endpoints without side effects as cached requests don't reach [endpoint]
+     */
+    fun registerEndpoint(path: String, cacheable: Boolean = false, endpoint: (SocketAddress, URI, String?) -> Pair<Int, CharSequence>) {
         aapsLogger.info(LTag.GARMIN, "Register: '$path'")
-        endpoints[path] = endpoint
-    }
-
-    // @Suppress("all")
-    private fun respond(
-        @Suppress("SameParameterValue") code: Int,
-        body: CharSequence,
-        @Suppress("SameParameterValue") contentType: String,
-        out: OutputStream
-    ) {
-        respond(code, body.toString().toByteArray(Charset.forName("UTF8")), contentType, out)
+        endpoints[path] = Endpoint(endpoint, cacheable)
     }
 
-    private fun respond(code: Int, out: OutputStream) {
-        respond(code, null as ByteArray?, null, out)
+    /** Drop cached responses, data they were created from have changed. */
+    fun invalidateCache() {
+        cacheVersion.incrementAndGet()
+        cache.clear()
     }
 
-    private fun respond(code: Int, body: ByteArray?, contentType: String?, out: OutputStream) {
+    private fun toBytes(response: Response, keepAlive: Boolean): ByteArray {
         val header = StringBuilder()
-        header.append("HTTP/1.1 ").append(code).append(" OK\r\n")
-        if (body != null) {
-            appendHeader("Content-Length", "" + body.size, header)
+        header.append("HTTP/1.1 ").append(response.code).append(" OK\r\n")
+        appendHeader("Content-Length", "" + (response.body?.size ?: 0), header)
+        if (response.body != null) {
+            appendHeader("Content-Type", "application/json", header)
         }
-        if (contentType != null) {
-            appendHeader("Content-Type", contentType, header)
+        if (response.eTag != null) {
+            appendHeader("ETag", response.eTag, header)
+        }
+        if (!keepAlive) {
+            appendHeader("Connection", "close", header)
         }
         header.append("\r\n")
-        val bout = BufferedOutputStream(out)
-        bout.write(header.toString().toByteArray(StandardCharsets.US_ASCII))
-        if (body != null) {
-            bout.write(body)
+        val out = ByteArrayOutputStream()
+        out.write(header.toString().toByteArray(StandardCharsets.US_ASCII))
+        if (response.body != null) {
+            out.write(response.body)
         }
-        bout.flush()
+        return out.toByteArray()
     }
 
-    private fun handleRequest(s: Socket) {
-        val out = s.getOutputStream()
-        try {
-            val (uri, reqBody) = parseRequest(s.getInputStream())
-            if ("favicon.ico" == uri.path) {
-                respond(HttpURLConnection.HTTP_NOT_FOUND, out)
-                return
-            }
-            val endpoint = endpoints[uri.path ?: ""]
-            if (endpoint == null) {
-                aapsLogger.error(LTag.GARMIN, "request path not found '" + uri.path + "'")
-                respond(HttpURLConnection.HTTP_NOT_FOUND, out)
-            } else {
-                try {
-                    val (code, body) = endpoint(s.remoteSocketAddress, uri, reqBody)
-                    respond(code, body, "application/json", out)
-                } catch (e: Exception) {
-                    aapsLogger.error(LTag.GARMIN, "endpoint " + uri.path + " failed", e)
-                    respond(HttpURLConnection.HTTP_INTERNAL_ERROR, out)
-                }
-            }
-        } catch (e: SocketTimeoutException) {
-            // Client may just connect without sending anything.
-            aapsLogger.debug(LTag.GARMIN, "socket timeout: " + e.message)
-            return
+    private fun callEndpoint(endpoint: Endpoint, caller: SocketAddress, uri: URI, reqBody: String?): Response {
+        val key = uri.path + "?" + (uri.query ?: "")
+        if (endpoint.cacheable) cache[key]?.let { return it }
+        val version = cacheVersion.get()
+        val (code, body) = endpoint.handler(caller, uri, reqBody)
+        val bytes = body.toString().toByteArray(Charset.forName("UTF8"))
+        val response = Response(code, bytes, if (code == HttpURLConnection.HTTP_OK) eTag(bytes) else null)
+        // Don't store a response created from data changed in the meantime.
+        if (endpoint.cacheable && code == HttpURLConnection.HTTP_OK && cacheVersion.get() == version) {
+            cache[key] = response
+        }
+        return response
+    }
+
+    /** Handles one complete request and returns response to send. */
+    private fun handleRequest(connection: Connection, request: ByteArray): ByteArray {
+        val headers = TreeMap<String, String?>(String.CASE_INSENSITIVE_ORDER)
+        val (uri, reqBody) = try {
+            parseRequest(ByteArrayInputStream(request), headers)
         } catch (e: IOException) {
             aapsLogger.error(LTag.GARMIN, "Invalid request", e)
-            respond(HttpURLConnection.HTTP_BAD_REQUEST, out)
-            return
+            connection.keepAlive = false
+            return toBytes(Response(HttpURLConnection.HTTP_BAD_REQUEST, null, null), false)
+        }
+        connection.keepAlive = !"close".equals(headers["Connection"], ignoreCase = true)
+        if ("favicon.ico" == uri.path) {
+            return toBytes(Response(HttpURLConnection.HTTP_NOT_FOUND, null, null), connection.keepAlive)
+        }
+        val endpoint = endpoints[uri.path ?: ""]
+        if (endpoint == null) {
+            aapsLogger.error(LTag.GARMIN, "request path not found '" + uri.path + "'")
+            return toBytes(Response(HttpURLConnection.HTTP_NOT_FOUND, null, null), connection.keepAlive)
         }
+        val response = try {
+            callEndpoint(endpoint, connection.remoteAddress, uri, reqBody)
+        } catch (e: Exception) {
+            aapsLogger.error(LTag.GARMIN, "endpoint " + uri.path + " failed", e)
+            return toBytes(Response(HttpURLConnection.HTTP_INTERNAL_ERROR, null, null), connection.keepAlive)
+        }
+        if (response.eTag != null && response.eTag == headers["If-None-Match"]) {
+            return toBytes(Response(HttpURLConnection.HTTP_NOT_MODIFIED, null, response.eTag), connection.keepAlive)
+        }
+        return toBytes(response, connection.keepAlive)
     }
 
     private fun runServer() = try {
@@ -151,46 +199,170 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
         val policy = StrictMode.ThreadPolicy.Builder()?.permitAll()?.build()
         if (policy != null) StrictMode.setThreadPolicy(policy)
         readyLock.withLock {
-            serverSocket = ServerSocket()
-            serverSocket!!.bind(
+            serverChannel = ServerSocketChannel.open().apply {
                 // Garmin will only connect to IP4 localhost. Therefore, we need to explicitly listen
                 // on that loopback interface and cannot use InetAddress.getLoopbackAddress(). That
                 // gives ::1 (IP6 localhost).
-                InetSocketAddress(Inet4Address.getByAddress(byteArrayOf(127, 0, 0, 1)), port)
-            )
+                bind(InetSocketAddress(Inet4Address.getByAddress(byteArrayOf(127, 0, 0, 1)), port))
+                configureBlocking(false)
+                register(selector, SelectionKey.OP_ACCEPT)
+            }
             readyCond.signalAll()
         }
-        aapsLogger.info(LTag.GARMIN, "accept connections on " + serverSocket!!.localSocketAddress)
-        while (true) {
-            val socket = serverSocket!!.accept()
-            aapsLogger.info(LTag.GARMIN, "accept " + socket.remoteSocketAddress)
-            workerExecutor.execute {
-                Thread.currentThread().name = "worker" + Thread.currentThread().id
+        aapsLogger.info(LTag.GARMIN, "accept connections on " + serverChannel!!.localAddress)
+        while (!closed) {
+            selector.select(SELECT_TIMEOUT_MILLIS)
+            sendResponses()
+            val keys = selector.selectedKeys().iterator()
+            while (keys.hasNext()) {
+                val key = keys.next()
+                keys.remove()
                 try {
-                    socket.use { s ->
-                        s.soTimeout = 10_000
-                        handleRequest(s)
+                    when {
+                        !key.isValid     -> {}
+                        key.isAcceptable -> accept()
+                        key.isReadable   -> read(key)
+                        key.isWritable   -> write(key)
                     }
-                } catch (e: Exception) {
-                    aapsLogger.error(LTag.GARMIN, "response failed", e)
+                } catch (e: IOException) {
+                    aapsLogger.debug(LTag.GARMIN, "connection failed: " + e.message)
+                    closeConnection(key)
                 }
             }
+            closeIdleConnections()
         }
     } catch (e: IOException) {
         aapsLogger.error("Server crashed", e)
     } finally {
         try {
-            serverSocket?.close()
-            serverSocket = null
+            selector.keys().forEach { it.channel().close() }
+            selector.close()
+            serverChannel?.close()
+            serverChannel = null
         } catch (e: IOException) {
             aapsLogger.error(LTag.GARMIN, "Socked close failed", e)
         }
     }
 
+    private fun accept() {
+        val channel = serverChannel?.accept() ?: return
+        aapsLogger.info(LTag.GARMIN, "accept " + channel.remoteAddress)
+        channel.configureBlocking(false)
+        channel.register(selector, SelectionKey.OP_READ, Connection(channel, channel.remoteAddress))
+    }
+
+    private fun read(key: SelectionKey) {
+        val connection = key.attachment() as Connection
+        readBuffer.clear()
+        if (connection.channel.read(readBuffer) < 0) {
+            closeConnection(key)
+            return
+        }
+        readBuffer.flip()
+        connection.received += ByteArray(readBuffer.remaining()).also { readBuffer.get(it) }
+        connection.lastActivity = System.nanoTime()
+        dispatch(key)
+    }
+
+    /** Passes the next complete request of the connection to the worker pool. */
+    private fun dispatch(key: SelectionKey) {
+        val connection = key.attachment() as Connection
+        if (connection.busy) return
+        val length = requestLength(connection.received)
+        if (length < 0) {
+            if (connection.received.size > MAX_REQUEST_SIZE) {
+                connection.keepAlive = false
+                send(key, toBytes(Response(HttpURLConnection.HTTP_BAD_REQUEST, null, null), false))
+            }
+            return
+        }
+        val request = connection.received.copyOfRange(0, length)
+        connection.received = connection.received.copyOfRange(length, connection.received.size)
+        connection.busy = true
+        key.interestOps(0)
+        try {
+            workerExecutor.execute {
+                val response = try {
+                    handleRequest(connection, request)
+                } catch (e: Exception) {
+                    aapsLogger.error(LTag.GARMIN, "response failed", e)
+                    connection.keepAlive = false
+                    toBytes(Response(HttpURLConnection.HTTP_INTERNAL_ERROR, null, null), false)
+                }
+                responses.add(connection to response)
+                selector.wakeup()
+            }
+        } catch (e: RejectedExecutionException) {
+            aapsLogger.warn(LTag.GARMIN, "too many requests from " + connection.remoteAddress)
+            connection.keepAlive = false
+            send(key, toBytes(Response(HttpURLConnection.HTTP_UNAVAILABLE, null, null), false))
+        }
+    }
+
+    /** Starts writing responses finished by workers. */
+    private fun sendResponses() {
+        while (true) {
+            val (connection, response) = responses.poll() ?: return
+            val key = connection.channel.keyFor(selector) ?: continue
+            if (key.isValid) send(key, response)
+        }
+    }
+
+    private fun send(key: SelectionKey, response: ByteArray) {
+        val connection = key.attachment() as Connection
+        connection.busy = true
+        connection.output = ByteBuffer.wrap(response)
+        key.interestOps(SelectionKey.OP_WRITE)
+    }
+
+    private fun write(key: SelectionKey) {
+        val connection = key.attachment() as Connection
+        val output = connection.output ?: return
+        connection.channel.write(output)
+        connection.lastActivity = System.nanoTime()
+        if (output.hasRemaining()) return
+        connection.output = null
+        connection.busy = false
+        if (!connection.keepAlive) {
+            closeConnection(key)
+            return
+        }
+        key.interestOps(SelectionKey.OP_READ)
+        // Client may have sent next request already.
+        dispatch(key)
+    }
+
+    private fun closeIdleConnections() {
+        val now = System.nanoTime()
+        for (key in selector.keys()) {
+            val connection = key.attachment() as? Connection ?: continue
+            if (!connection.busy && now - connection.lastActivity > IDLE_TIMEOUT_NANOS) {
+                // Client may just connect without sending anything.
+                aapsLogger.debug(LTag.GARMIN, "close idle connection " + connection.remoteAddress)
+                closeConnection(key)
+            }
+        }
+    }
+
+    private fun closeConnection(key: SelectionKey) {
+        key.cancel()
+        try {
+            key.channel().close()
+        } catch (_: IOException) {
+        }
+    }
+
     companion object {
 
+        private const val WORKERS = 4
+        private const val MAX_QUEUED_REQUESTS = 16
+        private const val MAX_REQUEST_SIZE = 64 * 1024
+        private const val SELECT_TIMEOUT_MILLIS = 1_000L
+        private val IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10)
+
         private val REQUEST_HEADER = Pattern.compile("(GET|POST) (\\S*) HTTP/1.1")
         private val HEADER_LINE = Pattern.compile("([A-Za-z-]+)\\s*:\\s*(.*)")
+        private val CONTENT_LENGTH = Pattern.compile("(?im)^Content-Length\\s*:\\s*(\\d+)\\s*$")
 
         private fun readLine(input: InputStream, charset: Charset): String {
             val buffer = ByteArrayOutputStream(input.available())
@@ -206,6 +378,31 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
             return String(buffer.toByteArray(), charset)
         }
 
+        /** Returns length of the first complete request in [data] or -1 if more data is needed. */
+        @VisibleForTesting
+        internal fun requestLength(data: ByteArray): Int {
+            var headerEnd = -1
+            for (i in data.indices) {
+                if (data[i] != '\n'.code.toByte()) continue
+                if (i + 1 < data.size && data[i + 1] == '\n'.code.toByte()) {
+                    headerEnd = i + 2
+                    break
+                }
+                if (i + 2 < data.size && data[i + 1] == '\r'.code.toByte() && data[i + 2] == '\n'.code.toByte()) {
+                    headerEnd = i + 3
+                    break
+                }
+            }
+            if (headerEnd < 0) return -1
+            val header = String(data, 0, headerEnd, StandardCharsets.US_ASCII)
+            val m = CONTENT_LENGTH.matcher(header)
+            val contentLength = if (m.find()) m.group(1)!!.toInt() else 0
+            return if (data.size >= headerEnd + contentLength) headerEnd + contentLength else -1
+        }
+
+        private fun eTag(body: ByteArray): String =
+            MessageDigest.getInstance("SHA-1").digest(body).take(8).joinToString("", "\"", "\"") { "%02x".format(it) }
+
         @VisibleForTesting
         internal fun readBody(input: InputStream, length: Int): String {
             var remaining = length
@@ -219,7 +416,10 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
 
         /** Parses a requests and returns the URI and the request body. */
         @VisibleForTesting
-        internal fun parseRequest(input: InputStream): Pair<URI, String?> {
+        internal fun parseRequest(input: InputStream): Pair<URI, String?> =
+            parseRequest(input, TreeMap(String.CASE_INSENSITIVE_ORDER))
+
+        private fun parseRequest(input: InputStream, headers: MutableMap<String, String?>): Pair<URI, String?> {
             val headerLine = readLine(input, Charset.forName("ASCII"))
             val p = REQUEST_HEADER.matcher(headerLine)
             if (!p.matches()) {
@@ -227,7 +427,6 @@ class HttpServer internal constructor(private var aapsLogger: AAPSLogger, val po
             }
             val post = ("POST" == p.group(1))
             var uri = URI(p.group(2))
-            val headers: MutableMap<String, String?> = HashMap()
             while (true) {
                 val line = readLine(input, Charset.forName("ASCII"))
                 if (line.isEmpty()) {
@@ -129,6 +129,49 @@ class DataSyncSelectorV3 @Inject constructor(
         else sp.remove(R.string.key_ns_device_status_last_synced_id)
     }
 
+    /**
+     * Records read from database in one pass
+     *
+     * Last synced id is stored once per batch or before first failed upload
+     */
+    private class Batch(startId: Long) {
+
+        val uploads = ArrayList<DataSyncSelector.PendingUpload>()
+
+        // id to confirm if upload of the same index fails
+        val lastIdBefore = ArrayList<Long>()
+        var lastId = startId
+            private set
+        var size = 0
+            private set
+
+        fun add(upload: DataSyncSelector.PendingUpload) {
+            uploads.add(upload)
+            lastIdBefore.add(lastId)
+        }
+
+        fun next(id: Long) {
+            lastId = id
+            size++
+        }
+    }
+
+    /**
+     * @return true if whole batch has been processed and next one should follow
+     */
+    private suspend fun upload(collection: String, batch: Batch, progress: String, confirm: (Long) -> Unit): Boolean {
+        if (batch.size == 0) return false
+        if (batch.uploads.isNotEmpty()) {
+            val uploaded = activePlugin.activeNsClient?.nsUpload(collection, batch.uploads, progress) ?: return false
+            if (uploaded < batch.uploads.size) {
+                confirm(batch.lastIdBefore[uploaded])
+                return false
+            }
+        }
+        confirm(batch.lastId)
+        return true
+    }
+
     private fun confirmLastBolusIdIfGreater(lastSynced: Long) {
         if (lastSynced > sp.getLong(R.string.key_ns_bolus_last_synced_id, 0)) {
             sp.putLong(R.string.key_ns_bolus_last_synced_id, lastSynced)
@@ -148,7 +191,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.bolusesRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementBolus(startId).blockingGet()?.let { bolus ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val bolus = appRepository.getNextSyncElementBolus(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     bolus.first.id == bolus.second.id && bolus.first.interfaceIDs.nightscoutId != null ->
@@ -158,15 +203,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring Bolus. Only NS id changed: ${bolus.second.id} ")
                     // without nsId = create new
                     bolus.first.interfaceIDs.nightscoutId == null                                      ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairBolus(bolus.first, bolus.second.id), " $startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairBolus(bolus.first, bolus.second.id), false))
                     // with nsId = update if it's modified record
                     bolus.first.interfaceIDs.nightscoutId != null && bolus.first.id != bolus.second.id ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairBolus(bolus.first, bolus.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairBolus(bolus.first, bolus.second.id), true))
                 }
-                if (cont) confirmLastBolusIdIfGreater(bolus.second.id)
-            } ?: run {
-                cont = false
+                batch.next(bolus.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastBolusIdIfGreater(it) }
         }
     }
 
@@ -189,7 +233,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.carbsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementCarbs(startId).blockingGet()?.let { carb ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val carb = appRepository.getNextSyncElementCarbs(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     carb.first.id == carb.second.id && carb.first.interfaceIDs.nightscoutId != null ->
@@ -199,15 +245,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring Carbs. Only NS id changed ID: ${carb.second.id} ")
                     // without nsId = create new
                     carb.first.interfaceIDs.nightscoutId == null                                    ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairCarbs(carb.first, carb.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairCarbs(carb.first, carb.second.id), false))
                     // with nsId = update if it's modified record
                     carb.first.interfaceIDs.nightscoutId != null && carb.first.id != carb.second.id ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairCarbs(carb.first, carb.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairCarbs(carb.first, carb.second.id), true))
                 }
-                if (cont) confirmLastCarbsIdIfGreater(carb.second.id)
-            } ?: run {
-                cont = false
+                batch.next(carb.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastCarbsIdIfGreater(it) }
         }
     }
 
@@ -230,7 +275,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.bcrRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementBolusCalculatorResult(startId).blockingGet()?.let { bolusCalculatorResult ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val bolusCalculatorResult = appRepository.getNextSyncElementBolusCalculatorResult(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     bolusCalculatorResult.first.id == bolusCalculatorResult.second.id && bolusCalculatorResult.first.interfaceIDs.nightscoutId != null ->
@@ -240,23 +287,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring BolusCalculatorResult. Only NS id changed ID: ${bolusCalculatorResult.second.id} ")
                     // without nsId = create new
                     bolusCalculatorResult.first.interfaceIDs.nightscoutId == null                                                                      ->
-                        cont = activePlugin.activeNsClient?.nsAdd(
-                            "treatments",
-                            DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id),
-                            "$startId/$lastDbId"
-                        ) ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id), false))
                     // with nsId = update if it's modified record
                     bolusCalculatorResult.first.interfaceIDs.nightscoutId != null && bolusCalculatorResult.first.id != bolusCalculatorResult.second.id ->
-                        cont = activePlugin.activeNsClient?.nsUpdate(
-                            "treatments",
-                            DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id),
-                            "$startId/$lastDbId"
-                        ) ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id), true))
                 }
-                if (cont) confirmLastBolusCalculatorResultsIdIfGreater(bolusCalculatorResult.second.id)
-            } ?: run {
-                cont = false
+                batch.next(bolusCalculatorResult.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastBolusCalculatorResultsIdIfGreater(it) }
         }
     }
 
@@ -279,7 +317,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.ttsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementTemporaryTarget(startId).blockingGet()?.let { tt ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val tt = appRepository.getNextSyncElementTemporaryTarget(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     tt.first.id == tt.second.id && tt.first.interfaceIDs.nightscoutId != null ->
@@ -289,15 +329,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring TemporaryTarget. Only NS id changed ID: ${tt.second.id} ")
                     // without nsId = create new
                     tt.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id), false))
                     // existing with nsId = update
                     tt.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id), true))
                 }
-                if (cont) confirmLastTempTargetsIdIfGreater(tt.second.id)
-            } ?: run {
-                cont = false
+                batch.next(tt.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastTempTargetsIdIfGreater(it) }
         }
     }
 
@@ -320,7 +359,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.foodsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementFood(startId).blockingGet()?.let { food ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val food = appRepository.getNextSyncElementFood(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     food.first.id == food.second.id && food.first.interfaceIDs.nightscoutId != null ->
@@ -330,15 +371,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring Food. Only NS id changed ID: ${food.second.id} ")
                     // without nsId = create new
                     food.first.interfaceIDs.nightscoutId == null                                    ->
-                        cont = activePlugin.activeNsClient?.nsAdd("food", DataSyncSelector.PairFood(food.first, food.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairFood(food.first, food.second.id), false))
                     // with nsId = update
                     food.first.interfaceIDs.nightscoutId != null                                    ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("food", DataSyncSelector.PairFood(food.first, food.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairFood(food.first, food.second.id), true))
                 }
-                if (cont) confirmLastFoodIdIfGreater(food.second.id)
-            } ?: run {
-                cont = false
+                batch.next(food.second.id)
             }
+            cont = upload("food", batch, "$startId/$lastDbId") { confirmLastFoodIdIfGreater(it) }
         }
     }
 
@@ -361,7 +401,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.gvsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementGlucoseValue(startId).blockingGet()?.let { gv ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val gv = appRepository.getNextSyncElementGlucoseValue(batch.lastId).blockingGet() ?: break
                 if (bgUploadEnabled) {
                     when {
                         // new record with existing NS id => must be coming from NS => ignore
@@ -372,16 +414,15 @@ class DataSyncSelectorV3 @Inject constructor(
                             aapsLogger.info(LTag.NSCLIENT, "Ignoring GlucoseValue. Only NS id changed ID: ${gv.second.id} ")
                         // without nsId = create new
                         gv.first.interfaceIDs.nightscoutId == null                                ->
-                            cont = activePlugin.activeNsClient?.nsAdd("entries", DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), "$startId/$lastDbId") ?: false
+                            batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), false))
                         // with nsId = update
                         else                                                                      ->  //  gv.first.interfaceIDs.nightscoutId != null
-                            cont = activePlugin.activeNsClient?.nsUpdate("entries", DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), "$startId/$lastDbId") ?: false
+                            batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), true))
                     }
                 }
-                if (cont) confirmLastGlucoseValueIdIfGreater(gv.second.id)
-            } ?: run {
-                cont = false
+                batch.next(gv.second.id)
             }
+            cont = upload("entries", batch, "$startId/$lastDbId") { confirmLastGlucoseValueIdIfGreater(it) }
         }
     }
 
@@ -404,7 +445,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.tesRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementTherapyEvent(startId).blockingGet()?.let { te ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val te = appRepository.getNextSyncElementTherapyEvent(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     te.first.id == te.second.id && te.first.interfaceIDs.nightscoutId != null ->
@@ -414,15 +457,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring TherapyEvent. Only NS id changed ID: ${te.second.id} ")
                     // without nsId = create new
                     te.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairTherapyEvent(te.first, te.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTherapyEvent(te.first, te.second.id), false))
                     // nsId = update
                     te.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairTherapyEvent(te.first, te.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTherapyEvent(te.first, te.second.id), true))
                 }
-                if (cont) confirmLastTherapyEventIdIfGreater(te.second.id)
-            } ?: run {
-                cont = false
+                batch.next(te.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastTherapyEventIdIfGreater(it) }
         }
     }
 
@@ -445,13 +487,13 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.dssRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementDeviceStatus(startId).blockingGet()?.let { deviceStatus ->
-                cont = activePlugin.activeNsClient?.nsAdd("devicestatus", DataSyncSelector.PairDeviceStatus(deviceStatus, lastDbId), "$startId/$lastDbId") ?: false
-                if (cont) confirmLastDeviceStatusIdIfGreater(deviceStatus.id)
-                // with nsId = ignore
-            } ?: run {
-                cont = false
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val deviceStatus = appRepository.getNextSyncElementDeviceStatus(batch.lastId).blockingGet() ?: break
+                batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairDeviceStatus(deviceStatus, lastDbId), false))
+                batch.next(deviceStatus.id)
             }
+            cont = upload("devicestatus", batch, "$startId/$lastDbId") { confirmLastDeviceStatusIdIfGreater(it) }
         }
     }
 
@@ -474,7 +516,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.tbrsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementTemporaryBasal(startId).blockingGet()?.let { tb ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val tb = appRepository.getNextSyncElementTemporaryBasal(batch.lastId).blockingGet() ?: break
                 val profile = profileFunction.getProfile(tb.first.timestamp)
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
@@ -485,15 +529,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring TemporaryBasal. Only NS id changed ID: ${tb.second.id} ")
                     // without nsId = create new
                     tb.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id), "$startId/$lastDbId", profile) ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id), false, profile))
                     // with nsId = update
                     tb.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id), "$startId/$lastDbId", profile) ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id), true, profile))
                 }
-                if (cont) confirmLastTemporaryBasalIdIfGreater(tb.second.id)
-            } ?: run {
-                cont = false
+                batch.next(tb.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastTemporaryBasalIdIfGreater(it) }
         }
     }
 
@@ -516,7 +559,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.ebsRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementExtendedBolus(startId).blockingGet()?.let { eb ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val eb = appRepository.getNextSyncElementExtendedBolus(batch.lastId).blockingGet() ?: break
                 val profile = profileFunction.getProfile(eb.first.timestamp)
                 if (profile != null) {
                     when {
@@ -528,16 +573,15 @@ class DataSyncSelectorV3 @Inject constructor(
                             aapsLogger.info(LTag.NSCLIENT, "Ignoring ExtendedBolus. Only NS id changed ID: ${eb.second.id} ")
                         // without nsId = create new
                         eb.first.interfaceIDs.nightscoutId == null                                ->
-                            cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id), "$startId/$lastDbId", profile) ?: false
+                            batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id), false, profile))
                         // with nsId = update
                         eb.first.interfaceIDs.nightscoutId != null                                ->
-                            cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id), "$startId/$lastDbId", profile) ?: false
+                            batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id), true, profile))
                     }
                 } else aapsLogger.info(LTag.NSCLIENT, "Ignoring ExtendedBolus. No profile: ${eb.second.id} ")
-                if (cont) confirmLastExtendedBolusIdIfGreater(eb.second.id)
-            } ?: run {
-                cont = false
+                batch.next(eb.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastExtendedBolusIdIfGreater(it) }
         }
     }
 
@@ -560,7 +604,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.pssRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementProfileSwitch(startId).blockingGet()?.let { ps ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val ps = appRepository.getNextSyncElementProfileSwitch(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     ps.first.id == ps.second.id && ps.first.interfaceIDs.nightscoutId != null ->
@@ -570,15 +616,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring ProfileSwitch. Only NS id changed ID: ${ps.second.id} ")
                     // without nsId = create new
                     ps.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), false))
                     // with nsId = update
                     ps.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), true))
                 }
-                if (cont) confirmLastProfileSwitchIdIfGreater(ps.second.id)
-            } ?: run {
-                cont = false
+                batch.next(ps.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastProfileSwitchIdIfGreater(it) }
         }
     }
 
@@ -601,7 +646,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.epssRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementEffectiveProfileSwitch(startId).blockingGet()?.let { ps ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val ps = appRepository.getNextSyncElementEffectiveProfileSwitch(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     ps.first.id == ps.second.id && ps.first.interfaceIDs.nightscoutId != null ->
@@ -611,15 +658,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring EffectiveProfileSwitch. Only NS id changed ID: ${ps.second.id} ")
                     // without nsId = create new
                     ps.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id), false))
                     // with nsId = update
                     ps.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id), true))
                 }
-                if (cont) confirmLastEffectiveProfileSwitchIdIfGreater(ps.second.id)
-            } ?: run {
-                cont = false
+                batch.next(ps.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastEffectiveProfileSwitchIdIfGreater(it) }
         }
     }
 
@@ -642,7 +688,9 @@ class DataSyncSelectorV3 @Inject constructor(
             }
             queueCounter.oesRemaining = lastDbId - startId
             rxBus.send(EventNSClientUpdateGuiQueue())
-            appRepository.getNextSyncElementOfflineEvent(startId).blockingGet()?.let { oe ->
+            val batch = Batch(startId)
+            while (batch.size < BATCH_SIZE) {
+                val oe = appRepository.getNextSyncElementOfflineEvent(batch.lastId).blockingGet() ?: break
                 when {
                     // new record with existing NS id => must be coming from NS => ignore
                     oe.first.id == oe.second.id && oe.first.interfaceIDs.nightscoutId != null ->
@@ -652,15 +700,14 @@ class DataSyncSelectorV3 @Inject constructor(
                         aapsLogger.info(LTag.NSCLIENT, "Ignoring OfflineEvent. Only NS id changed ID: ${oe.second.id} ")
                     // without nsId = create new
                     oe.first.interfaceIDs.nightscoutId == null                                ->
-                        cont = activePlugin.activeNsClient?.nsAdd("treatments", DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), false))
                     // existing with nsId = update
                     oe.first.interfaceIDs.nightscoutId != null                                ->
-                        cont = activePlugin.activeNsClient?.nsUpdate("treatments", DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), "$startId/$lastDbId") ?: false
+                        batch.add(DataSyncSelector.PendingUpload(DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), true))
                 }
-                if (cont) confirmLastOfflineEventIdIfGreater(oe.second.id)
-            } ?: run {
-                cont = false
+                batch.next(oe.second.id)
             }
+            cont = upload("treatments", batch, "$startId/$lastDbId") { confirmLastOfflineEventIdIfGreater(it) }
         }
     }
 
@@ -689,4 +736,10 @@ class DataSyncSelectorV3 @Inject constructor(
                 confirmLastProfileStore(now)
         }
     }
-}
\ No newline at end of file
+
+    companion object {
+
+        // records read from database at once
+        private const val BATCH_SIZE = 50
+    }
+}
@@ -52,6 +52,10 @@ import app.aaps.core.interfaces.utils.T
 import app.aaps.core.interfaces.utils.fabric.FabricPrivacy
 import app.aaps.core.nssdk.NSAndroidClientImpl
 import app.aaps.core.nssdk.interfaces.NSAndroidClient
+import app.aaps.core.nssdk.localmodel.devicestatus.NSDeviceStatus
+import app.aaps.core.nssdk.localmodel.entry.NSSgvV3
+import app.aaps.core.nssdk.localmodel.treatment.CreateUpdateResponse
+import app.aaps.core.nssdk.localmodel.treatment.NSTreatment
 import app.aaps.core.nssdk.remotemodel.LastModified
 import app.aaps.database.ValueWrapper
 import app.aaps.database.entities.interfaces.TraceableDBEntry
@@ -493,35 +497,9 @@ class NSClientV3Plugin @Inject constructor(
         }
         try {
             val data = dataPair.value.toNSSvgV3()
-            val id = dataPair.value.interfaceIDs.nightscoutId
-            rxBus.send(
-                EventNSClientNewLog(
-                    when (operation) {
-                        Operation.CREATE -> "► ADD $collection"
-                        Operation.UPDATE -> "► UPDATE $collection"
-                    },
-                    when (operation) {
-                        Operation.CREATE -> "Sent ${dataPair.javaClass.simpleName} <i>${gson.toJson(data)}</i> $progress"
-                        Operation.UPDATE -> "Sent ${dataPair.javaClass.simpleName} $id <i>${gson.toJson(data)}</i> $progress"
-                    }
-                )
-            )
+            logSent(collection, dataPair, data, progress, operation)
             call?.let { it(data) }?.let { result ->
-                when (result.response) {
-                    200  -> rxBus.send(EventNSClientNewLog("◄ UPDATED", "OK ${dataPair.value.javaClass.simpleName}"))
-                    201  -> rxBus.send(EventNSClientNewLog("◄ ADDED", "OK ${dataPair.value.javaClass.simpleName}"))
-                    400  -> rxBus.send(EventNSClientNewLog("◄ FAIL", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
-                    404  -> rxBus.send(EventNSClientNewLog("◄ NOT_FOUND", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
-
-                    else -> {
-                        rxBus.send(EventNSClientNewLog("◄ ERROR", "${result.errorResponse} "))
-                        return true
-                    }
-                }
-                result.identifier?.let {
-                    dataPair.value.interfaceIDs.nightscoutId = it
-                    storeDataForDb.nsIdGlucoseValues.add(dataPair.value)
-                }
+                if (!processResponse(dataPair, result)) return true
                 slowDown()
             }
         } catch (e: Exception) {
@@ -581,120 +559,209 @@ class NSClientV3Plugin @Inject constructor(
             Operation.CREATE -> nsAndroidClient?.let { return@let it::createTreatment }
             Operation.UPDATE -> nsAndroidClient?.let { return@let it::updateTreatment }
         }
+        toNSTreatment(dataPair, profile)?.let { data ->
+            try {
+                logSent(collection, dataPair, data, progress, operation)
+                call?.let { it(data) }?.let { result ->
+                    if (!processResponse(dataPair, result)) return true
+                    slowDown()
+                }
+            } catch (e: Exception) {
+                rxBus.send(EventNSClientNewLog("◄ ERROR", e.localizedMessage))
+                aapsLogger.error(LTag.NSCLIENT, "Upload exception", e)
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun toNSTreatment(dataPair: DataSyncSelector.DataPair, profile: Profile?): NSTreatment? =
         when (dataPair) {
             is DataSyncSelector.PairBolus                  -> dataPair.value.toNSBolus()
             is DataSyncSelector.PairCarbs                  -> dataPair.value.toNSCarbs()
             is DataSyncSelector.PairBolusCalculatorResult  -> dataPair.value.toNSBolusWizard()
             is DataSyncSelector.PairTemporaryTarget        -> dataPair.value.toNSTemporaryTarget()
             is DataSyncSelector.PairTherapyEvent           -> dataPair.value.toNSTherapyEvent()
+            is DataSyncSelector.PairTemporaryBasal         -> profile?.let { dataPair.value.toNSTemporaryBasal(it) }
+            is DataSyncSelector.PairExtendedBolus          -> profile?.let { dataPair.value.toNSExtendedBolus(it) }
+            is DataSyncSelector.PairProfileSwitch          -> dataPair.value.toNSProfileSwitch(dateUtil, decimalFormatter)
+            is DataSyncSelector.PairEffectiveProfileSwitch -> dataPair.value.toNSEffectiveProfileSwitch(dateUtil)
+            is DataSyncSelector.PairOfflineEvent           -> dataPair.value.toNSOfflineEvent()
+            else                                           -> null
+        }
+
+    private fun logSent(collection: String, dataPair: DataSyncSelector.DataPair, data: Any, progress: String, operation: Operation) {
+        val id = if (dataPair.value is TraceableDBEntry) (dataPair.value as TraceableDBEntry).interfaceIDs.nightscoutId else ""
+        rxBus.send(
+            EventNSClientNewLog(
+                when (operation) {
+                    Operation.CREATE -> "► ADD $collection"
+                    Operation.UPDATE -> "► UPDATE $collection"
+                },
+                when (operation) {
+                    Operation.CREATE -> "Sent ${dataPair.javaClass.simpleName} <i>${gson.toJson(data)}</i> $progress"
+                    Operation.UPDATE -> "Sent ${dataPair.javaClass.simpleName} $id <i>${gson.toJson(data)}</i> $progress"
+                }
+            )
+        )
+    }
+
+    /**
+     * Log response and store received nsId
+     *
+     * @return false for unexpected response
+     */
+    private fun processResponse(dataPair: DataSyncSelector.DataPair, result: CreateUpdateResponse): Boolean {
+        when (result.response) {
+            200  -> rxBus.send(EventNSClientNewLog("◄ UPDATED", "OK ${dataPair.value.javaClass.simpleName}"))
+            201  -> rxBus.send(EventNSClientNewLog("◄ ADDED", "OK ${dataPair.value.javaClass.simpleName}"))
+            400  -> rxBus.send(EventNSClientNewLog("◄ FAIL", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
+            404  -> rxBus.send(EventNSClientNewLog("◄ NOT_FOUND", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
+
+            else -> {
+                rxBus.send(EventNSClientNewLog("◄ ERROR", "${result.errorResponse} "))
+                return false
+            }
+        }
+        result.identifier?.let { storeNsId(dataPair, it) }
+        return true
+    }
+
+    private fun storeNsId(dataPair: DataSyncSelector.DataPair, nsId: String) {
+        when (dataPair) {
+            is DataSyncSelector.PairBolus                  -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdBoluses.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairCarbs                  -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdCarbs.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairBolusCalculatorResult  -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdBolusCalculatorResults.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairTemporaryTarget        -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdTemporaryTargets.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairTherapyEvent           -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdTherapyEvents.add(dataPair.value)
+            }
 
             is DataSyncSelector.PairTemporaryBasal         -> {
-                profile ?: return true
-                dataPair.value.toNSTemporaryBasal(profile)
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdTemporaryBasals.add(dataPair.value)
             }
 
             is DataSyncSelector.PairExtendedBolus          -> {
-                profile ?: return true
-                dataPair.value.toNSExtendedBolus(profile)
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdExtendedBoluses.add(dataPair.value)
             }
 
-            is DataSyncSelector.PairProfileSwitch          -> dataPair.value.toNSProfileSwitch(dateUtil, decimalFormatter)
-            is DataSyncSelector.PairEffectiveProfileSwitch -> dataPair.value.toNSEffectiveProfileSwitch(dateUtil)
-            is DataSyncSelector.PairOfflineEvent           -> dataPair.value.toNSOfflineEvent()
-            else                                           -> null
-        }?.let { data ->
-            try {
-                val id = if (dataPair.value is TraceableDBEntry) (dataPair.value as TraceableDBEntry).interfaceIDs.nightscoutId else ""
-                rxBus.send(
-                    EventNSClientNewLog(
-                        when (operation) {
-                            Operation.CREATE -> "► ADD $collection"
-                            Operation.UPDATE -> "► UPDATE $collection"
-                        },
-                        when (operation) {
-                            Operation.CREATE -> "Sent ${dataPair.javaClass.simpleName} <i>${gson.toJson(data)}</i> $progress"
-                            Operation.UPDATE -> "Sent ${dataPair.javaClass.simpleName} $id <i>${gson.toJson(data)}</i> $progress"
-                        }
-                    )
-                )
-                call?.let { it(data) }?.let { result ->
-                    when (result.response) {
-                        200  -> rxBus.send(EventNSClientNewLog("◄ UPDATED", "OK ${dataPair.value.javaClass.simpleName}"))
-                        201  -> rxBus.send(EventNSClientNewLog("◄ ADDED", "OK ${dataPair.value.javaClass.simpleName}"))
-                        400  -> rxBus.send(EventNSClientNewLog("◄ FAIL", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
-                        404  -> rxBus.send(EventNSClientNewLog("◄ NOT_FOUND", "${dataPair.value.javaClass.simpleName} ${result.errorResponse}"))
-
-                        else -> {
-                            rxBus.send(EventNSClientNewLog("◄ ERROR", "${result.errorResponse} "))
-                            return true
-                        }
-                    }
-                    result.identifier?.let {
-                        when (dataPair) {
-                            is DataSyncSelector.PairBolus                  -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdBoluses.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairCarbs                  -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdCarbs.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairBolusCalculatorResult  -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdBolusCalculatorResults.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairTemporaryTarget        -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdTemporaryTargets.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairTherapyEvent           -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdTherapyEvents.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairTemporaryBasal         -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdTemporaryBasals.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairExtendedBolus          -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdExtendedBoluses.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairProfileSwitch          -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdProfileSwitches.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairEffectiveProfileSwitch -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdEffectiveProfileSwitches.add(dataPair.value)
-                            }
-
-                            is DataSyncSelector.PairOfflineEvent           -> {
-                                dataPair.value.interfaceIDs.nightscoutId = it
-                                storeDataForDb.nsIdOfflineEvents.add(dataPair.value)
-                            }
-
-                            else                                           -> {
-                                throw InvalidParameterException()
-                            }
-                        }
-                    }
-                    slowDown()
-                }
-            } catch (e: Exception) {
+            is DataSyncSelector.PairProfileSwitch          -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdProfileSwitches.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairEffectiveProfileSwitch -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdEffectiveProfileSwitches.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairOfflineEvent           -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdOfflineEvents.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairGlucoseValue           -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdGlucoseValues.add(dataPair.value)
+            }
+
+            is DataSyncSelector.PairDeviceStatus           -> {
+                dataPair.value.interfaceIDs.nightscoutId = nsId
+                storeDataForDb.nsIdDeviceStatuses.add(dataPair.value)
+                sp.putBoolean(app.aaps.core.utils.R.string.key_objectives_pump_status_is_available_in_ns, true)
+            }
+
+            else                                           -> {
+                throw InvalidParameterException()
+            }
+        }
+    }
+
+    override suspend fun nsUpload(collection: String, uploads: List<DataSyncSelector.PendingUpload>, progress: String): Int =
+        when (collection) {
+            "entries", "treatments", "devicestatus" -> dbOperationBatch(collection, uploads, progress).also { slowDown() }
+            else                                    -> super.nsUpload(collection, uploads, progress)
+        }
+
+    /**
+     * Upload records in runs of the same operation
+     *
+     * @return number of records from the beginning of [uploads] processed
+     */
+    private suspend fun dbOperationBatch(collection: String, uploads: List<DataSyncSelector.PendingUpload>, progress: String): Int {
+        var processed = 0
+        while (processed < uploads.size) {
+            val isUpdate = uploads[processed].isUpdate
+            var end = processed + 1
+            while (end < uploads.size && uploads[end].isUpdate == isUpdate) end++
+            val run = uploads.subList(processed, end)
+            val succeeded = dbOperationRun(collection, run, progress, if (isUpdate) Operation.UPDATE else Operation.CREATE)
+            processed += succeeded
+            if (succeeded < run.size) break
+        }
+        return processed
+    }
+
+    private suspend fun dbOperationRun(collection: String, uploads: List<DataSyncSelector.PendingUpload>, progress: String, operation: Operation): Int {
+        val client = nsAndroidClient ?: return 0
+        // records not possible to convert are skipped as by single upload
+        val data = uploads.map { upload ->
+            when (collection) {
+                "entries"      -> (upload.dataPair as DataSyncSelector.PairGlucoseValue).value.toNSSvgV3()
+                "devicestatus" -> (upload.dataPair as DataSyncSelector.PairDeviceStatus).value.toNSDeviceStatus()
+                else           -> toNSTreatment(upload.dataPair, upload.profile)
+            }
+        }
+        uploads.forEachIndexed { index, upload -> data[index]?.let { logSent(collection, upload.dataPair, it, progress, operation) } }
+        val toSend = data.filterNotNull()
+        val results = try {
+            when (collection) {
+                "entries"      ->
+                    if (operation == Operation.CREATE) client.createSgvs(toSend.filterIsInstance<NSSgvV3>())
+                    else client.updateSgvs(toSend.filterIsInstance<NSSgvV3>())
+
+                "devicestatus" -> client.createDeviceStatuses(toSend.filterIsInstance<NSDeviceStatus>())
+
+                else           ->
+                    if (operation == Operation.CREATE) client.createTreatments(toSend.filterIsInstance<NSTreatment>())
+                    else client.updateTreatments(toSend.filterIsInstance<NSTreatment>())
+            }
+        } catch (e: Exception) {
+            rxBus.send(EventNSClientNewLog("◄ ERROR", e.localizedMessage))
+            aapsLogger.error(LTag.NSCLIENT, "Upload exception", e)
+            return 0
+        }
+        var resultIndex = 0
+        for ((index, upload) in uploads.withIndex()) {
+            data[index] ?: continue
+            val result = results[resultIndex++]
+            result.exceptionOrNull()?.let { e ->
                 rxBus.send(EventNSClientNewLog("◄ ERROR", e.localizedMessage))
                 aapsLogger.error(LTag.NSCLIENT, "Upload exception", e)
-                return false
+                return index
             }
+            processResponse(upload.dataPair, result.getOrThrow())
         }
-        return true
+        return uploads.size
     }
 
     private suspend fun dbOperation(collection: String, dataPair: DataSyncSelector.DataPair, progress: String, operation: Operation, profile: Profile?): Boolean =
@@ -10,8 +10,10 @@ import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.suspendCancellableCoroutine
 import okhttp3.*
 import okio.BufferedSink
+import okio.source
 import org.json.JSONArray
 import org.json.JSONObject
+import java.io.File
 import java.io.IOException
 import java.text.SimpleDateFormat
 import java.util.*
@@ -95,16 +97,16 @@ internal class OpenHumansAPI @Inject constructor(
         )
     }
 
-    suspend fun uploadFile(url: String, content: ByteArray) {
+    suspend fun uploadFile(url: String, file: File) {
         val request = Request.Builder()
             .url(url)
             .put(object : RequestBody() {
                 override fun contentType(): MediaType? = null
 
-                override fun contentLength(): Long = content.size.toLong()
+                override fun contentLength(): Long = file.length()
 
                 override fun writeTo(sink: BufferedSink) {
-                    sink.write(content)
+                    file.source().use { sink.writeAll(it) }
                 }
             })
             .build()
@@ -1,9 +1,15 @@
 package app.aaps.plugins.sync.openhumans
 
+import app.aaps.database.entities.data.NewEntriesCursor
+
 internal data class OpenHumansState(
     val accessToken: String,
     val refreshToken: String,
     val expiresAt: Long,
     val projectMemberId: String,
-    val uploadOffset: Long
+    val uploadOffset: Long,
+    /** End of the running upload, null if no upload is in progress */
+    val uploadUntil: Long? = null,
+    /** Position after the last page uploaded by the running upload */
+    val uploadCursor: NewEntriesCursor = NewEntriesCursor()
 )
@@ -28,6 +28,8 @@ import app.aaps.core.interfaces.rx.events.EventPreferenceChange
 import app.aaps.core.interfaces.sharedPreferences.SP
 import app.aaps.core.interfaces.sync.Sync
 import app.aaps.database.entities.data.Block
+import app.aaps.database.entities.data.NewEntries
+import app.aaps.database.entities.data.NewEntriesCursor
 import app.aaps.database.entities.interfaces.TraceableDBEntry
 import app.aaps.database.impl.AppRepository
 import app.aaps.plugins.sync.R
@@ -44,15 +46,13 @@ import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.withContext
 import org.json.JSONArray
 import org.json.JSONObject
-import java.io.ByteArrayOutputStream
+import java.io.File
 import java.security.MessageDigest
 import java.text.SimpleDateFormat
 import java.util.Locale
 import java.util.TimeZone
 import java.util.UUID
 import java.util.concurrent.TimeUnit
-import java.util.zip.ZipEntry
-import java.util.zip.ZipOutputStream
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -137,12 +137,12 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         return messageDigest.digest().toHexString()
     }
 
-    private fun <T : TraceableDBEntry> ZipOutputStream.writeDBEntryFile(name: String, list: List<T>, block: JSONObject.(entry: T) -> Unit) = writeJSONArrayFile(name, list) {
+    private fun <T : TraceableDBEntry> UploadZipWriter.writeDBEntryFile(name: String, list: List<T>, block: JSONObject.(entry: T) -> Unit) = writeJSONArrayFile(name, list) {
         put("structureVersion", 2)
         put("id", it.id)
         put("version", it.version)
         put("dateCreated", it.dateCreated)
-        put("isValid", it)
+        put("isValid", it.isValid)
         put("referenceId", it.referenceId)
         put("pumpType", it.interfaceIDs.pumpType)
         put("pumpSerialHash", it.interfaceIDs.pumpSerial?.sha256())
@@ -152,22 +152,6 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         block(it)
     }
 
-    private fun <T> ZipOutputStream.writeJSONArrayFile(name: String, list: List<T>, block: JSONObject.(entry: T) -> Unit) {
-        val jsonArray = JSONArray()
-        list.forEach { entry ->
-            val jsonObject = JSONObject()
-            jsonObject.block(entry)
-            jsonArray.put(jsonObject)
-        }
-        writeFile(name, jsonArray.toString().toByteArray())
-    }
-
-    private fun ZipOutputStream.writeFile(name: String, bytes: ByteArray) {
-        putNextEntry(ZipEntry(name))
-        write(bytes)
-        closeEntry()
-    }
-
     private fun List<Block>.serialize(): JSONArray {
         val jsonArray = JSONArray()
         forEach {
@@ -182,12 +166,18 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
     internal suspend fun uploadData() {
         try {
             withContext(Dispatchers.Default) {
-                val timestamp = System.currentTimeMillis()
-                val offset = openHumansState!!.uploadOffset
-                var page = 0
-                while (uploadDataPaged(offset, timestamp, page++));
+                val state = openHumansState!!
+                // Interrupted upload continues after the last uploaded page
+                val until = state.uploadUntil ?: System.currentTimeMillis()
+                var cursor = if (state.uploadUntil != null) state.uploadCursor else NewEntriesCursor()
+                while (true) {
+                    cursor = uploadDataPaged(state.uploadOffset, until, cursor) ?: break
+                    withContext(Dispatchers.Main) {
+                        openHumansState = openHumansState!!.copy(uploadUntil = until, uploadCursor = cursor)
+                    }
+                }
                 withContext(Dispatchers.Main) {
-                    openHumansState = openHumansState!!.copy(uploadOffset = timestamp)
+                    openHumansState = openHumansState!!.copy(uploadOffset = until, uploadUntil = null, uploadCursor = NewEntriesCursor())
                 }
             }
         } catch (e: OpenHumansAPI.OHHttpException) {
@@ -199,35 +189,69 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
     }
 
-    private suspend fun uploadDataPaged(since: Long, until: Long, page: Int): Boolean {
-        val data = repository
-            .collectNewEntriesSince(since, until, 1000, 1000 * page)
-            .let { data -> data.copy(preferencesChanges = data.preferencesChanges.filter { it.key.isAllowedKey() }) }
-        val hasData = with(data) {
-            apsResults.isNotEmpty() ||
-                apsResultLinks.isNotEmpty() ||
-                bolusCalculatorResults.isNotEmpty() ||
-                boluses.isNotEmpty() ||
-                carbs.isNotEmpty() ||
-                effectiveProfileSwitches.isNotEmpty() ||
-                extendedBoluses.isNotEmpty() ||
-                glucoseValues.isNotEmpty() ||
-                multiwaveBolusLinks.isNotEmpty() ||
-                offlineEvents.isNotEmpty() ||
-                preferencesChanges.isNotEmpty() ||
-                profileSwitches.isNotEmpty() ||
-                temporaryBasals.isNotEmpty() ||
-                temporaryTarget.isNotEmpty() ||
-                therapyEvents.isNotEmpty() ||
-                totalDailyDoses.isNotEmpty() ||
-                versionChanges.isNotEmpty()
+    private fun NewEntries.hasData() = apsResults.isNotEmpty() ||
+        apsResultLinks.isNotEmpty() ||
+        bolusCalculatorResults.isNotEmpty() ||
+        boluses.isNotEmpty() ||
+        carbs.isNotEmpty() ||
+        effectiveProfileSwitches.isNotEmpty() ||
+        extendedBoluses.isNotEmpty() ||
+        glucoseValues.isNotEmpty() ||
+        multiwaveBolusLinks.isNotEmpty() ||
+        offlineEvents.isNotEmpty() ||
+        preferencesChanges.isNotEmpty() ||
+        profileSwitches.isNotEmpty() ||
+        temporaryBasals.isNotEmpty() ||
+        temporaryTarget.isNotEmpty() ||
+        therapyEvents.isNotEmpty() ||
+        totalDailyDoses.isNotEmpty() ||
+        versionChanges.isNotEmpty()
+
+    /**
+     * Uploads page of entries after [cursor]
+     *
+     * @return cursor after the uploaded page or null if there is nothing left
+     */
+    private suspend fun uploadDataPaged(since: Long, until: Long, cursor: NewEntriesCursor): NewEntriesCursor? {
+        val page = repository.collectNewEntriesSince(since, until, PAGE_SIZE, cursor)
+        if (!page.hasData()) return null
+        val nextCursor = cursor.next(page)
+        val data = page.copy(preferencesChanges = page.preferencesChanges.filter { it.key.isAllowedKey() })
+        if (!data.hasData()) return nextCursor
+
+        val file = File(context.cacheDir, UPLOAD_FILE_NAME)
+        try {
+            uploadFile(file, data, until)
+        } finally {
+            file.delete()
         }
-        if (!hasData) return false
+        return nextCursor
+    }
 
-        val baos = ByteArrayOutputStream()
-        val zos = ZipOutputStream(baos)
+    private suspend fun uploadFile(file: File, data: NewEntries, until: Long) {
+        val zip = UploadZipWriter(file)
         val tags = mutableListOf<String>()
+        val uploadNumber = this.uploadCounter++
+        val uploadDate = System.currentTimeMillis()
+        zip.use { writeEntries(it, tags, data, uploadNumber, uploadDate, until) }
+
+        val fileName = "upload-num$uploadNumber-ver2-date${FILE_NAME_DATE_FORMAT.format(uploadDate)}-appid${appId.toString().replace("-", "")}.zip"
+
+        val metaData = OpenHumansAPI.FileMetadata(
+            tags = tags,
+            description = "AAPS Database Upload",
+            md5 = zip.md5.toHexString(),
+            creationDate = uploadDate
+        )
+
+        refreshAccessTokenIfNeeded()
+
+        val preparedUpload = openHumansAPI.prepareFileUpload(openHumansState!!.accessToken, fileName, metaData)
+        openHumansAPI.uploadFile(preparedUpload.uploadURL, file)
+        openHumansAPI.completeFileUpload(openHumansState!!.accessToken, preparedUpload.fileId)
+    }
 
+    private fun writeEntries(zip: UploadZipWriter, tags: MutableList<String>, data: NewEntries, uploadNumber: Long, uploadDate: Long, until: Long) {
         val applicationInfo = JSONObject()
         //TODO: Move build configuration to core module
         /*applicationInfo.put("versionName", BuildConfig.VERSION_NAME)
@@ -237,7 +261,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         applicationInfo.put("hasGitInfo", hasGitInfo)
         applicationInfo.put("customRemote", customRemote)*/
         applicationInfo.put("applicationId", appId.toString())
-        zos.writeFile("ApplicationInfo.json", applicationInfo.toString().toByteArray())
+        zip.writeFile("ApplicationInfo.json", applicationInfo)
         tags.add("ApplicationInfo")
 
         val deviceInfo = JSONObject()
@@ -246,7 +270,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         deviceInfo.put("manufacturer", android.os.Build.MANUFACTURER)
         deviceInfo.put("model", android.os.Build.MODEL)
         deviceInfo.put("product", android.os.Build.PRODUCT)
-        zos.writeFile("DeviceInfo.json", deviceInfo.toString().toByteArray())
+        zip.writeFile("DeviceInfo.json", deviceInfo)
         tags.add("DeviceInfo")
 
         val displayMetrics = DisplayMetrics()
@@ -261,21 +285,19 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         displayInfo.put("scaledDensity", displayMetrics.scaledDensity)
         displayInfo.put("xdpi", displayMetrics.xdpi)
         displayInfo.put("ydpi", displayMetrics.ydpi)
-        zos.writeFile("DisplayInfo.json", displayInfo.toString().toByteArray())
+        zip.writeFile("DisplayInfo.json", displayInfo)
         tags.add("DisplayInfo")
 
-        val uploadNumber = this.uploadCounter++
-        val uploadDate = System.currentTimeMillis()
         val uploadInfo = JSONObject()
         uploadInfo.put("fileVersion", 2)
         uploadInfo.put("counter", uploadNumber)
         uploadInfo.put("timestamp", until)
         uploadInfo.put("utcOffset", TimeZone.getDefault().getOffset(uploadDate))
-        zos.writeFile("UploadInfo.json", uploadInfo.toString().toByteArray())
+        zip.writeFile("UploadInfo.json", uploadInfo)
         tags.add("UploadInfo")
 
         if (data.apsResults.isNotEmpty()) {
-            zos.writeDBEntryFile("APSResults.json", data.apsResults) {
+            zip.writeDBEntryFile("APSResults.json", data.apsResults) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("algorithm", it.algorithm.toString())
@@ -292,7 +314,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.apsResultLinks.isNotEmpty()) {
-            zos.writeDBEntryFile("APSResultLinks.json", data.apsResultLinks) {
+            zip.writeDBEntryFile("APSResultLinks.json", data.apsResultLinks) {
                 put("apsResultId", it.apsResultId)
                 put("smbId", it.smbId)
                 put("tbrId", it.tbrId)
@@ -301,7 +323,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.bolusCalculatorResults.isNotEmpty()) {
-            zos.writeDBEntryFile("BolusCalculatorResults.json", data.bolusCalculatorResults) {
+            zip.writeDBEntryFile("BolusCalculatorResults.json", data.bolusCalculatorResults) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("targetBGLow", it.targetBGLow)
@@ -336,7 +358,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.boluses.isNotEmpty()) {
-            zos.writeDBEntryFile("Boluses.json", data.boluses) {
+            zip.writeDBEntryFile("Boluses.json", data.boluses) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("amount", it.amount)
@@ -349,7 +371,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.carbs.isNotEmpty()) {
-            zos.writeDBEntryFile("Carbs.json", data.carbs) {
+            zip.writeDBEntryFile("Carbs.json", data.carbs) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("duration", it.duration)
@@ -359,7 +381,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.effectiveProfileSwitches.isNotEmpty()) {
-            zos.writeDBEntryFile("EffectiveProfileSwitches.json", data.effectiveProfileSwitches) {
+            zip.writeDBEntryFile("EffectiveProfileSwitches.json", data.effectiveProfileSwitches) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("basalBlocks", it.basalBlocks.serialize())
@@ -387,7 +409,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.extendedBoluses.isNotEmpty()) {
-            zos.writeDBEntryFile("ExtendedBoluses.json", data.extendedBoluses) {
+            zip.writeDBEntryFile("ExtendedBoluses.json", data.extendedBoluses) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("duration", it.duration)
@@ -398,7 +420,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.glucoseValues.isNotEmpty()) {
-            zos.writeDBEntryFile("GlucoseValues.json", data.glucoseValues) {
+            zip.writeDBEntryFile("GlucoseValues.json", data.glucoseValues) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("raw", it.raw)
@@ -411,7 +433,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.multiwaveBolusLinks.isNotEmpty()) {
-            zos.writeDBEntryFile("MultiwaveBolusLinks.json", data.multiwaveBolusLinks) {
+            zip.writeDBEntryFile("MultiwaveBolusLinks.json", data.multiwaveBolusLinks) {
                 put("bolusId", it.bolusId)
                 put("extendedBolusId", it.extendedBolusId)
             }
@@ -419,7 +441,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.offlineEvents.isNotEmpty()) {
-            zos.writeDBEntryFile("OfflineEvents.json", data.offlineEvents) {
+            zip.writeDBEntryFile("OfflineEvents.json", data.offlineEvents) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("reason", it.reason.toString())
@@ -429,7 +451,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.preferencesChanges.isNotEmpty()) {
-            zos.writeJSONArrayFile("PreferenceChanges.json", data.preferencesChanges) {
+            zip.writeJSONArrayFile("PreferenceChanges.json", data.preferencesChanges) {
                 put("structureVersion", 2)
                 put("id", it.id)
                 put("timestamp", it.timestamp)
@@ -442,7 +464,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.profileSwitches.isNotEmpty()) {
-            zos.writeDBEntryFile("ProfileSwitches.json", data.profileSwitches) {
+            zip.writeDBEntryFile("ProfileSwitches.json", data.profileSwitches) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("basalBlocks", it.basalBlocks.serialize())
@@ -468,7 +490,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.temporaryBasals.isNotEmpty()) {
-            zos.writeDBEntryFile("TemporaryBasals.json", data.temporaryBasals) {
+            zip.writeDBEntryFile("TemporaryBasals.json", data.temporaryBasals) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("type", it.type.toString())
@@ -480,7 +502,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.temporaryTarget.isNotEmpty()) {
-            zos.writeDBEntryFile("TemporaryTargets.json", data.temporaryTarget) {
+            zip.writeDBEntryFile("TemporaryTargets.json", data.temporaryTarget) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("reason", it.reason.toString())
@@ -492,7 +514,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.therapyEvents.isNotEmpty()) {
-            zos.writeDBEntryFile("TherapyEvents.json", data.therapyEvents) {
+            zip.writeDBEntryFile("TherapyEvents.json", data.therapyEvents) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("type", it.type.toString())
@@ -504,7 +526,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.totalDailyDoses.isNotEmpty()) {
-            zos.writeDBEntryFile("TotalDailyDoses.json", data.totalDailyDoses) {
+            zip.writeDBEntryFile("TotalDailyDoses.json", data.totalDailyDoses) {
                 put("timestamp", it.timestamp)
                 put("utcOffset", it.utcOffset)
                 put("basalAmount", it.basalAmount)
@@ -516,7 +538,7 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         }
 
         if (data.versionChanges.isNotEmpty()) {
-            zos.writeJSONArrayFile("VersionChanges.json", data.versionChanges) {
+            zip.writeJSONArrayFile("VersionChanges.json", data.versionChanges) {
                 put("structureVersion", 2)
                 put("id", it.id)
                 put("timestamp", it.timestamp)
@@ -529,26 +551,6 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
             }
             tags.add("VersionChanges")
         }
-
-        zos.close()
-        val bytes = baos.toByteArray()
-
-        val fileName = "upload-num$uploadNumber-ver2-date${FILE_NAME_DATE_FORMAT.format(uploadDate)}-appid${appId.toString().replace("-", "")}.zip"
-
-        val metaData = OpenHumansAPI.FileMetadata(
-            tags = tags,
-            description = "AAPS Database Upload",
-            md5 = MessageDigest.getInstance("MD5").digest(bytes).toHexString(),
-            creationDate = uploadDate
-        )
-
-        refreshAccessTokenIfNeeded()
-
-        val preparedUpload = openHumansAPI.prepareFileUpload(openHumansState!!.accessToken, fileName, metaData)
-        openHumansAPI.uploadFile(preparedUpload.uploadURL, bytes)
-        openHumansAPI.completeFileUpload(openHumansState!!.accessToken, preparedUpload.fileId)
-
-        return true
     }
 
     private fun cancelWorker() = WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_PERIODIC)
@@ -673,6 +675,8 @@ class OpenHumansUploaderPlugin @Inject internal constructor(
         const val NOTIFICATION_CHANNEL_MESSAGES = "OpenHumansMessages"
         const val SIGNED_OUT_NOTIFICATION_ID = 3125
         const val UPLOAD_NOTIFICATION_ID = 3126
+        const val PAGE_SIZE = 1000
+        const val UPLOAD_FILE_NAME = "openhumans-upload.zip"
     }
 
 }
\ No newline at end of file
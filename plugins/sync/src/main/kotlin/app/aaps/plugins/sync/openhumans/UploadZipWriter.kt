@@ -0,0 +1,55 @@
+package app.aaps.plugins.sync.openhumans
+
+import com.google.gson.stream.JsonWriter
+import org.json.JSONObject
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.FilterOutputStream
+import java.io.OutputStreamWriter
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Writes upload zip directly to [file]
+ *
+ * JSON arrays are streamed entry by entry, so only one entry at a time is held in memory.
+ * MD5 of the zip is calculated while writing.
+ */
+internal class UploadZipWriter(file: File) : Closeable {
+
+    private val digest = MessageDigest.getInstance("MD5")
+    private val zip = ZipOutputStream(BufferedOutputStream(DigestOutputStream(FileOutputStream(file), digest)))
+
+    /** MD5 of the written file, available after [close] */
+    lateinit var md5: ByteArray
+        private set
+
+    fun writeFile(name: String, json: JSONObject) {
+        zip.putNextEntry(ZipEntry(name))
+        zip.write(json.toString().toByteArray())
+        zip.closeEntry()
+    }
+
+    fun <T> writeJSONArrayFile(name: String, list: List<T>, block: JSONObject.(entry: T) -> Unit) {
+        zip.putNextEntry(ZipEntry(name))
+        // writer must not close the zip stream
+        JsonWriter(OutputStreamWriter(object : FilterOutputStream(zip) {
+            override fun write(b: ByteArray, off: Int, len: Int) = out.write(b, off, len)
+            override fun close() = flush()
+        })).use { writer ->
+            writer.beginArray()
+            list.forEach { entry -> writer.jsonValue(JSONObject().also { it.block(entry) }.toString()) }
+            writer.endArray()
+        }
+        zip.closeEntry()
+    }
+
+    override fun close() {
+        zip.close()
+        md5 = digest.digest()
+    }
+}
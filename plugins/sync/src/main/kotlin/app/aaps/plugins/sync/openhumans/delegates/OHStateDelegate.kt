@@ -3,7 +3,9 @@ package app.aaps.plugins.sync.openhumans.delegates
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import app.aaps.core.interfaces.sharedPreferences.SP
+import app.aaps.database.entities.data.NewEntriesCursor
 import app.aaps.plugins.sync.openhumans.OpenHumansState
+import org.json.JSONObject
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.reflect.KProperty
@@ -26,10 +28,20 @@ internal class OHStateDelegate @Inject internal constructor(
                 return null,
             projectMemberId = sp.getStringOrNull("openhumans_project_member_id", null)
                 ?: return null,
-            uploadOffset = sp.getLong("openhumans_upload_offset", 0)
+            uploadOffset = sp.getLong("openhumans_upload_offset", 0),
+            uploadUntil = if (sp.contains("openhumans_upload_until")) sp.getLong("openhumans_upload_until", 0) else null,
+            uploadCursor = loadCursor(sp.getStringOrNull("openhumans_upload_cursor", null))
         )
     }
 
+    private fun loadCursor(json: String?): NewEntriesCursor {
+        json ?: return NewEntriesCursor()
+        val jsonObject = JSONObject(json)
+        return NewEntriesCursor(jsonObject.keys().asSequence().associateWith { jsonObject.getLong(it) })
+    }
+
+    private fun NewEntriesCursor.toJson(): String = JSONObject().also { json -> lastIds.forEach { (table, id) -> json.put(table, id) } }.toString()
+
     operator fun getValue(thisRef: Any?, property: KProperty<*>): OpenHumansState? = _value.value
 
     operator fun setValue(thisRef: Any?, property: KProperty<*>, value: OpenHumansState?) {
@@ -40,12 +52,17 @@ internal class OHStateDelegate @Inject internal constructor(
             sp.remove("openhumans_expires_at")
             sp.remove("openhumans_project_member_id")
             sp.remove("openhumans_upload_offset")
+            sp.remove("openhumans_upload_until")
+            sp.remove("openhumans_upload_cursor")
         } else {
             sp.putString("openhumans_access_token", value.accessToken)
             sp.putString("openhumans_refresh_token", value.refreshToken)
             sp.putLong("openhumans_expires_at", value.expiresAt)
             sp.putString("openhumans_project_member_id", value.projectMemberId)
             sp.putLong("openhumans_upload_offset", value.uploadOffset)
+            if (value.uploadUntil == null) sp.remove("openhumans_upload_until")
+            else sp.putLong("openhumans_upload_until", value.uploadUntil)
+            sp.putString("openhumans_upload_cursor", value.uploadCursor.toJson())
         }
     }
 }
\ No newline at end of file
@@ -121,6 +121,11 @@ class DataHandlerMobile @Inject constructor(
 
     private var lastBolusWizard: BolusWizard? = null
 
+    // GraphData is sent as delta against snapshot acknowledged by watch
+    private var graphSequence = System.currentTimeMillis()
+    private var sentGraphData: EventData.GraphData? = null
+    private var acknowledgedGraphSequence = 0L
+
     init {
         // From Wear
         disposable += rxBus
@@ -150,8 +155,17 @@ class DataHandlerMobile @Inject constructor(
             .observeOn(aapsSchedulers.io)
             .subscribe({
                            aapsLogger.debug(LTag.WEAR, "ResendData received from ${it.sourceNodeId}")
+                           // watch may have lost its data, send full snapshot
+                           if (it.sourceNodeId.isNotEmpty()) resetGraphData()
                            resendData(it.from)
                        }, fabricPrivacy::logException)
+        disposable += rxBus
+            .toObservable(EventData.ActionGraphDataAck::class.java)
+            .observeOn(aapsSchedulers.io)
+            .subscribe({
+                           aapsLogger.debug(LTag.WEAR, "GraphDataAck ${it.sequence} received from ${it.sourceNodeId}")
+                           acknowledgeGraphData(it.sequence)
+                       }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventData.ActionPumpStatus::class.java)
             .observeOn(aapsSchedulers.io)
@@ -770,7 +784,7 @@ class DataHandlerMobile @Inject constructor(
         )
         // GraphData
         iobCobCalculator.ads.getBucketedDataTableCopy()?.let { bucketedData ->
-            rxBus.send(EventMobileToWear(EventData.GraphData(ArrayList(bucketedData.map { getSingleBG(it, null) }))))
+            sendGraphData(ArrayList(bucketedData.map { getSingleBG(it, null) }))
         }
         // Treatments
         sendTreatments()
@@ -779,6 +793,28 @@ class DataHandlerMobile @Inject constructor(
         sendStatus()
     }
 
+    @Synchronized
+    private fun sendGraphData(entries: ArrayList<EventData.SingleBg>) {
+        val sent = sentGraphData
+        if (sent != null && sent.sequence == acknowledgedGraphSequence) {
+            val delta = EventData.GraphDataDelta.between(graphSequence + 1, sent, entries) ?: return
+            aapsLogger.debug(LTag.WEAR, "Sending GraphDataDelta ${delta.sequence} with ${delta.entries.size} entries")
+            rxBus.send(EventMobileToWear(delta))
+        } else
+            rxBus.send(EventMobileToWear(EventData.GraphData(entries, graphSequence + 1)))
+        sentGraphData = EventData.GraphData(entries, ++graphSequence)
+    }
+
+    @Synchronized
+    private fun acknowledgeGraphData(sequence: Long) {
+        acknowledgedGraphSequence = sequence
+    }
+
+    @Synchronized
+    private fun resetGraphData() {
+        acknowledgedGraphSequence = 0
+    }
+
     private fun sendTreatments() {
         val now = System.currentTimeMillis()
         val startTimeWindow = now - (60000 * 60 * 5.5).toLong()
@@ -185,6 +185,27 @@ class GarminPluginTest: TestBase() {
         verify(loopHub, times(2)).glucoseUnit
     }
 
+    @Test
+    fun setupHttpServer_getIsNotCached() {
+        `when`(sp.getBoolean("communication_http", false)).thenReturn(true)
+        `when`(sp.getInt("communication_http_port", 28891)).thenReturn(28894)
+        gp.setupHttpServer(Duration.ofSeconds(10))
+        val hr = createHeartRate(80)
+        val reqUri = URI("http://127.0.0.1:28894/get?" + hr.entries.joinToString(separator = "&") { (k, v) -> "$k=$v" })
+        repeat(2) {
+            val resp = reqUri.toURL().openConnection() as HttpURLConnection
+            assertEquals(200, resp.responseCode)
+        }
+        gp.onStop()
+
+        verify(loopHub, times(2)).storeHeartRate(
+            Instant.ofEpochSecond(hr["hrStart"] as Long),
+            Instant.ofEpochSecond(hr["hrEnd"] as Long),
+            80,
+            hr["device"] as String)
+        verify(loopHub, times(2)).getGlucoseValues(anyObject(), eq(true))
+    }
+
     @Test
     fun setupHttpServer_disabled() {
         gp.setupHttpServer(Duration.ofSeconds(10))
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test
 import java.io.ByteArrayInputStream
 import java.io.InputStream
 import java.net.HttpURLConnection
+import java.net.Socket
 import java.net.SocketAddress
 import java.net.URI
 import java.nio.charset.Charset
@@ -96,4 +97,100 @@ internal class HttpServerTest: TestBase() {
             assertEquals(404, resp.responseCode)
         }
     }
+
+    @Test fun testRequestLength() {
+        assertEquals(-1, HttpServer.requestLength("GET /foo HTTP/1.1\r\nHost: x\r\n".toByteArray()))
+        assertEquals(30, HttpServer.requestLength("GET /foo HTTP/1.1\r\nHost: x\r\n\r\nGET".toByteArray()))
+        assertEquals(-1, HttpServer.requestLength("POST /foo HTTP/1.1\r\ncontent-length: 3\r\n\r\na=".toByteArray()))
+        assertEquals(44, HttpServer.requestLength("POST /foo HTTP/1.1\r\ncontent-length: 3\r\n\r\na=1".toByteArray()))
+    }
+
+    private fun readResponse(input: InputStream): Pair<Map<String, String>, String> {
+        val headers = mutableMapOf<String, String>()
+        val status = readLine(input)
+        headers["Status"] = status.split(" ")[1]
+        while (true) {
+            val line = readLine(input)
+            if (line.isEmpty()) break
+            val (name, value) = line.split(":", limit = 2)
+            headers[name.trim()] = value.trim()
+        }
+        val body = ByteArray(headers["Content-Length"]!!.toInt())
+        var read = 0
+        while (read < body.size) read += input.read(body, read, body.size - read)
+        return headers to String(body)
+    }
+
+    private fun readLine(input: InputStream): String {
+        val line = StringBuilder()
+        while (true) {
+            when (val c = input.read()) {
+                -1, '\n'.code -> return line.toString()
+                '\r'.code     -> {}
+                else           -> line.append(c.toChar())
+            }
+        }
+    }
+
+    @Test fun testRequest_KeepAliveAndCache() {
+        val port = 28896
+        var calls = 0
+        HttpServer(aapsLogger, port).use { server ->
+            server.registerEndpoint("/foo", cacheable = true) { _: SocketAddress, uri: URI, _: String? ->
+                calls++
+                HttpURLConnection.HTTP_OK to "test ${uri.query}"
+            }
+            assertTrue(server.awaitReady(Duration.ofSeconds(10)))
+            Socket("127.0.0.1", port).use { socket ->
+                val out = socket.getOutputStream()
+                val input = socket.getInputStream()
+                // two requests sent at once on the same connection
+                out.write("GET /foo?a=1 HTTP/1.1\r\nHost: localhost\r\n\r\nGET /foo?a=1 HTTP/1.1\r\nHost: localhost\r\n\r\n".toByteArray())
+                val (headers1, body1) = readResponse(input)
+                val (headers2, body2) = readResponse(input)
+                assertEquals("200", headers1["Status"])
+                assertEquals("test a=1", body1)
+                assertEquals(body1, body2)
+                assertEquals(headers1["ETag"], headers2["ETag"])
+                assertEquals(1, calls)
+
+                // not modified
+                out.write("GET /foo?a=1 HTTP/1.1\r\nIf-None-Match: ${headers1["ETag"]}\r\n\r\n".toByteArray())
+                val (headers3, body3) = readResponse(input)
+                assertEquals("304", headers3["Status"])
+                assertEquals("", body3)
+
+                // different query
+                out.write("GET /foo?a=2 HTTP/1.1\r\n\r\n".toByteArray())
+                assertEquals("test a=2", readResponse(input).second)
+                assertEquals(2, calls)
+
+                server.invalidateCache()
+                out.write("GET /foo?a=1 HTTP/1.1\r\nConnection: close\r\n\r\n".toByteArray())
+                val (headers4, body4) = readResponse(input)
+                assertEquals("close", headers4["Connection"])
+                assertEquals("test a=1", body4)
+                assertEquals(3, calls)
+                assertEquals(-1, input.read())
+            }
+        }
+    }
+
+    @Test fun testRequest_NotCacheable() {
+        val port = 28897
+        var calls = 0
+        HttpServer(aapsLogger, port).use { server ->
+            server.registerEndpoint("/foo") { _: SocketAddress, _: URI, _: String? ->
+                calls++
+                HttpURLConnection.HTTP_OK to "test"
+            }
+            assertTrue(server.awaitReady(Duration.ofSeconds(10)))
+            Socket("127.0.0.1", port).use { socket ->
+                socket.getOutputStream().write("GET /foo HTTP/1.1\r\n\r\nGET /foo HTTP/1.1\r\n\r\n".toByteArray())
+                assertEquals("test", readResponse(socket.getInputStream()).second)
+                assertEquals("test", readResponse(socket.getInputStream()).second)
+            }
+            assertEquals(2, calls)
+        }
+    }
 }
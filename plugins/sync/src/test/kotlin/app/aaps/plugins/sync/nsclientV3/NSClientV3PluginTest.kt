@@ -169,6 +169,28 @@ internal class NSClientV3PluginTest : TestBaseWithProfile() {
         assertThat(storeDataForDb.nsIdFoods).hasSize(2)
     }
 
+    @Test
+    @OptIn(kotlinx.coroutines.ExperimentalCoroutinesApi::class)
+    fun nsUploadBatch() = runTest {
+        val uploads = List(4) {
+            DataSyncSelector.PendingUpload(DataSyncSelector.PairBolus(Bolus(timestamp = 10000L + it, amount = 1.0, type = Bolus.Type.SMB), 1000L + it), isUpdate = it == 3)
+        }
+        // all created
+        Mockito.`when`(nsAndroidClient.createTreatments(anyObject())).thenReturn(List(3) { Result.success(CreateUpdateResponse(201, "id$it")) })
+        Mockito.`when`(nsAndroidClient.updateTreatments(anyObject())).thenReturn(listOf(Result.success(CreateUpdateResponse(200, null))))
+        assertThat(sut.nsUpload("treatments", uploads, "1/4")).isEqualTo(4)
+        assertThat(storeDataForDb.nsIdBoluses).hasSize(3)
+        assertThat(storeDataForDb.nsIdBoluses.map { it.interfaceIDs.nightscoutId }).containsExactly("id0", "id1", "id2")
+        // second one failed, first one must be processed, update not sent
+        storeDataForDb.nsIdBoluses.clear()
+        Mockito.`when`(nsAndroidClient.createTreatments(anyObject())).thenReturn(
+            listOf(Result.success(CreateUpdateResponse(201, "id0")), Result.failure(Exception("timeout")), Result.success(CreateUpdateResponse(201, "id2")))
+        )
+        assertThat(sut.nsUpload("treatments", uploads, "1/4")).isEqualTo(1)
+        assertThat(storeDataForDb.nsIdBoluses).hasSize(1)
+        Mockito.verify(nsAndroidClient, Mockito.times(1)).updateTreatments(anyObject())
+    }
+
     @Test
     @OptIn(kotlinx.coroutines.ExperimentalCoroutinesApi::class)
     fun nsAddBolus() = runTest {
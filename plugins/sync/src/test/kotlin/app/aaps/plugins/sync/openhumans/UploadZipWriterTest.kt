@@ -0,0 +1,85 @@
+package app.aaps.plugins.sync.openhumans
+
+import com.google.common.truth.Truth.assertThat
+import com.sun.net.httpserver.HttpServer
+import kotlinx.coroutines.runBlocking
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.io.File
+import java.net.InetSocketAddress
+import java.security.MessageDigest
+import java.util.zip.ZipInputStream
+
+class UploadZipWriterTest {
+
+    private lateinit var file: File
+
+    @BeforeEach
+    fun setup() {
+        file = File.createTempFile("upload", ".zip")
+    }
+
+    @AfterEach
+    fun tearDown() {
+        file.delete()
+    }
+
+    private fun write(): UploadZipWriter =
+        UploadZipWriter(file).also { zip ->
+            zip.use {
+                it.writeFile("UploadInfo.json", JSONObject().put("counter", 1))
+                it.writeJSONArrayFile("Values.json", (1..3000).toList()) { i ->
+                    put("id", i)
+                    put("text", "value \"$i\"")
+                }
+                it.writeJSONArrayFile("Empty.json", emptyList<Int>()) {}
+            }
+        }
+
+    @Test
+    fun writesJsonFiles() {
+        val zip = write()
+
+        val files = mutableMapOf<String, String>()
+        ZipInputStream(file.inputStream()).use { zis ->
+            while (true) {
+                val entry = zis.nextEntry ?: break
+                files[entry.name] = zis.readBytes().decodeToString()
+            }
+        }
+        assertThat(files.keys).containsExactly("UploadInfo.json", "Values.json", "Empty.json").inOrder()
+        assertThat(JSONObject(files["UploadInfo.json"]!!).getInt("counter")).isEqualTo(1)
+        val values = JSONArray(files["Values.json"]!!)
+        assertThat(values.length()).isEqualTo(3000)
+        assertThat(values.getJSONObject(41).getInt("id")).isEqualTo(42)
+        assertThat(values.getJSONObject(41).getString("text")).isEqualTo("value \"42\"")
+        assertThat(JSONArray(files["Empty.json"]!!).length()).isEqualTo(0)
+        assertThat(zip.md5).isEqualTo(MessageDigest.getInstance("MD5").digest(file.readBytes()))
+    }
+
+    @Test
+    fun uploadsFile() {
+        val zip = write()
+        var received = ByteArray(0)
+        var contentLength: String? = null
+        val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/upload") { exchange ->
+            contentLength = exchange.requestHeaders.getFirst("Content-Length")
+            received = exchange.requestBody.readBytes()
+            exchange.sendResponseHeaders(200, -1)
+            exchange.close()
+        }
+        server.start()
+        try {
+            val api = OpenHumansAPI("http://127.0.0.1", "clientId", "clientSecret", "redirect")
+            runBlocking { api.uploadFile("http://127.0.0.1:${server.address.port}/upload", file) }
+        } finally {
+            server.stop(0)
+        }
+        assertThat(contentLength).isEqualTo(file.length().toString())
+        assertThat(MessageDigest.getInstance("MD5").digest(received)).isEqualTo(zip.md5)
+    }
+}
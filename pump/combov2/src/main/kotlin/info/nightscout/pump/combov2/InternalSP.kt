@@ -5,6 +5,7 @@ import android.content.Context
 import android.content.SharedPreferences
 import androidx.annotation.StringRes
 import app.aaps.core.interfaces.sharedPreferences.SP
+import app.aaps.core.interfaces.sharedPreferences.SPSnapshot
 import app.aaps.core.interfaces.utils.SafeParse
 
 // This is a copy of the AAPS SPImplementation. We keep this to be able
@@ -82,6 +83,8 @@ class InternalSP(
 
     override fun getAll(): Map<String, *> = sharedPreferences.all
 
+    override fun snapshot(): SP.Snapshot = SPSnapshot(HashMap(sharedPreferences.all)) { context.getString(it) }
+
     override fun clear() = sharedPreferences.edit().clear().apply()
 
     override fun contains(key: String): Boolean = sharedPreferences.contains(key)
@@ -37,6 +37,8 @@ dependencies {
     api(Libs.Squareup.Retrofit2.retrofit)
     api(Libs.Squareup.Retrofit2.converterGson)
 
+    testImplementation(project(":shared:tests"))
+
     kapt(Libs.Dagger.compiler)
     kapt(Libs.Dagger.androidProcessor)
 }
\ No newline at end of file
@@ -81,6 +81,10 @@ class BigLogInquireResponsePacket(
     var result = 0// 조회결과
     private var pumpDesc = PumpDescription(PumpType.DIACONN_G8)
 
+    // records of all logs in packet are synced at once after parsing
+    private val historyRecords = mutableListOf<PumpSync.HistoryRecord>()
+    private val historyCallbacks = mutableListOf<(Boolean) -> Unit>()
+
     init {
         msgType = 0xb2.toByte()
         aapsLogger.debug(LTag.PUMPCOMM, "BigLogInquireResponsePacket init")
@@ -157,18 +161,23 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                        val newRecord = pumpSync.syncBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.injectAmount / 100.0,
-                            type = detailedBolusInfo?.bolusType,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT MEAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U "
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.Bolus(
+                                timestamp = logDateTime,
+                                amount = logItem.injectAmount / 100.0,
+                                type = detailedBolusInfo?.bolusType,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT MEAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U "
+                            )
+                            if (!newRecord && detailedBolusInfo != null) {
+                                // detailedInfo can be from another similar record. Reinsert
+                                detailedBolusInfoStorage.add(detailedBolusInfo)
+                            }
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -179,10 +188,6 @@ class BigLogInquireResponsePacket(
                         diaconnG8HistoryRecord.wrappingCount = wrappingCount
                         diaconnG8HistoryRecord.pumpUid = diaconnG8Pump.pumpUid
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
-                        if (!newRecord && detailedBolusInfo != null) {
-                            // detailedInfo can be from another similar record. Reinsert
-                            detailedBolusInfoStorage.add(detailedBolusInfo)
-                        }
                         status = "MEAL_BOLUS_SUCCESS" + dateUtil.timeString(logDateTime)
                     }
 
@@ -192,18 +197,23 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                        val newRecord = pumpSync.syncBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.injectAmount / 100.0,
-                            type = detailedBolusInfo?.bolusType,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT MEAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U "
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.Bolus(
+                                timestamp = logDateTime,
+                                amount = logItem.injectAmount / 100.0,
+                                type = detailedBolusInfo?.bolusType,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT MEAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U "
+                            )
+                            if (!newRecord && detailedBolusInfo != null) {
+                                // detailedInfo can be from another similar record. Reinsert
+                                detailedBolusInfoStorage.add(detailedBolusInfo)
+                            }
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = if ((logItem.injectAmount / 100.0) < 0) 0.0 else (logItem.injectAmount / 100.0)
@@ -214,10 +224,6 @@ class BigLogInquireResponsePacket(
                         diaconnG8HistoryRecord.wrappingCount = wrappingCount
                         diaconnG8HistoryRecord.pumpUid = diaconnG8Pump.pumpUid
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
-                        if (!newRecord && detailedBolusInfo != null) {
-                            // detailedInfo can be from another similar record. Reinsert
-                            detailedBolusInfoStorage.add(detailedBolusInfo)
-                        }
                         status = "MEAL_BOLUS_FAIL " + dateUtil.timeString(logDateTime)
                     }
 
@@ -228,18 +234,23 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                        val newRecord = pumpSync.syncBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.injectAmount / 100.0,
-                            type = detailedBolusInfo?.bolusType,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumpLogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U "
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.Bolus(
+                                timestamp = logDateTime,
+                                amount = logItem.injectAmount / 100.0,
+                                type = detailedBolusInfo?.bolusType,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumpLogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U "
+                            )
+                            if (!newRecord && detailedBolusInfo != null) {
+                                // detailedInfo can be from another similar record. Reinsert
+                                detailedBolusInfoStorage.add(detailedBolusInfo)
+                            }
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -250,10 +261,6 @@ class BigLogInquireResponsePacket(
                         diaconnG8HistoryRecord.wrappingCount = wrappingCount
                         diaconnG8HistoryRecord.pumpUid = diaconnG8Pump.pumpUid
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
-                        if (!newRecord && detailedBolusInfo != null) {
-                            // detailedInfo can be from another similar record. Reinsert
-                            detailedBolusInfoStorage.add(detailedBolusInfo)
-                        }
                         status = "BOLUS_SUCCESS" + dateUtil.timeString(logDateTime)
                     }
 
@@ -265,18 +272,23 @@ class BigLogInquireResponsePacket(
 
                         // APS DB process
                         val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                        val newRecord = pumpSync.syncBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.injectAmount / 100.0,
-                            type = detailedBolusInfo?.bolusType,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumpLogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U "
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.Bolus(
+                                timestamp = logDateTime,
+                                amount = logItem.injectAmount / 100.0,
+                                type = detailedBolusInfo?.bolusType,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumpLogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U "
+                            )
+                            if (!newRecord && detailedBolusInfo != null) {
+                                // detailedInfo can be from another similar record. Reinsert
+                                detailedBolusInfoStorage.add(detailedBolusInfo)
+                            }
+                        }
                         // Diaconn History Process
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
@@ -288,10 +300,6 @@ class BigLogInquireResponsePacket(
                         diaconnG8HistoryRecord.wrappingCount = wrappingCount
                         diaconnG8HistoryRecord.pumpUid = diaconnG8Pump.pumpUid
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
-                        if (!newRecord && detailedBolusInfo != null) {
-                            // detailedInfo can be from another similar record. Reinsert
-                            detailedBolusInfoStorage.add(detailedBolusInfo)
-                        }
                         status = "BOLUS_FAIL " + dateUtil.timeString(logDateTime)
                     }
 
@@ -300,19 +308,20 @@ class BigLogInquireResponsePacket(
                         aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
-                        val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.setAmount / 100.0,
-                            duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
-                            isEmulatingTB = false,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.setAmount / 100.0}U Duration: ${logItem.getInjectTime() * 10}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.ExtendedBolus(
+                                timestamp = logDateTime,
+                                amount = logItem.setAmount / 100.0,
+                                duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
+                                isEmulatingTB = false,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.setAmount / 100.0}U Duration: ${logItem.getInjectTime() * 10}min"
+                            )
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = logItem.setAmount / 100.0
@@ -348,16 +357,17 @@ class BigLogInquireResponsePacket(
                         aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
-                        val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                            timestamp = logDateTime,
-                            endPumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Delivered: ${logItem.injectAmount / 100.0}U RealDuration: ${logItem.getInjectTime()}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.StopExtendedBolus(
+                                timestamp = logDateTime,
+                                endPumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Delivered: ${logItem.injectAmount / 100.0}U RealDuration: ${logItem.getInjectTime()}min"
+                            )
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -378,19 +388,20 @@ class BigLogInquireResponsePacket(
                         val logDateTime = logStartDate.time
 
                         // dual square 처리.
-                        val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.setSquareAmount / 100.0,
-                            duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
-                            isEmulatingTB = false,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.setSquareAmount / 100.0}U Duration: ${logItem.getInjectTime() * 10}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.ExtendedBolus(
+                                timestamp = logDateTime,
+                                amount = logItem.setSquareAmount / 100.0,
+                                duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
+                                isEmulatingTB = false,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.setSquareAmount / 100.0}U Duration: ${logItem.getInjectTime() * 10}min"
+                            )
+                        }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
                         diaconnG8HistoryRecord.value = logItem.setSquareAmount / 100.0
@@ -411,18 +422,23 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                        val newRecord = pumpSync.syncBolusWithPumpId(
-                            timestamp = logDateTime,
-                            amount = logItem.injectAmount / 100.0,
-                            type = detailedBolusInfo?.bolusType,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT DUAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U Duration: ${logItem.getInjectTime()}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.Bolus(
+                                timestamp = logDateTime,
+                                amount = logItem.injectAmount / 100.0,
+                                type = detailedBolusInfo?.bolusType,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT DUAL_BOLUS ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Bolus: ${logItem.injectAmount / 100.0}U Duration: ${logItem.getInjectTime()}min"
+                            )
+                            if (!newRecord && detailedBolusInfo != null) {
+                                // detailedInfo can be from another similar record. Reinsert
+                                detailedBolusInfoStorage.add(detailedBolusInfo)
+                            }
+                        }
 
                         diaconnG8Pump.lastBolusAmount = logItem.injectAmount / 100.0
                         diaconnG8Pump.lastBolusTime = logDateTime
@@ -438,10 +454,6 @@ class BigLogInquireResponsePacket(
                         diaconnG8HistoryRecord.wrappingCount = wrappingCount
                         diaconnG8HistoryRecord.pumpUid = diaconnG8Pump.pumpUid
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
-                        if (!newRecord && detailedBolusInfo != null) {
-                            // detailedInfo can be from another similar record. Reinsert
-                            detailedBolusInfoStorage.add(detailedBolusInfo)
-                        }
                         status = "DUAL_BOLUS" + dateUtil.timeString(logDateTime)
                     }
 
@@ -469,16 +481,17 @@ class BigLogInquireResponsePacket(
                         aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
-                        val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                            timestamp = logDateTime,
-                            endPumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Delivered: ${logItem.injectSquareAmount / 100.0}U RealDuration: ${logItem.getInjectTime()}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.StopExtendedBolus(
+                                timestamp = logDateTime,
+                                endPumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Delivered: ${logItem.injectSquareAmount / 100.0}U RealDuration: ${logItem.getInjectTime()}min"
+                            )
+                        }
 
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                         diaconnG8HistoryRecord.timestamp = logDateTime
@@ -545,17 +558,18 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         if (sp.getBoolean(R.string.key_diaconn_g8_loginsulinchange, true)) {
-                            val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                                timestamp = logDateTime,
-                                type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
-                                pumpId = logDateTime,
-                                pumpType = PumpType.DIACONN_G8,
-                                pumpSerial = diaconnG8Pump.serialNo.toString()
-                            )
-                            aapsLogger.debug(
-                                LTag.PUMPCOMM,
-                                "${if (newRecord) "**NEW** " else ""}EVENT INSULIN_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.remainAmount / 100.0}U"
-                            )
+                            syncHistory(
+                                PumpSync.HistoryRecord.TherapyEvent(
+                                    timestamp = logDateTime,
+                                    type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
+                                    pumpId = logDateTime
+                                )
+                            ) { newRecord ->
+                                aapsLogger.debug(
+                                    LTag.PUMPCOMM,
+                                    "${if (newRecord) "**NEW** " else ""}EVENT INSULIN_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.remainAmount / 100.0}U"
+                                )
+                            }
                         }
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_REFILL
                         diaconnG8HistoryRecord.timestamp = logDateTime
@@ -574,18 +588,19 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         if (sp.getBoolean(R.string.key_diaconn_g8_logtubechange, true)) {
-                            val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                                timestamp = logDateTime,
-                                type = DetailedBolusInfo.EventType.NOTE,
-                                note = rh.gs(R.string.diaconn_g8_logtubeprime, logItem.primeAmount / 100.0),
-                                pumpId = logDateTime,
-                                pumpType = PumpType.DIACONN_G8,
-                                pumpSerial = diaconnG8Pump.serialNo.toString()
-                            )
-                            aapsLogger.debug(
-                                LTag.PUMPCOMM,
-                                "${if (newRecord) "**NEW** " else ""}EVENT TUBE_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.primeAmount / 100.0}U"
-                            )
+                            syncHistory(
+                                PumpSync.HistoryRecord.TherapyEvent(
+                                    timestamp = logDateTime,
+                                    type = DetailedBolusInfo.EventType.NOTE,
+                                    note = rh.gs(R.string.diaconn_g8_logtubeprime, logItem.primeAmount / 100.0),
+                                    pumpId = logDateTime
+                                )
+                            ) { newRecord ->
+                                aapsLogger.debug(
+                                    LTag.PUMPCOMM,
+                                    "${if (newRecord) "**NEW** " else ""}EVENT TUBE_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.primeAmount / 100.0}U"
+                                )
+                            }
                         }
 
 
@@ -636,14 +651,14 @@ class BigLogInquireResponsePacket(
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
 
                         //If it is a TDD, store it for stats also.
-                        pumpSync.createOrUpdateTotalDailyDose(
-                            timestamp = diaconnG8HistoryRecord.timestamp,
-                            bolusAmount = diaconnG8HistoryRecord.dailyBolus,
-                            basalAmount = diaconnG8HistoryRecord.dailyBasal,
-                            totalAmount = 0.0,
-                            pumpId = null,
-                            pumpType = PumpType.DIACONN_G8,
-                            diaconnG8Pump.serialNo.toString()
+                        syncHistory(
+                            PumpSync.HistoryRecord.TotalDailyDose(
+                                timestamp = diaconnG8HistoryRecord.timestamp,
+                                bolusAmount = diaconnG8HistoryRecord.dailyBolus,
+                                basalAmount = diaconnG8HistoryRecord.dailyBasal,
+                                totalAmount = 0.0,
+                                pumpId = null
+                            )
                         )
 
                         status = "DAILY_BOLUS " + dateUtil.timeString(logDateTime)
@@ -704,17 +719,18 @@ class BigLogInquireResponsePacket(
                         val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
                         val logDateTime = logStartDate.time
                         if (sp.getBoolean(R.string.key_diaconn_g8_logneedlechange, true)) {
-                            val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                                timestamp = logDateTime,
-                                type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
-                                pumpId = logDateTime,
-                                pumpType = PumpType.DIACONN_G8,
-                                pumpSerial = diaconnG8Pump.serialNo.toString()
-                            )
-                            aapsLogger.debug(
-                                LTag.PUMPCOMM,
-                                "${if (newRecord) "**NEW** " else ""}EVENT NEEDLE_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.remainAmount / 100.0}U"
-                            )
+                            syncHistory(
+                                PumpSync.HistoryRecord.TherapyEvent(
+                                    timestamp = logDateTime,
+                                    type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
+                                    pumpId = logDateTime
+                                )
+                            ) { newRecord ->
+                                aapsLogger.debug(
+                                    LTag.PUMPCOMM,
+                                    "${if (newRecord) "**NEW** " else ""}EVENT NEEDLE_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Amount: ${logItem.remainAmount / 100.0}U"
+                                )
+                            }
                         }
 
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_REFILL
@@ -745,20 +761,21 @@ class BigLogInquireResponsePacket(
                         }
 
                         val temporaryBasalInfo = temporaryBasalStorage.findTemporaryBasal(logDateTime, absoluteRate)
-                        val newRecord = pumpSync.syncTemporaryBasalWithPumpId(
-                            timestamp = logDateTime,
-                            rate = absoluteRate,
-                            duration = T.mins((logItem.tbTime * 15).toLong()).msecs(),
-                            isAbsolute = true,
-                            type = temporaryBasalInfo?.type,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(
-                            LTag.PUMPCOMM,
-                            "${if (newRecord) "**NEW** " else ""}EVENT TEMP_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Ratio: ${absoluteRate}U Duration: ${logItem.tbTime * 15}min"
-                        )
+                        syncHistory(
+                            PumpSync.HistoryRecord.TemporaryBasal(
+                                timestamp = logDateTime,
+                                rate = absoluteRate,
+                                duration = T.mins((logItem.tbTime * 15).toLong()).msecs(),
+                                isAbsolute = true,
+                                type = temporaryBasalInfo?.type,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(
+                                LTag.PUMPCOMM,
+                                "${if (newRecord) "**NEW** " else ""}EVENT TEMP_START ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) Ratio: ${absoluteRate}U Duration: ${logItem.tbTime * 15}min"
+                            )
+                        }
 
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_TB
                         diaconnG8HistoryRecord.timestamp = logDateTime
@@ -786,13 +803,14 @@ class BigLogInquireResponsePacket(
                             absoluteRate = (logItem.getTbInjectRateRatio() - 1000) / 100.0
                         }
 
-                        val newRecord = pumpSync.syncStopTemporaryBasalWithPumpId(
-                            timestamp = logDateTime,
-                            endPumpId = dateUtil.now(),
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(LTag.PUMPCOMM, "${if (newRecord) "**NEW** " else ""}EVENT TEMP_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime)")
+                        syncHistory(
+                            PumpSync.HistoryRecord.StopTemporaryBasal(
+                                timestamp = logDateTime,
+                                endPumpId = dateUtil.now()
+                            )
+                        ) { newRecord ->
+                            aapsLogger.debug(LTag.PUMPCOMM, "${if (newRecord) "**NEW** " else ""}EVENT TEMP_STOP ($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime)")
+                        }
 
 
                         diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_TB
@@ -871,17 +889,18 @@ class BigLogInquireResponsePacket(
                         diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
                         if (logItem.reason == 3.toByte()) {
                             if (sp.getBoolean(R.string.key_diaconn_g8_logbatterychange, true)) {
-                                val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                                    timestamp = logDateTime,
-                                    type = DetailedBolusInfo.EventType.PUMP_BATTERY_CHANGE,
-                                    pumpId = logDateTime,
-                                    pumpType = PumpType.DIACONN_G8,
-                                    pumpSerial = diaconnG8Pump.serialNo.toString()
-                                )
-                                aapsLogger.debug(
-                                    LTag.PUMPCOMM,
-                                    "${if (newRecord) "**NEW** " else ""}EVENT BATTERY_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) remainAmount: ${logItem.batteryRemain.toInt()}%"
-                                )
+                                syncHistory(
+                                    PumpSync.HistoryRecord.TherapyEvent(
+                                        timestamp = logDateTime,
+                                        type = DetailedBolusInfo.EventType.PUMP_BATTERY_CHANGE,
+                                        pumpId = logDateTime
+                                    )
+                                ) { newRecord ->
+                                    aapsLogger.debug(
+                                        LTag.PUMPCOMM,
+                                        "${if (newRecord) "**NEW** " else ""}EVENT BATTERY_CHANGE($pumpLogKind) ${dateUtil.dateAndTimeString(logDateTime)} ($logDateTime) remainAmount: ${logItem.batteryRemain.toInt()}%"
+                                    )
+                                }
                             }
                         }
                         status = "RESET " + dateUtil.timeString(logDateTime)
@@ -897,6 +916,7 @@ class BigLogInquireResponsePacket(
             }
 
         }
+        flushHistory()
 
         // 플랫폼 동기화이면,
         if (diaconnG8Pump.isPlatformUploadStarted) {
@@ -940,6 +960,21 @@ class BigLogInquireResponsePacket(
         }
     }
 
+    private fun syncHistory(record: PumpSync.HistoryRecord, onResult: (newRecord: Boolean) -> Unit = {}) {
+        historyRecords.add(record)
+        historyCallbacks.add(onResult)
+    }
+
+    private fun flushHistory() {
+        if (historyRecords.isEmpty()) return
+        val records = historyRecords.toList()
+        val callbacks = historyCallbacks.toList()
+        historyRecords.clear()
+        historyCallbacks.clear()
+        val results = pumpSync.syncHistory(records, PumpType.DIACONN_G8, diaconnG8Pump.serialNo.toString())
+        callbacks.forEachIndexed { index, onResult -> onResult(results[index]) }
+    }
+
     override fun getFriendlyName(): String {
         return "BIG_LOG_INQUIRE_RESPONSE"
     }
@@ -0,0 +1,122 @@
+package info.nightscout.pump.diaconn.packet
+
+import app.aaps.core.interfaces.pump.DetailedBolusInfo
+import app.aaps.core.interfaces.pump.DetailedBolusInfoStorage
+import app.aaps.core.interfaces.pump.PumpSync
+import app.aaps.core.interfaces.pump.TemporaryBasalStorage
+import app.aaps.core.interfaces.pump.defs.PumpType
+import app.aaps.shared.tests.TestBaseWithProfile
+import com.google.common.truth.Truth.assertThat
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.pump.diaconn.DiaconnG8Pump
+import info.nightscout.pump.diaconn.database.DiaconnHistoryRecordDao
+import info.nightscout.pump.diaconn.pumplog.LogInjectNormalSuccess
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.ArgumentCaptor
+import org.mockito.Mock
+import org.mockito.Mockito
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.whenever
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class BigLogInquireResponsePacketTest : TestBaseWithProfile() {
+
+    @Mock lateinit var pumpSync: PumpSync
+    @Mock lateinit var detailedBolusInfoStorage: DetailedBolusInfoStorage
+    @Mock lateinit var temporaryBasalStorage: TemporaryBasalStorage
+    @Mock lateinit var diaconnHistoryRecordDao: DiaconnHistoryRecordDao
+
+    private lateinit var diaconnG8Pump: DiaconnG8Pump
+
+    private val packetInjector = HasAndroidInjector {
+        AndroidInjector {
+            if (it is DiaconnG8Packet) {
+                it.aapsLogger = aapsLogger
+                it.dateUtil = dateUtil
+            }
+            if (it is BigLogInquireResponsePacket) {
+                it.rxBus = rxBus
+                it.rh = rh
+                it.activePlugin = activePlugin
+                it.diaconnG8Pump = diaconnG8Pump
+                it.detailedBolusInfoStorage = detailedBolusInfoStorage
+                it.temporaryBasalStorage = temporaryBasalStorage
+                it.sp = sp
+                it.pumpSync = pumpSync
+                it.diaconnHistoryRecordDao = diaconnHistoryRecordDao
+                it.context = context
+            }
+        }
+    }
+
+    @BeforeEach
+    fun prepare() {
+        diaconnG8Pump = DiaconnG8Pump(aapsLogger, dateUtil, decimalFormatter)
+        diaconnG8Pump.serialNo = 1234
+        whenever(rh.gs(Mockito.anyInt())).thenReturn("AnyString")
+    }
+
+    @Test
+    fun allLogsOfPacketAreSyncedInOneBatch() {
+        val detailedBolusInfo = DetailedBolusInfo()
+        whenever(detailedBolusInfoStorage.findDetailedBolusInfo(Mockito.anyLong(), Mockito.anyDouble())).thenReturn(detailedBolusInfo)
+        whenever(pumpSync.syncHistory(any(), eq(PumpType.DIACONN_G8), eq("1234"))).thenReturn(listOf(true, false))
+
+        val packet = BigLogInquireResponsePacket(packetInjector)
+        packet.handleMessage(createPacket(listOf(bolusLog(1_700_000_000L, 150), bolusLog(1_700_000_600L, 250))))
+
+        assertThat(packet.failed).isFalse()
+        @Suppress("UNCHECKED_CAST")
+        val records = ArgumentCaptor.forClass(List::class.java) as ArgumentCaptor<List<PumpSync.HistoryRecord>>
+        Mockito.verify(pumpSync).syncHistory(records.capture(), eq(PumpType.DIACONN_G8), eq("1234"))
+        assertThat(records.value).hasSize(2)
+        assertThat((records.value[0] as PumpSync.HistoryRecord.Bolus).amount).isEqualTo(1.5)
+        assertThat((records.value[1] as PumpSync.HistoryRecord.Bolus).amount).isEqualTo(2.5)
+        Mockito.verify(pumpSync, Mockito.never()).syncBolusWithPumpId(Mockito.anyLong(), Mockito.anyDouble(), anyOrNull(), Mockito.anyLong(), any(), Mockito.anyString())
+        // only the already known bolus returns detailed info back to storage
+        Mockito.verify(detailedBolusInfoStorage, Mockito.times(1)).add(detailedBolusInfo)
+    }
+
+    @Test
+    fun nothingIsSyncedWithoutKnownLogs() {
+        val packet = BigLogInquireResponsePacket(packetInjector)
+        packet.handleMessage(createPacket(emptyList()))
+
+        assertThat(packet.failed).isFalse()
+        Mockito.verifyNoInteractions(pumpSync)
+    }
+
+    private fun bolusLog(time: Long, amount: Int): ByteArray =
+        ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(time.toInt())
+            .put(LogInjectNormalSuccess.LOG_KIND)
+            .putShort(amount.toShort()) // set amount
+            .putShort(amount.toShort()) // inject amount
+            .put(1) // inject time
+            .put(100) // battery
+            .put(0)
+            .array()
+
+    private fun createPacket(logs: List<ByteArray>): ByteArray {
+        val buffer = ByteBuffer.allocate(DiaconnG8Packet.MSG_LEN_BIG).order(ByteOrder.LITTLE_ENDIAN)
+        buffer.put(DiaconnG8Packet.SOP_BIG)
+        buffer.put(0xb2.toByte())
+        buffer.put(0) // sequence
+        buffer.put(DiaconnG8Packet.MSG_CON_END)
+        buffer.put(16) // inquire success
+        buffer.put(logs.size.toByte())
+        logs.forEachIndexed { index, log ->
+            buffer.put(0) // wrapping count
+            buffer.putShort(index.toShort()) // log number
+            buffer.put(log)
+        }
+        while (buffer.position() < DiaconnG8Packet.MSG_LEN_BIG - 1) buffer.put(DiaconnG8Packet.MSG_PAD)
+        buffer.put(DiaconnG8Packet.getCRC(buffer.array(), DiaconnG8Packet.MSG_LEN_BIG - 1))
+        return buffer.array()
+    }
+}
@@ -227,7 +227,7 @@ class MedtronicPumpPlugin @Inject constructor(
                     val statusRefresh = synchronized(statusRefreshMap) { HashMap(statusRefreshMap) }
                     if (doWeHaveAnyStatusNeededRefreshing(statusRefresh)) {
                         if (!commandQueue.statusInQueue()) {
-                            commandQueue.readStatus(rh.gs(R.string.scheduled_status_refresh), null)
+                            commandQueue.readStatus(rh.gs(R.string.scheduled_status_refresh), null, routine = true)
                         }
                     }
                     clearBusyQueue()
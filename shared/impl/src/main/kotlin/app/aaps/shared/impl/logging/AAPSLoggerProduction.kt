@@ -3,99 +3,215 @@ package app.aaps.shared.impl.logging
 import app.aaps.core.interfaces.logging.AAPSLogger
 import app.aaps.core.interfaces.logging.L
 import app.aaps.core.interfaces.logging.LTag
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.spi.LoggingEvent
 import org.slf4j.LoggerFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
 
 /**
+ * Logger writing to Logback from background thread
+ *
+ * Enabled tag is checked first, caller location is captured as Throwable and resolved
+ * to stack frame only by writer thread. Records are passed through [LogRingBuffer].
+ * If buffer is full record is written directly by calling thread.
+ * Output goes to the same appenders (file, logcat) with original thread name and time.
+ *
  * Created by adrian on 2019-12-27.
  */
-
 class AAPSLoggerProduction(val l: L) : AAPSLogger {
 
+    private val buffer = LogRingBuffer(BUFFER_SIZE)
+    private val loggers = arrayOfNulls<org.slf4j.Logger>(LTag.values().size)
+
+    @Volatile private var writerWaiting = false
+    private val writer = Thread({ writeLoop() }, "AAPSLogger").also {
+        it.isDaemon = true
+        it.priority = Thread.MIN_PRIORITY
+        it.start()
+    }
+
+    private fun isEnabled(tag: LTag) = l.findByName(tag.tag).enabled
+
     override fun debug(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).debug(stackLogMarker() + message)
+        log(Level.DEBUG_INT, LTag.CORE, message, null, null, Throwable())
     }
 
     override fun debug(enable: Boolean, tag: LTag, message: String) {
-        if (enable && l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (enable && isEnabled(tag))
+            log(Level.DEBUG_INT, tag, message, null, null, Throwable())
     }
 
     override fun debug(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (isEnabled(tag))
+            log(Level.DEBUG_INT, tag, message, null, null, Throwable())
     }
 
     override fun debug(tag: LTag, accessor: () -> String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + accessor.invoke())
+        if (isEnabled(tag))
+            log(Level.DEBUG_INT, tag, accessor.invoke(), null, null, Throwable())
     }
 
     override fun debug(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + format, arguments)
+        if (isEnabled(tag))
+            log(Level.DEBUG_INT, tag, format, arguments, null, Throwable())
     }
 
     override fun warn(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + message)
+        if (isEnabled(tag))
+            log(Level.WARN_INT, tag, message, null, null, Throwable())
     }
 
     override fun warn(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + format, arguments)
+        log(Level.WARN_INT, tag, format, arguments, null, Throwable())
     }
 
     override fun info(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + message)
+        if (isEnabled(tag))
+            log(Level.INFO_INT, tag, message, null, null, Throwable())
     }
 
     override fun info(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + format, arguments)
+        if (isEnabled(tag))
+            log(Level.INFO_INT, tag, format, arguments, null, Throwable())
     }
 
     override fun error(tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message)
+        log(Level.ERROR_INT, tag, message, null, null, Throwable())
     }
 
     override fun error(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message)
+        log(Level.ERROR_INT, LTag.CORE, message, null, null, Throwable())
     }
 
     override fun error(message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message, throwable)
+        log(Level.ERROR_INT, LTag.CORE, message, null, throwable, Throwable())
     }
 
     override fun error(format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + format, arguments)
+        log(Level.ERROR_INT, LTag.CORE, format, arguments, null, Throwable())
     }
 
     override fun error(tag: LTag, message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message, throwable)
+        log(Level.ERROR_INT, tag, message, null, throwable, Throwable())
     }
 
     override fun error(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + format, arguments)
+        log(Level.ERROR_INT, tag, format, arguments, null, Throwable())
     }
 
     override fun debug(className: String, methodName: String, lineNumber: Int, tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).debug(logLocationPrefix(className, methodName, lineNumber) + message)
+        log(Level.DEBUG_INT, tag, message, className, methodName, lineNumber)
     }
 
     override fun info(className: String, methodName: String, lineNumber: Int, tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).info(logLocationPrefix(className, methodName, lineNumber) + message)
+        log(Level.INFO_INT, tag, message, className, methodName, lineNumber)
     }
 
     override fun warn(className: String, methodName: String, lineNumber: Int, tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).warn(logLocationPrefix(className, methodName, lineNumber) + message)
+        log(Level.WARN_INT, tag, message, className, methodName, lineNumber)
     }
 
     override fun error(className: String, methodName: String, lineNumber: Int, tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).error(logLocationPrefix(className, methodName, lineNumber) + message)
+        log(Level.ERROR_INT, tag, message, className, methodName, lineNumber)
+    }
+
+    // caller is the frame after public method which created Throwable
+    private fun log(level: Int, tag: LTag, message: String, arguments: Array<out Any?>?, throwable: Throwable?, caller: Throwable) {
+        enqueue(level) {
+            it.fill(level, tag, message, arguments, throwable)
+            it.caller = caller
+            it.callerFrame = 1
+        }
+    }
+
+    private fun log(level: Int, tag: LTag, message: String, className: String, methodName: String, lineNumber: Int) {
+        enqueue(level) {
+            it.fill(level, tag, message, null, null)
+            it.className = className
+            it.methodName = methodName
+            it.lineNumber = lineNumber
+        }
+    }
+
+    private fun LogRingBuffer.Record.fill(level: Int, tag: LTag, message: String, arguments: Array<out Any?>?, throwable: Throwable?) {
+        this.level = level
+        this.tag = tag
+        this.message = message
+        this.arguments = arguments
+        this.throwable = throwable
+        timestamp = System.currentTimeMillis()
+        threadName = Thread.currentThread().name
+    }
+
+    private inline fun enqueue(level: Int, crossinline filler: (LogRingBuffer.Record) -> Unit) {
+        val sequence = buffer.offer { filler(it) }
+        if (sequence < 0) {
+            // buffer full, write directly
+            val record = LogRingBuffer.Record()
+            filler(record)
+            write(record)
+            return
+        }
+        if (writerWaiting) LockSupport.unpark(writer)
+        // errors often precede crash, make sure they are stored
+        if (level == Level.ERROR_INT) awaitWritten(sequence)
+    }
+
+    private fun awaitWritten(sequence: Long) {
+        if (Thread.currentThread() == writer) return
+        val end = System.nanoTime() + ERROR_WAIT_NANOS
+        while (!buffer.isDrained(sequence) && System.nanoTime() < end) {
+            LockSupport.unpark(writer)
+            Thread.yield()
+        }
+    }
+
+    private fun writeLoop() {
+        while (true) {
+            try {
+                if (buffer.drain(::write) == 0) {
+                    writerWaiting = true
+                    if (buffer.isEmpty()) LockSupport.parkNanos(IDLE_PARK_NANOS)
+                    writerWaiting = false
+                }
+            } catch (e: Throwable) {
+                // never stop logging because of failing appender
+            }
+        }
+    }
+
+    private fun write(record: LogRingBuffer.Record) {
+        val logger = loggers[record.tag.ordinal] ?: LoggerFactory.getLogger(record.tag.tag).also { loggers[record.tag.ordinal] = it }
+        val message = record.location() + record.message
+        if (logger is ch.qos.logback.classic.Logger) {
+            val level = Level.toLevel(record.level)
+            if (!logger.isEnabledFor(level)) return
+            val event = LoggingEvent(FQCN, logger, level, message, record.throwable, record.arguments?.let { arrayOf(*it) })
+            event.timeStamp = record.timestamp
+            event.threadName = record.threadName
+            logger.callAppenders(event)
+        } else {
+            val arguments = record.arguments
+            when (record.level) {
+                Level.DEBUG_INT -> if (arguments != null) logger.debug(message, *arguments) else logger.debug(message, record.throwable)
+                Level.INFO_INT  -> if (arguments != null) logger.info(message, *arguments) else logger.info(message, record.throwable)
+                Level.WARN_INT  -> if (arguments != null) logger.warn(message, *arguments) else logger.warn(message, record.throwable)
+                else            -> if (arguments != null) logger.error(message, *arguments) else logger.error(message, record.throwable)
+            }
+        }
+    }
+
+    companion object {
+
+        private const val BUFFER_SIZE = 4096
+        private val FQCN = AAPSLoggerProduction::class.java.name
+        private val IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100)
+        private val ERROR_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(500)
     }
 }
 
-private fun logLocationPrefix(className: String, methodName: String, lineNumber: Int) =
+internal fun logLocationPrefix(className: String, methodName: String, lineNumber: Int) =
     "[$className.$methodName():$lineNumber]: "
 
 fun StackTraceElement.toLogString(): String =
@@ -14,16 +14,15 @@ class LImpl @Inject constructor(
 
     private var logElements: MutableList<LogElement> = ArrayList()
 
+    // called on every log, avoid iterating the list
+    private val elementsByName = HashMap<String, LogElement>()
+
     init {
         LTag.values().forEach { logElements.add(LogElementImpl(it, sp)) }
+        logElements.forEach { elementsByName[it.name] = it }
     }
 
-    override fun findByName(name: String): LogElement {
-        for (element in logElements) {
-            if (element.name == name) return element
-        }
-        return LogElementImpl(false, sp)
-    }
+    override fun findByName(name: String): LogElement = elementsByName[name] ?: LogElementImpl(false, sp)
 
     override fun getLogElements(): List<LogElement> {
         return logElements
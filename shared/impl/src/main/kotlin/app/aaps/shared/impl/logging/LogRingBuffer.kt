@@ -0,0 +1,136 @@
+package app.aaps.shared.impl.logging
+
+import app.aaps.core.interfaces.logging.LTag
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Bounded lock-free multi producer / single consumer queue of log records
+ *
+ * Records are preallocated and reused, producers only claim a slot and fill its fields.
+ * Caller location is kept as unresolved [Throwable] and converted to text by consumer.
+ *
+ * @param capacity must be power of 2
+ */
+class LogRingBuffer(capacity: Int) {
+
+    /**
+     * One log record. Valid only inside of [drain] consumer.
+     */
+    class Record {
+
+        var level = 0
+            internal set
+        var tag: LTag = LTag.CORE
+            internal set
+        var message: String = ""
+            internal set
+        var arguments: Array<out Any?>? = null
+            internal set
+        var throwable: Throwable? = null
+            internal set
+        var timestamp = 0L
+            internal set
+        var threadName: String = ""
+            internal set
+
+        // lazy caller location, stack frame [callerFrame] of [caller]
+        internal var caller: Throwable? = null
+        internal var callerFrame = 0
+
+        // explicit caller location
+        internal var className: String? = null
+        internal var methodName: String? = null
+        internal var lineNumber = 0
+
+        /**
+         * Caller location formatted as "[Class.method():line]: "
+         */
+        fun location(): String {
+            className?.let { return logLocationPrefix(it, methodName ?: "", lineNumber) }
+            val stackTrace = caller?.stackTrace ?: return ""
+            return if (stackTrace.size > callerFrame) stackTrace[callerFrame].toLogString() else ""
+        }
+
+        internal fun clear() {
+            message = ""
+            arguments = null
+            throwable = null
+            caller = null
+            className = null
+            methodName = null
+            threadName = ""
+        }
+    }
+
+    private val mask = capacity - 1
+    private val records = Array(capacity) { Record() }
+
+    // sequence of record published to each slot, consumer waits for it
+    private val published = AtomicLongArray(capacity).also { for (i in 0 until capacity) it.set(i, -1) }
+    private val head = AtomicLong(0)
+
+    @Volatile private var tail = 0L
+
+    init {
+        require(capacity > 0 && capacity and mask == 0) { "Capacity must be power of 2" }
+    }
+
+    /**
+     * Claim free record, fill it by [writer] and publish it
+     *
+     * @return sequence of published record or -1 if buffer is full
+     */
+    inline fun offer(writer: (Record) -> Unit): Long {
+        val sequence = claim()
+        if (sequence < 0) return -1
+        try {
+            writer(record(sequence))
+        } finally {
+            publish(sequence)
+        }
+        return sequence
+    }
+
+    @PublishedApi internal fun claim(): Long {
+        while (true) {
+            val sequence = head.get()
+            if (sequence - tail > mask) return -1
+            if (head.compareAndSet(sequence, sequence + 1)) return sequence
+        }
+    }
+
+    @PublishedApi internal fun record(sequence: Long): Record = records[(sequence and mask.toLong()).toInt()]
+
+    @PublishedApi internal fun publish(sequence: Long) {
+        published.set((sequence and mask.toLong()).toInt(), sequence)
+    }
+
+    /**
+     * Pass published records in order to [consumer] and free them. Must be called from one thread only.
+     *
+     * @return number of processed records
+     */
+    fun drain(consumer: (Record) -> Unit): Int {
+        var count = 0
+        var sequence = tail
+        while (published.get((sequence and mask.toLong()).toInt()) == sequence) {
+            val record = record(sequence)
+            try {
+                consumer(record)
+            } finally {
+                record.clear()
+                tail = ++sequence
+                count++
+            }
+        }
+        return count
+    }
+
+    /**
+     * True if all records up to [sequence] (inclusive) were processed by consumer
+     */
+    fun isDrained(sequence: Long): Boolean = tail > sequence
+
+    fun isEmpty(): Boolean = tail == head.get()
+}
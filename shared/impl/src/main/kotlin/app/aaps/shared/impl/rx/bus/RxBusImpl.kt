@@ -7,10 +7,20 @@ import app.aaps.core.interfaces.rx.AapsSchedulers
 import app.aaps.core.interfaces.rx.bus.RxBus
 import app.aaps.core.interfaces.rx.events.Event
 import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.disposables.CompositeDisposable
 import io.reactivex.rxjava3.subjects.PublishSubject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReference
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Bus with separate channel per subscribed event class
+ *
+ * Sent event is passed only to channels of its class and supertypes, so dispatch cost
+ * depends on number of interested subscribers, not on all subscribers.
+ */
 @OpenForTesting
 @Singleton
 class RxBusImpl @Inject constructor(
@@ -18,17 +28,42 @@ class RxBusImpl @Inject constructor(
     val aapsLogger: AAPSLogger
 ) : RxBus {
 
-    private val publisher = PublishSubject.create<Event>()
+    private val channels = ConcurrentHashMap<Class<*>, PublishSubject<Any>>()
+
+    // channels receiving events of concrete class, cleared when new channel is created
+    private val routes = ConcurrentHashMap<Class<*>, Array<PublishSubject<Any>>>()
 
     override fun send(event: Event) {
-        aapsLogger.debug(LTag.EVENTS, "Sending $event")
-        publisher.onNext(event)
+        aapsLogger.debug(LTag.EVENTS) { "Sending $event" }
+        val targets = routes[event.javaClass] ?: route(event.javaClass)
+        for (channel in targets)
+            if (channel.hasObservers()) channel.onNext(event)
     }
 
+    private fun route(eventClass: Class<*>): Array<PublishSubject<Any>> =
+        synchronized(channels) {
+            channels.filterKeys { it.isAssignableFrom(eventClass) }.values.toTypedArray().also { routes[eventClass] = it }
+        }
+
+    private fun channel(eventType: Class<*>): PublishSubject<Any> =
+        channels[eventType] ?: synchronized(channels) {
+            channels.getOrPut(eventType) { PublishSubject.create<Any>().also { routes.clear() } }
+        }
+
     // Listen should return an Observable and not the publisher
-    // Using ofType we filter only events that match that class type
     override fun <T : Any> toObservable(eventType: Class<T>): Observable<T> =
-        publisher
-            .subscribeOn(aapsSchedulers.io)
-            .ofType(eventType)
-}
\ No newline at end of file
+        channel(eventType).cast(eventType)
+
+    override fun <T : Any> toObservable(eventType: Class<T>, scheduler: Scheduler, coalesce: Boolean): Observable<T> =
+        if (!coalesce) toObservable(eventType).observeOn(scheduler)
+        else Observable.create { emitter ->
+            val pending = AtomicReference<T?>()
+            val worker = scheduler.createWorker()
+            val subscription = toObservable(eventType).subscribe({ event ->
+                // schedule delivery only if nothing is waiting, otherwise just replace waiting event
+                if (pending.getAndSet(event) == null)
+                    worker.schedule { pending.getAndSet(null)?.let { emitter.onNext(it) } }
+            }, emitter::onError)
+            emitter.setDisposable(CompositeDisposable(subscription, worker))
+        }
+}
@@ -5,7 +5,10 @@ import android.content.Context
 import android.content.SharedPreferences
 import androidx.annotation.StringRes
 import app.aaps.core.interfaces.sharedPreferences.SP
+import app.aaps.core.interfaces.sharedPreferences.SPSnapshot
 import app.aaps.core.interfaces.utils.SafeParse
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -15,21 +18,61 @@ class SPImplementation @Inject constructor(
     private val context: Context
 ) : SP {
 
+    // resource ids resolved to keys, keys are not translated so they never change
+    private val keys = ConcurrentHashMap<Int, String>()
+
+    // parsed values of doubles stored as strings, NaN if not stored or not parseable
+    private val doubles = ConcurrentHashMap<String, Double>()
+    private val doublesVersion = AtomicLong(0)
+
+    // SharedPreferences keeps only weak reference to listener
+    private val changeListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key -> invalidate(key) }
+
+    init {
+        sharedPreferences.registerOnSharedPreferenceChangeListener(changeListener)
+    }
+
+    private fun key(@StringRes resourceID: Int): String = keys[resourceID] ?: context.getString(resourceID).also { keys[resourceID] = it }
+
+    // null key means preferences were cleared
+    private fun invalidate(key: String?) {
+        doublesVersion.incrementAndGet()
+        if (key == null) doubles.clear() else doubles.remove(key)
+    }
+
+    private fun cachedDouble(key: String, defaultValue: Double): Double {
+        val cached = doubles[key] ?: run {
+            val version = doublesVersion.get()
+            val value = SafeParse.stringToDouble(sharedPreferences.getString(key, null), Double.NaN)
+            doubles[key] = value
+            // changed while parsing, don't keep possibly old value
+            if (version != doublesVersion.get()) doubles.remove(key)
+            value
+        }
+        return if (cached.isNaN()) defaultValue else cached
+    }
+
+    override fun snapshot(): SP.Snapshot = SPSnapshot(HashMap(sharedPreferences.all)) { key(it) }
+
     @SuppressLint("ApplySharedPref")
     override fun edit(commit: Boolean, block: SP.Editor.() -> Unit) {
         val spEdit = sharedPreferences.edit()
+        val changedKeys = ArrayList<String?>()
 
         val edit = object : SP.Editor {
             override fun clear() {
                 spEdit.clear()
+                changedKeys.add(null)
             }
 
             override fun remove(@StringRes resourceID: Int) {
-                spEdit.remove(context.getString(resourceID))
+                spEdit.remove(key(resourceID))
+                changedKeys.add(key(resourceID))
             }
 
             override fun remove(key: String) {
                 spEdit.remove(key)
+                changedKeys.add(key)
             }
 
             override fun putBoolean(key: String, value: Boolean) {
@@ -37,15 +80,17 @@ class SPImplementation @Inject constructor(
             }
 
             override fun putBoolean(@StringRes resourceID: Int, value: Boolean) {
-                spEdit.putBoolean(context.getString(resourceID), value)
+                spEdit.putBoolean(key(resourceID), value)
             }
 
             override fun putDouble(key: String, value: Double) {
                 spEdit.putString(key, value.toString())
+                changedKeys.add(key)
             }
 
             override fun putDouble(@StringRes resourceID: Int, value: Double) {
-                spEdit.putString(context.getString(resourceID), value.toString())
+                spEdit.putString(key(resourceID), value.toString())
+                changedKeys.add(key(resourceID))
             }
 
             override fun putLong(key: String, value: Long) {
@@ -53,7 +98,7 @@ class SPImplementation @Inject constructor(
             }
 
             override fun putLong(@StringRes resourceID: Int, value: Long) {
-                spEdit.putLong(context.getString(resourceID), value)
+                spEdit.putLong(key(resourceID), value)
             }
 
             override fun putInt(key: String, value: Int) {
@@ -61,15 +106,17 @@ class SPImplementation @Inject constructor(
             }
 
             override fun putInt(@StringRes resourceID: Int, value: Int) {
-                spEdit.putInt(context.getString(resourceID), value)
+                spEdit.putInt(key(resourceID), value)
             }
 
             override fun putString(key: String, value: String) {
                 spEdit.putString(key, value)
+                changedKeys.add(key)
             }
 
             override fun putString(@StringRes resourceID: Int, value: String) {
-                spEdit.putString(context.getString(resourceID), value)
+                spEdit.putString(key(resourceID), value)
+                changedKeys.add(key(resourceID))
             }
         }
 
@@ -79,37 +126,42 @@ class SPImplementation @Inject constructor(
             spEdit.commit()
         else
             spEdit.apply()
+        changedKeys.forEach { invalidate(it) }
     }
 
     override fun getAll(): Map<String, *> = sharedPreferences.all
 
-    override fun clear() = sharedPreferences.edit().clear().apply()
+    override fun clear() {
+        sharedPreferences.edit().clear().apply()
+        invalidate(null)
+    }
 
     override fun contains(key: String): Boolean = sharedPreferences.contains(key)
 
-    override fun contains(resourceId: Int): Boolean = sharedPreferences.contains(context.getString(resourceId))
+    override fun contains(resourceId: Int): Boolean = sharedPreferences.contains(key(resourceId))
 
-    override fun remove(resourceID: Int) =
-        sharedPreferences.edit().remove(context.getString(resourceID)).apply()
+    override fun remove(resourceID: Int) = remove(key(resourceID))
 
-    override fun remove(key: String) =
+    override fun remove(key: String) {
         sharedPreferences.edit().remove(key).apply()
+        invalidate(key)
+    }
 
     override fun getString(resourceID: Int, defaultValue: String): String =
-        sharedPreferences.getString(context.getString(resourceID), defaultValue) ?: defaultValue
+        sharedPreferences.getString(key(resourceID), defaultValue) ?: defaultValue
 
     override fun getString(key: String, defaultValue: String): String =
         sharedPreferences.getString(key, defaultValue) ?: defaultValue
 
     override fun getStringOrNull(resourceID: Int, defaultValue: String?): String? =
-        sharedPreferences.getString(context.getString(resourceID), defaultValue) ?: defaultValue
+        sharedPreferences.getString(key(resourceID), defaultValue) ?: defaultValue
 
     override fun getStringOrNull(key: String, defaultValue: String?): String? =
         sharedPreferences.getString(key, defaultValue)
 
     override fun getBoolean(resourceID: Int, defaultValue: Boolean): Boolean {
         return try {
-            sharedPreferences.getBoolean(context.getString(resourceID), defaultValue)
+            sharedPreferences.getBoolean(key(resourceID), defaultValue)
         } catch (e: Exception) {
             defaultValue
         }
@@ -123,17 +175,15 @@ class SPImplementation @Inject constructor(
         }
     }
 
-    override fun getDouble(resourceID: Int, defaultValue: Double): Double =
-        SafeParse.stringToDouble(sharedPreferences.getString(context.getString(resourceID), defaultValue.toString()), defaultValue)
+    override fun getDouble(resourceID: Int, defaultValue: Double): Double = cachedDouble(key(resourceID), defaultValue)
 
-    override fun getDouble(key: String, defaultValue: Double): Double =
-        SafeParse.stringToDouble(sharedPreferences.getString(key, defaultValue.toString()), defaultValue)
+    override fun getDouble(key: String, defaultValue: Double): Double = cachedDouble(key, defaultValue)
 
     override fun getInt(resourceID: Int, defaultValue: Int): Int {
         return try {
-            sharedPreferences.getInt(context.getString(resourceID), defaultValue)
+            sharedPreferences.getInt(key(resourceID), defaultValue)
         } catch (e: Exception) {
-            SafeParse.stringToInt(sharedPreferences.getString(context.getString(resourceID), defaultValue.toString()), defaultValue)
+            SafeParse.stringToInt(sharedPreferences.getString(key(resourceID), defaultValue.toString()), defaultValue)
         }
     }
 
@@ -147,10 +197,10 @@ class SPImplementation @Inject constructor(
 
     override fun getLong(resourceID: Int, defaultValue: Long): Long {
         return try {
-            sharedPreferences.getLong(context.getString(resourceID), defaultValue)
+            sharedPreferences.getLong(key(resourceID), defaultValue)
         } catch (e: Exception) {
             try {
-                SafeParse.stringToLong(sharedPreferences.getString(context.getString(resourceID), defaultValue.toString()), defaultValue)
+                SafeParse.stringToLong(sharedPreferences.getString(key(resourceID), defaultValue.toString()), defaultValue)
             } catch (e1: Exception) {
                 return defaultValue
             }
@@ -171,42 +221,40 @@ class SPImplementation @Inject constructor(
 
     override fun incLong(resourceID: Int) {
         val value = getLong(resourceID, 0) + 1L
-        sharedPreferences.edit().putLong(context.getString(resourceID), value).apply()
+        sharedPreferences.edit().putLong(key(resourceID), value).apply()
     }
 
     override fun putBoolean(key: String, value: Boolean) = sharedPreferences.edit().putBoolean(key, value).apply()
 
     override fun putBoolean(resourceID: Int, value: Boolean) =
-        sharedPreferences.edit().putBoolean(context.getString(resourceID), value).apply()
+        sharedPreferences.edit().putBoolean(key(resourceID), value).apply()
 
-    override fun putDouble(key: String, value: Double) =
-        sharedPreferences.edit().putString(key, value.toString()).apply()
+    override fun putDouble(key: String, value: Double) = putString(key, value.toString())
 
-    override fun putDouble(resourceID: Int, value: Double) {
-        sharedPreferences.edit().putString(context.getString(resourceID), value.toString()).apply()
-    }
+    override fun putDouble(resourceID: Int, value: Double) = putString(key(resourceID), value.toString())
 
     override fun putLong(key: String, value: Long) =
         sharedPreferences.edit().putLong(key, value).apply()
 
     override fun putLong(resourceID: Int, value: Long) =
-        sharedPreferences.edit().putLong(context.getString(resourceID), value).apply()
+        sharedPreferences.edit().putLong(key(resourceID), value).apply()
 
     override fun putInt(key: String, value: Int) =
         sharedPreferences.edit().putInt(key, value).apply()
 
     override fun putInt(resourceID: Int, value: Int) =
-        sharedPreferences.edit().putInt(context.getString(resourceID), value).apply()
+        sharedPreferences.edit().putInt(key(resourceID), value).apply()
 
     override fun incInt(resourceID: Int) {
         val value = getInt(resourceID, 0) + 1
-        sharedPreferences.edit().putInt(context.getString(resourceID), value).apply()
+        sharedPreferences.edit().putInt(key(resourceID), value).apply()
     }
 
-    override fun putString(resourceID: Int, value: String) =
-        sharedPreferences.edit().putString(context.getString(resourceID), value).apply()
+    override fun putString(resourceID: Int, value: String) = putString(key(resourceID), value)
 
-    override fun putString(key: String, value: String) =
+    override fun putString(key: String, value: String) {
         sharedPreferences.edit().putString(key, value).apply()
+        invalidate(key)
+    }
 
 }
\ No newline at end of file
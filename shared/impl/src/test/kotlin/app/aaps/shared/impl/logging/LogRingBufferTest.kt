@@ -0,0 +1,95 @@
+package app.aaps.shared.impl.logging
+
+import app.aaps.core.interfaces.logging.LTag
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class LogRingBufferTest {
+
+    @Test
+    fun fullBufferRejectsRecords() {
+        val sut = LogRingBuffer(4)
+        repeat(4) { i -> assertThat(sut.offer { it.message = "m$i" }).isEqualTo(i.toLong()) }
+        assertThat(sut.offer { it.message = "m4" }).isEqualTo(-1L)
+
+        val messages = ArrayList<String>()
+        assertThat(sut.drain { messages.add(it.message) }).isEqualTo(4)
+        assertThat(messages).containsExactly("m0", "m1", "m2", "m3").inOrder()
+        assertThat(sut.isEmpty()).isTrue()
+        assertThat(sut.isDrained(3)).isTrue()
+        assertThat(sut.isDrained(4)).isFalse()
+        assertThat(sut.offer { it.message = "m4" }).isEqualTo(4L)
+    }
+
+    @Test
+    fun recordsAreClearedAfterDrain() {
+        val sut = LogRingBuffer(2)
+        repeat(3) { round ->
+            sut.offer {
+                it.tag = LTag.APS
+                it.message = "m$round"
+                it.throwable = Exception()
+                it.className = "Class"
+                it.methodName = "method"
+                it.lineNumber = 10
+            }
+            sut.drain {
+                assertThat(it.tag).isEqualTo(LTag.APS)
+                assertThat(it.throwable).isNotNull()
+                assertThat(it.location()).isEqualTo("[Class.method():10]: ")
+            }
+            sut.offer { it.message = "n$round" }
+            sut.drain {
+                assertThat(it.throwable).isNull()
+                assertThat(it.location()).isEmpty()
+            }
+        }
+    }
+
+    @Test
+    fun lazyCallerLocation() {
+        val sut = LogRingBuffer(2)
+        sut.offer {
+            it.caller = Throwable()
+            it.callerFrame = 0
+        }
+        sut.drain { assertThat(it.location()).startsWith("[LogRingBufferTest.lazyCallerLocation():") }
+    }
+
+    @Test
+    fun capacityMustBePowerOfTwo() {
+        assertThrows<IllegalArgumentException> { LogRingBuffer(6) }
+    }
+
+    @Test
+    fun concurrentProducersKeepOrderPerThread() {
+        val sut = LogRingBuffer(256)
+        val producers = 4
+        val count = 5_000
+        val start = CountDownLatch(1)
+        val threads = List(producers) { p ->
+            thread {
+                start.await()
+                for (i in 0 until count) {
+                    while (sut.offer { it.message = "$p"; it.lineNumber = i } < 0) Thread.yield()
+                }
+            }
+        }
+        start.countDown()
+        val next = IntArray(producers)
+        var received = 0
+        while (received < producers * count) {
+            received += sut.drain {
+                val p = it.message.toInt()
+                assertThat(it.lineNumber).isEqualTo(next[p])
+                next[p]++
+            }
+        }
+        threads.forEach { it.join() }
+        assertThat(next.toList()).containsExactly(count, count, count, count)
+        assertThat(sut.isEmpty()).isTrue()
+    }
+}
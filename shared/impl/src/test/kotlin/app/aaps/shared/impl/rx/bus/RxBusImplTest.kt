@@ -0,0 +1,108 @@
+package app.aaps.shared.impl.rx.bus
+
+import app.aaps.core.interfaces.logging.AAPSLogger
+import app.aaps.core.interfaces.rx.AapsSchedulers
+import app.aaps.core.interfaces.rx.events.Event
+import com.google.common.truth.Truth.assertThat
+import io.reactivex.rxjava3.schedulers.TestScheduler
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.Mock
+import org.mockito.junit.jupiter.MockitoExtension
+import org.mockito.junit.jupiter.MockitoSettings
+import org.mockito.quality.Strictness
+
+@ExtendWith(MockitoExtension::class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RxBusImplTest {
+
+    @Mock lateinit var aapsSchedulers: AapsSchedulers
+    @Mock lateinit var aapsLogger: AAPSLogger
+
+    private open class EventA(val value: Int = 0) : Event()
+    private class EventB : EventA()
+    private class EventC : Event()
+
+    private lateinit var sut: RxBusImpl
+
+    @BeforeEach
+    fun setUp() {
+        sut = RxBusImpl(aapsSchedulers, aapsLogger)
+    }
+
+    @Test
+    fun eventsAreRoutedByClass() {
+        val a = sut.toObservable(EventA::class.java).test()
+        val b = sut.toObservable(EventB::class.java).test()
+        val c = sut.toObservable(EventC::class.java).test()
+        val all = sut.toObservable(Event::class.java).test()
+
+        val eventA = EventA()
+        val eventB = EventB()
+        val eventC = EventC()
+        sut.send(eventA)
+        sut.send(eventB)
+        sut.send(eventC)
+
+        a.assertValues(eventA, eventB)
+        b.assertValues(eventB)
+        c.assertValues(eventC)
+        all.assertValues(eventA, eventB, eventC)
+    }
+
+    @Test
+    fun laterSubscriptionIsRouted() {
+        sut.send(EventB())
+        val b = sut.toObservable(EventB::class.java).test()
+        val eventB = EventB()
+        sut.send(eventB)
+        // new supertype channel must be added to already calculated route
+        val a = sut.toObservable(EventA::class.java).test()
+        sut.send(eventB)
+        b.assertValues(eventB, eventB)
+        a.assertValues(eventB)
+    }
+
+    @Test
+    fun disposedSubscriberDoesNotReceive() {
+        val observer = sut.toObservable(EventA::class.java).test()
+        sut.send(EventA(1))
+        observer.dispose()
+        sut.send(EventA(2))
+        assertThat(observer.values().map { it.value }).containsExactly(1)
+    }
+
+    @Test
+    fun coalescedDeliversLatestWaitingEvent() {
+        val scheduler = TestScheduler()
+        val observer = sut.toObservable(EventA::class.java, scheduler, coalesce = true).test()
+        sut.send(EventA(1))
+        sut.send(EventA(2))
+        sut.send(EventA(3))
+        observer.assertNoValues()
+        scheduler.triggerActions()
+        assertThat(observer.values().map { it.value }).containsExactly(3)
+
+        sut.send(EventA(4))
+        scheduler.triggerActions()
+        sut.send(EventA(5))
+        scheduler.triggerActions()
+        assertThat(observer.values().map { it.value }).containsExactly(3, 4, 5).inOrder()
+
+        observer.dispose()
+        sut.send(EventA(6))
+        scheduler.triggerActions()
+        assertThat(observer.values()).hasSize(3)
+    }
+
+    @Test
+    fun notCoalescedDeliversAll() {
+        val scheduler = TestScheduler()
+        val observer = sut.toObservable(EventA::class.java, scheduler).test()
+        sut.send(EventA(1))
+        sut.send(EventA(2))
+        scheduler.triggerActions()
+        assertThat(observer.values().map { it.value }).containsExactly(1, 2).inOrder()
+    }
+}
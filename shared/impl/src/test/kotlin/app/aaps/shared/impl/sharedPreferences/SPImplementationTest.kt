@@ -183,4 +183,45 @@ class SPImplementationTest {
         sut.incInt(someResource)
         assertThat(sut.getInt(someResource, 3)).isEqualTo(2)
     }
+
+    @Test
+    fun cachedDoubleFollowsChanges() {
+        sut.putDouble(someResource, 1.0)
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(1.0)
+        sut.putString(someResource, "1,5")
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(1.5)
+        sut.edit { putDouble(someResource, 3.0) }
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(3.0)
+        sut.remove(someResource)
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(2.0)
+        sut.putString(someResource, "x")
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(2.0)
+        sut.putDouble(someResource, 4.0)
+        sut.clear()
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(2.0)
+    }
+
+    @Test
+    fun snapshot() {
+        sut.putDouble(someResource, 1.0)
+        sut.putInt("int", 1)
+        sut.putString("int_string", "2")
+        sut.putLong("long", 3L)
+        sut.putBoolean(someResource2, true)
+        sut.putString("string", "a")
+        val snapshot = sut.snapshot()
+        sut.putDouble(someResource, 5.0)
+        sut.putBoolean(someResource2, false)
+        sut.putString("string", "b")
+
+        assertThat(snapshot.getDouble(someResource, 2.0)).isEqualTo(1.0)
+        assertThat(snapshot.getDouble("missing", 2.0)).isEqualTo(2.0)
+        assertThat(snapshot.getInt("int", 0)).isEqualTo(1)
+        assertThat(snapshot.getInt("int_string", 0)).isEqualTo(2)
+        assertThat(snapshot.getLong("long", 0L)).isEqualTo(3L)
+        assertThat(snapshot.getBoolean(someResource2, false)).isTrue()
+        assertThat(snapshot.getString("string", "")).isEqualTo("a")
+        assertThat(snapshot.getString("missing", "c")).isEqualTo("c")
+        assertThat(sut.getDouble(someResource, 2.0)).isEqualTo(5.0)
+    }
 }
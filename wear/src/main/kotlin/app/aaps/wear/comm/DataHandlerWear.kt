@@ -138,6 +138,21 @@ class DataHandlerWear @Inject constructor(
             .subscribe {
                 aapsLogger.debug(LTag.WEAR, "GraphData received from ${it.sourceNodeId}")
                 persistence.store(it)
+                if (it.sequence != 0L) rxBus.send(EventWearDataToMobile(EventData.ActionGraphDataAck(it.sequence)))
+            }
+        disposable += rxBus
+            .toObservable(EventData.GraphDataDelta::class.java)
+            .observeOn(aapsSchedulers.io)
+            .subscribe {
+                aapsLogger.debug(LTag.WEAR, "GraphDataDelta received from ${it.sourceNodeId}")
+                val graphData = persistence.readGraphData()
+                if (graphData != null && graphData.sequence == it.baseSequence) {
+                    persistence.store(it.applyTo(graphData))
+                    rxBus.send(EventWearDataToMobile(EventData.ActionGraphDataAck(it.sequence)))
+                } else {
+                    aapsLogger.debug(LTag.WEAR, "GraphDataDelta doesn't match ${graphData?.sequence}, requesting full data")
+                    rxBus.send(EventWearToMobile(EventData.ActionResendData("GraphDataDelta")))
+                }
             }
         disposable += rxBus
             .toObservable(EventData.TreatmentData::class.java)
@@ -127,12 +127,38 @@ class CalculationWorkflowImpl @Inject constructor(
     ) {
         aapsLogger.debug(LTag.WORKER, "Starting calculation worker: $reason to ${dateUtil.dateAndTimeAndSecondsString(end)}")
 
+        // Critical path: IOB/COB/autosens calculation followed by loop invocation is enqueued first
+        // so a new BG is processed without waiting for graph data preparation.
+        // Graph and widget tail runs afterwards in the same unique work,
+        // it's cancelled by REPLACE policy when next calculation is requested.
         WorkManager.getInstance(context)
             .beginUniqueWork(
                 job, ExistingWorkPolicy.REPLACE,
                 if (bgDataReload) OneTimeWorkRequest.Builder(LoadBgDataWorker::class.java).setInputData(dataWorkerStorage.storeInputData(LoadBgDataWorker.LoadBgData(iobCobCalculator, end))).build()
                 else OneTimeWorkRequest.Builder(DummyWorker::class.java).build()
             )
+            .then(
+                if (activePlugin.activeSensitivity.isOref1)
+                    OneTimeWorkRequest.Builder(IobCobOref1Worker::class.java)
+                        .setInputData(dataWorkerStorage.storeInputData(IobCobOref1Worker.IobCobOref1WorkerData(injector, iobCobCalculator, reason, end, job == MAIN_CALCULATION, cause)))
+                        .build()
+                else
+                    OneTimeWorkRequest.Builder(IobCobOrefWorker::class.java)
+                        .setInputData(dataWorkerStorage.storeInputData(IobCobOrefWorker.IobCobOrefWorkerData(injector, iobCobCalculator, reason, end, job == MAIN_CALCULATION, cause)))
+                        .build()
+            )
+            .then(
+                runIf = job == MAIN_CALCULATION,
+                OneTimeWorkRequest.Builder(InvokeLoopWorker::class.java)
+                    .setInputData(dataWorkerStorage.storeInputData(InvokeLoopWorker.InvokeLoopData(cause)))
+                    .build()
+            )
+            // Graph and widget tail
+            .then(OneTimeWorkRequest.Builder(UpdateIobCobSensWorker::class.java).build())
+            .then(
+                runIf = job == MAIN_CALCULATION,
+                OneTimeWorkRequest.Builder(UpdateWidgetWorker::class.java).build()
+            )
             .then(
                 OneTimeWorkRequest.Builder(PrepareBucketedDataWorker::class.java)
                     .setInputData(dataWorkerStorage.storeInputData(PrepareBucketedDataWorker.PrepareBucketedData(iobCobCalculator, overviewData)))
@@ -168,17 +194,6 @@ class CalculationWorkflowImpl @Inject constructor(
                     .setInputData(Data.Builder().putString(JOB, job).putInt(PASS, CalculationWorkflow.ProgressData.DRAW_TT.pass).build())
                     .build()
             )
-            .then(
-                if (activePlugin.activeSensitivity.isOref1)
-                    OneTimeWorkRequest.Builder(IobCobOref1Worker::class.java)
-                        .setInputData(dataWorkerStorage.storeInputData(IobCobOref1Worker.IobCobOref1WorkerData(injector, iobCobCalculator, reason, end, job == MAIN_CALCULATION, cause)))
-                        .build()
-                else
-                    OneTimeWorkRequest.Builder(IobCobOrefWorker::class.java)
-                        .setInputData(dataWorkerStorage.storeInputData(IobCobOrefWorker.IobCobOrefWorkerData(injector, iobCobCalculator, reason, end, job == MAIN_CALCULATION, cause)))
-                        .build()
-            )
-            .then(OneTimeWorkRequest.Builder(UpdateIobCobSensWorker::class.java).build())
             .then(
                 OneTimeWorkRequest.Builder(PrepareIobAutosensGraphDataWorker::class.java)
                     .setInputData(dataWorkerStorage.storeInputData(PrepareIobAutosensGraphDataWorker.PrepareIobAutosensData(iobCobCalculator, overviewData)))
@@ -190,16 +205,6 @@ class CalculationWorkflowImpl @Inject constructor(
                     .setInputData(Data.Builder().putString(JOB, job).putInt(PASS, CalculationWorkflow.ProgressData.DRAW_IOB.pass).build())
                     .build()
             )
-            .then(
-                runIf = job == MAIN_CALCULATION,
-                OneTimeWorkRequest.Builder(InvokeLoopWorker::class.java)
-                    .setInputData(dataWorkerStorage.storeInputData(InvokeLoopWorker.InvokeLoopData(cause)))
-                    .build()
-            )
-            .then(
-                runIf = job == MAIN_CALCULATION,
-                OneTimeWorkRequest.Builder(UpdateWidgetWorker::class.java).build()
-            )
             .then(
                 runIf = job == MAIN_CALCULATION,
                 OneTimeWorkRequest.Builder(PreparePredictionsWorker::class.java)
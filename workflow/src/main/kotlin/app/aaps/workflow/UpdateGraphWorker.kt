@@ -5,6 +5,7 @@ import androidx.work.WorkerParameters
 import app.aaps.core.interfaces.plugin.ActivePlugin
 import app.aaps.core.interfaces.rx.bus.RxBus
 import app.aaps.core.interfaces.rx.events.EventUpdateOverviewGraph
+import app.aaps.core.main.events.EventCalculationFinished
 import app.aaps.core.main.events.EventIobCalculationProgress
 import app.aaps.core.main.utils.worker.LoggingWorker
 import app.aaps.core.main.workflow.CalculationWorkflow
@@ -27,6 +28,8 @@ class UpdateGraphWorker(
         else
             rxBus.send(EventUpdateOverviewGraph("UpdateGraphWorker"))
         rxBus.send(EventIobCalculationProgress(CalculationWorkflow.ProgressData.values().find { it.pass == pass } ?: throw InvalidParameterSpecException(), 100, null))
+        if (pass == CalculationWorkflow.ProgressData.DRAW_FINAL.pass)
+            inputData.getString(CalculationWorkflow.JOB)?.let { rxBus.send(EventCalculationFinished(it)) }
         return Result.success()
     }
 }
\ No newline at end of file
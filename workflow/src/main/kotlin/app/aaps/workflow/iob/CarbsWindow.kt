@@ -0,0 +1,35 @@
+package app.aaps.workflow.iob
+
+import app.aaps.database.entities.Carbs
+
+/**
+ * Expanded carbs of whole calculation window loaded by one query
+ * and looked up by time for every bucket
+ *
+ * @param carbs expanded carbs (duration == 0)
+ */
+class CarbsWindow(carbs: List<Carbs>) {
+
+    private val carbs = carbs.sortedBy { it.timestamp }
+    private val timestamps = LongArray(this.carbs.size) { this.carbs[it].timestamp }
+
+    /**
+     * Carbs with timestamp in [from]..[to] (both inclusive) ordered by timestamp
+     */
+    fun between(from: Long, to: Long): List<Carbs> {
+        if (from > to) return emptyList()
+        val first = firstNotBefore(from)
+        val last = firstNotBefore(to + 1)
+        return if (first < last) carbs.subList(first, last) else emptyList()
+    }
+
+    private fun firstNotBefore(time: Long): Int {
+        var low = 0
+        var high = timestamps.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[mid] < time) low = mid + 1 else high = mid
+        }
+        return low
+    }
+}
@@ -74,12 +74,14 @@ class IobCobOref1Worker(
 
         val start = dateUtil.now()
         try {
-            aapsLogger.debug(LTag.AUTOSENS, "AUTOSENSDATA thread started: ${data.reason}")
+            aapsLogger.debug(LTag.AUTOSENS) { "AUTOSENSDATA thread started: ${data.reason}" }
             if (!profileFunction.isProfileValid("IobCobThread")) {
-                aapsLogger.debug(LTag.AUTOSENS, "Aborting calculation thread (No profile): ${data.reason}")
+                aapsLogger.debug(LTag.AUTOSENS) { "Aborting calculation thread (No profile): ${data.reason}" }
                 return Result.success(workDataOf("Error" to "app still initializing"))
             }
             //log.debug("Locking calculateSensitivityData");
+            // same settings for whole calculation
+            val preferences = sp.snapshot()
             val oldestTimeWithData = data.iobCobCalculator.calculateDetectionStart(data.end, data.limitDataToOldestAvailable)
             // work on local copy and set back when finished
             val ads = data.iobCobCalculator.ads.clone()
@@ -92,11 +94,15 @@ class IobCobOref1Worker(
             val prevDataTime = ads.roundUpTime(bucketedData[bucketedData.size - 3].timestamp)
             aapsLogger.debug(LTag.AUTOSENS) { "Prev data time: " + dateUtil.dateAndTimeString(prevDataTime) }
             var previous = autosensDataTable[prevDataTime]
+            val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
+            // loaded by one query when first missing bucket is found
+            var carbsWindow: CarbsWindow? = null
+            val calendar = GregorianCalendar()
             // start from oldest to be able sub cob
             for (i in bucketedData.size - 4 downTo 0) {
                 rxBus.send(EventIobCalculationProgress(CalculationWorkflow.ProgressData.IOB_COB_OREF, 100 - (100.0 * i / bucketedData.size).toInt(), data.cause))
                 if (isStopped) {
-                    aapsLogger.debug(LTag.AUTOSENS, "Aborting calculation thread (trigger): ${data.reason}")
+                    aapsLogger.debug(LTag.AUTOSENS) { "Aborting calculation thread (trigger): ${data.reason}" }
                     return Result.failure(workDataOf("Error" to "Aborting calculation thread (trigger): ${data.reason}"))
                 }
                 // check if data already exists
@@ -110,10 +116,10 @@ class IobCobOref1Worker(
                 }
                 val profile = profileFunction.getProfile(bgTime)
                 if (profile == null) {
-                    aapsLogger.debug(LTag.AUTOSENS, "Aborting calculation thread (no profile): ${data.reason}")
+                    aapsLogger.debug(LTag.AUTOSENS) { "Aborting calculation thread (no profile): ${data.reason}" }
                     continue  // profile not set yet
                 }
-                aapsLogger.debug(LTag.AUTOSENS, "Processing calculation thread: ${data.reason} ($i/${bucketedData.size})")
+                aapsLogger.debug(LTag.AUTOSENS) { "Processing calculation thread: ${data.reason} ($i/${bucketedData.size})" }
                 val sens = profile.getIsfMgdl(bgTime)
                 val autosensData = instantiator.provideAutosensDataObject()
                 autosensData.time = bgTime
@@ -189,18 +195,20 @@ class IobCobOref1Worker(
                         aapsLogger.debug(LTag.AUTOSENS) { ">>>>> bucketed_data.size()=${bucketedData.size} i=$i hourAgoData=null" }
                     }
                 }
-                val recentCarbTreatments = repository.getCarbsDataFromTimeToTimeExpanded(bgTime - T.mins(5).msecs(), bgTime, true).blockingGet()
+                val carbs = carbsWindow
+                    ?: CarbsWindow(repository.getCarbsDataFromTimeToTimeExpanded(bgTime - T.mins(5).msecs(), ads.roundUpTime(bucketedData[0].timestamp), true).blockingGet())
+                        .also { carbsWindow = it }
+                val recentCarbTreatments = carbs.between(bgTime - T.mins(5).msecs(), bgTime)
                 for (recentCarbTreatment in recentCarbTreatments) {
                     autosensData.carbsFromBolus += recentCarbTreatment.amount
-                    val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
-                    autosensData.activeCarbsList.add(fromCarbs(recentCarbTreatment, isAAPSOrWeighted, profileFunction, aapsLogger, dateUtil, sp))
+                    autosensData.activeCarbsList.add(fromCarbs(recentCarbTreatment, isAAPSOrWeighted, profileFunction, aapsLogger, dateUtil, preferences))
                     autosensData.pastSensitivity += "[" + decimalFormatter.to0Decimal(recentCarbTreatment.amount) + "g]"
                 }
 
                 // if we are absorbing carbs
                 if (previous != null && previous.cob > 0) {
                     // calculate sum of min carb impact from all active treatments
-                    val totalMinCarbsImpact = sp.getDouble(app.aaps.core.utils.R.string.key_openapsama_min_5m_carbimpact, SMBDefaults.min_5m_carbimpact)
+                    val totalMinCarbsImpact = preferences.getDouble(app.aaps.core.utils.R.string.key_openapsama_min_5m_carbimpact, SMBDefaults.min_5m_carbimpact)
 
                     // figure out how many carbs that represents
                     // but always assume at least 3mg/dL/5m (default) absorption per active treatment
@@ -217,7 +225,6 @@ class IobCobOref1Worker(
                     autosensData.type = previous.type
                     autosensData.uam = previous.uam
                 }
-                val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
                 autosensData.removeOldCarbs(bgTime, isAAPSOrWeighted)
                 autosensData.cob += autosensData.carbsFromBolus
                 autosensData.mealCarbs += autosensData.carbsFromBolus
@@ -301,7 +308,6 @@ class IobCobOref1Worker(
                 }
 
                 // add one neutral deviation every 2 hours to help decay over long exclusion periods
-                val calendar = GregorianCalendar()
                 calendar.timeInMillis = bgTime
                 val min = calendar[Calendar.MINUTE]
                 val hours = calendar[Calendar.HOUR_OF_DAY]
@@ -312,7 +318,7 @@ class IobCobOref1Worker(
                     "Running detectSensitivity from: " + dateUtil.dateAndTimeString(oldestTimeWithData) + " to: " + dateUtil.dateAndTimeString(bgTime) + " lastDataTime:" + ads.lastDataTime(dateUtil)
                 }
                 val sensitivity = activePlugin.activeSensitivity.detectSensitivity(ads, oldestTimeWithData, bgTime)
-                aapsLogger.debug(LTag.AUTOSENS, "Sensitivity result: $sensitivity")
+                aapsLogger.debug(LTag.AUTOSENS) { "Sensitivity result: $sensitivity" }
                 autosensData.autosensResult = sensitivity
                 aapsLogger.debug(LTag.AUTOSENS) { autosensData.toString() }
             }
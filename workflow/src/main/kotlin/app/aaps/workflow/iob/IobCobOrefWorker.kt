@@ -75,6 +75,8 @@ class IobCobOrefWorker @Inject internal constructor(
                 return Result.success(workDataOf("Error" to "app still initializing"))
             }
             //log.debug("Locking calculateSensitivityData");
+            // same settings for whole calculation
+            val preferences = sp.snapshot()
             val oldestTimeWithData = data.iobCobCalculator.calculateDetectionStart(data.end, data.limitDataToOldestAvailable)
             // work on local copy and set back when finished
             val ads = data.iobCobCalculator.ads.clone()
@@ -87,6 +89,9 @@ class IobCobOrefWorker @Inject internal constructor(
             val prevDataTime = ads.roundUpTime(bucketedData[bucketedData.size - 3].timestamp)
             aapsLogger.debug(LTag.AUTOSENS) { "Prev data time: " + dateUtil.dateAndTimeString(prevDataTime) }
             var previous = autosensDataTable[prevDataTime]
+            val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
+            // loaded by one query when first missing bucket is found
+            var carbsWindow: CarbsWindow? = null
             // start from oldest to be able sub cob
             for (i in bucketedData.size - 4 downTo 0) {
                 rxBus.send(EventIobCalculationProgress(CalculationWorkflow.ProgressData.IOB_COB_OREF, 100 - (100.0 * i / bucketedData.size).toInt(), data.cause))
@@ -182,11 +187,13 @@ class IobCobOrefWorker @Inject internal constructor(
                         aapsLogger.debug(LTag.AUTOSENS) { ">>>>> bucketed_data.size()=${bucketedData.size} i=$i hourAgoData=null" }
                     }
                 }
-                val recentCarbTreatments = repository.getCarbsDataFromTimeToTimeExpanded(bgTime - T.mins(5).msecs(), bgTime, true).blockingGet()
+                val carbs = carbsWindow
+                    ?: CarbsWindow(repository.getCarbsDataFromTimeToTimeExpanded(bgTime - T.mins(5).msecs(), ads.roundUpTime(bucketedData[0].timestamp), true).blockingGet())
+                        .also { carbsWindow = it }
+                val recentCarbTreatments = carbs.between(bgTime - T.mins(5).msecs(), bgTime)
                 for (recentCarbTreatment in recentCarbTreatments) {
                     autosensData.carbsFromBolus += recentCarbTreatment.amount
-                    val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
-                    autosensData.activeCarbsList.add(fromCarbs(recentCarbTreatment, isAAPSOrWeighted, profileFunction, aapsLogger, dateUtil, sp))
+                    autosensData.activeCarbsList.add(fromCarbs(recentCarbTreatment, isAAPSOrWeighted, profileFunction, aapsLogger, dateUtil, preferences))
                     autosensData.pastSensitivity += "[" + decimalFormatter.to0Decimal(recentCarbTreatment.amount) + "g]"
                 }
 
@@ -194,7 +201,7 @@ class IobCobOrefWorker @Inject internal constructor(
                 if (previous != null && previous.cob > 0) {
                     // calculate sum of min carb impact from all active treatments
                     var totalMinCarbsImpact = 0.0
-                    if (activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic) {
+                    if (isAAPSOrWeighted) {
                         //when the impact depends on a max time, sum them up as smaller carb sizes make them smaller
                         for (ii in autosensData.activeCarbsList.indices) {
                             val c = autosensData.activeCarbsList[ii]
@@ -202,7 +209,7 @@ class IobCobOrefWorker @Inject internal constructor(
                         }
                     } else {
                         //Oref sensitivity
-                        totalMinCarbsImpact = sp.getDouble(app.aaps.core.utils.R.string.key_openapsama_min_5m_carbimpact, SMBDefaults.min_5m_carbimpact)
+                        totalMinCarbsImpact = preferences.getDouble(app.aaps.core.utils.R.string.key_openapsama_min_5m_carbimpact, SMBDefaults.min_5m_carbimpact)
                     }
 
                     // figure out how many carbs that represents
@@ -215,7 +222,6 @@ class IobCobOrefWorker @Inject internal constructor(
                     autosensData.deductAbsorbedCarbs()
                     autosensData.usedMinCarbsImpact = totalMinCarbsImpact
                 }
-                val isAAPSOrWeighted = activePlugin.activeSensitivity.isMinCarbsAbsorptionDynamic
                 autosensData.removeOldCarbs(bgTime, isAAPSOrWeighted)
                 autosensData.cob += autosensData.carbsFromBolus
                 autosensData.deviation = deviation
@@ -255,7 +261,7 @@ class IobCobOrefWorker @Inject internal constructor(
                 val sensitivity = activePlugin.activeSensitivity.detectSensitivity(ads, oldestTimeWithData, bgTime)
                 aapsLogger.debug(LTag.AUTOSENS) { "Sensitivity result: $sensitivity" }
                 autosensData.autosensResult = sensitivity
-                aapsLogger.debug(LTag.AUTOSENS, autosensData.toString())
+                aapsLogger.debug(LTag.AUTOSENS) { autosensData.toString() }
             }
             data.iobCobCalculator.ads = ads
             Thread {
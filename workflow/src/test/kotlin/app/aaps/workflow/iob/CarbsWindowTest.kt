@@ -0,0 +1,31 @@
+package app.aaps.workflow.iob
+
+import app.aaps.database.entities.Carbs
+import com.google.common.truth.Truth.assertThat
+import org.junit.jupiter.api.Test
+
+class CarbsWindowTest {
+
+    private fun carbs(timestamp: Long, amount: Double) = Carbs(timestamp = timestamp, amount = amount, duration = 0)
+
+    @Test
+    fun betweenMatchesFilter() {
+        val carbs = listOf(carbs(3000, 3.0), carbs(1000, 1.0), carbs(2000, 2.0), carbs(2000, 4.0), carbs(5000, 5.0))
+        val sut = CarbsWindow(carbs)
+        for (from in 0L..6000L step 500) {
+            for (to in from..6000L step 500) {
+                val expected = carbs.filter { it.timestamp in from..to }.sortedBy { it.timestamp }
+                assertThat(sut.between(from, to)).containsExactlyElementsIn(expected).inOrder()
+            }
+        }
+    }
+
+    @Test
+    fun boundariesAreInclusive() {
+        val sut = CarbsWindow(listOf(carbs(1000, 1.0), carbs(1300, 2.0)))
+        assertThat(sut.between(1000, 1300).map { it.amount }).containsExactly(1.0, 2.0).inOrder()
+        assertThat(sut.between(1001, 1299)).isEmpty()
+        assertThat(sut.between(2000, 1000)).isEmpty()
+        assertThat(CarbsWindow(emptyList()).between(0, Long.MAX_VALUE - 1)).isEmpty()
+    }
+}